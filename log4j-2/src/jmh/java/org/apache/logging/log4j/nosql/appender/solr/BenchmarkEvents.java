@@ -0,0 +1,66 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.Date;
+
+/**
+ * Populates SolrObjects like the NoSQL appender does for a log event with
+ * location, marker and a ThreadContext map of the given size.
+ */
+final class BenchmarkEvents {
+
+    // field values shared by all events, as the appender would pass them
+    private static final String[] MARKERS = { "AUDIT", "ORDER" };
+    private static final Date DATE = new Date();
+    private static final Long MILLIS = Long.valueOf(DATE.getTime());
+    private static final Integer LINE = Integer.valueOf(120);
+
+    private BenchmarkEvents() {
+    }
+
+    /**
+     * create the object of a log event.
+     *
+     * @param connection
+     *            connection the object and its nested objects are created by
+     * @param contextEntries
+     *            number of entries of the ThreadContext map
+     */
+    static SolrObject create(final SolrConnection connection,
+            int contextEntries) {
+        SolrObject solrObject = connection.createObject();
+        solrObject.set("level", "INFO");
+        solrObject.set("loggerName", "org.example.service.OrderService");
+        solrObject.set("message", "Processed order");
+        solrObject.set("threadName", "main");
+        solrObject.set("millis", MILLIS);
+        solrObject.set("date", DATE);
+
+        SolrObject source = connection.createObject();
+        source.set("className", "org.example.service.OrderService");
+        source.set("methodName", "process");
+        source.set("fileName", "OrderService.java");
+        source.set("lineNumber", LINE);
+        solrObject.set("source", source);
+        solrObject.set("marker", MARKERS);
+
+        if (contextEntries > 0) {
+            SolrObject contextMap = connection.createObject();
+            for (int i = 0; i < contextEntries; i++) {
+                contextMap.set(KEYS[i % KEYS.length],
+                        VALUES[i % VALUES.length]);
+            }
+            solrObject.set("contextMap", contextMap);
+        }
+        return solrObject;
+    }
+
+    // entries of the ThreadContext map
+    private static final String[] KEYS = new String[64];
+    private static final String[] VALUES = new String[64];
+    static {
+        for (int i = 0; i < KEYS.length; i++) {
+            KEYS[i] = "key" + i;
+            VALUES[i] = "value" + i;
+        }
+    }
+}
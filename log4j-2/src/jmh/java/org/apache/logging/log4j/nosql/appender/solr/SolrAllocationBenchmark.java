@@ -0,0 +1,63 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of the bytes allocated per logged event with and without
+ * recycling of SolrObjects (poolSize). every event gets its own connection
+ * like with the NoSQL appender, and is written to a writer which only
+ * recycles the document, so only the allocation of the connection and the
+ * document creation is measured. the bytes per event are the
+ * gc.alloc.rate.norm of the gc profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolrAllocationBenchmark {
+
+    // true to recycle the objects
+    @Param({ "false", "true" })
+    private boolean pooled;
+
+    // settings of the connections, as held by the provider
+    private SolrConnection.Builder connections;
+
+    @Setup
+    public void setUp() {
+        SolrWriter recyclingWriter = new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+                SolrObject.recycle(doc);
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+        this.connections = SolrConnection.newBuilder(recyclingWriter)
+                .withObjectPool(this.pooled ? new SolrObjectPool(16) : null);
+    }
+
+    @Benchmark
+    public void insertObject() {
+        SolrConnection connection = this.connections.build();
+        connection.insertObject(BenchmarkEvents.create(connection, 0));
+        connection.close();
+    }
+}
@@ -0,0 +1,94 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of Logger.log() through the NoSQL appender and an
+ * EmbeddedSolrServer of a copy of the test solr_home. the appender is
+ * configured by log4j2-benchmark.xml.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolrAppenderBenchmark {
+
+    // number of entries of the ThreadContext map
+    @Param({ "0", "10" })
+    private int contextEntries;
+
+    // max number of documents per request. 0 sends every document alone
+    @Param({ "0", "100", "1000" })
+    private String batchSize;
+
+    // amount of time before commit is done. -1 disables commitWithin
+    @Param({ "-1", "1000" })
+    private String commitWithinMs;
+
+    // context of the benchmark configuration
+    private LoggerContext context;
+
+    // logger to log to
+    private Logger logger;
+
+    @Setup
+    public void setUp() throws IOException, URISyntaxException {
+        System.setProperty("benchmark.solrHome",
+                EmbeddedSolrHome.copy(SolrAppenderBenchmark.class));
+        System.setProperty("benchmark.batchSize", this.batchSize);
+        System.setProperty("benchmark.commitWithinMs", this.commitWithinMs);
+
+        this.context = new LoggerContext("SolrAppenderBenchmark", null,
+                SolrAppenderBenchmark.class.getResource("log4j2-benchmark.xml")
+                        .toURI());
+        this.context.start();
+        this.logger = this.context.getLogger("SolrBenchmark");
+    }
+
+    @TearDown
+    public void tearDown() {
+        // flushes the pending batches
+        this.context.stop();
+    }
+
+    /**
+     * ThreadContext of a benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        @Setup
+        public void setUp(final SolrAppenderBenchmark benchmark) {
+            ThreadContext.clearMap();
+            for (int i = 0; i < benchmark.contextEntries; i++) {
+                ThreadContext.put("key" + i, "value" + i);
+            }
+        }
+    }
+
+    @Benchmark
+    public void log(final ThreadState thread) {
+        this.logger.log(Level.INFO, "Processed order {}", "4711");
+    }
+}
@@ -0,0 +1,91 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.core.CoreContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of SolrConnection.insertObject() writing to an
+ * EmbeddedSolrServer of a copy of the test solr_home. the writer is shared by
+ * all benchmark threads like the writer of a provider is shared by all
+ * connections. like with the NoSQL appender, every event gets its own
+ * connection, which is closed after the write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolrConnectionBenchmark {
+
+    // number of entries of the ThreadContext map
+    @Param({ "0", "10" })
+    private int contextEntries;
+
+    // max number of documents per request. 0 sends every document alone
+    @Param({ "0", "100", "1000" })
+    private int batchSize;
+
+    // amount of time before commit is done. -1 disables commitWithin
+    @Param({ "-1", "1000" })
+    private int commitWithinMs;
+
+    // solr server the documents are indexed by
+    private SolrServer solrServer;
+
+    // writer shared by all threads
+    private SolrWriter solrWriter;
+
+    // settings of the connections, as held by the provider
+    private SolrConnection.Builder connections;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        CoreContainer coreContainer = new CoreContainer(
+                EmbeddedSolrHome.copy(SolrConnectionBenchmark.class));
+        coreContainer.load();
+        this.solrServer = new EmbeddedSolrServer(coreContainer, "collection1");
+        if (this.batchSize > 0) {
+            this.solrWriter = new SolrBatchWriter(this.solrServer,
+                    this.commitWithinMs, this.batchSize, 1000);
+        } else {
+            this.solrWriter = new SolrDirectWriter(this.solrServer,
+                    this.commitWithinMs);
+        }
+        this.connections = SolrConnection.newBuilder(this.solrWriter);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SolrServerException, IOException {
+        this.solrWriter.flush();
+        this.solrServer.deleteByQuery("*:*");
+        this.solrServer.commit();
+        this.solrServer.shutdown();
+    }
+
+    @Benchmark
+    public void insertObject() {
+        SolrConnection connection = this.connections.build();
+        connection.insertObject(BenchmarkEvents.create(connection,
+                this.contextEntries));
+        connection.close();
+    }
+}
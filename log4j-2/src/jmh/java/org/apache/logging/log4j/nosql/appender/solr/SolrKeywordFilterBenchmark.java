@@ -0,0 +1,93 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of finding one of several keywords in a message, in
+ * nanoseconds per message. SolrKeywordMatcher scans the message once, the
+ * contains chain and the regex alternation are what a chain of log4j
+ * filters does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolrKeywordFilterBenchmark {
+
+    // kind of the scanned line
+    @Param({ "select", "other" })
+    private String line;
+
+    // number of keywords
+    @Param({ "2", "16" })
+    private int keywordCount;
+
+    // lines as solr 4.7 logs them
+    private static final String SELECT = "[collection1] webapp=/solr "
+            + "path=/select params={q=level:ERROR+AND+loggerName:org.example"
+            + "&fq=millis:[1400000000000+TO+*]&rows=10&wt=javabin&version=2} "
+            + "hits=1542 status=0 QTime=12";
+    private static final String OTHER = "Processed order 42 of customer 7 "
+            + "in warehouse 3, shipping to the billing address on file";
+
+    // the keywords compiled three ways
+    private String[] keywords;
+    private SolrKeywordMatcher matcher;
+    private Pattern pattern;
+
+    // message of the benchmark
+    private String message;
+
+    @Setup
+    public void setUp() {
+        this.keywords = new String[this.keywordCount];
+        this.keywords[0] = "path=/update";
+        this.keywords[this.keywords.length - 1] = "path=/select";
+        for (int i = 1; i < this.keywords.length - 1; i++) {
+            this.keywords[i] = "path=/handler" + i;
+        }
+        this.matcher = new SolrKeywordMatcher(this.keywords, false);
+        StringBuilder regex = new StringBuilder();
+        for (String keyword : this.keywords) {
+            regex.append(regex.length() == 0 ? "" : "|").append(
+                    Pattern.quote(keyword));
+        }
+        this.pattern = Pattern.compile(regex.toString());
+        this.message = "select".equals(this.line) ? SELECT : OTHER;
+    }
+
+    @Benchmark
+    public boolean matcher() {
+        return this.matcher.matches(this.message);
+    }
+
+    @Benchmark
+    public boolean containsChain() {
+        for (String keyword : this.keywords) {
+            if (this.message.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean regex() {
+        return this.pattern.matcher(this.message).find();
+    }
+}
@@ -0,0 +1,151 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.core.CoreContainer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark comparing child documents with flattened nested objects.
+ * log events with location, ThreadContext map and a thrown with cause are
+ * indexed by an EmbeddedSolrServer of a copy of the test solr_home. the
+ * documents counter divided by the insertObject throughput is the number of
+ * documents per log event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolrNestingBenchmark {
+
+    // number of entries of the ThreadContext map
+    @Param({ "0", "10" })
+    private int contextEntries;
+
+    // write nested objects as prefixed fields instead of child documents
+    @Param({ "false", "true" })
+    private boolean flatten;
+
+    // solr server the documents are indexed by
+    private SolrServer solrServer;
+
+    // writer shared by all threads
+    private SolrWriter solrWriter;
+
+    // stack trace of the thrown of every log event
+    private static final StackTraceElement[] STACK_TRACE =
+            new IllegalStateException().getStackTrace();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        CoreContainer coreContainer = new CoreContainer(
+                EmbeddedSolrHome.copy(SolrNestingBenchmark.class));
+        coreContainer.load();
+        this.solrServer = new EmbeddedSolrServer(coreContainer, "collection1");
+        this.solrWriter = new SolrBatchWriter(this.solrServer, 1000, 500, 1000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SolrServerException, IOException {
+        this.solrWriter.flush();
+        this.solrServer.deleteByQuery("*:*");
+        this.solrServer.commit();
+        this.solrServer.shutdown();
+    }
+
+    /**
+     * connection of a benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadConnection {
+        private SolrConnection connection;
+
+        @Setup(Level.Trial)
+        public void setUp(final SolrNestingBenchmark benchmark) {
+            this.connection = SolrConnection.newBuilder(
+                    benchmark.solrWriter).withFlatten(benchmark.flatten)
+                    .build();
+        }
+    }
+
+    /**
+     * documents written by a benchmark thread.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Documents {
+        public long documents;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.documents = 0;
+        }
+    }
+
+    @Benchmark
+    public void insertObject(final ThreadConnection thread,
+            final Documents documents) {
+        SolrObject solrObject = BenchmarkEvents.create(thread.connection,
+                this.contextEntries);
+        solrObject.set("thrown", thrown(thread.connection, 2));
+        thread.connection.insertObject(solrObject);
+        documents.documents += count(solrObject.unwrap());
+    }
+
+    // helper
+    /**
+     * create the object of a thrown with the given number of causes.
+     */
+    private static SolrObject thrown(final SolrConnection connection,
+            int causes) {
+        SolrObject thrown = connection.createObject();
+        thrown.set("type", IllegalStateException.class.getName());
+        thrown.set("message", "Order rejected");
+        SolrObject[] frames = new SolrObject[Math.min(10, STACK_TRACE.length)];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = connection.createObject();
+            frames[i].set("className", STACK_TRACE[i].getClassName());
+            frames[i].set("methodName", STACK_TRACE[i].getMethodName());
+            frames[i].set("fileName", STACK_TRACE[i].getFileName());
+            frames[i].set("lineNumber", STACK_TRACE[i].getLineNumber());
+        }
+        thrown.set("stackTrace", frames);
+        if (causes > 0) {
+            thrown.set("cause", thrown(connection, causes - 1));
+        }
+        return thrown;
+    }
+
+    /**
+     * @return number of documents including all child documents
+     */
+    private static int count(final SolrInputDocument doc) {
+        int count = 1;
+        if (doc.hasChildDocuments()) {
+            for (SolrInputDocument child : doc.getChildDocuments()) {
+                count += count(child);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,65 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmark of populating the SolrObject of a log event, with and without
+ * recycling of the objects (poolSize). nothing is sent to solr.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolrObjectBenchmark {
+
+    // number of entries of the ThreadContext map
+    @Param({ "0", "10", "50" })
+    private int contextEntries;
+
+    // true to recycle the objects
+    @Param({ "false", "true" })
+    private boolean pooled;
+
+    // connection creating the objects
+    private SolrConnection connection;
+
+    @Setup
+    public void setUp() {
+        SolrWriter nullWriter = new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+        this.connection = SolrConnection.newBuilder(nullWriter)
+                .withObjectPool(this.pooled ? new SolrObjectPool(16) : null)
+                .build();
+    }
+
+    @Benchmark
+    public void populate(final Blackhole blackhole) {
+        SolrInputDocument doc = BenchmarkEvents.create(this.connection,
+                this.contextEntries).unwrap();
+        blackhole.consume(doc);
+        SolrObject.recycle(doc);
+    }
+}
@@ -0,0 +1,79 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmark of scanning solr request log lines with
+ * SolrRequestLogParser, in nanoseconds per line. run it with -prof gc to
+ * see that the scanner does not allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolrRequestLogBenchmark {
+
+    // kind of the scanned line
+    @Param({ "select", "update", "other" })
+    private String line;
+
+    // lines as solr 4.7 logs them
+    private static final String SELECT = "[collection1] webapp=/solr "
+            + "path=/select params={q=level:ERROR+AND+loggerName:org.example"
+            + "&fq=millis:[1400000000000+TO+*]&rows=10&wt=javabin&version=2} "
+            + "hits=1542 status=0 QTime=12";
+    private static final String UPDATE = "[collection1] webapp=/solr "
+            + "path=/update params={wt=javabin&version=2} "
+            + "{add=[0l1m2n3o4p5q6r7s8t9u (1468300120003526656), "
+            + "0l1m2n3o4p5q6r7s8t9v (1468300120004575232)]} 0 5";
+    private static final String OTHER = "Processed order 42 of customer 7";
+
+    // parser of the benchmark thread
+    private SolrRequestLogParser parser;
+
+    // message of the benchmark
+    private String message;
+
+    @Setup
+    public void setUp() {
+        this.parser = new SolrRequestLogParser();
+        if ("select".equals(this.line)) {
+            this.message = SELECT;
+        } else if ("update".equals(this.line)) {
+            this.message = UPDATE;
+        } else {
+            this.message = OTHER;
+        }
+    }
+
+    @Benchmark
+    public int parse() {
+        return this.parser.parse(this.message) ? this.parser.getQTime() : -1;
+    }
+
+    @Benchmark
+    public void parseAndExtract(final Blackhole blackhole) {
+        if (this.parser.parse(this.message)) {
+            blackhole.consume(this.parser.getQTime());
+            blackhole.consume(this.parser.getHits());
+            blackhole.consume(this.parser.getPath());
+            blackhole.consume(this.parser.getWebapp());
+            blackhole.consume(this.parser.getParams());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.solr.client.solrj.request.JavaBinUpdateRequestCodec;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of the request encodings configurable by the requestWriter
+ * attribute. a batch of log event documents is encoded like the xml or the
+ * javabin request writer does, plain or gzip compressed. the score is in
+ * documents, the bytes counter in bytes sent on the wire, so bytes / score is
+ * the size of a document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolrWireFormatBenchmark {
+
+    // number of documents per request
+    private static final int BATCH_SIZE = 500;
+
+    // "xml" or "javabin"
+    @Param({ "xml", "javabin" })
+    private String requestWriter;
+
+    // true to gzip the request
+    @Param({ "false", "true" })
+    private boolean gzip;
+
+    // request of a batch
+    private UpdateRequest request;
+
+    @Setup
+    public void setUp() {
+        this.request = new UpdateRequest();
+        this.request.add(createDocs(BATCH_SIZE));
+        this.request.setCommitWithin(1000);
+    }
+
+    /**
+     * bytes encoded by a benchmark thread.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class WireBytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.bytes = 0;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void encode(final WireBytes wireBytes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (this.gzip) {
+            GZIPOutputStream out = new GZIPOutputStream(bytes);
+            write(out);
+            out.finish();
+        } else {
+            write(bytes);
+        }
+        wireBytes.bytes += bytes.size();
+    }
+
+    /**
+     * encode the request like the request writer does.
+     */
+    private void write(final OutputStream out) throws IOException {
+        if ("javabin".equals(this.requestWriter)) {
+            new JavaBinUpdateRequestCodec().marshal(this.request, out);
+        } else {
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            this.request.writeXML(writer);
+            writer.flush();
+        }
+    }
+
+    /**
+     * create documents looking like the log events of the NoSql appender.
+     */
+    private static List<SolrInputDocument> createDocs(int count) {
+        List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(count);
+        long millis = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.addField("level", i % 10 == 0 ? "WARN" : "INFO");
+            doc.addField("loggerName", "org.example.service.OrderService");
+            doc.addField("message", "Processed order " + (100000 + i)
+                    + " for customer " + (i % 97) + " in " + (i % 50) + " ms");
+            doc.addField("threadName", "http-nio-8080-exec-" + (i % 16));
+            doc.addField("millis", millis + i);
+            doc.addField("date", new Date(millis + i));
+            doc.addField("className", "org.example.service.OrderService");
+            doc.addField("methodName", "process");
+            doc.addField("fileName", "OrderService.java");
+            doc.addField("lineNumber", 120 + (i % 5));
+            docs.add(doc);
+        }
+        return docs;
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * {@link SolrWriter} which decouples the logging threads from solr. Documents
+ * are put into a bounded ring buffer which is drained by background dispatcher
+ * threads into a {@link SolrBatchWriter}. The batch is flushed whenever the
+ * ring buffer runs empty, so a single document is not kept back waiting for a
+ * full batch.
+ * <p>
+ * What happens if the ring buffer is full is decided by the
+ * {@link OverflowPolicy}. Dropped documents are counted.
+ */
+public final class SolrAsyncWriter implements SolrWriter {
+    // status logger
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // field holding the level of the log event
+    private static final String LEVEL_FIELD = "level";
+
+    /**
+     * what to do with a document if the ring buffer is full.
+     */
+    public static enum OverflowPolicy {
+        /** wait until there is free space in the ring buffer. */
+        BLOCK,
+        /** drop the document which should be added. */
+        DROP_NEWEST,
+        /** drop the oldest document of the ring buffer. */
+        DROP_OLDEST,
+        /**
+         * drop the document if its level is less specific than the overflow
+         * level, otherwise wait.
+         */
+        DROP_BELOW_LEVEL,
+        /**
+         * append the document to the spill journal, it is replayed later.
+         * wait if the journal is full.
+         */
+        SPILL
+    }
+
+    // writer the dispatcher threads drain the ring buffer into
+    private final SolrBatchWriter batchWriter;
+
+    // ring buffer
+    private final SolrInputDocument[] ringBuffer;
+    private int head;
+    private int count;
+
+    // documents taken from the ring buffer but not yet written
+    private int inFlight;
+
+    // guards the ring buffer
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private final Condition notFull = this.lock.newCondition();
+    private final Condition drained = this.lock.newCondition();
+
+    // number of dispatcher threads
+    private final int dispatcherThreads;
+    // dispatcher threads are started on demand and stopped by stop()
+    private final List<Thread> dispatchers = new ArrayList<Thread>();
+    private boolean running;
+
+    // overflow handling
+    private final OverflowPolicy overflowPolicy;
+    private final Level overflowLevel;
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    // journal used by OverflowPolicy.SPILL
+    private final SolrSpillJournal spillJournal;
+
+    /**
+     * default constructor.
+     * 
+     * @param batchWriter
+     *            writer the dispatcher threads drain the ring buffer into
+     * @param ringBufferSize
+     *            max number of documents waiting in the ring buffer
+     * @param dispatcherThreads
+     *            number of background threads draining the ring buffer
+     * @param overflowPolicy
+     *            what to do if the ring buffer is full
+     * @param overflowLevel
+     *            documents with a level less specific than this level are
+     *            dropped by {@link OverflowPolicy#DROP_BELOW_LEVEL}
+     */
+    public SolrAsyncWriter(final SolrBatchWriter batchWriter,
+            int ringBufferSize, int dispatcherThreads,
+            final OverflowPolicy overflowPolicy, final Level overflowLevel) {
+        this(batchWriter, ringBufferSize, dispatcherThreads, overflowPolicy,
+                overflowLevel, null);
+    }
+
+    /**
+     * constructor for a writer spilling to a journal.
+     * 
+     * @param batchWriter
+     *            writer the dispatcher threads drain the ring buffer into
+     * @param ringBufferSize
+     *            max number of documents waiting in the ring buffer
+     * @param dispatcherThreads
+     *            number of background threads draining the ring buffer
+     * @param overflowPolicy
+     *            what to do if the ring buffer is full
+     * @param overflowLevel
+     *            documents with a level less specific than this level are
+     *            dropped by {@link OverflowPolicy#DROP_BELOW_LEVEL}
+     * @param spillJournal
+     *            journal the documents are appended to by
+     *            {@link OverflowPolicy#SPILL}. may be null for other policies
+     */
+    public SolrAsyncWriter(final SolrBatchWriter batchWriter,
+            int ringBufferSize, int dispatcherThreads,
+            final OverflowPolicy overflowPolicy, final Level overflowLevel,
+            final SolrSpillJournal spillJournal) {
+        this.batchWriter = batchWriter;
+        this.ringBuffer = new SolrInputDocument[ringBufferSize];
+        this.dispatcherThreads = dispatcherThreads;
+        this.overflowPolicy = overflowPolicy;
+        this.overflowLevel = overflowLevel;
+        this.spillJournal = spillJournal;
+    }
+
+    /**
+     * put a document into the ring buffer.
+     */
+    @Override
+    public void write(final SolrInputDocument doc) {
+        this.lock.lock();
+        try {
+            if (!this.running) {
+                startDispatchers();
+            }
+
+            while (this.count == this.ringBuffer.length) {
+                switch (this.overflowPolicy) {
+                case DROP_NEWEST:
+                    dropped(doc);
+                    return;
+                case DROP_OLDEST:
+                    dropped(this.ringBuffer[this.head]);
+                    this.ringBuffer[this.head] = null;
+                    this.head = (this.head + 1) % this.ringBuffer.length;
+                    this.count--;
+                    break;
+                case DROP_BELOW_LEVEL:
+                    if (isBelowOverflowLevel(doc)) {
+                        dropped(doc);
+                        return;
+                    }
+                    this.notFull.awaitUninterruptibly();
+                    break;
+                case SPILL:
+                    if (this.spillJournal != null
+                            && this.spillJournal.append(doc)) {
+                        SolrObject.recycle(doc);
+                        return;
+                    }
+                    this.notFull.awaitUninterruptibly();
+                    break;
+                default:
+                    this.notFull.awaitUninterruptibly();
+                    break;
+                }
+            }
+
+            this.ringBuffer[(this.head + this.count) % this.ringBuffer.length] = doc;
+            this.count++;
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * wait until the dispatcher threads drained the ring buffer and send the
+     * batch. the dispatcher threads keep running.
+     */
+    @Override
+    public void flush() {
+        this.lock.lock();
+        try {
+            while (this.count > 0 || this.inFlight > 0) {
+                if (!this.running) {
+                    // nobody left to drain the ring buffer
+                    break;
+                }
+                this.drained.awaitUninterruptibly();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        this.batchWriter.flush();
+    }
+
+    /**
+     * wait until all documents of the ring buffer are sent and stop the
+     * dispatcher threads. they are started again by the next
+     * {@link #write(SolrInputDocument)}.
+     */
+    public void stop() {
+        List<Thread> stopped;
+        this.lock.lock();
+        try {
+            this.running = false;
+            this.notEmpty.signalAll();
+            stopped = new ArrayList<Thread>(this.dispatchers);
+            this.dispatchers.clear();
+        } finally {
+            this.lock.unlock();
+        }
+
+        // dispatchers drain the ring buffer before they terminate
+        for (Thread dispatcher : stopped) {
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        this.batchWriter.flush();
+    }
+
+    /**
+     * @return number of documents dropped because the ring buffer was full
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    /**
+     * @return number of documents waiting in the ring buffer
+     */
+    public int getQueueSize() {
+        this.lock.lock();
+        try {
+            return this.count;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * block until the ring buffer is empty and all taken documents are
+     * written to the batch writer.
+     * 
+     * @param timeoutMs
+     *            max amount of time to wait
+     * @return true if the ring buffer was drained within the timeout
+     */
+    public boolean awaitDrained(long timeoutMs) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.lock.lock();
+        try {
+            while (this.count > 0 || this.inFlight > 0) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = this.drained.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // helper
+    /**
+     * start the dispatcher threads. lock must be held.
+     */
+    private void startDispatchers() {
+        this.running = true;
+        for (int i = 0; i < this.dispatcherThreads; i++) {
+            Thread dispatcher = new Thread(new Dispatcher(),
+                    "SolrAsyncWriter-dispatcher-" + i);
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+            this.dispatchers.add(dispatcher);
+        }
+    }
+
+    /**
+     * count a dropped document. lock must be held.
+     */
+    private void dropped(final SolrInputDocument doc) {
+        SolrObject.recycle(doc);
+        if (this.droppedCount.getAndIncrement() == 0) {
+            LOGGER.warn("Solr ring buffer is full, dropping log events due to overflow policy "
+                    + this.overflowPolicy);
+        }
+    }
+
+    /**
+     * check if the level of the document is less specific than the overflow
+     * level. documents without level are never dropped.
+     */
+    private boolean isBelowOverflowLevel(final SolrInputDocument doc) {
+        Object value = doc.getFieldValue(LEVEL_FIELD);
+        Level level;
+        if (value instanceof Level) {
+            level = (Level) value;
+        } else if (value != null) {
+            level = Level.toLevel(value.toString(), null);
+        } else {
+            level = null;
+        }
+        return level != null
+                && level.intLevel() > this.overflowLevel.intLevel();
+    }
+
+    /**
+     * take the next documents from the ring buffer. blocks until there is a
+     * document or the writer is stopped.
+     * 
+     * @return documents or null if the dispatcher should terminate
+     */
+    private List<SolrInputDocument> take() {
+        this.lock.lock();
+        try {
+            while (this.count == 0) {
+                if (!this.running) {
+                    return null;
+                }
+                this.notEmpty.awaitUninterruptibly();
+            }
+
+            List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(
+                    this.count);
+            while (this.count > 0) {
+                docs.add(this.ringBuffer[this.head]);
+                this.ringBuffer[this.head] = null;
+                this.head = (this.head + 1) % this.ringBuffer.length;
+                this.count--;
+            }
+            this.inFlight += docs.size();
+            this.notFull.signalAll();
+            return docs;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if there is no document in the ring buffer
+     */
+    private boolean isEmpty() {
+        this.lock.lock();
+        try {
+            return this.count == 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * mark taken documents as written.
+     */
+    private void written(int size) {
+        this.lock.lock();
+        try {
+            this.inFlight -= size;
+            if (this.count == 0 && this.inFlight == 0) {
+                this.drained.signalAll();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * drains the ring buffer into the batch writer.
+     */
+    private final class Dispatcher implements Runnable {
+        @Override
+        public void run() {
+            List<SolrInputDocument> docs;
+            while ((docs = take()) != null) {
+                try {
+                    for (SolrInputDocument doc : docs) {
+                        // a failed batch is dropped by the batch writer, the
+                        // following documents start the next one
+                        try {
+                            batchWriter.write(doc);
+                        } catch (RuntimeException e) {
+                            // there is no caller to report to
+                            LOGGER.error(e.getMessage(), e);
+                        }
+                    }
+                    if (isEmpty()) {
+                        // nothing more to come right now ... send the batch
+                        batchWriter.flush();
+                    }
+                } catch (RuntimeException e) {
+                    // the dispatcher must survive, the logging threads wait
+                    // for it
+                    LOGGER.error(e.getMessage(), e);
+                } finally {
+                    written(docs.size());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.UpdateParams;
+
+/**
+ * Collects solr documents and sends them with a single bulk request. A batch
+ * is sent as soon as it holds batchSize documents, when flushIntervalMs
+ * elapsed since the first document of the batch was added or when
+ * {@link #flush()} is called explicitly (e.g. on appender stop).
+ * <p>
+ * A batch is taken out under the lock of the writer and sent outside of it,
+ * so logging threads keep adding documents while a request is running. Time
+ * based flushes are sent by a pool thread, the shared timer only schedules
+ * them. A writer has at most one time based flush in flight.
+ */
+public final class SolrBatchWriter implements SolrWriter {
+    // status logger
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // timer shared by all batch writers. its thread is a daemon, so a
+    // pending flush never keeps the jvm alive
+    private static final ScheduledExecutorService TIMER = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SolrBatchWriter-flush");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // threads sending the time based flushes, so a slow solr does not hold
+    // up the timer of the other writers
+    private static final ExecutorService SENDER = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SolrBatchWriter-send");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // solr server instance to log to
+    private final SolrServer solrServer;
+
+    // amount of time before commit is done
+    private final int commitWithinMs;
+
+    // false to add the documents without deleting older documents with the
+    // same unique key
+    private final boolean overwrite;
+
+    // max number of documents per batch
+    private final int batchSize;
+
+    // max amount of time a document waits in the batch
+    private final long flushIntervalMs;
+
+    // documents of the current batch. guarded by this
+    private List<SolrInputDocument> batch;
+
+    // scheduled time based flush of the current batch. guarded by this
+    private ScheduledFuture<?> scheduledFlush;
+
+    // true while a time based flush is sending. guarded by this
+    private boolean timedSending;
+
+    // number of batches being sent. guarded by this
+    private int sending;
+
+    // task executed by the timer
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            SENDER.execute(timedFlushTask);
+        }
+    };
+
+    // time based flush executed by a sender thread
+    private final Runnable timedFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            timedFlush();
+        }
+    };
+
+    /**
+     * default constructor.
+     *
+     * @param solrServer
+     *            solr server instance to log to
+     * @param commitWithinMs
+     *            amount of time before commit is done. a negative value
+     *            disables commitWithin
+     * @param batchSize
+     *            max number of documents per batch
+     * @param flushIntervalMs
+     *            max amount of time a document waits in the batch. a value
+     *            &lt;= 0 disables the time based flush
+     */
+    public SolrBatchWriter(final SolrServer solrServer, int commitWithinMs,
+            int batchSize, long flushIntervalMs) {
+        this(solrServer, commitWithinMs, batchSize, flushIntervalMs, true);
+    }
+
+    /**
+     * constructor for a writer which may skip the unique key check.
+     *
+     * @param solrServer
+     *            solr server instance to log to
+     * @param commitWithinMs
+     *            amount of time before commit is done. a negative value
+     *            disables commitWithin
+     * @param batchSize
+     *            max number of documents per batch
+     * @param flushIntervalMs
+     *            max amount of time a document waits in the batch. a value
+     *            &lt;= 0 disables the time based flush
+     * @param overwrite
+     *            false to add the documents without deleting older documents
+     *            with the same unique key
+     */
+    public SolrBatchWriter(final SolrServer solrServer, int commitWithinMs,
+            int batchSize, long flushIntervalMs, boolean overwrite) {
+        this.solrServer = solrServer;
+        this.commitWithinMs = commitWithinMs;
+        this.overwrite = overwrite;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.batch = new ArrayList<SolrInputDocument>(batchSize);
+    }
+
+    /**
+     * add a document to the current batch. the batch is sent if it is full.
+     *
+     * @param doc
+     *            document to add
+     * @throws AppenderLoggingException
+     *             if the batch was sent and solr failed to index it
+     */
+    @Override
+    public void write(final SolrInputDocument doc) {
+        List<SolrInputDocument> docs = null;
+        synchronized (this) {
+            this.batch.add(doc);
+
+            if (this.batch.size() >= this.batchSize) {
+                docs = takeBatch();
+            } else if (this.batch.size() == 1) {
+                // first document of a new batch ... start the clock
+                scheduleFlush();
+            }
+        }
+        if (docs != null) {
+            send(docs);
+        }
+    }
+
+    /**
+     * send all documents of the current batch and wait for the batches which
+     * are still being sent.
+     *
+     * @throws AppenderLoggingException
+     *             if solr failed to index the batch
+     */
+    @Override
+    public void flush() {
+        List<SolrInputDocument> docs;
+        synchronized (this) {
+            docs = takeBatch();
+        }
+        if (docs != null) {
+            send(docs);
+        }
+        synchronized (this) {
+            while (this.sending > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of documents waiting in the current batch
+     */
+    public synchronized int size() {
+        return this.batch.size();
+    }
+
+    // helper
+    /**
+     * take the documents of the current batch out for sending. the caller
+     * holds the lock and must call {@link #send(List)} afterwards.
+     *
+     * @return documents of the batch or null if it is empty
+     */
+    private List<SolrInputDocument> takeBatch() {
+        if (this.scheduledFlush != null) {
+            this.scheduledFlush.cancel(false);
+            this.scheduledFlush = null;
+        }
+        if (this.batch.isEmpty()) {
+            return null;
+        }
+
+        // the batch is dropped even if it can not be sent
+        List<SolrInputDocument> docs = this.batch;
+        this.batch = new ArrayList<SolrInputDocument>(this.batchSize);
+        this.sending++;
+        return docs;
+    }
+
+    /**
+     * start the clock of the current batch. the caller holds the lock. while
+     * a time based flush is sending, the next one is scheduled when it is
+     * done.
+     */
+    private void scheduleFlush() {
+        if (this.flushIntervalMs > 0 && this.scheduledFlush == null
+                && !this.timedSending) {
+            this.scheduledFlush = TIMER.schedule(this.flushTask,
+                    this.flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * send the current batch because its time is over.
+     */
+    private void timedFlush() {
+        List<SolrInputDocument> docs;
+        synchronized (this) {
+            docs = takeBatch();
+            if (docs == null) {
+                return;
+            }
+            this.timedSending = true;
+        }
+        try {
+            send(docs);
+        } catch (AppenderLoggingException e) {
+            // there is no caller to report to
+            LOGGER.error(e.getMessage(), e);
+        } finally {
+            synchronized (this) {
+                this.timedSending = false;
+                if (!this.batch.isEmpty()) {
+                    scheduleFlush();
+                }
+            }
+        }
+    }
+
+    /**
+     * send a list of documents with a single request.
+     */
+    private void send(final List<SolrInputDocument> docs) {
+        try {
+            UpdateResponse response;
+            // if commitWithinMs was specified ... use it
+            if (!this.overwrite) {
+                UpdateRequest request = new UpdateRequest();
+                request.add(docs);
+                request.setCommitWithin(commitWithinMs);
+                request.setParam(UpdateParams.OVERWRITE, "false");
+                response = request.process(this.solrServer);
+            } else if (commitWithinMs < 0) {
+                response = this.solrServer.add(docs);
+            } else {
+                response = this.solrServer.add(docs, commitWithinMs);
+            }
+
+            // check if solr response shows error. a streaming server
+            // answers without header, its errors are reported separately
+            if (response.getResponseHeader() != null
+                    && response.getStatus() != 0) {
+                throw new AppenderLoggingException("Failed to write batch of "
+                        + docs.size() + " log events to Solr. Request Status is: "
+                        + response.getStatus());
+            }
+        } catch (SolrServerException e) {
+            throw new AppenderLoggingException("Failed to write batch of "
+                    + docs.size() + " log events to Solr due to error: "
+                    + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new AppenderLoggingException("Failed to write batch of "
+                    + docs.size() + " log events to Solr due to error: "
+                    + e.getMessage(), e);
+        } catch (SolrException e) {
+            // SolrJ reports the http errors of solr this way
+            throw new AppenderLoggingException("Failed to write batch of "
+                    + docs.size() + " log events to Solr due to error: "
+                    + e.getMessage(), e);
+        } finally {
+            for (int i = 0; i < docs.size(); i++) {
+                SolrObject.recycle(docs.get(i));
+            }
+            synchronized (this) {
+                if (--this.sending == 0) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.SolrPing;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * {@link SolrServer} protecting the logging threads from a failing solr. The
+ * outcome of the last requests is recorded. A request counts as failed if it
+ * threw a transient error or took longer than the latency threshold. If the
+ * failure rate reaches the error rate threshold the circuit opens and
+ * requests fail immediately without calling solr. After the open state time
+ * a single request probes solr with /admin/ping (half-open). The circuit
+ * closes if the ping succeeds, otherwise it opens again for twice the time.
+ * <p>
+ * Transient errors of a request are retried with exponential backoff and
+ * jitter while the circuit is closed. A retried update request may index
+ * documents twice if solr received the first attempt.
+ */
+public final class SolrCircuitBreaker extends SolrServer {
+    private static final long serialVersionUID = 1L;
+
+    // status logger
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // number of recorded requests
+    private static final int WINDOW_SIZE = 20;
+
+    // min number of recorded requests before the circuit can open
+    private static final int MIN_REQUESTS = 10;
+
+    // max factor of the open state time and the retry backoff
+    private static final int MAX_BACKOFF_FACTOR = 32;
+
+    /**
+     * states of the circuit.
+     */
+    public static enum State {
+        /** requests are sent to solr. */
+        CLOSED,
+        /** requests fail without calling solr. */
+        OPEN,
+        /** a ping probes if solr is back. */
+        HALF_OPEN
+    }
+
+    // solr server the requests are sent to
+    private final SolrServer solrServer;
+
+    // failure rate in percent opening the circuit
+    private final int errorRateThreshold;
+
+    // requests slower than this count as failed. 0 disables the check
+    private final long latencyThresholdMs;
+
+    // amount of time the circuit stays open before the first probe
+    private final long openStateMs;
+
+    // retries of a transient error
+    private final int maxRetries;
+    private final long retryBackoffMs;
+
+    // outcome of the last requests, true if failed
+    private final boolean[] window = new boolean[WINDOW_SIZE];
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    // current state
+    private State state = State.CLOSED;
+
+    // end of the open state and number of failed probes
+    private long openUntil;
+    private int failedProbes;
+
+    // jitter of the backoff
+    private final Random random = new Random();
+
+    /**
+     * default constructor.
+     * 
+     * @param solrServer
+     *            solr server the requests are sent to
+     * @param errorRateThreshold
+     *            failure rate of the last requests in percent opening the
+     *            circuit
+     * @param latencyThresholdMs
+     *            requests slower than this count as failed. 0 disables the
+     *            latency check
+     * @param openStateMs
+     *            amount of time the circuit stays open before solr is probed
+     * @param maxRetries
+     *            max number of retries of a transient error
+     * @param retryBackoffMs
+     *            wait time before the first retry. doubled for every further
+     *            retry
+     */
+    public SolrCircuitBreaker(final SolrServer solrServer,
+            int errorRateThreshold, long latencyThresholdMs, long openStateMs,
+            int maxRetries, long retryBackoffMs) {
+        this.solrServer = solrServer;
+        this.errorRateThreshold = errorRateThreshold;
+        this.latencyThresholdMs = latencyThresholdMs;
+        this.openStateMs = openStateMs;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMs = retryBackoffMs;
+    }
+
+    /**
+     * send the request to solr if the circuit is closed.
+     * 
+     * @throws SolrServerException
+     *             if the circuit is open or all attempts failed
+     */
+    @Override
+    public NamedList<Object> request(final SolrRequest request)
+            throws SolrServerException, IOException {
+        if (!allowRequest()) {
+            throw new SolrServerException(
+                    "Solr circuit breaker is open, request not sent");
+        }
+
+        for (int attempt = 0;; attempt++) {
+            long start = System.nanoTime();
+            try {
+                NamedList<Object> response = this.solrServer.request(request);
+                record(false, start);
+                return response;
+            } catch (SolrServerException e) {
+                retryOrThrow(attempt, start, e);
+            } catch (IOException e) {
+                retryOrThrow(attempt, start, e);
+            } catch (SolrException e) {
+                if (e.code() >= 400 && e.code() < 500) {
+                    // solr is up but refuses the request
+                    record(false, start);
+                    throw e;
+                }
+                retryOrThrow(attempt, start, e);
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        this.solrServer.shutdown();
+    }
+
+    /**
+     * @return current state of the circuit
+     */
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    // helper
+    /**
+     * check if a request may be sent. the first request after the open state
+     * time probes solr.
+     */
+    private boolean allowRequest() {
+        synchronized (this) {
+            if (this.state == State.CLOSED) {
+                return true;
+            }
+            if (this.state == State.HALF_OPEN
+                    || System.currentTimeMillis() < this.openUntil) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+
+        // probe outside the lock, the other threads fail fast meanwhile
+        boolean healthy;
+        try {
+            healthy = new SolrPing().process(this.solrServer).getStatus() == 0;
+        } catch (Exception e) {
+            LOGGER.debug("Solr ping failed due to error: " + e.getMessage());
+            healthy = false;
+        }
+
+        synchronized (this) {
+            if (healthy) {
+                this.failedProbes = 0;
+                this.windowIndex = 0;
+                this.windowCount = 0;
+                this.windowFailures = 0;
+                transition(State.CLOSED);
+            } else {
+                this.failedProbes++;
+                open();
+            }
+        }
+        return healthy;
+    }
+
+    /**
+     * record the outcome of an attempt. a failure may open the circuit.
+     */
+    private synchronized void record(boolean failed, long startNanos) {
+        if (!failed && this.latencyThresholdMs > 0) {
+            failed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                    - startNanos) > this.latencyThresholdMs;
+        }
+        if (this.state != State.CLOSED) {
+            return;
+        }
+
+        if (this.windowCount == WINDOW_SIZE) {
+            if (this.window[this.windowIndex]) {
+                this.windowFailures--;
+            }
+        } else {
+            this.windowCount++;
+        }
+        this.window[this.windowIndex] = failed;
+        if (failed) {
+            this.windowFailures++;
+        }
+        this.windowIndex = (this.windowIndex + 1) % WINDOW_SIZE;
+
+        if (this.windowCount >= MIN_REQUESTS
+                && this.windowFailures * 100 >= this.errorRateThreshold
+                        * this.windowCount) {
+            open();
+        }
+    }
+
+    /**
+     * open the circuit. every failed probe doubles the open state time.
+     */
+    private void open() {
+        this.openUntil = System.currentTimeMillis()
+                + jitter(backoffFactor(this.failedProbes) * this.openStateMs);
+        transition(State.OPEN);
+    }
+
+    private void transition(final State newState) {
+        if (this.state == newState) {
+            return;
+        }
+        if (newState == State.OPEN) {
+            LOGGER.warn("Solr circuit breaker " + this.state + " -> "
+                    + newState + " (" + this.windowFailures + " of "
+                    + this.windowCount + " requests failed)");
+        } else {
+            LOGGER.info("Solr circuit breaker " + this.state + " -> "
+                    + newState);
+        }
+        this.state = newState;
+    }
+
+    /**
+     * record a failed attempt and wait before the next one.
+     * 
+     * @throws T
+     *             if there is no retry left
+     */
+    private <T extends Exception> void retryOrThrow(int attempt,
+            long startNanos, final T e) throws T {
+        record(true, startNanos);
+        if (attempt >= this.maxRetries || getState() != State.CLOSED) {
+            throw e;
+        }
+
+        long backoff = jitter(backoffFactor(attempt) * this.retryBackoffMs);
+        LOGGER.debug("Retrying Solr request in " + backoff
+                + " ms due to error: " + e.getMessage());
+        try {
+            Thread.sleep(backoff);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**
+     * @return 2^n, at most MAX_BACKOFF_FACTOR
+     */
+    private static long backoffFactor(int n) {
+        return n >= 5 ? MAX_BACKOFF_FACTOR : 1L << n;
+    }
+
+    /**
+     * @return random time between half and the full time
+     */
+    private long jitter(long timeMs) {
+        synchronized (this.random) {
+            return timeMs / 2
+                    + (long) (this.random.nextDouble() * (timeMs / 2 + 1));
+        }
+    }
+}
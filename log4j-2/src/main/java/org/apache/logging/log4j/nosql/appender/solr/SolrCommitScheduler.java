@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * {@link SolrServer} choosing the commitWithin of every update request
+ * between a min and a max visibility latency. The indexing rate and the mean
+ * round trip of the update requests are observed per window. The commitWithin
+ * is doubled if the rate doubled since the last decision or solr answers
+ * twice as slow as usual, so a burst does not force a searcher reopen after
+ * every few documents. It is halved if the rate dropped to half and solr
+ * answers fast again. Without traffic it falls back to the min at once, so
+ * the log events of a quiet application become visible soon.
+ * <p>
+ * Every decision is logged by the status logger. Whether solr does a hard or
+ * a soft commit is configured in solrconfig.xml.
+ */
+public final class SolrCommitScheduler extends SolrServer {
+    private static final long serialVersionUID = 1L;
+
+    // status logger
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // min length of an observation window
+    private static final long MIN_WINDOW_MS = 1000;
+
+    // rate below which the traffic is quiet (docs per second)
+    private static final double MIN_REFERENCE_RATE = 1.0;
+
+    // solr server the requests are sent to
+    private final SolrServer solrServer;
+
+    // bounds of the commitWithin
+    private final int minCommitWithinMs;
+    private final int maxCommitWithinMs;
+
+    // length of an observation window
+    private final long windowNanos;
+
+    // commitWithin sent with the update requests
+    private volatile int commitWithinMs;
+
+    // observations of the current window
+    private final AtomicLong windowDocs = new AtomicLong();
+    private final AtomicLong windowRequests = new AtomicLong();
+    private final AtomicLong windowLatencyNanos = new AtomicLong();
+    private volatile long windowStart;
+
+    // rate of the last decision and usual mean round trip. guarded by this
+    private double referenceRate = MIN_REFERENCE_RATE;
+    private double baselineLatencyMs = -1;
+
+    /**
+     * default constructor.
+     *
+     * @param solrServer
+     *            solr server the requests are sent to
+     * @param minCommitWithinMs
+     *            commitWithin if the traffic is quiet
+     * @param maxCommitWithinMs
+     *            max commitWithin under heavy traffic
+     */
+    public SolrCommitScheduler(final SolrServer solrServer,
+            int minCommitWithinMs, int maxCommitWithinMs) {
+        if (minCommitWithinMs <= 0 || maxCommitWithinMs < minCommitWithinMs) {
+            throw new IllegalArgumentException("Invalid commitWithin range "
+                    + minCommitWithinMs + "-" + maxCommitWithinMs + "ms");
+        }
+        this.solrServer = solrServer;
+        this.minCommitWithinMs = minCommitWithinMs;
+        this.maxCommitWithinMs = maxCommitWithinMs;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(
+                MIN_WINDOW_MS, minCommitWithinMs));
+        this.commitWithinMs = minCommitWithinMs;
+        this.windowStart = System.nanoTime();
+    }
+
+    /**
+     * replace the commitWithin of an update request adding documents.
+     */
+    @Override
+    public NamedList<Object> request(final SolrRequest request)
+            throws SolrServerException, IOException {
+        if (!(request instanceof UpdateRequest)) {
+            return this.solrServer.request(request);
+        }
+        List<SolrInputDocument> docs = ((UpdateRequest) request)
+                .getDocuments();
+        if (docs == null || docs.isEmpty()) {
+            return this.solrServer.request(request);
+        }
+
+        // decide before the request, so the first log event after a quiet
+        // period is not kept back by the commitWithin of a burst
+        long start = System.nanoTime();
+        if (start - this.windowStart >= this.windowNanos) {
+            endWindow(start);
+        }
+        ((UpdateRequest) request).setCommitWithin(this.commitWithinMs);
+        NamedList<Object> response = this.solrServer.request(request);
+
+        this.windowDocs.addAndGet(docs.size());
+        this.windowRequests.incrementAndGet();
+        this.windowLatencyNanos.addAndGet(System.nanoTime() - start);
+        return response;
+    }
+
+    @Override
+    public void shutdown() {
+        this.solrServer.shutdown();
+    }
+
+    /**
+     * @return commitWithin sent with the next update request
+     */
+    public int getCommitWithinMs() {
+        return this.commitWithinMs;
+    }
+
+    /**
+     * decide on the commitWithin after an observation window.
+     *
+     * @param docs
+     *            number of documents sent in the window
+     * @param requests
+     *            number of update requests sent in the window
+     * @param latencyNanos
+     *            sum of the round trips of the requests
+     * @param windowMs
+     *            length of the window
+     * @return new commitWithin
+     */
+    synchronized int adjust(long docs, long requests, long latencyNanos,
+            long windowMs) {
+        double rate = docs * 1000.0 / Math.max(1, windowMs);
+        double latencyMs = requests == 0 ? -1 : latencyNanos / 1e6
+                / requests;
+
+        // usual round trip follows slower answers only slowly
+        if (latencyMs >= 0) {
+            if (this.baselineLatencyMs < 0
+                    || latencyMs < this.baselineLatencyMs) {
+                this.baselineLatencyMs = latencyMs;
+            } else {
+                this.baselineLatencyMs += (latencyMs - this.baselineLatencyMs) / 8;
+            }
+        }
+        boolean slow = latencyMs > 2 * this.baselineLatencyMs
+                && this.baselineLatencyMs >= 0;
+
+        int current = this.commitWithinMs;
+        int next = current;
+        String reason = null;
+        if (rate < MIN_REFERENCE_RATE && !slow) {
+            next = this.minCommitWithinMs;
+            reason = "traffic is quiet";
+        } else if (rate >= 2 * this.referenceRate || slow) {
+            next = (int) Math.min(this.maxCommitWithinMs, 2L * current);
+            reason = slow ? "solr answers slowly (" + format(latencyMs)
+                    + "ms)" : "indexing rate grew";
+        } else if (rate <= this.referenceRate / 2) {
+            next = Math.max(this.minCommitWithinMs, current / 2);
+            reason = "indexing rate dropped";
+        }
+        if (reason != null) {
+            // the rate of a decision is the reference of the next one
+            this.referenceRate = Math.max(MIN_REFERENCE_RATE, rate);
+        }
+        if (next != current) {
+            this.commitWithinMs = next;
+            LOGGER.info("Solr commitWithin changed from " + current + "ms to "
+                    + next + "ms, " + reason + " (" + format(rate)
+                    + " docs/s)");
+        }
+        return next;
+    }
+
+    // helper
+    /**
+     * close the current window. only one of the concurrent requests adjusts
+     * the commitWithin.
+     */
+    private void endWindow(long now) {
+        long docs, requests, latency, start;
+        synchronized (this) {
+            start = this.windowStart;
+            if (now - start < this.windowNanos) {
+                // closed by another request
+                return;
+            }
+            this.windowStart = now;
+            docs = this.windowDocs.getAndSet(0);
+            requests = this.windowRequests.getAndSet(0);
+            latency = this.windowLatencyNanos.getAndSet(0);
+        }
+        adjust(docs, requests, latency,
+                TimeUnit.NANOSECONDS.toMillis(now - start));
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 10) / 10.0);
+    }
+}
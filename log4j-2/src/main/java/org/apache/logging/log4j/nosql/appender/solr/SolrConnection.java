@@ -16,14 +16,9 @@
  */
 package org.apache.logging.log4j.nosql.appender.solr;
 
-import java.io.IOException;
-
-import org.apache.logging.log4j.core.appender.AppenderLoggingException;
 import org.apache.logging.log4j.nosql.appender.NoSQLConnection;
 import org.apache.logging.log4j.nosql.appender.NoSQLObject;
 import org.apache.solr.client.solrj.SolrServer;
-import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.response.UpdateResponse;
 import org.apache.solr.common.SolrInputDocument;
 
 /**
@@ -31,10 +26,29 @@ import org.apache.solr.common.SolrInputDocument;
  */
 public final class SolrConnection implements
         NoSQLConnection<SolrInputDocument, SolrObject> {
-    // solr server instance to log to
-    private final SolrServer solrServer;
-    // amount of time before commit is done
-    private int commitWithinMs;
+    // writer sending the documents to solr
+    private final SolrWriter solrWriter;
+
+    // pool of recyclable objects. null if objects are not recycled
+    private final SolrObjectPool objectPool;
+
+    // field mapping. null if the fields are written as they are
+    private final SolrFieldMapping mapping;
+
+    // replaces throwables by fingerprints. may be null
+    private final SolrThrowableDeduplicator deduplicator;
+
+    // true to write nested objects as prefixed fields
+    private final boolean flatten;
+
+    // static fields of every log event. may be null
+    private final SolrFieldTemplate template;
+
+    // provider shut down when its configuration stops. may be null
+    private final SolrProvider provider;
+
+    // true once the appender closed the connection
+    private boolean closed;
 
     /**
      * default constructor.
@@ -45,13 +59,52 @@ public final class SolrConnection implements
      *            amount of time before commit is done
      */
     public SolrConnection(final SolrServer solrServer, int commitWithinMs) {
-        this.solrServer = solrServer;
-        this.commitWithinMs = commitWithinMs;
+        this(new SolrDirectWriter(solrServer, commitWithinMs));
+    }
+
+    /**
+     * constructor for a connection using the writer of its provider.
+     * 
+     * @param solrWriter
+     *            writer sending the documents to solr. shared by all
+     *            connections of a provider
+     */
+    public SolrConnection(final SolrWriter solrWriter) {
+        this(newBuilder(solrWriter));
+    }
+
+    /**
+     * constructor for a connection configured by a builder.
+     * 
+     * @param builder
+     *            settings of the connection
+     */
+    private SolrConnection(final Builder builder) {
+        this.solrWriter = builder.solrWriter;
+        this.objectPool = builder.objectPool;
+        this.mapping = builder.mapping;
+        this.deduplicator = builder.deduplicator;
+        this.flatten = builder.flatten;
+        this.template = builder.template;
+        this.provider = builder.provider;
+    }
+
+    /**
+     * @param solrWriter
+     *            writer sending the documents to solr. shared by all
+     *            connections of a provider
+     * @return builder of connections using the writer
+     */
+    public static Builder newBuilder(final SolrWriter solrWriter) {
+        return new Builder(solrWriter);
     }
 
     @Override
     public SolrObject createObject() {
-        return new SolrObject();
+        if (this.objectPool != null) {
+            return this.objectPool.borrow();
+        }
+        return new SolrObject(this.mapping, this.flatten);
     }
 
     @Override
@@ -61,39 +114,143 @@ public final class SolrConnection implements
 
     @Override
     public void insertObject(final NoSQLObject<SolrInputDocument> object) {
-        try {
-            UpdateResponse response;
-            // if commitWithinMs was specified ... use it
-            if (commitWithinMs < 0) {
-                response = this.solrServer.add(object.unwrap());
-            } else {
-                response = this.solrServer.add(object.unwrap(), commitWithinMs);
-            }
-
-            // check if solr response shows error
-            if (response.getStatus() != 0) {
-                throw new AppenderLoggingException(
-                        "Failed to write log event to Solr. Request Status is: "
-                                + response.getStatus());
-            }
-        } catch (SolrServerException e) {
-            throw new AppenderLoggingException(
-                    "Failed to write log event to Solr due to error: "
-                            + e.getMessage(), e);
-        } catch (IOException e) {
-            throw new AppenderLoggingException(
-                    "Failed to write log event to Solr due to error: "
-                            + e.getMessage(), e);
+        if (this.mapping != null && object instanceof SolrObject) {
+            // the document of the log event
+            ((SolrObject) object).complete(true);
+            this.mapping.addConstants(object.unwrap());
+        }
+        if (this.template != null) {
+            this.template.merge(object.unwrap());
+        }
+        if (this.deduplicator != null && object instanceof SolrObject) {
+            this.deduplicator.process((SolrObject) object, this.solrWriter);
         }
+        if (object instanceof SolrObject) {
+            ((SolrObject) object).flatten();
+        }
+        this.solrWriter.write(object.unwrap());
     }
 
+    /**
+     * the documents stay in the batches of the writer shared by all
+     * connections, however often the NoSQL appender closes its connections.
+     * when the configuration of the provider stops, it stops the appender,
+     * whose manager closes its connection: this close shuts the provider down
+     * and so sends the documents which are still waiting (batch, queue).
+     */
     @Override
     public synchronized void close() {
-        // there is nothing to do
+        this.closed = true;
+        if (this.provider != null && this.provider.isStopping()) {
+            this.provider.shutdown();
+        }
     }
 
     @Override
     public synchronized boolean isClosed() {
-        return false;
+        return this.closed;
+    }
+
+    /**
+     * builder of connections. the settings of a provider are shared by all
+     * its connections, so a builder may build any number of connections.
+     */
+    public static final class Builder implements
+            org.apache.logging.log4j.core.util.Builder<SolrConnection> {
+        // writer sending the documents to solr
+        private final SolrWriter solrWriter;
+
+        // pool of recyclable objects. null if objects are not recycled
+        private SolrObjectPool objectPool;
+
+        // field mapping. null if the fields are written as they are
+        private SolrFieldMapping mapping;
+
+        // replaces throwables by fingerprints. may be null
+        private SolrThrowableDeduplicator deduplicator;
+
+        // true to write nested objects as prefixed fields
+        private boolean flatten;
+
+        // static fields of every log event. may be null
+        private SolrFieldTemplate template;
+
+        // provider shut down when its configuration stops. may be null
+        private SolrProvider provider;
+
+        private Builder(final SolrWriter solrWriter) {
+            this.solrWriter = solrWriter;
+        }
+
+        /**
+         * @param objectPool
+         *            pool the objects are taken from. null to create a new
+         *            object for every log event. the pool must use the same
+         *            mapping and flatten the same way
+         * @return this builder
+         */
+        public Builder withObjectPool(final SolrObjectPool objectPool) {
+            this.objectPool = objectPool;
+            return this;
+        }
+
+        /**
+         * @param mapping
+         *            field mapping. null to write the fields as they are
+         * @return this builder
+         */
+        public Builder withMapping(final SolrFieldMapping mapping) {
+            this.mapping = mapping;
+            return this;
+        }
+
+        /**
+         * @param deduplicator
+         *            replaces throwables by fingerprints. null to write
+         *            throwables as they are
+         * @return this builder
+         */
+        public Builder withDeduplicator(
+                final SolrThrowableDeduplicator deduplicator) {
+            this.deduplicator = deduplicator;
+            return this;
+        }
+
+        /**
+         * @param flatten
+         *            true to write nested objects as prefixed fields instead
+         *            of child documents
+         * @return this builder
+         */
+        public Builder withFlatten(boolean flatten) {
+            this.flatten = flatten;
+            return this;
+        }
+
+        /**
+         * @param template
+         *            static fields added to every log event. may be null
+         * @return this builder
+         */
+        public Builder withTemplate(final SolrFieldTemplate template) {
+            this.template = template;
+            return this;
+        }
+
+        /**
+         * @param provider
+         *            provider shut down when its configuration stops. null if
+         *            the owner of the writer flushes it
+         * @return this builder
+         */
+        public Builder withProvider(final SolrProvider provider) {
+            this.provider = provider;
+            return this;
+        }
+
+        @Override
+        public SolrConnection build() {
+            return new SolrConnection(this);
+        }
     }
 }
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.UpdateHandler;
+
+/**
+ * {@link SolrServer} handing the documents of an update request directly to
+ * the update handler of an embedded {@link SolrCore}. The documents skip the
+ * request handler and the update request processor chain, every batch is
+ * added with one {@link SolrQueryRequest} and one reused
+ * {@link AddUpdateCommand}. Processors configured in solrconfig.xml (e.g. id
+ * generation) are not applied.
+ * <p>
+ * All other requests (commit, delete, query) are sent to the wrapped
+ * {@link EmbeddedSolrServer}. The server holds a reference of the core until
+ * it is shut down, {@link #shutdown()} closes the core and its core container
+ * which commits the pending documents.
+ */
+public final class SolrCoreServer extends SolrServer {
+    private static final long serialVersionUID = 1L;
+
+    // embedded solr server, used for all other requests
+    private final EmbeddedSolrServer solrServer;
+
+    // core the documents are added to
+    private final transient SolrCore core;
+
+    // false to add the documents without deleting older documents with the
+    // same unique key
+    private final boolean overwrite;
+
+    // requests hold the read lock, shutdown() the write lock
+    private final transient ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    /**
+     * default constructor.
+     *
+     * @param solrServer
+     *            embedded solr server. shut down together with the core
+     * @param coreName
+     *            name of the core the documents are added to
+     * @param overwrite
+     *            false to add the documents without checking the unique key.
+     *            faster, but a document sent twice is indexed twice. the
+     *            overwrite parameter of a request takes precedence
+     * @throws SolrException
+     *             if the core does not exist
+     */
+    public SolrCoreServer(final EmbeddedSolrServer solrServer,
+            final String coreName, boolean overwrite) {
+        this.solrServer = solrServer;
+        this.core = solrServer.getCoreContainer().getCore(coreName);
+        if (this.core == null) {
+            throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+                    "No such core: " + coreName);
+        }
+        this.overwrite = overwrite;
+    }
+
+    @Override
+    public NamedList<Object> request(final SolrRequest request)
+            throws SolrServerException, IOException {
+        if (!isAddOnly(request)) {
+            return this.solrServer.request(request);
+        }
+
+        this.lock.readLock().lock();
+        try {
+            if (this.closed) {
+                throw new SolrServerException("SolrCore "
+                        + this.core.getName() + " is closed");
+            }
+            long start = System.nanoTime();
+            add((UpdateRequest) request);
+            return response(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                    - start));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * wait for the running requests, close the core and shut down the core
+     * container. further documents are rejected.
+     */
+    @Override
+    public void shutdown() {
+        this.lock.writeLock().lock();
+        try {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.core.close();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        this.solrServer.shutdown();
+    }
+
+    /**
+     * @return true if the server is shut down
+     */
+    public boolean isClosed() {
+        this.lock.readLock().lock();
+        try {
+            return this.closed;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // helper
+    /**
+     * check if the request only adds documents.
+     */
+    private static boolean isAddOnly(final SolrRequest request) {
+        if (!(request instanceof UpdateRequest)) {
+            return false;
+        }
+        UpdateRequest update = (UpdateRequest) request;
+        List<SolrInputDocument> docs = update.getDocuments();
+        if (docs == null || docs.isEmpty() || !isEmpty(update.getDeleteById())
+                || !isEmpty(update.getDeleteQuery())) {
+            return false;
+        }
+        SolrParams params = update.getParams();
+        return params == null
+                || (params.get(UpdateParams.COMMIT) == null && params
+                        .get(UpdateParams.OPTIMIZE) == null);
+    }
+
+    private static boolean isEmpty(final List<String> list) {
+        return list == null || list.isEmpty();
+    }
+
+    /**
+     * add the documents of the request to the update handler of the core.
+     */
+    private void add(final UpdateRequest request) throws SolrServerException,
+            IOException {
+        SolrParams params = request.getParams();
+        SolrQueryRequest req = new LocalSolrQueryRequest(this.core,
+                params == null ? new ModifiableSolrParams() : params);
+        try {
+            UpdateHandler updateHandler = this.core.getUpdateHandler();
+            AddUpdateCommand cmd = new AddUpdateCommand(req);
+            boolean overwrite = req.getParams().getBool(
+                    UpdateParams.OVERWRITE, this.overwrite);
+            for (SolrInputDocument doc : request.getDocuments()) {
+                cmd.clear();
+                cmd.solrDoc = doc;
+                cmd.overwrite = overwrite;
+                cmd.commitWithin = request.getCommitWithin();
+                updateHandler.addDoc(cmd);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (SolrException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SolrServerException(e);
+        } finally {
+            req.close();
+        }
+    }
+
+    /**
+     * response of an update request handled by the core.
+     */
+    private static NamedList<Object> response(long qTime) {
+        NamedList<Object> header = new SimpleOrderedMap<Object>();
+        header.add("status", 0);
+        header.add("QTime", (int) qTime);
+        NamedList<Object> response = new NamedList<Object>();
+        response.add("responseHeader", header);
+        return response;
+    }
+}
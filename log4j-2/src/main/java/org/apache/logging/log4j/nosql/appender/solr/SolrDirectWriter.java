@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.UpdateParams;
+
+/**
+ * {@link SolrWriter} which sends every document with its own request.
+ */
+public final class SolrDirectWriter implements SolrWriter {
+    // solr server instance to log to
+    private final SolrServer solrServer;
+    // amount of time before commit is done
+    private final int commitWithinMs;
+    // false to add the documents without deleting older documents with the
+    // same unique key
+    private final boolean overwrite;
+
+    /**
+     * default constructor.
+     * 
+     * @param solrServer
+     *            solr server instance to log to
+     * @param commitWithinMs
+     *            amount of time before commit is done
+     */
+    public SolrDirectWriter(final SolrServer solrServer, int commitWithinMs) {
+        this(solrServer, commitWithinMs, true);
+    }
+
+    /**
+     * constructor for a writer which may skip the unique key check.
+     * 
+     * @param solrServer
+     *            solr server instance to log to
+     * @param commitWithinMs
+     *            amount of time before commit is done
+     * @param overwrite
+     *            false to add the documents without deleting older documents
+     *            with the same unique key
+     */
+    public SolrDirectWriter(final SolrServer solrServer, int commitWithinMs,
+            boolean overwrite) {
+        this.solrServer = solrServer;
+        this.commitWithinMs = commitWithinMs;
+        this.overwrite = overwrite;
+    }
+
+    @Override
+    public void write(final SolrInputDocument doc) {
+        try {
+            UpdateResponse response;
+            // if commitWithinMs was specified ... use it
+            if (!this.overwrite) {
+                UpdateRequest request = new UpdateRequest();
+                request.add(doc);
+                request.setCommitWithin(commitWithinMs);
+                request.setParam(UpdateParams.OVERWRITE, "false");
+                response = request.process(this.solrServer);
+            } else if (commitWithinMs < 0) {
+                response = this.solrServer.add(doc);
+            } else {
+                response = this.solrServer.add(doc, commitWithinMs);
+            }
+
+            // check if solr response shows error. a streaming server
+            // answers without header, its errors are reported separately
+            if (response.getResponseHeader() != null
+                    && response.getStatus() != 0) {
+                throw new AppenderLoggingException(
+                        "Failed to write log event to Solr. Request Status is: "
+                                + response.getStatus());
+            }
+        } catch (SolrServerException e) {
+            throw new AppenderLoggingException(
+                    "Failed to write log event to Solr due to error: "
+                            + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new AppenderLoggingException(
+                    "Failed to write log event to Solr due to error: "
+                            + e.getMessage(), e);
+        } finally {
+            SolrObject.recycle(doc);
+        }
+    }
+
+    @Override
+    public void flush() {
+        // there is nothing to do
+    }
+}
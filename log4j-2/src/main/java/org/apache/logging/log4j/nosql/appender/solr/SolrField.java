@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * A single field of a {@link SolrFieldMapping}. A field either maps a field
+ * of the log event (source) to a solr field (name), drops a field of the log
+ * event, adds a constant field or adds a value of the ThreadContext map of
+ * the log event.
+ */
+@Plugin(name = "Field", category = "Core", printObject = true)
+public final class SolrField {
+    // status logger
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // field of the log event
+    private final String source;
+
+    // solr field
+    private final String name;
+
+    // constant value
+    private final String value;
+
+    // key of the ThreadContext map
+    private final String contextKey;
+
+    // true if the source field is dropped
+    private final boolean drop;
+
+    /**
+     * constructor of the SolrField.
+     */
+    private SolrField(final String source, final String name,
+            final String value, final String contextKey, boolean drop) {
+        this.source = source;
+        this.name = name;
+        this.value = value;
+        this.contextKey = contextKey;
+        this.drop = drop;
+    }
+
+    /**
+     * @return field of the log event. null for constant and ThreadContext
+     *         fields
+     */
+    public String getSource() {
+        return this.source;
+    }
+
+    /**
+     * @return solr field. null if the source field is dropped
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return constant value or null
+     */
+    public String getValue() {
+        return this.value;
+    }
+
+    /**
+     * @return key of the ThreadContext map or null
+     */
+    public String getContextKey() {
+        return this.contextKey;
+    }
+
+    @Override
+    public String toString() {
+        if (this.value != null) {
+            return this.name + "=\"" + this.value + "\"";
+        }
+        if (this.contextKey != null) {
+            return this.name + "=contextMap." + this.contextKey;
+        }
+        return this.source + "->" + (this.name == null ? "drop" : this.name);
+    }
+
+    /**
+     * Factory method for creating a field of a field mapping within the
+     * plugin manager.
+     * 
+     * @param source
+     *            field of the log event. the field is kept under its name if
+     *            neither name nor drop is specified
+     * @param name
+     *            solr field
+     * @param value
+     *            constant value of the solr field
+     * @param contextKey
+     *            key of the ThreadContext map whose value is written to the
+     *            solr field
+     * @param drop
+     *            "true" to drop the source field
+     * @return new field or null if the configuration is invalid
+     */
+    @PluginFactory
+    public static SolrField createField(
+            @PluginAttribute("source") final String source,
+            @PluginAttribute("name") final String name,
+            @PluginAttribute("value") final String value,
+            @PluginAttribute("contextKey") final String contextKey,
+            @PluginAttribute("drop") final String drop) {
+        boolean isDrop = Boolean.parseBoolean(drop);
+        if (source != null) {
+            if (value != null || contextKey != null) {
+                LOGGER.error("Field \"" + source
+                        + "\" can not have a source and a value or contextKey!");
+                return null;
+            }
+            if (isDrop && name != null) {
+                LOGGER.error("Dropped field \"" + source
+                        + "\" can not have a name!");
+                return null;
+            }
+            return new SolrField(source, isDrop ? null : name == null ? source
+                    : name, null, null, isDrop);
+        }
+        if (name == null || (value == null) == (contextKey == null)) {
+            LOGGER.error("Field needs a source, or a name and either a value or a contextKey!");
+            return null;
+        }
+        return new SolrField(null, name, value, contextKey, false);
+    }
+}
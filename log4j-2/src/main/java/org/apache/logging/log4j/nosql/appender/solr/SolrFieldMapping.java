@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Mapping of the fields of a log event to solr fields. It is configured by a
+ * FieldMapping element of the Solr provider:
+ * 
+ * <pre>
+ * &lt;Solr url="http://localhost:8983/solr"&gt;
+ *   &lt;FieldMapping dropUnmapped="false"&gt;
+ *     &lt;Field source="source" drop="true"/&gt;
+ *     &lt;Field source="loggerName" name="logger"/&gt;
+ *     &lt;Field name="application" value="shop"/&gt;
+ *     &lt;Field name="user" contextKey="user"/&gt;
+ *   &lt;/FieldMapping&gt;
+ * &lt;/Solr&gt;
+ * </pre>
+ * 
+ * The configuration is compiled into flat arrays once. A field set by the
+ * appender is looked up by identity of its (literal) name, so no map is
+ * involved per log event. Values of the ThreadContext map are taken from the
+ * contextMap object of the log event, so they are correct for asynchronous
+ * loggers as well.
+ */
+@Plugin(name = "FieldMapping", category = "Core", printObject = true)
+public final class SolrFieldMapping {
+    // field of the log event holding the ThreadContext map
+    static final String CONTEXT_MAP = "contextMap";
+
+    // field of the log event holding the location of the caller (className,
+    // methodName, fileName, lineNumber)
+    private static final String SOURCE = "source";
+
+    // mapped fields of the log event, interned
+    private final String[] sources;
+
+    // solr fields of the mapped fields, null if dropped
+    private final String[] targets;
+
+    // constant fields
+    private final String[] constantNames;
+    private final String[] constantValues;
+
+    // fields taken from the ThreadContext map
+    private final String[] contextKeys;
+    private final String[] contextNames;
+
+    // true if fields which are not mapped are dropped
+    private final boolean dropUnmapped;
+
+    /**
+     * constructor of the SolrFieldMapping.
+     */
+    private SolrFieldMapping(final SolrField[] fields, boolean dropUnmapped) {
+        List<SolrField> mapped = new ArrayList<SolrField>();
+        List<SolrField> constants = new ArrayList<SolrField>();
+        List<SolrField> context = new ArrayList<SolrField>();
+        for (SolrField field : fields) {
+            if (field.getSource() != null) {
+                mapped.add(field);
+            } else if (field.getValue() != null) {
+                constants.add(field);
+            } else {
+                context.add(field);
+            }
+        }
+
+        this.sources = new String[mapped.size()];
+        this.targets = new String[mapped.size()];
+        for (int i = 0; i < this.sources.length; i++) {
+            this.sources[i] = mapped.get(i).getSource().intern();
+            this.targets[i] = mapped.get(i).getName();
+        }
+        this.constantNames = new String[constants.size()];
+        this.constantValues = new String[constants.size()];
+        for (int i = 0; i < this.constantNames.length; i++) {
+            this.constantNames[i] = constants.get(i).getName();
+            this.constantValues[i] = constants.get(i).getValue();
+        }
+        this.contextKeys = new String[context.size()];
+        this.contextNames = new String[context.size()];
+        for (int i = 0; i < this.contextKeys.length; i++) {
+            this.contextKeys[i] = context.get(i).getContextKey();
+            this.contextNames[i] = context.get(i).getName();
+        }
+        this.dropUnmapped = dropUnmapped;
+    }
+
+    /**
+     * map a field of the log event.
+     * 
+     * @param field
+     *            field of the log event
+     * @return solr field or null if the field is dropped
+     */
+    public String map(final String field) {
+        // the appender passes literals, so identity usually hits
+        for (int i = 0; i < this.sources.length; i++) {
+            if (this.sources[i] == field) {
+                return this.targets[i];
+            }
+        }
+        for (int i = 0; i < this.sources.length; i++) {
+            if (this.sources[i].equals(field)) {
+                return this.targets[i];
+            }
+        }
+        return this.dropUnmapped ? null : field;
+    }
+
+    /**
+     * add the constant fields to the document of a log event.
+     */
+    public void addConstants(final SolrInputDocument doc) {
+        for (int i = 0; i < this.constantNames.length; i++) {
+            doc.addField(this.constantNames[i], this.constantValues[i]);
+        }
+    }
+
+    /**
+     * add the mapped values of the ThreadContext map to the document of a log
+     * event.
+     * 
+     * @param doc
+     *            document of the log event
+     * @param contextMap
+     *            nested document holding the ThreadContext map
+     */
+    public void addContext(final SolrInputDocument doc,
+            final SolrInputDocument contextMap) {
+        for (int i = 0; i < this.contextKeys.length; i++) {
+            Object value = contextMap.getFieldValue(this.contextKeys[i]);
+            if (value != null) {
+                doc.addField(this.contextNames[i], value);
+            }
+        }
+    }
+
+    /**
+     * @return true if the mapping keeps the location of the caller
+     */
+    public boolean requiresLocation() {
+        return map(SOURCE) != null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("fieldMapping(");
+        for (int i = 0; i < this.sources.length; i++) {
+            sb.append(this.sources[i]).append("->")
+                    .append(this.targets[i] == null ? "drop" : this.targets[i])
+                    .append(", ");
+        }
+        for (int i = 0; i < this.constantNames.length; i++) {
+            sb.append(this.constantNames[i]).append("=\"")
+                    .append(this.constantValues[i]).append("\", ");
+        }
+        for (int i = 0; i < this.contextKeys.length; i++) {
+            sb.append(this.contextNames[i]).append("=contextMap.")
+                    .append(this.contextKeys[i]).append(", ");
+        }
+        sb.append("dropUnmapped=").append(this.dropUnmapped).append(")");
+        return sb.toString();
+    }
+
+    /**
+     * Factory method for creating a field mapping within the plugin manager.
+     * 
+     * @param dropUnmapped
+     *            "true" to drop all fields of the log event which are not
+     *            mapped. default false
+     * @param fields
+     *            fields of the mapping
+     * @return new field mapping
+     */
+    @PluginFactory
+    public static SolrFieldMapping createFieldMapping(
+            @PluginAttribute("dropUnmapped") final String dropUnmapped,
+            @PluginElement("Fields") final SolrField[] fields) {
+        // invalid fields were reported by their factory
+        List<SolrField> list = new ArrayList<SolrField>();
+        if (fields != null) {
+            for (SolrField field : fields) {
+                if (field != null) {
+                    list.add(field);
+                }
+            }
+        }
+        return new SolrFieldMapping(list.toArray(new SolrField[list.size()]),
+                Boolean.parseBoolean(dropUnmapped));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.core.lookup.Interpolator;
+import org.apache.logging.log4j.core.lookup.StrSubstitutor;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Static fields added to the document of every log event, e.g. host,
+ * application or environment. They are configured by Field elements of the
+ * Solr provider:
+ * 
+ * <pre>
+ * &lt;Solr url="http://localhost:8983/solr"&gt;
+ *   &lt;Field name="host" value="${hostName}"/&gt;
+ *   &lt;Field name="application" value="shop"/&gt;
+ *   &lt;Field name="environment" value="${sys:env}"/&gt;
+ * &lt;/Solr&gt;
+ * </pre>
+ * 
+ * The values are resolved once when the template is created. Besides the
+ * lookups of log4j (sys, env, ...) hostName, pid and jvmId are known. The
+ * resolved names and values are kept in arrays, so merging them into a
+ * document is a put per field without any string work.
+ */
+public final class SolrFieldTemplate {
+    // names and resolved values of the fields
+    private final String[] names;
+    private final String[] values;
+
+    /**
+     * default constructor.
+     * 
+     * @param fields
+     *            constant fields (name and value)
+     * @throws IllegalArgumentException
+     *             if a field is not a constant field
+     */
+    public SolrFieldTemplate(final SolrField[] fields) {
+        StrSubstitutor substitutor = new StrSubstitutor(new Interpolator(
+                localProperties()));
+        this.names = new String[fields.length];
+        this.values = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == null || fields[i].getValue() == null) {
+                throw new IllegalArgumentException("Static field "
+                        + fields[i] + " needs a name and a value");
+            }
+            this.names[i] = fields[i].getName();
+            this.values[i] = substitutor.replace(fields[i].getValue());
+        }
+    }
+
+    /**
+     * set the static fields of a document. fields of the log event with the
+     * same name are replaced.
+     * 
+     * @param doc
+     *            document of the log event
+     */
+    public void merge(final SolrInputDocument doc) {
+        for (int i = 0; i < this.names.length; i++) {
+            doc.setField(this.names[i], this.values[i]);
+        }
+    }
+
+    /**
+     * @param name
+     *            name of a static field
+     * @return resolved value of the field, null if there is none
+     */
+    public String getValue(final String name) {
+        for (int i = 0; i < this.names.length; i++) {
+            if (this.names[i].equals(name)) {
+                return this.values[i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("staticFields(");
+        for (int i = 0; i < this.names.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(this.names[i]).append("=\"")
+                    .append(this.values[i]).append("\"");
+        }
+        return sb.append(")").toString();
+    }
+
+    // helper
+    /**
+     * @return properties of this jvm: hostName, pid and jvmId (pid@host)
+     */
+    private static Map<String, String> localProperties() {
+        Map<String, String> properties = new HashMap<String, String>();
+        String jvmId = ManagementFactory.getRuntimeMXBean().getName();
+        int at = jvmId.indexOf('@');
+        properties.put("jvmId", jvmId);
+        properties.put("pid", at > 0 ? jvmId.substring(0, at) : jvmId);
+        String hostName;
+        try {
+            hostName = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            hostName = at > 0 ? jvmId.substring(at + 1) : "localhost";
+        }
+        properties.put("hostName", hostName);
+        return properties;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates compact, time-ordered unique ids without contention between the
+ * logging threads. An id consists of 20 base32 characters (0-9, a-v, ordered
+ * like their values):
+ * <ul>
+ * <li>9 characters: milliseconds since 1970</li>
+ * <li>4 characters: node id</li>
+ * <li>4 characters: index of the generating thread. wraps after 2^20
+ * threads</li>
+ * <li>3 characters: sequence of the thread within the millisecond</li>
+ * </ul>
+ * Every thread keeps its own sequence, so generating an id needs no lock.
+ * The ids of a thread are strictly increasing, even if the clock goes back.
+ * If a thread generates more ids than its sequence allows within a
+ * millisecond, it continues with the next millisecond.
+ */
+public final class SolrIdGenerator {
+    // length of the parts of an id
+    private static final int MILLIS_LENGTH = 9;
+    private static final int NODE_LENGTH = 4;
+    private static final int THREAD_LENGTH = 4;
+    private static final int SEQUENCE_LENGTH = 3;
+
+    // length of an id
+    static final int ID_LENGTH = MILLIS_LENGTH + NODE_LENGTH + THREAD_LENGTH
+            + SEQUENCE_LENGTH;
+
+    // max node id
+    public static final int MAX_NODE_ID = (1 << (5 * NODE_LENGTH)) - 1;
+
+    // number of ids a thread can generate within a millisecond
+    private static final int SEQUENCE_SIZE = 1 << (5 * SEQUENCE_LENGTH);
+
+    // base32 digits in ascending order
+    private static final char[] DIGITS = "0123456789abcdefghijklmnopqrstuv"
+            .toCharArray();
+
+    // node id
+    private final int nodeId;
+
+    // index of the next thread generating its first id
+    private final AtomicInteger threads = new AtomicInteger();
+
+    // state of the threads
+    private final ThreadLocal<ThreadState> state = new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState(threads.getAndIncrement());
+        }
+    };
+
+    /**
+     * default constructor.
+     * 
+     * @param nodeId
+     *            id of the node, 0 - {@link #MAX_NODE_ID}. the applications
+     *            logging to the same collection must use different node ids
+     */
+    public SolrIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Invalid nodeId " + nodeId
+                    + ", must be 0 - " + MAX_NODE_ID);
+        }
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * @return next id of the calling thread
+     */
+    public String next() {
+        return next(System.currentTimeMillis());
+    }
+
+    /**
+     * @param now
+     *            current time
+     * @return next id of the calling thread
+     */
+    String next(long now) {
+        ThreadState thread = this.state.get();
+        if (now > thread.millis) {
+            thread.millis = now;
+            thread.sequence = 0;
+        } else if (++thread.sequence == SEQUENCE_SIZE) {
+            // sequence exhausted or clock went back ... borrow the next ms
+            thread.millis++;
+            thread.sequence = 0;
+        }
+
+        char[] id = thread.id;
+        int offset = encode(id, 0, MILLIS_LENGTH, thread.millis);
+        offset = encode(id, offset, NODE_LENGTH, this.nodeId);
+        offset = encode(id, offset, THREAD_LENGTH, thread.index);
+        encode(id, offset, SEQUENCE_LENGTH, thread.sequence);
+        return new String(id);
+    }
+
+    // helper
+    /**
+     * write the lowest 5 * length bits of a value as base32 digits.
+     * 
+     * @return offset behind the digits
+     */
+    private static int encode(final char[] id, int offset, int length,
+            long value) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            id[i] = DIGITS[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return offset + length;
+    }
+
+    /**
+     * millisecond and sequence of the last id of a thread.
+     */
+    private static final class ThreadState {
+        private final int index;
+        private final char[] id = new char[ID_LENGTH];
+        private long millis = -1;
+        private int sequence;
+
+        private ThreadState(int index) {
+            this.index = index;
+        }
+    }
+}
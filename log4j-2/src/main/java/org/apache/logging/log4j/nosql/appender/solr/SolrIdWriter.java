@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * {@link SolrWriter} giving every document without a unique key an id of a
+ * {@link SolrIdGenerator}. The id is assigned by the logging thread before
+ * the document is batched, spilled or retried, so every attempt to send it
+ * carries the same id and solr replaces the document instead of indexing it
+ * twice. Documents which already have an id keep it.
+ */
+public final class SolrIdWriter implements SolrWriter {
+    // writer the documents are passed to
+    private final SolrWriter solrWriter;
+
+    // generator of the ids
+    private final SolrIdGenerator generator;
+
+    // unique key field
+    private final String idField;
+
+    /**
+     * default constructor.
+     * 
+     * @param solrWriter
+     *            writer the documents are passed to
+     * @param generator
+     *            generator of the ids
+     * @param idField
+     *            unique key field
+     */
+    public SolrIdWriter(final SolrWriter solrWriter,
+            final SolrIdGenerator generator, final String idField) {
+        this.solrWriter = solrWriter;
+        this.generator = generator;
+        this.idField = idField;
+    }
+
+    @Override
+    public void write(final SolrInputDocument doc) {
+        if (doc.getFieldValue(this.idField) == null) {
+            doc.setField(this.idField, this.generator.next());
+        }
+        this.solrWriter.write(doc);
+    }
+
+    @Override
+    public void flush() {
+        this.solrWriter.flush();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+/**
+ * Filter passing the log events whose message contains any of a set of
+ * keywords, e.g. the request log lines of solr:
+ * 
+ * <pre>
+ * &lt;NoSql name="SolrRequests"&gt;
+ *   &lt;SolrKeywordFilter keywords="path=/select, path=/update"
+ *       onMatch="ACCEPT" onMismatch="DENY"/&gt;
+ *   &lt;Solr url="http://localhost:8983/solr" requestLog="true"/&gt;
+ * &lt;/NoSql&gt;
+ * </pre>
+ * 
+ * The keywords are compiled into a single {@link SolrKeywordMatcher}, so the
+ * formatted message is scanned once however many keywords there are, instead
+ * of once per regex or contains filter. Within the appender the filter runs
+ * before the log event is converted into a document.
+ */
+@Plugin(name = "SolrKeywordFilter", category = "Core", elementType = "filter", printObject = true)
+public final class SolrKeywordFilter extends AbstractFilter {
+    // keywords of the solr search and update requests
+    static final String DEFAULT_KEYWORDS = "path=/select,path=/update";
+
+    // compiled keywords
+    private final SolrKeywordMatcher matcher;
+
+    /**
+     * constructor of the SolrKeywordFilter.
+     */
+    private SolrKeywordFilter(final SolrKeywordMatcher matcher,
+            final Result onMatch, final Result onMismatch) {
+        super(onMatch, onMismatch);
+        this.matcher = matcher;
+    }
+
+    @Override
+    public Result filter(final Logger logger, final Level level,
+            final Marker marker, final String msg, final Object... params) {
+        if (params == null || params.length == 0) {
+            return filter(msg);
+        }
+        return filter(ParameterizedMessage.format(msg, params));
+    }
+
+    @Override
+    public Result filter(final Logger logger, final Level level,
+            final Marker marker, final Object msg, final Throwable t) {
+        if (msg == null || msg instanceof CharSequence) {
+            return filter((CharSequence) msg);
+        }
+        return filter(msg.toString());
+    }
+
+    @Override
+    public Result filter(final Logger logger, final Level level,
+            final Marker marker, final Message msg, final Throwable t) {
+        return filter(msg == null ? null : msg.getFormattedMessage());
+    }
+
+    @Override
+    public Result filter(final LogEvent event) {
+        Message msg = event.getMessage();
+        return filter(msg == null ? null : msg.getFormattedMessage());
+    }
+
+    /**
+     * @return compiled keywords
+     */
+    public SolrKeywordMatcher getMatcher() {
+        return this.matcher;
+    }
+
+    @Override
+    public String toString() {
+        return "keywords=" + this.matcher + ", " + super.toString();
+    }
+
+    // helper
+    /**
+     * scan a message.
+     */
+    private Result filter(final CharSequence msg) {
+        return this.matcher.matches(msg) ? this.onMatch : this.onMismatch;
+    }
+
+    /**
+     * Factory method for creating a keyword filter within the plugin manager.
+     * 
+     * @param keywords
+     *            comma separated keywords. default: path=/select,path=/update
+     *            which are found in the request log lines of solr searches
+     *            and updates
+     * @param ignoreCase
+     *            "true" to ignore the case of the keywords. default false
+     * @param match
+     *            result if a keyword is found. default NEUTRAL
+     * @param mismatch
+     *            result if no keyword is found. default DENY
+     * @return new keyword filter
+     */
+    @PluginFactory
+    public static SolrKeywordFilter createFilter(
+            @PluginAttribute("keywords") final String keywords,
+            @PluginAttribute("ignoreCase") final String ignoreCase,
+            @PluginAttribute("onMatch") final String match,
+            @PluginAttribute("onMismatch") final String mismatch) {
+        String[] split = (keywords == null ? DEFAULT_KEYWORDS : keywords)
+                .split(",");
+        for (int i = 0; i < split.length; i++) {
+            split[i] = split[i].trim();
+        }
+        SolrKeywordMatcher matcher = new SolrKeywordMatcher(split,
+                Boolean.parseBoolean(ignoreCase));
+        if (matcher.getKeywords().length == 0) {
+            LOGGER.error("SolrKeywordFilter needs at least one keyword!");
+            return null;
+        }
+        return new SolrKeywordFilter(matcher, Result.toResult(match,
+                Result.NEUTRAL), Result.toResult(mismatch, Result.DENY));
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds any of a set of keywords in a text with a single pass over its
+ * characters. The keywords are compiled into one deterministic automaton
+ * (Aho-Corasick with all failure links resolved), so every character costs a
+ * table lookup, however many keywords there are. Matching does not allocate
+ * and the matcher is immutable, so it can be shared by all threads.
+ * <p>
+ * Characters are mapped to the classes of the keyword characters first, all
+ * other characters share one class. If case is ignored, the upper and lower
+ * case of a keyword character are put into the same class, so the text is
+ * never converted.
+ */
+public final class SolrKeywordMatcher {
+    // marks a transition into a state which completes a keyword
+    private static final int MATCH = -1;
+
+    // class of the characters not used by any keyword
+    private static final int OTHER = 0;
+
+    // keywords as given
+    private final String[] keywords;
+
+    // classes of the ascii characters
+    private final int[] asciiClasses = new int[128];
+
+    // classes of the other keyword characters, sorted by character
+    private final char[] chars;
+    private final int[] charClasses;
+
+    // number of character classes
+    private final int classCount;
+
+    // transitions: next state * classCount, or MATCH
+    private final int[] transitions;
+
+    /**
+     * default constructor. compiles the automaton.
+     * 
+     * @param keywords
+     *            keywords to find. empty keywords are ignored
+     * @param ignoreCase
+     *            true to ignore the case of the keywords and the text
+     */
+    public SolrKeywordMatcher(final String[] keywords, boolean ignoreCase) {
+        List<String> valid = new ArrayList<String>(keywords.length);
+        for (String keyword : keywords) {
+            if (keyword != null && keyword.length() > 0) {
+                valid.add(keyword);
+            }
+        }
+        this.keywords = valid.toArray(new String[valid.size()]);
+
+        // character classes
+        Map<Character, Integer> classOfChar = new TreeMap<Character, Integer>();
+        int classes = 1;
+        for (String keyword : this.keywords) {
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = keyword.charAt(i);
+                char[] variants = ignoreCase ? new char[] { c,
+                        Character.toLowerCase(c), Character.toUpperCase(c) }
+                        : new char[] { c };
+                Integer charClass = null;
+                for (char variant : variants) {
+                    if (charClass == null) {
+                        charClass = classOfChar.get(Character.valueOf(variant));
+                    }
+                }
+                if (charClass == null) {
+                    charClass = Integer.valueOf(classes++);
+                }
+                for (char variant : variants) {
+                    if (!classOfChar.containsKey(Character.valueOf(variant))) {
+                        classOfChar.put(Character.valueOf(variant), charClass);
+                    }
+                }
+            }
+        }
+        List<Character> others = new ArrayList<Character>();
+        for (Map.Entry<Character, Integer> entry : classOfChar.entrySet()) {
+            if (entry.getKey().charValue() < 128) {
+                this.asciiClasses[entry.getKey().charValue()] = entry
+                        .getValue().intValue();
+            } else {
+                others.add(entry.getKey());
+            }
+        }
+        // sorted by the tree map
+        this.chars = new char[others.size()];
+        this.charClasses = new int[others.size()];
+        for (int i = 0; i < this.chars.length; i++) {
+            this.chars[i] = others.get(i).charValue();
+            this.charClasses[i] = classOfChar.get(others.get(i)).intValue();
+        }
+        this.classCount = classes;
+
+        // trie
+        int maxStates = 1;
+        for (String keyword : this.keywords) {
+            maxStates += keyword.length();
+        }
+        int[] trie = new int[maxStates * classes];
+        Arrays.fill(trie, -1);
+        boolean[] accepting = new boolean[maxStates];
+        int states = 1;
+        for (String keyword : this.keywords) {
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                int index = state * classes + classOf(keyword.charAt(i));
+                if (trie[index] < 0) {
+                    trie[index] = states++;
+                }
+                state = trie[index];
+            }
+            accepting[state] = true;
+        }
+
+        // resolve the failure links breadth first
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < classes; c++) {
+            int next = trie[c];
+            if (next < 0) {
+                trie[c] = 0;
+            } else {
+                fail[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            accepting[state] |= accepting[fail[state]];
+            for (int c = 0; c < classes; c++) {
+                int index = state * classes + c;
+                int next = trie[index];
+                if (next < 0) {
+                    trie[index] = trie[fail[state] * classes + c];
+                } else {
+                    fail[next] = trie[fail[state] * classes + c];
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        // a match ends the scan, so transitions into accepting states are
+        // not needed
+        this.transitions = new int[states * classes];
+        for (int i = 0; i < this.transitions.length; i++) {
+            int next = trie[i];
+            this.transitions[i] = accepting[next] ? MATCH : next * classes;
+        }
+    }
+
+    /**
+     * check if a text contains any of the keywords.
+     * 
+     * @param text
+     *            text to scan. null contains no keyword
+     * @return true if a keyword was found
+     */
+    public boolean matches(final CharSequence text) {
+        if (text == null || this.keywords.length == 0) {
+            return false;
+        }
+        int[] transitions = this.transitions;
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            state = transitions[state + classOf(text.charAt(i))];
+            if (state == MATCH) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the keywords
+     */
+    public String[] getKeywords() {
+        return this.keywords.clone();
+    }
+
+    /**
+     * @return number of states of the automaton
+     */
+    public int getStateCount() {
+        return this.transitions.length / this.classCount;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(this.keywords);
+    }
+
+    // helper
+    /**
+     * @return class of a character
+     */
+    private int classOf(char c) {
+        if (c < 128) {
+            return this.asciiClasses[c];
+        }
+        int index = Arrays.binarySearch(this.chars, c);
+        return index < 0 ? OTHER : this.charClasses[index];
+    }
+}
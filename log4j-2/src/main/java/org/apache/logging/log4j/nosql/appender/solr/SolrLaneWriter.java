@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * {@link SolrWriter} dispatching the documents to several lanes, each an
+ * {@link SolrAsyncWriter} with its own ring buffer, batch and a single
+ * dispatcher thread. The lane of a document is chosen by the hash of a key
+ * field (e.g. loggerName, threadName or a ThreadContext value), so the
+ * documents of a key are sent in the order they were logged while the lanes
+ * send concurrently. A slow request only holds up the documents of its
+ * lane. Documents without the key field go to the first lane.
+ */
+public final class SolrLaneWriter implements SolrWriter {
+    // lanes, each with a single dispatcher thread
+    private final SolrAsyncWriter[] lanes;
+
+    // field the lane of a document is chosen by
+    private final String keyField;
+
+    // documents written to each lane
+    private final AtomicLongArray written;
+
+    /**
+     * default constructor.
+     * 
+     * @param lanes
+     *            lanes the documents are dispatched to. a lane must use a
+     *            single dispatcher thread to keep the order of its documents
+     * @param keyField
+     *            field the lane of a document is chosen by
+     */
+    public SolrLaneWriter(final SolrAsyncWriter[] lanes,
+            final String keyField) {
+        this.lanes = lanes.clone();
+        this.keyField = keyField;
+        this.written = new AtomicLongArray(lanes.length);
+    }
+
+    @Override
+    public void write(final SolrInputDocument doc) {
+        int lane = lane(doc.getFieldValue(this.keyField));
+        this.written.incrementAndGet(lane);
+        this.lanes[lane].write(doc);
+    }
+
+    /**
+     * wait until all lanes have sent their documents.
+     */
+    @Override
+    public void flush() {
+        for (SolrAsyncWriter lane : this.lanes) {
+            lane.flush();
+        }
+    }
+
+    /**
+     * @return number of lanes
+     */
+    public int getLaneCount() {
+        return this.lanes.length;
+    }
+
+    /**
+     * @return number of documents waiting in the ring buffer of each lane
+     */
+    public int[] getQueueSizes() {
+        int[] sizes = new int[this.lanes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = this.lanes[i].getQueueSize();
+        }
+        return sizes;
+    }
+
+    /**
+     * @return number of documents dropped by each lane because its ring
+     *         buffer was full
+     */
+    public long[] getDroppedCounts() {
+        long[] dropped = new long[this.lanes.length];
+        for (int i = 0; i < dropped.length; i++) {
+            dropped[i] = this.lanes[i].getDroppedCount();
+        }
+        return dropped;
+    }
+
+    /**
+     * @return number of documents written to each lane
+     */
+    public long[] getWrittenCounts() {
+        long[] counts = new long[this.lanes.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.written.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * choose the lane of a key.
+     * 
+     * @param key
+     *            value of the key field. may be null
+     * @return index of the lane
+     */
+    int lane(final Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        // mix the high bits into the low ones used by the modulo
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % this.lanes.length;
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrServer;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.ZkCoreNodeProps;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * {@link SolrServer} sending the documents of an update request straight to
+ * the leaders of their shards. The shard of a document is computed client
+ * side by the router of its collection in the cluster state, the documents
+ * are grouped by leader and the groups are sent in parallel. This saves the
+ * hop of a replica forwarding the documents to its leader.
+ * <p>
+ * The cluster state is read for every request. The one of a
+ * {@link CloudSolrServer} is kept up to date by ZooKeeper watches, so the
+ * documents follow a new leader as soon as solr elected it. Documents
+ * without unique key get a random one, as the route is computed from it.
+ * Unlike the ids of a {@link SolrIdGenerator} with a derived node id, random
+ * ids of different applications can not collide.
+ * Requests which can not be routed (no documents, unknown collection, shard
+ * without leader) are sent to the wrapped server as they are.
+ */
+public final class SolrLeaderRouter extends SolrServer {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * source of the current cluster state.
+     */
+    public static interface ClusterStateSource {
+        /**
+         * @return current cluster state
+         */
+        ClusterState getClusterState();
+    }
+
+    /**
+     * creates the solr server of a shard leader.
+     */
+    public static interface Leaders {
+        /**
+         * @param coreUrl
+         *            url of the core of the leader
+         * @return solr server sending requests to the core
+         */
+        SolrServer create(String coreUrl);
+    }
+
+    // server of the requests which can not be routed
+    private final SolrServer solrServer;
+
+    // source of the cluster state
+    private final ClusterStateSource clusterStates;
+
+    // creates the servers of the leaders
+    private final Leaders leaders;
+
+    // collection of requests without collection parameter
+    private final String defaultCollection;
+
+    // unique key field of the collections
+    private final String idField;
+
+    // servers by core url of the leader
+    private final ConcurrentMap<String, SolrServer> servers =
+            new ConcurrentHashMap<String, SolrServer>();
+
+    // threads sending the groups of a request in parallel
+    private final ExecutorService executor = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "SolrLeaderRouter-update");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * default constructor.
+     *
+     * @param solrServer
+     *            server of the requests which can not be routed
+     * @param clusterStates
+     *            source of the cluster state
+     * @param leaders
+     *            creates the servers of the leaders
+     * @param defaultCollection
+     *            collection of requests without collection parameter
+     * @param idField
+     *            unique key field of the collections
+     */
+    public SolrLeaderRouter(final SolrServer solrServer,
+            final ClusterStateSource clusterStates, final Leaders leaders,
+            final String defaultCollection, final String idField) {
+        this.solrServer = solrServer;
+        this.clusterStates = clusterStates;
+        this.leaders = leaders;
+        this.defaultCollection = defaultCollection;
+        this.idField = idField;
+    }
+
+    /**
+     * create a router of a {@link CloudSolrServer}. the leaders are called
+     * with the http client of the cloud server.
+     *
+     * @param cloudSolrServer
+     *            cloud server providing the cluster state
+     * @param wireSettings
+     *            wire settings of the leader servers
+     * @param idField
+     *            unique key field of the collections
+     * @return new router
+     */
+    public static SolrLeaderRouter create(
+            final CloudSolrServer cloudSolrServer,
+            final SolrWireSettings wireSettings, final String idField) {
+        ClusterStateSource clusterStates = new ClusterStateSource() {
+            @Override
+            public ClusterState getClusterState() {
+                // connects on first use
+                cloudSolrServer.connect();
+                return cloudSolrServer.getZkStateReader().getClusterState();
+            }
+        };
+        Leaders leaders = new Leaders() {
+            @Override
+            public SolrServer create(final String coreUrl) {
+                SolrServer leader = new HttpSolrServer(coreUrl,
+                        cloudSolrServer.getLbServer().getHttpClient());
+                wireSettings.configure(leader);
+                return leader;
+            }
+        };
+        return new SolrLeaderRouter(cloudSolrServer, clusterStates, leaders,
+                cloudSolrServer.getDefaultCollection(), idField);
+    }
+
+    @Override
+    public NamedList<Object> request(final SolrRequest request)
+            throws SolrServerException, IOException {
+        Map<String, List<SolrInputDocument>> groups = route(request);
+        if (groups == null) {
+            return this.solrServer.request(request);
+        }
+
+        // the first group is sent by the calling thread
+        final UpdateRequest update = (UpdateRequest) request;
+        List<Future<NamedList<Object>>> futures =
+                new ArrayList<Future<NamedList<Object>>>();
+        Map.Entry<String, List<SolrInputDocument>> first = null;
+        for (final Map.Entry<String, List<SolrInputDocument>> group : groups
+                .entrySet()) {
+            if (first == null) {
+                first = group;
+                continue;
+            }
+            futures.add(this.executor
+                    .submit(new Callable<NamedList<Object>>() {
+                        @Override
+                        public NamedList<Object> call()
+                                throws SolrServerException, IOException {
+                            return send(group.getKey(), group.getValue(),
+                                    update);
+                        }
+                    }));
+        }
+
+        List<NamedList<Object>> responses = new ArrayList<NamedList<Object>>();
+        Throwable failure = null;
+        try {
+            responses.add(send(first.getKey(), first.getValue(), update));
+        } catch (SolrServerException e) {
+            failure = e;
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        for (Future<NamedList<Object>> future : futures) {
+            try {
+                responses.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure instanceof SolrServerException) {
+            throw (SolrServerException) failure;
+        } else if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new SolrServerException(failure);
+        }
+        return merge(responses);
+    }
+
+    /**
+     * shut down the servers of the leaders and the wrapped server.
+     */
+    @Override
+    public void shutdown() {
+        this.executor.shutdown();
+        for (SolrServer server : this.servers.values()) {
+            server.shutdown();
+        }
+        this.servers.clear();
+        this.solrServer.shutdown();
+    }
+
+    // helper
+    /**
+     * group the documents of a request by the core url of their leader.
+     *
+     * @return groups or null if the request can not be routed
+     */
+    Map<String, List<SolrInputDocument>> route(final SolrRequest request) {
+        if (!(request instanceof UpdateRequest)) {
+            return null;
+        }
+        UpdateRequest update = (UpdateRequest) request;
+        List<SolrInputDocument> docs = update.getDocuments();
+        if (docs == null || docs.isEmpty()) {
+            return null;
+        }
+        SolrParams params = update.getParams() == null ? new ModifiableSolrParams()
+                : update.getParams();
+        String collection = params.get("collection", this.defaultCollection);
+        if (collection == null || collection.indexOf(',') >= 0) {
+            return null;
+        }
+        ClusterState clusterState = this.clusterStates.getClusterState();
+        DocCollection docCollection = clusterState == null ? null
+                : clusterState.getCollectionOrNull(collection);
+        if (docCollection == null) {
+            return null;
+        }
+
+        Map<String, List<SolrInputDocument>> groups =
+                new LinkedHashMap<String, List<SolrInputDocument>>();
+        for (SolrInputDocument doc : docs) {
+            Object id = doc.getFieldValue(this.idField);
+            if (id == null) {
+                id = UUID.randomUUID().toString();
+                doc.setField(this.idField, id);
+            }
+            Slice slice = docCollection.getRouter().getTargetSlice(
+                    id.toString(), doc, params, docCollection);
+            Replica leader = slice == null ? null : slice.getLeader();
+            if (leader == null) {
+                // no leader elected yet ... let solr forward the documents
+                return null;
+            }
+            String coreUrl = ZkCoreNodeProps.getCoreUrl(leader);
+            List<SolrInputDocument> group = groups.get(coreUrl);
+            if (group == null) {
+                group = new ArrayList<SolrInputDocument>();
+                groups.put(coreUrl, group);
+            }
+            group.add(doc);
+        }
+        return groups;
+    }
+
+    /**
+     * send the documents of a group to their leader.
+     */
+    private NamedList<Object> send(final String coreUrl,
+            final List<SolrInputDocument> docs, final UpdateRequest update)
+            throws SolrServerException, IOException {
+        UpdateRequest part = new UpdateRequest();
+        part.add(docs);
+        part.setCommitWithin(update.getCommitWithin());
+        if (update.getParams() != null) {
+            ModifiableSolrParams params = new ModifiableSolrParams(
+                    update.getParams());
+            params.remove("collection");
+            part.setParams(params);
+        }
+        return leader(coreUrl).request(part);
+    }
+
+    private SolrServer leader(final String coreUrl) {
+        SolrServer server = this.servers.get(coreUrl);
+        if (server == null) {
+            SolrServer created = this.leaders.create(coreUrl);
+            server = this.servers.putIfAbsent(coreUrl, created);
+            if (server == null) {
+                server = created;
+            } else {
+                created.shutdown();
+            }
+        }
+        return server;
+    }
+
+    /**
+     * merge the responses of the groups. the response header holds the
+     * highest status and QTime.
+     */
+    private static NamedList<Object> merge(
+            final List<NamedList<Object>> responses) {
+        if (responses.size() == 1) {
+            return responses.get(0);
+        }
+        int status = 0;
+        int qTime = 0;
+        for (NamedList<Object> response : responses) {
+            Object header = response.get("responseHeader");
+            if (header instanceof NamedList) {
+                status = Math.max(status, intValue(((NamedList<?>) header)
+                        .get("status")));
+                qTime = Math.max(qTime, intValue(((NamedList<?>) header)
+                        .get("QTime")));
+            }
+        }
+        NamedList<Object> header = new NamedList<Object>();
+        header.add("status", status);
+        header.add("QTime", qTime);
+        NamedList<Object> merged = new NamedList<Object>();
+        merged.add("responseHeader", header);
+        return merged;
+    }
+
+    private static int intValue(final Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+
+/**
+ * Reads the log events of a solr index back in bulk, e.g. for exports. The
+ * matching documents are paged with the cursorMark of solr 4.7, sorted by
+ * their timestamp and the unique key, so deep pages cost as much as the first
+ * one. The index must define the unique key, e.g. the id field filled by
+ * generateIds.
+ * <p>
+ * {@link #read(SolrQuery)} returns a lazy iterator. While the documents of a
+ * page are consumed, the next page is fetched in the background, so at most
+ * two pages are held in memory.
+ */
+public final class SolrLogReader {
+    // threads fetching the next pages. daemons, so an abandoned iterator
+    // never keeps the jvm alive
+    private static final ExecutorService PREFETCHER = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SolrLogReader-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // solr server the log events are read from
+    private final SolrServer solrServer;
+
+    // field holding the timestamp of the log event. may be null
+    private final String timeField;
+
+    // unique key field of the index
+    private final String idField;
+
+    // number of documents per request
+    private final int pageSize;
+
+    /**
+     * default constructor.
+     * 
+     * @param solrServer
+     *            solr server the log events are read from
+     * @param timeField
+     *            field holding the timestamp of the log event, e.g. millis.
+     *            null to sort by the unique key only
+     * @param idField
+     *            unique key field of the index
+     * @param pageSize
+     *            number of documents per request
+     */
+    public SolrLogReader(final SolrServer solrServer, final String timeField,
+            final String idField, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Invalid pageSize " + pageSize);
+        }
+        this.solrServer = solrServer;
+        this.timeField = timeField;
+        this.idField = idField;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * read the log events matching a query.
+     * 
+     * @param query
+     *            solr query, e.g. level:ERROR
+     * @param fields
+     *            fields returned for each log event. all stored fields if
+     *            empty
+     * @return log events in the order they were logged
+     */
+    public LogIterator read(final String query, final String... fields) {
+        SolrQuery solrQuery = new SolrQuery(query);
+        if (fields.length > 0) {
+            solrQuery.setFields(fields);
+        }
+        return read(solrQuery);
+    }
+
+    /**
+     * read the log events matching a query. the sort, start and rows of the
+     * query are replaced, its filter queries and field list are kept.
+     * 
+     * @param query
+     *            solr query. not modified
+     * @return log events in the order they were logged
+     */
+    public LogIterator read(final SolrQuery query) {
+        SolrQuery paged = query.getCopy();
+        paged.clearSorts();
+        if (this.timeField != null) {
+            paged.addSort(this.timeField, SolrQuery.ORDER.asc);
+        }
+        // the unique key breaks ties, the cursor requires it
+        paged.addSort(this.idField, SolrQuery.ORDER.asc);
+        paged.remove(CommonParams.START);
+        paged.setRows(this.pageSize);
+        return new LogIterator(paged);
+    }
+
+    @Override
+    public String toString() {
+        return "SolrLogReader(" + this.pageSize + ")";
+    }
+
+    /**
+     * lazy iterator over the log events of a query. {@link #close()} stops the
+     * prefetching if the iterator is abandoned before its end.
+     */
+    public final class LogIterator implements Iterator<SolrDocument>,
+            Closeable {
+        // query of the pages
+        private final SolrQuery query;
+
+        // documents of the current page
+        private SolrDocumentList page;
+        private int index;
+
+        // next page, null after the last one
+        private Future<QueryResponse> next;
+
+        /**
+         * default constructor, starts fetching the first page.
+         */
+        private LogIterator(final SolrQuery query) {
+            this.query = query;
+            this.next = fetch(CursorMarkParams.CURSOR_MARK_START);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.page == null || this.index == this.page.size()) {
+                if (this.next == null) {
+                    return false;
+                }
+                String cursorMark = this.query
+                        .get(CursorMarkParams.CURSOR_MARK_PARAM);
+                QueryResponse response = await(this.next);
+                this.page = response.getResults();
+                this.index = 0;
+                this.next = null;
+
+                // a short page or an unchanged cursor marks the end
+                String nextCursorMark = response.getNextCursorMark();
+                if (this.page.size() == pageSize
+                        && !cursorMark.equals(nextCursorMark)) {
+                    this.next = fetch(nextCursorMark);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public SolrDocument next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SolrDocument doc = this.page.get(this.index);
+            // release the document, only the page list holds it
+            this.page.set(this.index++, null);
+            return doc;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * stop fetching the next page.
+         */
+        @Override
+        public void close() {
+            if (this.next != null) {
+                this.next.cancel(true);
+                this.next = null;
+            }
+            this.page = null;
+        }
+
+        // helper
+        /**
+         * fetch the page of a cursor mark in the background.
+         */
+        private Future<QueryResponse> fetch(final String cursorMark) {
+            this.query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            final SolrQuery pageQuery = this.query.getCopy();
+            return PREFETCHER.submit(new Callable<QueryResponse>() {
+                @Override
+                public QueryResponse call() throws Exception {
+                    return solrServer.query(pageQuery);
+                }
+            });
+        }
+
+        /**
+         * wait for a fetched page.
+         * 
+         * @throws SolrException
+         *             if the page could not be read
+         */
+        private QueryResponse await(final Future<QueryResponse> response) {
+            try {
+                return response.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                        "Interrupted while reading log events from Solr", e);
+            } catch (ExecutionException e) {
+                close();
+                throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                        "Failed to read log events from Solr due to error: "
+                                + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+}
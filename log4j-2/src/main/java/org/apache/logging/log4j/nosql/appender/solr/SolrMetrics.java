@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+/**
+ * Metrics of a {@link SolrProvider}, recorded by {@link SolrMetricsServer}.
+ * Counters are striped and histograms lock free, so recording adds no
+ * contention to the logging threads.
+ */
+public final class SolrMetrics implements SolrMetricsMXBean {
+    // status logger
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // domain of the registered MBeans
+    static final String DOMAIN = "org.apache.logging.log4j.nosql.appender.solr";
+
+    // metrics registered by this class, a replaced MBean is not unregistered
+    // by the provider shutting down after its successor was created
+    private static final ConcurrentMap<ObjectName, SolrMetrics> REGISTERED = new ConcurrentHashMap<ObjectName, SolrMetrics>();
+
+    // counters
+    private final SolrStripedCounter docsSent = new SolrStripedCounter();
+    private final SolrStripedCounter batchesSent = new SolrStripedCounter();
+    private final ConcurrentMap<String, SolrStripedCounter> failures = new ConcurrentHashMap<String, SolrStripedCounter>();
+
+    // round trip in ns and QTime in ms
+    private final SolrLatencyHistogram latency = new SolrLatencyHistogram();
+    private final SolrLatencyHistogram qTime = new SolrLatencyHistogram();
+
+    // moving average of the round trip in ns. -1 before the first request
+    private final AtomicLong recentLatency = new AtomicLong(-1);
+
+    // weight of a new round trip in the moving average is 2^-shift
+    private static final int RECENT_LATENCY_SHIFT = 3;
+
+    // writers buffering documents. null if not used
+    private volatile SolrAsyncWriter asyncWriter;
+    private volatile SolrBatchWriter batchWriter;
+
+    // writer dispatching to several lanes. null if not used
+    private volatile SolrLaneWriter laneWriter;
+
+    // writer sampling log events. null if not used
+    private volatile SolrRateLimitWriter rateLimitWriter;
+
+    // writer checking the documents against the schema. null if not used
+    private volatile SolrSchemaWriter schemaWriter;
+
+    // name the MBean is registered with. null if not registered
+    private ObjectName objectName;
+
+    /**
+     * record a successful request.
+     *
+     * @param docs
+     *            number of documents sent. 0 for requests without documents
+     * @param latencyNs
+     *            round trip in ns
+     * @param qTimeMs
+     *            QTime reported by solr. negative if unknown
+     */
+    public void recordSuccess(int docs, long latencyNs, int qTimeMs) {
+        this.latency.record(latencyNs);
+        recordRecentLatency(latencyNs);
+        if (qTimeMs >= 0) {
+            this.qTime.record(qTimeMs);
+        }
+        if (docs > 0) {
+            this.docsSent.add(docs);
+            this.batchesSent.increment();
+        }
+    }
+
+    /**
+     * record a failed request.
+     *
+     * @param cause
+     *            cause of the failure
+     * @param latencyNs
+     *            round trip in ns
+     */
+    public void recordFailure(final String cause, long latencyNs) {
+        this.latency.record(latencyNs);
+        recordRecentLatency(latencyNs);
+        SolrStripedCounter counter = this.failures.get(cause);
+        if (counter == null) {
+            SolrStripedCounter created = new SolrStripedCounter();
+            counter = this.failures.putIfAbsent(cause, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.increment();
+    }
+
+    /**
+     * report the depth of the ring buffer of the async mode.
+     */
+    public void setAsyncWriter(final SolrAsyncWriter asyncWriter) {
+        this.asyncWriter = asyncWriter;
+    }
+
+    /**
+     * report the depth of the current batch.
+     */
+    public void setBatchWriter(final SolrBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
+
+    /**
+     * report the queues of the lanes of the parallel mode.
+     */
+    public void setLaneWriter(final SolrLaneWriter laneWriter) {
+        this.laneWriter = laneWriter;
+    }
+
+    /**
+     * report the log events sampled out by the rate limits.
+     */
+    public void setRateLimitWriter(final SolrRateLimitWriter rateLimitWriter) {
+        this.rateLimitWriter = rateLimitWriter;
+    }
+
+    /**
+     * report the fields dropped by the schema check.
+     */
+    public void setSchemaWriter(final SolrSchemaWriter schemaWriter) {
+        this.schemaWriter = schemaWriter;
+    }
+
+    /**
+     * @return moving average of the round trips of the last requests in ns.
+     *         -1 before the first request
+     */
+    public long getRecentLatencyNs() {
+        return this.recentLatency.get();
+    }
+
+    @Override
+    public long getDocsSent() {
+        return this.docsSent.sum();
+    }
+
+    @Override
+    public long getBatchesSent() {
+        return this.batchesSent.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        long sum = 0;
+        for (SolrStripedCounter counter : this.failures.values()) {
+            sum += counter.sum();
+        }
+        return sum;
+    }
+
+    @Override
+    public Map<String, Long> getFailuresByCause() {
+        Map<String, Long> byCause = new TreeMap<String, Long>();
+        for (Map.Entry<String, SolrStripedCounter> entry : this.failures
+                .entrySet()) {
+            byCause.put(entry.getKey(), entry.getValue().sum());
+        }
+        return byCause;
+    }
+
+    @Override
+    public double getLatencyP50Ms() {
+        return this.latency.getPercentile(50) / 1000000.0;
+    }
+
+    @Override
+    public double getLatencyP99Ms() {
+        return this.latency.getPercentile(99) / 1000000.0;
+    }
+
+    @Override
+    public double getLatencyP999Ms() {
+        return this.latency.getPercentile(99.9) / 1000000.0;
+    }
+
+    @Override
+    public double getRecentLatencyMs() {
+        long recent = this.recentLatency.get();
+        return recent < 0 ? 0 : recent / 1000000.0;
+    }
+
+    @Override
+    public long getQTimeP50Ms() {
+        return this.qTime.getPercentile(50);
+    }
+
+    @Override
+    public long getQTimeP99Ms() {
+        return this.qTime.getPercentile(99);
+    }
+
+    @Override
+    public long getQTimeP999Ms() {
+        return this.qTime.getPercentile(99.9);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        int depth = 0;
+        SolrAsyncWriter async = this.asyncWriter;
+        if (async != null) {
+            depth += async.getQueueSize();
+        }
+        SolrBatchWriter batch = this.batchWriter;
+        if (batch != null) {
+            depth += batch.size();
+        }
+        for (int laneDepth : getLaneQueueDepths()) {
+            depth += laneDepth;
+        }
+        return depth;
+    }
+
+    @Override
+    public long getDroppedCount() {
+        SolrAsyncWriter async = this.asyncWriter;
+        long dropped = async == null ? 0 : async.getDroppedCount();
+        for (long laneDropped : getLaneDroppedCounts()) {
+            dropped += laneDropped;
+        }
+        return dropped;
+    }
+
+    @Override
+    public int[] getLaneQueueDepths() {
+        SolrLaneWriter lanes = this.laneWriter;
+        return lanes == null ? new int[0] : lanes.getQueueSizes();
+    }
+
+    @Override
+    public long[] getLaneDroppedCounts() {
+        SolrLaneWriter lanes = this.laneWriter;
+        return lanes == null ? new long[0] : lanes.getDroppedCounts();
+    }
+
+    @Override
+    public long[] getLaneWrittenCounts() {
+        SolrLaneWriter lanes = this.laneWriter;
+        return lanes == null ? new long[0] : lanes.getWrittenCounts();
+    }
+
+    @Override
+    public long getSampledOutCount() {
+        SolrRateLimitWriter rateLimit = this.rateLimitWriter;
+        return rateLimit == null ? 0 : rateLimit.getSampledOutCount();
+    }
+
+    @Override
+    public long getDroppedFieldCount() {
+        SolrSchemaWriter schema = this.schemaWriter;
+        return schema == null ? 0 : schema.getDroppedFieldCount();
+    }
+
+    @Override
+    public void reset() {
+        this.docsSent.reset();
+        this.batchesSent.reset();
+        for (SolrStripedCounter counter : this.failures.values()) {
+            counter.reset();
+        }
+        this.latency.reset();
+        this.qTime.reset();
+        this.recentLatency.set(-1);
+    }
+
+    /**
+     * register the metrics with the platform MBean server. an MBean
+     * registered with the same name (e.g. by the provider of a previous
+     * configuration) is replaced.
+     *
+     * @param name
+     *            name of the provider
+     */
+    public synchronized void register(final String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN
+                    + ":type=SolrProvider,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            REGISTERED.put(objectName, this);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            LOGGER.warn("Failed to register JMX metrics of " + name
+                    + " due to error: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * unregister the metrics from the platform MBean server.
+     */
+    public synchronized void unregister() {
+        if (this.objectName == null) {
+            return;
+        }
+        if (!REGISTERED.remove(this.objectName, this)) {
+            // replaced by the metrics of another provider
+            this.objectName = null;
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                    this.objectName);
+        } catch (JMException e) {
+            LOGGER.warn("Failed to unregister JMX metrics "
+                    + this.objectName + " due to error: " + e.getMessage(), e);
+        }
+        this.objectName = null;
+    }
+
+    /**
+     * @return name the MBean is registered with. null if not registered
+     */
+    public synchronized ObjectName getObjectName() {
+        return this.objectName;
+    }
+
+    // helper
+    /**
+     * add a round trip to the moving average.
+     */
+    private void recordRecentLatency(long latencyNs) {
+        for (;;) {
+            long recent = this.recentLatency.get();
+            long updated = recent < 0 ? latencyNs : recent
+                    + ((latencyNs - recent) >> RECENT_LATENCY_SHIFT);
+            if (this.recentLatency.compareAndSet(recent, updated)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.Map;
+
+/**
+ * JMX view of the metrics of a {@link SolrProvider}. Latencies are round
+ * trips measured by the client in ms, QTime is the time reported by solr.
+ */
+public interface SolrMetricsMXBean {
+
+    /**
+     * @return number of documents sent successfully
+     */
+    long getDocsSent();
+
+    /**
+     * @return number of update requests with documents sent successfully
+     */
+    long getBatchesSent();
+
+    /**
+     * @return number of failed requests
+     */
+    long getFailures();
+
+    /**
+     * @return number of failed requests by cause (exception type, solr error
+     *         code or response status)
+     */
+    Map<String, Long> getFailuresByCause();
+
+    double getLatencyP50Ms();
+
+    double getLatencyP99Ms();
+
+    double getLatencyP999Ms();
+
+    /**
+     * @return moving average of the latency of the last requests
+     */
+    double getRecentLatencyMs();
+
+    long getQTimeP50Ms();
+
+    long getQTimeP99Ms();
+
+    long getQTimeP999Ms();
+
+    /**
+     * @return number of documents waiting in the ring buffers and the
+     *         batch. 0 if the documents are not buffered
+     */
+    int getQueueDepth();
+
+    /**
+     * @return number of documents dropped because a ring buffer was full
+     */
+    long getDroppedCount();
+
+    /**
+     * @return number of documents waiting in the ring buffer of each lane.
+     *         empty if the parallel lanes are not used
+     */
+    int[] getLaneQueueDepths();
+
+    /**
+     * @return number of documents dropped by each lane
+     */
+    long[] getLaneDroppedCounts();
+
+    /**
+     * @return number of documents written to each lane
+     */
+    long[] getLaneWrittenCounts();
+
+    /**
+     * @return number of log events sampled out by the rate limits
+     */
+    long getSampledOutCount();
+
+    /**
+     * @return number of fields dropped because they do not fit the schema
+     */
+    long getDroppedFieldCount();
+
+    /**
+     * set all counters and histograms to 0.
+     */
+    void reset();
+}
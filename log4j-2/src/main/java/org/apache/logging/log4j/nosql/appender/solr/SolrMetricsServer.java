@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * {@link SolrServer} recording the round trip, the QTime and the outcome of
+ * every request to the wrapped server in {@link SolrMetrics}. A request with
+ * a response status other than 0 counts as failed.
+ */
+public final class SolrMetricsServer extends SolrServer {
+    private static final long serialVersionUID = 1L;
+
+    // wrapped solr server
+    private final SolrServer solrServer;
+
+    // metrics the requests are recorded in
+    private final SolrMetrics metrics;
+
+    /**
+     * default constructor.
+     *
+     * @param solrServer
+     *            solr server to measure
+     * @param metrics
+     *            metrics the requests are recorded in
+     */
+    public SolrMetricsServer(final SolrServer solrServer,
+            final SolrMetrics metrics) {
+        this.solrServer = solrServer;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public NamedList<Object> request(final SolrRequest request)
+            throws SolrServerException, IOException {
+        long start = System.nanoTime();
+        NamedList<Object> response;
+        try {
+            response = this.solrServer.request(request);
+        } catch (SolrServerException e) {
+            this.metrics.recordFailure(cause(e), System.nanoTime() - start);
+            throw e;
+        } catch (IOException e) {
+            this.metrics.recordFailure(cause(e), System.nanoTime() - start);
+            throw e;
+        } catch (RuntimeException e) {
+            this.metrics.recordFailure(cause(e), System.nanoTime() - start);
+            throw e;
+        }
+        long latency = System.nanoTime() - start;
+
+        // a streaming server answers without header
+        int status = 0;
+        int qTime = -1;
+        Object header = response == null ? null : response
+                .get("responseHeader");
+        if (header instanceof NamedList) {
+            status = intValue(((NamedList<?>) header).get("status"), 0);
+            qTime = intValue(((NamedList<?>) header).get("QTime"), -1);
+        }
+        if (status != 0) {
+            this.metrics.recordFailure("status(" + status + ")", latency);
+        } else {
+            this.metrics.recordSuccess(docs(request), latency, qTime);
+        }
+        return response;
+    }
+
+    @Override
+    public void shutdown() {
+        this.solrServer.shutdown();
+    }
+
+    // helper
+    /**
+     * @return cause of a failed request: the exception type, for solr errors
+     *         together with the error code
+     */
+    static String cause(final Exception e) {
+        if (e instanceof SolrException) {
+            return e.getClass().getSimpleName() + "("
+                    + ((SolrException) e).code() + ")";
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    private static int docs(final SolrRequest request) {
+        if (request instanceof UpdateRequest) {
+            List<SolrInputDocument> docs = ((UpdateRequest) request)
+                    .getDocuments();
+            return docs == null ? 0 : docs.size();
+        }
+        return 0;
+    }
+
+    private static int intValue(final Object value, int defaultValue) {
+        return value instanceof Number ? ((Number) value).intValue()
+                : defaultValue;
+    }
+}
@@ -18,61 +18,503 @@ package org.apache.logging.log4j.nosql.appender.solr;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.logging.log4j.nosql.appender.NoSQLObject;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
 
 /**
  * The Apache Solr implementation of {@link NoSQLObject}. its a wrapper class
  * for the SolrInputDocument.
+ * <p>
+ * An object taken from a {@link SolrObjectPool} is recycled after its
+ * document was sent: the document is cleared and the field holders are kept
+ * for the next log event.
+ * <p>
+ * An object with a {@link SolrFieldMapping} collects its fields until it is
+ * known whether it is the document of the log event or a nested object. Only
+ * the fields of the document of the log event are mapped.
+ * <p>
+ * Nested objects (thrown, source, marker, contextMap, ...) are added as child
+ * documents, so a log event is indexed as a block of documents. An object
+ * which flattens its nested objects replaces the child documents of a log
+ * event by fields prefixed with the path of the nested object, e.g.
+ * thrown.message or contextMap.userId. The values of an array of nested
+ * objects become multi valued fields, e.g. thrown.stackTrace.className.
  */
 public final class SolrObject implements NoSQLObject<SolrInputDocument> {
+    // field of the NoSQL appender holding the throwable
+    private static final String THROWN = "thrown";
+
+    // separates the path of a flattened field
+    static final char SEPARATOR = '.';
+
     // solr document
     private final SolrInputDocument solrDoc;
 
+    // pool the object is returned to. null if the object is not pooled
+    private final SolrObjectPool pool;
+
+    // field mapping. null if the fields are added as they are
+    private final SolrFieldMapping mapping;
+
+    // fields waiting for the mapping
+    private String[] pendingNames;
+    private Object[] pendingValues;
+    private boolean[] pendingMulti;
+    private int pendingCount;
+
+    // nested document of the thrown field. null if nothing was thrown
+    private SolrInputDocument thrown;
+
+    // true to flatten the nested objects of a log event
+    private final boolean flatten;
+
+    // field names of the child documents. only kept if flattened
+    private final List<String> childNames;
+
+    // field holders of a pooled object, reused by every log event
+    private FieldHolder[] holders;
+    private int holderCount;
+
+    // true while a pooled object is used by a log event
+    private boolean inUse;
+
     /**
      * default constructor.
      */
     public SolrObject() {
-        this.solrDoc = new SolrInputDocument();
+        this((SolrFieldMapping) null);
+    }
+
+    /**
+     * constructor of an object mapping its fields.
+     * 
+     * @param mapping
+     *            field mapping. may be null
+     */
+    public SolrObject(final SolrFieldMapping mapping) {
+        this(mapping, false);
+    }
+
+    /**
+     * constructor of an object which may flatten its nested objects.
+     * 
+     * @param mapping
+     *            field mapping. may be null
+     * @param flatten
+     *            true to write nested objects as prefixed fields instead of
+     *            child documents
+     */
+    public SolrObject(final SolrFieldMapping mapping, boolean flatten) {
+        this.solrDoc = flatten ? new ObjectDocument(this)
+                : new SolrInputDocument();
+        this.pool = null;
+        this.mapping = mapping;
+        this.flatten = flatten;
+        this.childNames = flatten ? new ArrayList<String>() : null;
+        initPending();
+    }
+
+    /**
+     * constructor of a pooled object.
+     * 
+     * @param pool
+     *            pool the object is returned to
+     * @param mapping
+     *            field mapping. may be null
+     * @param flatten
+     *            true to write nested objects as prefixed fields
+     */
+    SolrObject(final SolrObjectPool pool, final SolrFieldMapping mapping,
+            boolean flatten) {
+        this.solrDoc = new ObjectDocument(this);
+        this.pool = pool;
+        this.mapping = mapping;
+        this.flatten = flatten;
+        this.childNames = flatten ? new ArrayList<String>() : null;
+        this.holders = new FieldHolder[16];
+        initPending();
     }
 
     @Override
     public void set(final String field, final Object value) {
-        // add a single valued field
-        this.solrDoc.addField(field, value);
+        if (this.mapping != null) {
+            defer(field, value, false);
+        } else {
+            add(field, value);
+        }
     }
 
     @Override
     public void set(final String field,
             final NoSQLObject<SolrInputDocument> value) {
+        if (this.mapping != null) {
+            defer(field, value, false);
+            return;
+        }
         // add a single nested document
-        this.solrDoc.addChildDocument(value.unwrap());
-
-        // TODO what is with field name?
+        addChild(field, value.unwrap());
     }
 
     @Override
     public void set(final String field, final Object[] values) {
-        // add a multi valued field
-        this.solrDoc.addField(field, Arrays.asList(values));
+        if (this.mapping != null) {
+            defer(field, values, true);
+        } else {
+            addAll(field, values);
+        }
     }
 
     @Override
     public void set(final String field,
             final NoSQLObject<SolrInputDocument>[] values) {
+        if (this.mapping != null) {
+            defer(field, values, true);
+            return;
+        }
         // add a a list of nested documents
-        final ArrayList<SolrInputDocument> list = new ArrayList<SolrInputDocument>();
         for (final NoSQLObject<SolrInputDocument> value : values) {
-            list.add(value.unwrap());
+            addChild(field, value.unwrap());
         }
-        this.solrDoc.addChildDocuments(list);
-
-        // TODO what is with field name?
     }
 
+    /**
+     * add the collected fields to the document. nested objects are added as
+     * they are, the fields of the document of a log event are mapped.
+     */
     @Override
     public SolrInputDocument unwrap() {
+        complete(false);
         return this.solrDoc;
     }
+
+    /**
+     * add the collected fields to the document.
+     * 
+     * @param event
+     *            true if this is the document of the log event, false for a
+     *            nested object
+     */
+    void complete(boolean event) {
+        for (int i = 0; i < this.pendingCount; i++) {
+            String field = this.pendingNames[i];
+            Object value = this.pendingValues[i];
+            boolean multi = this.pendingMulti[i];
+            this.pendingNames[i] = null;
+            this.pendingValues[i] = null;
+
+            String name = event ? this.mapping.map(field) : field;
+            if (event && value instanceof NoSQLObject
+                    && SolrFieldMapping.CONTEXT_MAP.equals(field)) {
+                // even if the context map itself is dropped
+                this.mapping.addContext(this.solrDoc, unwrap(value));
+            }
+
+            if (name == null) {
+                // dropped
+                recycleNested(value, multi);
+            } else if (value instanceof NoSQLObject) {
+                addChild(field, unwrap(value), name);
+            } else if (multi && value instanceof NoSQLObject[]) {
+                for (Object nested : (Object[]) value) {
+                    addChild(name, unwrap(nested));
+                }
+            } else if (multi) {
+                addAll(name, (Object[]) value);
+            } else {
+                add(name, value);
+            }
+        }
+        this.pendingCount = 0;
+    }
+
+    /**
+     * replace the child documents by prefixed fields if the object flattens
+     * its nested objects. called for the document of a log event, after the
+     * thrown object was processed.
+     */
+    void flatten() {
+        if (!this.flatten) {
+            return;
+        }
+        List<SolrInputDocument> children = this.solrDoc.getChildDocuments();
+        if (children == null || children.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < children.size(); i++) {
+            SolrInputDocument child = children.get(i);
+            flatten(this.solrDoc, this.childNames.get(i), child);
+            // the values are copied
+            recycle(child);
+        }
+        children.clear();
+        this.childNames.clear();
+        this.thrown = null;
+    }
+
+    /**
+     * remove the nested document of the thrown field and recycle it.
+     */
+    void removeThrown() {
+        if (this.thrown == null) {
+            return;
+        }
+        List<SolrInputDocument> children = this.solrDoc.getChildDocuments();
+        for (int i = 0; children != null && i < children.size(); i++) {
+            if (children.get(i) == this.thrown) {
+                children.remove(i);
+                if (this.flatten) {
+                    this.childNames.remove(i);
+                }
+                break;
+            }
+        }
+        recycle(this.thrown);
+        this.thrown = null;
+    }
+
+    /**
+     * @return nested document of the thrown field or null
+     */
+    SolrInputDocument getThrown() {
+        return this.thrown;
+    }
+
+    /**
+     * return the object of a sent document to its pool. nested documents are
+     * recycled too. documents which are not pooled are ignored.
+     * 
+     * @param doc
+     *            document which was sent
+     */
+    static void recycle(final SolrInputDocument doc) {
+        if (doc instanceof ObjectDocument) {
+            ((ObjectDocument) doc).owner.release();
+        }
+    }
+
+    /**
+     * mark a pooled object as used by a log event.
+     */
+    void acquire() {
+        this.inUse = true;
+    }
+
+    // helper
+    /**
+     * add a nested document.
+     */
+    private void addChild(final String field, final SolrInputDocument child) {
+        addChild(field, child, field);
+    }
+
+    /**
+     * add a nested document.
+     * 
+     * @param name
+     *            prefix of the fields if the document is flattened
+     */
+    private void addChild(final String field, final SolrInputDocument child,
+            final String name) {
+        if (THROWN.equals(field)) {
+            this.thrown = child;
+        }
+        this.solrDoc.addChildDocument(child);
+        if (this.flatten) {
+            this.childNames.add(name);
+        }
+    }
+
+    /**
+     * add the fields of a nested document and its nested documents with the
+     * prefix path to a document.
+     */
+    private static void flatten(final SolrInputDocument doc,
+            final String path, final SolrInputDocument nested) {
+        for (SolrInputField field : nested.values()) {
+            String name = path + SEPARATOR + field.getName();
+            Object value = field.getValue();
+            if (value instanceof Collection) {
+                // the list of a pooled field holder is cleared on recycle
+                for (Object element : (Collection<?>) value) {
+                    doc.addField(name, element);
+                }
+            } else if (value != null) {
+                doc.addField(name, value);
+            }
+        }
+        List<SolrInputDocument> children = nested.getChildDocuments();
+        if (children == null) {
+            return;
+        }
+        List<String> names = null;
+        if (nested instanceof ObjectDocument) {
+            names = ((ObjectDocument) nested).owner.childNames;
+        }
+        for (int i = 0; i < children.size(); i++) {
+            String name = names != null && i < names.size() ? names.get(i)
+                    : "child";
+            flatten(doc, path + SEPARATOR + name, children.get(i));
+        }
+    }
+
+    /**
+     * add a single valued field.
+     */
+    private void add(final String field, final Object value) {
+        if (this.pool == null || this.solrDoc.containsKey(field)) {
+            this.solrDoc.addField(field, value);
+            return;
+        }
+        FieldHolder holder = holder(field);
+        holder.field.setValue(value, 1.0f);
+        this.solrDoc.put(holder.name, holder.field);
+    }
+
+    /**
+     * add a multi valued field.
+     */
+    private void addAll(final String field, final Object[] values) {
+        if (this.pool == null || this.solrDoc.containsKey(field)) {
+            this.solrDoc.addField(field, Arrays.asList(values));
+            return;
+        }
+        FieldHolder holder = holder(field);
+        Collections.addAll(holder.values, values);
+        holder.field.setValue(holder.values, 1.0f);
+        this.solrDoc.put(holder.name, holder.field);
+    }
+
+    private void initPending() {
+        if (this.mapping != null) {
+            this.pendingNames = new String[16];
+            this.pendingValues = new Object[16];
+            this.pendingMulti = new boolean[16];
+        }
+    }
+
+    /**
+     * collect a field until it is known whether it must be mapped.
+     */
+    private void defer(final String field, final Object value, boolean multi) {
+        if (this.pendingCount == this.pendingNames.length) {
+            int length = this.pendingCount * 2;
+            this.pendingNames = Arrays.copyOf(this.pendingNames, length);
+            this.pendingValues = Arrays.copyOf(this.pendingValues, length);
+            this.pendingMulti = Arrays.copyOf(this.pendingMulti, length);
+        }
+        this.pendingNames[this.pendingCount] = field;
+        this.pendingValues[this.pendingCount] = value;
+        this.pendingMulti[this.pendingCount] = multi;
+        this.pendingCount++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SolrInputDocument unwrap(final Object nested) {
+        return ((NoSQLObject<SolrInputDocument>) nested).unwrap();
+    }
+
+    /**
+     * recycle the nested objects of a dropped field.
+     */
+    private static void recycleNested(final Object value, boolean multi) {
+        if (value instanceof NoSQLObject) {
+            recycle(unwrap(value));
+        } else if (multi && value instanceof NoSQLObject[]) {
+            for (Object nested : (Object[]) value) {
+                recycle(unwrap(nested));
+            }
+        }
+    }
+
+    /**
+     * clear the document and return the object to its pool.
+     */
+    private void release() {
+        if (!this.inUse) {
+            // already recycled or not pooled
+            return;
+        }
+        this.inUse = false;
+        this.thrown = null;
+
+        for (int i = 0; i < this.pendingCount; i++) {
+            this.pendingNames[i] = null;
+            this.pendingValues[i] = null;
+        }
+        this.pendingCount = 0;
+
+        List<SolrInputDocument> children = this.solrDoc.getChildDocuments();
+        if (children != null) {
+            for (SolrInputDocument child : children) {
+                recycle(child);
+            }
+            children.clear();
+        }
+        if (this.childNames != null) {
+            this.childNames.clear();
+        }
+        this.solrDoc.clear();
+        this.solrDoc.setDocumentBoost(1.0f);
+        for (int i = 0; i < this.holderCount; i++) {
+            this.holders[i].field.setValue(null, 1.0f);
+            this.holders[i].values.clear();
+        }
+        this.pool.release(this);
+    }
+
+    /**
+     * get the holder of a field. the field name of a new holder is interned,
+     * so the names of the next log events are usually found by identity.
+     */
+    private FieldHolder holder(final String field) {
+        for (int i = 0; i < this.holderCount; i++) {
+            if (this.holders[i].name == field) {
+                return this.holders[i];
+            }
+        }
+        for (int i = 0; i < this.holderCount; i++) {
+            if (this.holders[i].name.equals(field)) {
+                return this.holders[i];
+            }
+        }
+
+        if (this.holderCount == this.holders.length) {
+            this.holders = Arrays.copyOf(this.holders, this.holderCount * 2);
+        }
+        FieldHolder holder = new FieldHolder(field.intern());
+        this.holders[this.holderCount++] = holder;
+        return holder;
+    }
+
+    /**
+     * field of a pooled object together with the list of its values.
+     */
+    private static final class FieldHolder {
+        private final String name;
+        private final SolrInputField field;
+        private final ArrayList<Object> values = new ArrayList<Object>();
+
+        private FieldHolder(final String name) {
+            this.name = name;
+            this.field = new SolrInputField(name);
+        }
+    }
+
+    /**
+     * document knowing the object it belongs to.
+     */
+    private static final class ObjectDocument extends SolrInputDocument {
+        private static final long serialVersionUID = 1L;
+
+        private final transient SolrObject owner;
+
+        private ObjectDocument(final SolrObject owner) {
+            this.owner = owner;
+        }
+    }
 }
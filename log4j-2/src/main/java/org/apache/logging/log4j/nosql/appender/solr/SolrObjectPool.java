@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of recyclable {@link SolrObject}s. An object is taken for
+ * every log event and returned by the writer as soon as the request
+ * containing its document was sent. If the pool is empty a new object is
+ * created; objects returned to a full pool are left to the garbage collector.
+ */
+public final class SolrObjectPool {
+    // objects ready to be used
+    private final BlockingQueue<SolrObject> free;
+
+    // field mapping of the objects. may be null
+    private final SolrFieldMapping mapping;
+
+    // true if the objects flatten their nested objects
+    private final boolean flatten;
+
+    /**
+     * default constructor.
+     * 
+     * @param poolSize
+     *            max number of idle objects kept by the pool
+     */
+    public SolrObjectPool(int poolSize) {
+        this(poolSize, null);
+    }
+
+    /**
+     * constructor of a pool of objects mapping their fields.
+     * 
+     * @param poolSize
+     *            max number of idle objects kept by the pool
+     * @param mapping
+     *            field mapping of the objects. may be null
+     */
+    public SolrObjectPool(int poolSize, final SolrFieldMapping mapping) {
+        this(poolSize, mapping, false);
+    }
+
+    /**
+     * constructor of a pool of objects which may flatten their nested
+     * objects.
+     * 
+     * @param poolSize
+     *            max number of idle objects kept by the pool
+     * @param mapping
+     *            field mapping of the objects. may be null
+     * @param flatten
+     *            true to write nested objects as prefixed fields instead of
+     *            child documents
+     */
+    public SolrObjectPool(int poolSize, final SolrFieldMapping mapping,
+            boolean flatten) {
+        this.free = new ArrayBlockingQueue<SolrObject>(poolSize);
+        this.mapping = mapping;
+        this.flatten = flatten;
+    }
+
+    /**
+     * @return an idle object of the pool or a new pooled object
+     */
+    public SolrObject borrow() {
+        SolrObject solrObject = this.free.poll();
+        if (solrObject == null) {
+            solrObject = new SolrObject(this, this.mapping, this.flatten);
+        }
+        solrObject.acquire();
+        return solrObject;
+    }
+
+    /**
+     * @return number of idle objects
+     */
+    public int size() {
+        return this.free.size();
+    }
+
+    /**
+     * return a cleared object to the pool.
+     */
+    void release(final SolrObject solrObject) {
+        this.free.offer(solrObject);
+    }
+}
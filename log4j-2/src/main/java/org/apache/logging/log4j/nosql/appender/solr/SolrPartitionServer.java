@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * {@link SolrServer} routing the documents of an update request to time
+ * partitioned collections. The documents are grouped by the collection
+ * computed by a {@link SolrPartitioner} and every group is sent to the solr
+ * server of its collection. These servers are created once per collection
+ * and cached. The least recently used server is shut down when the cache is
+ * full, so the servers of past periods do not pile up. Requests without
+ * documents (e.g. commit, ping) are sent to the default server.
+ * <p>
+ * If a group fails, the groups sent before are indexed already. A retry of
+ * the request (circuit breaker, spill journal) indexes them again.
+ */
+public final class SolrPartitionServer extends SolrServer {
+    private static final long serialVersionUID = 1L;
+
+    // max number of cached servers, e.g. the current and the previous period
+    // with 64 values of the partition field each
+    private static final int MAX_SERVERS = 128;
+
+    /**
+     * creates the solr server of a collection.
+     */
+    public static interface Targets {
+        /**
+         * @param collection
+         *            name of the collection
+         * @return solr server sending requests to the collection
+         */
+        SolrServer create(String collection);
+    }
+
+    // server of the requests without documents
+    private final SolrServer defaultServer;
+
+    // computes the collection of a document
+    private final SolrPartitioner partitioner;
+
+    // creates the servers of the collections
+    private final Targets targets;
+
+    // solr fields of the timestamp and of the partition field. the
+    // partition field is null if not used
+    private final String millisField;
+    private final String partitionField;
+
+    // servers by collection in access order. guarded by itself
+    private final LinkedHashMap<String, SolrServer> servers =
+            new LinkedHashMap<String, SolrServer>(16, 0.75f, true);
+
+    /**
+     * default constructor.
+     *
+     * @param defaultServer
+     *            server of the requests without documents
+     * @param partitioner
+     *            computes the collection of a document
+     * @param targets
+     *            creates the servers of the collections
+     * @param millisField
+     *            solr field holding the timestamp of the log event
+     * @param partitionField
+     *            solr field whose value is appended to the collection name.
+     *            null if not used
+     */
+    public SolrPartitionServer(final SolrServer defaultServer,
+            final SolrPartitioner partitioner, final Targets targets,
+            final String millisField, final String partitionField) {
+        this.defaultServer = defaultServer;
+        this.partitioner = partitioner;
+        this.targets = targets;
+        this.millisField = millisField;
+        this.partitionField = partitionField;
+    }
+
+    @Override
+    public NamedList<Object> request(final SolrRequest request)
+            throws SolrServerException, IOException {
+        List<SolrInputDocument> docs = null;
+        if (request instanceof UpdateRequest) {
+            docs = ((UpdateRequest) request).getDocuments();
+        }
+        if (docs == null || docs.isEmpty()) {
+            return this.defaultServer.request(request);
+        }
+
+        // a batch usually belongs to a single collection
+        String first = collection(docs.get(0));
+        boolean single = true;
+        for (int i = 1; i < docs.size() && single; i++) {
+            single = first.equals(collection(docs.get(i)));
+        }
+        if (single) {
+            return server(first).request(request);
+        }
+
+        Map<String, List<SolrInputDocument>> groups =
+                new LinkedHashMap<String, List<SolrInputDocument>>();
+        for (SolrInputDocument doc : docs) {
+            String collection = collection(doc);
+            List<SolrInputDocument> group = groups.get(collection);
+            if (group == null) {
+                group = new ArrayList<SolrInputDocument>();
+                groups.put(collection, group);
+            }
+            group.add(doc);
+        }
+        UpdateRequest update = (UpdateRequest) request;
+        NamedList<Object> response = null;
+        for (Map.Entry<String, List<SolrInputDocument>> group : groups
+                .entrySet()) {
+            UpdateRequest part = new UpdateRequest();
+            part.add(group.getValue());
+            part.setCommitWithin(update.getCommitWithin());
+            if (update.getParams() != null) {
+                part.setParams(new ModifiableSolrParams(update.getParams()));
+            }
+            response = server(group.getKey()).request(part);
+        }
+        return response;
+    }
+
+    /**
+     * shut down the servers of the collections and the default server.
+     */
+    @Override
+    public void shutdown() {
+        List<SolrServer> servers;
+        synchronized (this.servers) {
+            servers = new ArrayList<SolrServer>(this.servers.values());
+            this.servers.clear();
+        }
+        for (SolrServer server : servers) {
+            server.shutdown();
+        }
+        this.defaultServer.shutdown();
+    }
+
+    /**
+     * @return names of the collections whose servers are cached, the least
+     *         recently used first
+     */
+    public List<String> getCollections() {
+        synchronized (this.servers) {
+            return new ArrayList<String>(this.servers.keySet());
+        }
+    }
+
+    // helper
+    private String collection(final SolrInputDocument doc) {
+        Object millis = doc.getFieldValue(this.millisField);
+        return this.partitioner.collection(
+                millis instanceof Number ? ((Number) millis).longValue()
+                        : System.currentTimeMillis(),
+                this.partitionField == null ? null : doc
+                        .getFieldValue(this.partitionField));
+    }
+
+    private SolrServer server(final String collection) {
+        SolrServer server;
+        SolrServer evicted = null;
+        synchronized (this.servers) {
+            server = this.servers.get(collection);
+            if (server != null) {
+                return server;
+            }
+            server = this.targets.create(collection);
+            if (this.servers.size() >= MAX_SERVERS) {
+                Iterator<SolrServer> eldest = this.servers.values().iterator();
+                evicted = eldest.next();
+                eldest.remove();
+            }
+            this.servers.put(collection, server);
+        }
+        if (evicted != null) {
+            // the servers of the collections share their connections, a
+            // request still running on the evicted server is not affected
+            evicted.shutdown();
+        }
+        return server;
+    }
+
+    /**
+     * solr server of a collection sharing the connection of another server.
+     * shutdown does not shut down the shared server.
+     */
+    public static final class Shared extends SolrServer {
+        private static final long serialVersionUID = 1L;
+
+        // shared solr server
+        private final SolrServer solrServer;
+
+        // value of the collection parameter. null if not set
+        private final String collection;
+
+        /**
+         * default constructor.
+         *
+         * @param solrServer
+         *            shared solr server
+         * @param collection
+         *            sent as collection parameter of every request (e.g. for
+         *            {@link org.apache.solr.client.solrj.impl.CloudSolrServer}
+         *            ). null to send the requests as they are
+         */
+        public Shared(final SolrServer solrServer, final String collection) {
+            this.solrServer = solrServer;
+            this.collection = collection;
+        }
+
+        @Override
+        public NamedList<Object> request(final SolrRequest request)
+                throws SolrServerException, IOException {
+            if (this.collection != null && request instanceof UpdateRequest) {
+                ((UpdateRequest) request).setParam("collection",
+                        this.collection);
+            }
+            return this.solrServer.request(request);
+        }
+
+        @Override
+        public void shutdown() {
+            // the shared server is shut down by its owner
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Derives the name of the collection of a log event from its timestamp, e.g.
+ * logs_20140601 for the pattern 'logs_'yyyyMMdd. Optionally the value of a
+ * field (e.g. level) is appended, e.g. logs_20140601_error. Timestamps are
+ * interpreted in UTC.
+ * <p>
+ * The name of the current period (hour, day, month or year, depending on the
+ * smallest unit of the pattern) is computed once, so a log event of the
+ * current period costs a range check and no date formatting. The period of
+ * the last older log event is kept as well.
+ */
+public final class SolrPartitioner {
+    // max number of field values remembered per period
+    private static final int MAX_FIELD_VALUES = 64;
+
+    // pattern of the collection names
+    private final String pattern;
+
+    // calendar field of the smallest unit of the pattern
+    private final int unit;
+
+    // formatter of the collection names. guarded by this
+    private final SimpleDateFormat format;
+
+    // calendar computing the periods. guarded by this
+    private final Calendar calendar;
+
+    // the most recent period
+    private volatile Period current;
+
+    // the last period used by an older log event (e.g. late log events after
+    // the start of a new day). null if not used yet
+    private volatile Period older;
+
+    /**
+     * default constructor.
+     *
+     * @param pattern
+     *            {@link SimpleDateFormat} pattern of the collection names.
+     *            literals have to be quoted
+     * @throws IllegalArgumentException
+     *             if the pattern is invalid
+     */
+    public SolrPartitioner(final String pattern) {
+        this.pattern = pattern;
+        this.unit = unit(pattern);
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        this.format = new SimpleDateFormat(pattern, Locale.ENGLISH);
+        this.format.setTimeZone(utc);
+        this.calendar = Calendar.getInstance(utc, Locale.ENGLISH);
+        this.current = period(System.currentTimeMillis());
+    }
+
+    /**
+     * get the collection of a log event.
+     *
+     * @param millis
+     *            timestamp of the log event
+     * @param fieldValue
+     *            value of the partition field. null if not used
+     * @return name of the collection
+     */
+    public String collection(long millis, final Object fieldValue) {
+        Period period = this.current;
+        if (!period.contains(millis)) {
+            Period last = this.older;
+            if (last != null && last.contains(millis)) {
+                period = last;
+            } else {
+                period = period(millis);
+                if (period.start > this.current.start) {
+                    this.older = this.current;
+                    this.current = period;
+                } else {
+                    this.older = period;
+                }
+            }
+        }
+        if (fieldValue == null) {
+            return period.name;
+        }
+
+        String value = fieldValue.toString();
+        String name = period.names.get(value);
+        if (name == null) {
+            name = period.name + "_" + sanitize(value);
+            if (period.names.size() < MAX_FIELD_VALUES) {
+                period.names.putIfAbsent(value, name);
+            }
+        }
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return this.pattern;
+    }
+
+    // helper
+    /**
+     * compute the period of a timestamp.
+     */
+    @SuppressWarnings("fallthrough")
+    private synchronized Period period(long millis) {
+        Calendar c = this.calendar;
+        c.setTimeInMillis(millis);
+        switch (this.unit) {
+        case Calendar.YEAR:
+            c.set(Calendar.MONTH, Calendar.JANUARY);
+            // fall through
+        case Calendar.MONTH:
+            c.set(Calendar.DAY_OF_MONTH, 1);
+            // fall through
+        case Calendar.DAY_OF_MONTH:
+            c.set(Calendar.HOUR_OF_DAY, 0);
+            // fall through
+        default:
+            c.set(Calendar.MINUTE, 0);
+            c.set(Calendar.SECOND, 0);
+            c.set(Calendar.MILLISECOND, 0);
+        }
+        long start = c.getTimeInMillis();
+        c.add(this.unit, 1);
+        long end = c.getTimeInMillis();
+        return new Period(start, end, this.format.format(new Date(start)));
+    }
+
+    /**
+     * @return calendar field of the smallest unit of a pattern. quoted
+     *         literals are skipped
+     */
+    static int unit(final String pattern) {
+        int unit = Calendar.YEAR;
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted) {
+                if (c == 'H' || c == 'k' || c == 'K' || c == 'h') {
+                    return Calendar.HOUR_OF_DAY;
+                } else if (c == 'd' || c == 'D' || c == 'E') {
+                    unit = Calendar.DAY_OF_MONTH;
+                } else if (c == 'M' && unit == Calendar.YEAR) {
+                    unit = Calendar.MONTH;
+                }
+            }
+        }
+        return unit;
+    }
+
+    /**
+     * @return value usable in a collection name: lower case, characters other
+     *         than letters, digits and '_' replaced by '_'
+     */
+    static String sanitize(final String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = Character.toLowerCase(value.charAt(i));
+            sb.append((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '_' ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * period of the partition pattern with its collection names.
+     */
+    private static final class Period {
+        private final long start;
+        private final long end;
+        private final String name;
+
+        // collection names by value of the partition field
+        private final ConcurrentMap<String, String> names =
+                new ConcurrentHashMap<String, String>();
+
+        private Period(long start, long end, final String name) {
+            this.start = start;
+            this.end = end;
+            this.name = name;
+        }
+
+        private boolean contains(long millis) {
+            return millis >= this.start && millis < this.end;
+        }
+    }
+}
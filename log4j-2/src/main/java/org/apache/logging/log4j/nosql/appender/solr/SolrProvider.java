@@ -16,19 +16,31 @@
  */
 package org.apache.logging.log4j.nosql.appender.solr;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.Locale;
 
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.AbstractLifeCycle;
+import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.plugins.Plugin;
-import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
-import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.config.plugins.PluginConfiguration;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.nosql.appender.NoSQLProvider;
 import org.apache.logging.log4j.status.StatusLogger;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
 import org.apache.solr.client.solrj.impl.CloudSolrServer;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrServer;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.apache.solr.client.solrj.impl.LBHttpSolrServer;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.core.CoreContainer;
 
 /**
@@ -42,35 +54,215 @@ public final class SolrProvider implements NoSQLProvider<SolrConnection> {
     // solr server instance to log to
     private final SolrServer solrServer;
 
-    // amount of time before commit is done
-    private int commitWithinMs;
+    // http client of the remote solr servers. SolrJ does not close it. null
+    // if the servers create their own
+    private final CloseableHttpClient httpClient;
+
+    // writer sending the documents to solr. shared by all connections
+    private final SolrWriter solrWriter;
+
+    // settings of the connections
+    private final SolrConnection.Builder connections;
+
+    // writers with dispatcher threads. empty if the documents are sent by
+    // the logging threads
+    private final SolrAsyncWriter[] asyncWriters;
+
+    // field mapping. null if the fields are written as they are
+    private final SolrFieldMapping fieldMapping;
+
+    // reads the log events back from solr
+    private final SolrLogReader reader;
+
+    // metrics of the requests sent to solr
+    private final SolrMetrics metrics;
 
     // description of the solr provider
     private final String description;
 
+    // configuration the provider belongs to. null if it is built without
+    private final Configuration configuration;
+
+    // shuts the provider down on jvm exit. null once it is shut down
+    private Thread shutdownHook;
+
+    // true once shutdown() was called. guarded by this
+    private boolean stopped;
+
     // default coreName
     private static String DEFAULT_CORENAME = "collection1";
 
+    // default amount of time a document waits in a batch
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+
+    // default number of documents the ring buffer of the async mode can hold
+    private static final int DEFAULT_RING_BUFFER_SIZE = 1024;
+
+    // default queue size and number of runner threads of the streaming mode
+    private static final int DEFAULT_QUEUE_SIZE = 100;
+    private static final int DEFAULT_THREAD_COUNT = 2;
+
+    // defaults of the spill journal
+    private static final int DEFAULT_SPILL_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final long DEFAULT_SPILL_MAX_DISK_SIZE = 256L * 1024 * 1024;
+    private static final long DEFAULT_SPILL_REPLAY_INTERVAL_MS = 1000;
+    private static final int DEFAULT_SPILL_REPLAY_BATCH_SIZE = 500;
+
+    // defaults of the circuit breaker
+    private static final int DEFAULT_ERROR_RATE_THRESHOLD = 50;
+    private static final long DEFAULT_OPEN_STATE_MS = 5000;
+    private static final long DEFAULT_RETRY_BACKOFF_MS = 100;
+
+    // default number of throwable fingerprints remembered as sent
+    private static final int DEFAULT_FINGERPRINT_CACHE_SIZE = 1024;
+
+    // default number of keys held back by the rollup
+    private static final int DEFAULT_ROLLUP_MAX_KEYS = 1024;
+
+    // default bounds of the adaptive commitWithin
+    private static final int DEFAULT_MIN_COMMIT_WITHIN_MS = 1000;
+    private static final int DEFAULT_MAX_COMMIT_WITHIN_MS = 60000;
+
+    // default unique key field
+    private static final String DEFAULT_ID_FIELD = "id";
+
+    // log events are read back sorted by their timestamp
+    private static final String MILLIS_FIELD = "millis";
+    private static final int DEFAULT_READ_PAGE_SIZE = 1000;
+
+    // field scanned for solr request log lines
+    private static final String MESSAGE_FIELD = "message";
+
+    // fields the rate limits are selected by
+    private static final String LOGGER_FIELD = "loggerName";
+    private static final String LEVEL_FIELD = "level";
+
     /**
      * constructor of the SolrProvider.
      * 
      * @param solrServer
      *            solr server instance to log to
-     * @param commitWithinMs
-     *            amount of time before commit is done
+     * @param httpClient
+     *            http client of the remote solr servers. may be null
+     * @param solrWriter
+     *            writer sending the documents to solr
+     * @param connections
+     *            settings of the connections, using solrWriter
+     * @param asyncWriters
+     *            writers with dispatcher threads, wrapped by solrWriter
+     * @param fieldMapping
+     *            field mapping. may be null
+     * @param reader
+     *            reads the log events back from solr
+     * @param metrics
+     *            metrics of the requests sent to solr
      * @param description
      *            description of the solr provider
+     * @param configuration
+     *            configuration the provider belongs to. may be null
      */
-    private SolrProvider(final SolrServer solrServer, int commitWithinMs,
-            final String description) {
+    private SolrProvider(final SolrServer solrServer,
+            final CloseableHttpClient httpClient, final SolrWriter solrWriter,
+            final SolrConnection.Builder connections,
+            final SolrAsyncWriter[] asyncWriters,
+            final SolrFieldMapping fieldMapping, final SolrLogReader reader,
+            final SolrMetrics metrics, final String description,
+            final Configuration configuration) {
         this.solrServer = solrServer;
+        this.httpClient = httpClient;
+        this.solrWriter = solrWriter;
+        this.connections = connections;
+        this.asyncWriters = asyncWriters;
+        this.fieldMapping = fieldMapping;
+        this.reader = reader;
+        this.metrics = metrics;
         this.description = "solr{ " + description + " }";
-        this.commitWithinMs = commitWithinMs;
+        this.configuration = configuration;
     }
 
     @Override
     public SolrConnection getConnection() {
-        return new SolrConnection(this.solrServer, this.commitWithinMs);
+        return this.connections.build();
+    }
+
+    /**
+     * check if the written documents contain the location of the caller. the
+     * NoSQL appender of log4j does not ask its provider, it always takes the
+     * location of the log event.
+     * 
+     * @return false if the field mapping drops all location fields
+     */
+    public boolean requiresLocation() {
+        return this.fieldMapping == null
+                || this.fieldMapping.requiresLocation();
+    }
+
+    /**
+     * @return reader of the log events, using the solr server of this
+     *         provider without its decorators (circuit breaker, metrics,
+     *         spill journal). partitioned log events are read from coreName
+     *         only
+     */
+    public SolrLogReader getReader() {
+        return this.reader;
+    }
+
+    /**
+     * @return metrics of the requests sent to solr. registered as MBean
+     *         named after {@link #toString()}
+     */
+    public SolrMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return true if the configuration the provider belongs to stops. it
+     *         stops its appenders, whose managers close their connections
+     */
+    boolean isStopping() {
+        if (!(this.configuration instanceof AbstractLifeCycle)) {
+            return false;
+        }
+        AbstractLifeCycle lifeCycle = (AbstractLifeCycle) this.configuration;
+        return lifeCycle.isStopping() || lifeCycle.isStopped();
+    }
+
+    /**
+     * send the documents which are still waiting, stop the timers and threads
+     * and shut the solr server down. called when the configuration of the
+     * provider stops (see {@link SolrConnection#close()}) or on jvm exit,
+     * further calls are ignored. the provider must not be used afterwards.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (this.stopped) {
+                return;
+            }
+            this.stopped = true;
+            if (this.shutdownHook != null
+                    && Thread.currentThread() != this.shutdownHook) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+                } catch (IllegalStateException e) {
+                    // jvm is shutting down already
+                }
+            }
+            this.shutdownHook = null;
+        }
+        try {
+            if (this.solrWriter instanceof SolrRollupWriter) {
+                ((SolrRollupWriter) this.solrWriter).stop();
+            } else {
+                this.solrWriter.flush();
+            }
+            for (SolrAsyncWriter asyncWriter : this.asyncWriters) {
+                asyncWriter.stop();
+            }
+        } finally {
+            this.solrServer.shutdown();
+            this.metrics.unregister();
+            closeHttpClient(this.httpClient);
+        }
     }
 
     @Override
@@ -79,20 +271,21 @@ public final class SolrProvider implements NoSQLProvider<SolrConnection> {
     }
 
     /**
-     * Factory method for creating an Apache Solr provider within the plugin
-     * manager.
+     * @return builder of an Apache Solr provider within the plugin manager
+     */
+    @PluginBuilderFactory
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Factory method for creating an Apache Solr provider. all other
+     * attributes keep their defaults, see {@link Builder}.
      * 
      * @param coreName
-     *            name of the core/collection. used by all solr server
-     *            implementation ({@link HttpSolrServer},
-     *            {@link LBHttpSolrServer}, {@link CloudSolrServer},
-     *            {@link EmbeddedSolrServer}). NOT optional for
-     *            {@link EmbeddedSolrServer}
+     *            name of the core/collection
      * @param commitWithinMs
-     *            amount of time before a commit is executed. used by all solr
-     *            server implementation ({@link HttpSolrServer},
-     *            {@link LBHttpSolrServer}, {@link CloudSolrServer},
-     *            {@link EmbeddedSolrServer}).
+     *            amount of time before a commit is executed
      * @param url
      *            solr URL used by {@link HttpSolrServer}
      * @param solrServerUrls
@@ -106,56 +299,1469 @@ public final class SolrProvider implements NoSQLProvider<SolrConnection> {
      *            {@link EmbeddedSolrServer}
      * @return new Apache Solr provider.
      */
-    @PluginFactory
-    public static SolrProvider createNoSQLProvider(
-            @PluginAttribute("coreName") final String coreName,
-            @PluginAttribute("commitWithinMs") final String commitWithinMs,
-            @PluginAttribute("url") final String url,
-            @PluginAttribute("solrServerUrls") final String solrServerUrls,
-            @PluginAttribute("zkHost") final String zkHost,
-            @PluginAttribute("solrHome") final String solrHome) {
-
-        // init commitWithin
-        int commitWithin;
-        if (commitWithinMs == null) {
-            // default -1 -> not used by insertObject()
-            commitWithin = -1;
-        } else {
-            commitWithin = Integer.parseInt(commitWithinMs);
-        }
-
-        // create the correct solr server
-        SolrProvider solrProvider = null;
-
-        if (url != null && url.length() > 0) {
-            // create SolrProvider with HttpSolrServer
-            solrProvider = getHttpSolrServer(url, coreName, commitWithin);
-        } else if (solrServerUrls != null && solrServerUrls.length() > 0) {
-            // create SolrProvider with LBHttpSolrServer
-            solrProvider = getLBHttpSolrServer(solrServerUrls, coreName,
-                    commitWithin);
-        } else if (zkHost != null && zkHost.length() > 0) {
-            // create SolrProvider with CloudSolrServer
-            solrProvider = getCloudSolrServer(zkHost, coreName, commitWithin);
-        } else if ((solrHome != null && solrHome.length() > 0)
-                && (coreName != null && coreName.length() > 0)) {
-            // create SolrProvider with EmbeddedSolrServer
-            solrProvider = getEmbeddedSolrServer(solrHome, coreName,
-                    commitWithin);
-        } else {
-            // no valid configuration found
-            LOGGER.error("No valid SolrProvider configuration found!");
+    public static SolrProvider createNoSQLProvider(final String coreName,
+            final String commitWithinMs, final String url,
+            final String solrServerUrls, final String zkHost,
+            final String solrHome) {
+        return newBuilder().withCoreName(coreName)
+                .withCommitWithinMs(commitWithinMs).withUrl(url)
+                .withSolrServerUrls(solrServerUrls).withZkHost(zkHost)
+                .withSolrHome(solrHome).build();
+    }
+
+    /**
+     * Builder of an Apache Solr provider within the plugin manager. every
+     * attribute is optional, the solr server is chosen by url,
+     * solrServerUrls, zkHost or solrHome.
+     */
+    public static final class Builder implements
+            org.apache.logging.log4j.core.util.Builder<SolrProvider> {
+        // attributes of the plugin, see their setters
+        @PluginBuilderAttribute
+        private String coreName;
+
+        @PluginBuilderAttribute
+        private String commitWithinMs;
+
+        @PluginBuilderAttribute
+        private String url;
+
+        @PluginBuilderAttribute
+        private String solrServerUrls;
+
+        @PluginBuilderAttribute
+        private String zkHost;
+
+        @PluginBuilderAttribute
+        private String solrHome;
+
+        @PluginBuilderAttribute
+        private String batchSize;
+
+        @PluginBuilderAttribute
+        private String flushIntervalMs;
+
+        @PluginBuilderAttribute
+        private String async;
+
+        @PluginBuilderAttribute
+        private String ringBufferSize;
+
+        @PluginBuilderAttribute
+        private String dispatcherThreads;
+
+        @PluginBuilderAttribute
+        private String overflowPolicy;
+
+        @PluginBuilderAttribute
+        private String overflowLevel;
+
+        @PluginBuilderAttribute
+        private String queueSize;
+
+        @PluginBuilderAttribute
+        private String threadCount;
+
+        @PluginBuilderAttribute
+        private String requestWriter;
+
+        @PluginBuilderAttribute
+        private String allowCompression;
+
+        @PluginBuilderAttribute
+        private String maxConnections;
+
+        @PluginBuilderAttribute
+        private String maxConnectionsPerHost;
+
+        @PluginBuilderAttribute
+        private String connectionTimeoutMs;
+
+        @PluginBuilderAttribute
+        private String soTimeoutMs;
+
+        @PluginBuilderAttribute
+        private String keepAliveMs;
+
+        @PluginBuilderAttribute
+        private String spillDirectory;
+
+        @PluginBuilderAttribute
+        private String spillSegmentSize;
+
+        @PluginBuilderAttribute
+        private String spillMaxDiskSize;
+
+        @PluginBuilderAttribute
+        private String spillReplayIntervalMs;
+
+        @PluginBuilderAttribute
+        private String errorRateThreshold;
+
+        @PluginBuilderAttribute
+        private String latencyThresholdMs;
+
+        @PluginBuilderAttribute
+        private String openStateMs;
+
+        @PluginBuilderAttribute
+        private String maxRetries;
+
+        @PluginBuilderAttribute
+        private String retryBackoffMs;
+
+        @PluginBuilderAttribute
+        private String poolSize;
+
+        @PluginBuilderAttribute
+        private String dedupThrowables;
+
+        @PluginBuilderAttribute
+        private String ignoreLineNumbers;
+
+        @PluginBuilderAttribute
+        private String fingerprintCacheSize;
+
+        @PluginBuilderAttribute
+        private String rollupWindowMs;
+
+        @PluginBuilderAttribute
+        private String rollupMaxKeys;
+
+        @PluginBuilderAttribute
+        private String partitionPattern;
+
+        @PluginBuilderAttribute
+        private String partitionField;
+
+        @PluginBuilderAttribute
+        private String leaderRouting;
+
+        @PluginBuilderAttribute
+        private String idField;
+
+        @PluginBuilderAttribute
+        private String directUpdates;
+
+        @PluginBuilderAttribute
+        private String overwrite;
+
+        @PluginBuilderAttribute
+        private String commitWithinMinMs;
+
+        @PluginBuilderAttribute
+        private String commitWithinMaxMs;
+
+        @PluginBuilderAttribute
+        private String generateIds;
+
+        @PluginBuilderAttribute
+        private String nodeId;
+
+        @PluginBuilderAttribute
+        private String flattenNested;
+
+        @PluginBuilderAttribute
+        private String requestLog;
+
+        @PluginBuilderAttribute
+        private String rateLimits;
+
+        @PluginBuilderAttribute
+        private String rateLimitLatencyMs;
+
+        @PluginBuilderAttribute
+        private String lanes;
+
+        @PluginBuilderAttribute
+        private String laneKey;
+
+        @PluginBuilderAttribute
+        private String validateSchema;
+
+        @PluginBuilderAttribute
+        private String schemaRefreshMs;
+
+        @PluginBuilderAttribute
+        private String unknownFields;
+
+        @PluginElement("Fields")
+        private SolrField[] fields;
+
+        @PluginElement("FieldMapping")
+        private SolrFieldMapping fieldMapping;
+
+        @PluginConfiguration
+        private Configuration configuration;
+
+        /**
+         * @param coreName
+         *            name of the core/collection. used by all solr server
+         *            implementation ({@link HttpSolrServer},
+         *            {@link LBHttpSolrServer}, {@link CloudSolrServer},
+         *            {@link EmbeddedSolrServer}). NOT optional for
+         *            {@link EmbeddedSolrServer}
+         * @return this builder
+         */
+        public Builder withCoreName(final String coreName) {
+            this.coreName = coreName;
+            return this;
+        }
+
+        /**
+         * @param commitWithinMs
+         *            amount of time before a commit is executed. used by all
+         *            solr server implementation ({@link HttpSolrServer},
+         *            {@link LBHttpSolrServer}, {@link CloudSolrServer},
+         *            {@link EmbeddedSolrServer}).
+         * @return this builder
+         */
+        public Builder withCommitWithinMs(final String commitWithinMs) {
+            this.commitWithinMs = commitWithinMs;
+            return this;
         }
 
-        return solrProvider;
+        /**
+         * @param url
+         *            solr URL used by {@link HttpSolrServer} and
+         *            {@link ConcurrentUpdateSolrServer}
+         * @return this builder
+         */
+        public Builder withUrl(final String url) {
+            this.url = url;
+            return this;
+        }
+
+        /**
+         * @param solrServerUrls
+         *            comma (",") separated list of solr urls. used by
+         *            {@link LBHttpSolrServer}
+         * @return this builder
+         */
+        public Builder withSolrServerUrls(final String solrServerUrls) {
+            this.solrServerUrls = solrServerUrls;
+            return this;
+        }
+
+        /**
+         * @param zkHost
+         *            list of zooKeeper instances to connect to. used by
+         *            {@link CloudSolrServer}
+         * @return this builder
+         */
+        public Builder withZkHost(final String zkHost) {
+            this.zkHost = zkHost;
+            return this;
+        }
+
+        /**
+         * @param solrHome
+         *            path to the solr home directory. used by
+         *            {@link EmbeddedSolrServer}
+         * @return this builder
+         */
+        public Builder withSolrHome(final String solrHome) {
+            this.solrHome = solrHome;
+            return this;
+        }
+
+        /**
+         * @param batchSize
+         *            max number of documents sent with one bulk request.
+         *            batching is disabled if not specified. used by all solr
+         *            server implementation.
+         * @return this builder
+         */
+        public Builder withBatchSize(final String batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param flushIntervalMs
+         *            max amount of time a document waits in a batch before it
+         *            is sent. only used if batchSize is specified. default 1000
+         * @return this builder
+         */
+        public Builder withFlushIntervalMs(final String flushIntervalMs) {
+            this.flushIntervalMs = flushIntervalMs;
+            return this;
+        }
+
+        /**
+         * @param async
+         *            "true" to send the documents by background dispatcher
+         *            threads instead of the logging thread. default false
+         * @return this builder
+         */
+        public Builder withAsync(final String async) {
+            this.async = async;
+            return this;
+        }
+
+        /**
+         * @param ringBufferSize
+         *            max number of documents waiting for the dispatcher
+         *            threads. only used in async mode. default 1024
+         * @return this builder
+         */
+        public Builder withRingBufferSize(final String ringBufferSize) {
+            this.ringBufferSize = ringBufferSize;
+            return this;
+        }
+
+        /**
+         * @param dispatcherThreads
+         *            number of dispatcher threads. only used in async mode.
+         *            default 1
+         * @return this builder
+         */
+        public Builder withDispatcherThreads(final String dispatcherThreads) {
+            this.dispatcherThreads = dispatcherThreads;
+            return this;
+        }
+
+        /**
+         * @param overflowPolicy
+         *            what to do if the ring buffer is full: BLOCK, DROP_NEWEST,
+         *            DROP_OLDEST, DROP_BELOW_LEVEL or SPILL. only used in async
+         *            mode. default BLOCK
+         * @return this builder
+         */
+        public Builder withOverflowPolicy(final String overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * @param overflowLevel
+         *            log events less specific than this level are dropped by
+         *            DROP_BELOW_LEVEL. default INFO
+         * @return this builder
+         */
+        public Builder withOverflowLevel(final String overflowLevel) {
+            this.overflowLevel = overflowLevel;
+            return this;
+        }
+
+        /**
+         * @param queueSize
+         *            max number of update requests waiting to be streamed. if
+         *            queueSize or threadCount is specified together with url a
+         *            {@link ConcurrentUpdateSolrServer} is used. default 100
+         * @return this builder
+         */
+        public Builder withQueueSize(final String queueSize) {
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        /**
+         * @param threadCount
+         *            max number of runner threads streaming update requests.
+         *            used by {@link ConcurrentUpdateSolrServer}. default 2
+         * @return this builder
+         */
+        public Builder withThreadCount(final String threadCount) {
+            this.threadCount = threadCount;
+            return this;
+        }
+
+        /**
+         * @param requestWriter
+         *            encoding of update requests: "binary" (javabin) or "xml".
+         *            used by all remote solr server implementation. default xml
+         * @return this builder
+         */
+        public Builder withRequestWriter(final String requestWriter) {
+            this.requestWriter = requestWriter;
+            return this;
+        }
+
+        /**
+         * @param allowCompression
+         *            "true" to accept gzip/deflate compressed responses. used
+         *            by all remote solr server implementation.
+         * @return this builder
+         */
+        public Builder withAllowCompression(final String allowCompression) {
+            this.allowCompression = allowCompression;
+            return this;
+        }
+
+        /**
+         * @param maxConnections
+         *            max number of pooled http connections. used by all remote
+         *            solr server implementation.
+         * @return this builder
+         */
+        public Builder withMaxConnections(final String maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * @param maxConnectionsPerHost
+         *            max number of pooled http connections per solr host. used
+         *            by all remote solr server implementation.
+         * @return this builder
+         */
+        public Builder withMaxConnectionsPerHost(
+                final String maxConnectionsPerHost) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        /**
+         * @param connectionTimeoutMs
+         *            http connect timeout. used by all remote solr server
+         *            implementation.
+         * @return this builder
+         */
+        public Builder withConnectionTimeoutMs(
+                final String connectionTimeoutMs) {
+            this.connectionTimeoutMs = connectionTimeoutMs;
+            return this;
+        }
+
+        /**
+         * @param soTimeoutMs
+         *            http socket read timeout. used by all remote solr server
+         *            implementation.
+         * @return this builder
+         */
+        public Builder withSoTimeoutMs(final String soTimeoutMs) {
+            this.soTimeoutMs = soTimeoutMs;
+            return this;
+        }
+
+        /**
+         * @param keepAliveMs
+         *            amount of time an idle http connection is kept alive if
+         *            solr does not send a keep-alive timeout. used by all
+         *            remote solr server implementation.
+         * @return this builder
+         */
+        public Builder withKeepAliveMs(final String keepAliveMs) {
+            this.keepAliveMs = keepAliveMs;
+            return this;
+        }
+
+        /**
+         * @param spillDirectory
+         *            directory of the journal the log events are spilled to if
+         *            solr is not reachable. spilling is disabled if not
+         *            specified. requests failing in the runner threads of a
+         *            {@link ConcurrentUpdateSolrServer} are not spilled
+         * @return this builder
+         */
+        public Builder withSpillDirectory(final String spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        /**
+         * @param spillSegmentSize
+         *            size of a journal segment file in bytes. default 16 MB
+         * @return this builder
+         */
+        public Builder withSpillSegmentSize(final String spillSegmentSize) {
+            this.spillSegmentSize = spillSegmentSize;
+            return this;
+        }
+
+        /**
+         * @param spillMaxDiskSize
+         *            max number of bytes used by the journal. default 256 MB
+         * @return this builder
+         */
+        public Builder withSpillMaxDiskSize(final String spillMaxDiskSize) {
+            this.spillMaxDiskSize = spillMaxDiskSize;
+            return this;
+        }
+
+        /**
+         * @param spillReplayIntervalMs
+         *            amount of time between two attempts to replay the journal.
+         *            default 1000
+         * @return this builder
+         */
+        public Builder withSpillReplayIntervalMs(
+                final String spillReplayIntervalMs) {
+            this.spillReplayIntervalMs = spillReplayIntervalMs;
+            return this;
+        }
+
+        /**
+         * @param errorRateThreshold
+         *            failure rate of the last requests in percent opening the
+         *            circuit breaker. the circuit breaker is enabled if
+         *            errorRateThreshold, latencyThresholdMs or maxRetries is
+         *            specified. default 50
+         * @return this builder
+         */
+        public Builder withErrorRateThreshold(final String errorRateThreshold) {
+            this.errorRateThreshold = errorRateThreshold;
+            return this;
+        }
+
+        /**
+         * @param latencyThresholdMs
+         *            requests slower than this count as failed by the circuit
+         *            breaker. default 0 (disabled)
+         * @return this builder
+         */
+        public Builder withLatencyThresholdMs(final String latencyThresholdMs) {
+            this.latencyThresholdMs = latencyThresholdMs;
+            return this;
+        }
+
+        /**
+         * @param openStateMs
+         *            amount of time the circuit stays open before solr is
+         *            probed with /admin/ping. doubled for every failed probe.
+         *            default 5000
+         * @return this builder
+         */
+        public Builder withOpenStateMs(final String openStateMs) {
+            this.openStateMs = openStateMs;
+            return this;
+        }
+
+        /**
+         * @param maxRetries
+         *            max number of retries of a transient error. default 0
+         * @return this builder
+         */
+        public Builder withMaxRetries(final String maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * @param retryBackoffMs
+         *            wait time before the first retry. doubled for every
+         *            further retry. default 100
+         * @return this builder
+         */
+        public Builder withRetryBackoffMs(final String retryBackoffMs) {
+            this.retryBackoffMs = retryBackoffMs;
+            return this;
+        }
+
+        /**
+         * @param poolSize
+         *            max number of idle recyclable objects. objects and their
+         *            documents are recycled after they were sent if specified.
+         *            not used by {@link ConcurrentUpdateSolrServer}, it sends
+         *            the documents after add() returned
+         * @return this builder
+         */
+        public Builder withPoolSize(final String poolSize) {
+            this.poolSize = poolSize;
+            return this;
+        }
+
+        /**
+         * @param dedupThrowables
+         *            "true" to send the stack trace of a throwable once per
+         *            fingerprint as a separate document with the fingerprint as
+         *            idField. log events keep the fingerprint only. default
+         *            false
+         * @return this builder
+         */
+        public Builder withDedupThrowables(final String dedupThrowables) {
+            this.dedupThrowables = dedupThrowables;
+            return this;
+        }
+
+        /**
+         * @param ignoreLineNumbers
+         *            "true" to leave the line numbers out of the fingerprint.
+         *            default false
+         * @return this builder
+         */
+        public Builder withIgnoreLineNumbers(final String ignoreLineNumbers) {
+            this.ignoreLineNumbers = ignoreLineNumbers;
+            return this;
+        }
+
+        /**
+         * @param fingerprintCacheSize
+         *            max number of fingerprints remembered as sent. default
+         *            1024
+         * @return this builder
+         */
+        public Builder withFingerprintCacheSize(
+                final String fingerprintCacheSize) {
+            this.fingerprintCacheSize = fingerprintCacheSize;
+            return this;
+        }
+
+        /**
+         * @param rollupWindowMs
+         *            window in which log events with the same logger, level and
+         *            message are collapsed into one document with the fields
+         *            count, firstMillis and lastMillis. rollup is disabled if
+         *            not specified
+         * @return this builder
+         */
+        public Builder withRollupWindowMs(final String rollupWindowMs) {
+            this.rollupWindowMs = rollupWindowMs;
+            return this;
+        }
+
+        /**
+         * @param rollupMaxKeys
+         *            max number of distinct log events held back by the rollup.
+         *            default 1024
+         * @return this builder
+         */
+        public Builder withRollupMaxKeys(final String rollupMaxKeys) {
+            this.rollupMaxKeys = rollupMaxKeys;
+            return this;
+        }
+
+        /**
+         * @param partitionPattern
+         *            {@link java.text.SimpleDateFormat} pattern of time
+         *            partitioned collections, e.g. 'logs_'yyyyMMdd. the
+         *            documents are sent to the collection of their timestamp
+         *            (UTC) instead of coreName if specified. not supported by
+         *            {@link ConcurrentUpdateSolrServer}
+         * @return this builder
+         */
+        public Builder withPartitionPattern(final String partitionPattern) {
+            this.partitionPattern = partitionPattern;
+            return this;
+        }
+
+        /**
+         * @param partitionField
+         *            solr field whose value is appended to the name of the
+         *            partitioned collection, e.g. level for
+         *            logs_20140601_error. optional
+         * @return this builder
+         */
+        public Builder withPartitionField(final String partitionField) {
+            this.partitionField = partitionField;
+            return this;
+        }
+
+        /**
+         * @param leaderRouting
+         *            "true" to route the documents of a {@link CloudSolrServer}
+         *            to the leaders of their shards instead of sending them to
+         *            any node. documents without idField get a random id.
+         *            default false
+         * @return this builder
+         */
+        public Builder withLeaderRouting(final String leaderRouting) {
+            this.leaderRouting = leaderRouting;
+            return this;
+        }
+
+        /**
+         * @param idField
+         *            unique key field of the collections. documents without it
+         *            get a generated id when routed to the leaders. default id
+         * @return this builder
+         */
+        public Builder withIdField(final String idField) {
+            this.idField = idField;
+            return this;
+        }
+
+        /**
+         * @param directUpdates
+         *            "true" to add the documents directly to the update handler
+         *            of the core, skipping the update request processor chain.
+         *            documents need a unique key, e.g. by generateIds. the core
+         *            is closed by {@link SolrProvider#shutdown()}. only used by
+         *            {@link EmbeddedSolrServer}. default false
+         * @return this builder
+         */
+        public Builder withDirectUpdates(final String directUpdates) {
+            this.directUpdates = directUpdates;
+            return this;
+        }
+
+        /**
+         * @param overwrite
+         *            "false" to add the documents without deleting older
+         *            documents with the same unique key. solr skips the lookup
+         *            of the id, but a retried batch may be indexed twice.
+         *            replayed spill journals always overwrite. default true
+         * @return this builder
+         */
+        public Builder withOverwrite(final String overwrite) {
+            this.overwrite = overwrite;
+            return this;
+        }
+
+        /**
+         * @param commitWithinMinMs
+         *            commitWithin if the traffic is quiet. the commitWithin
+         *            adapts to the indexing rate and the response times of solr
+         *            between commitWithinMinMs and commitWithinMaxMs if one of
+         *            them is specified. default commitWithinMs or 1000
+         * @return this builder
+         */
+        public Builder withCommitWithinMinMs(final String commitWithinMinMs) {
+            this.commitWithinMinMs = commitWithinMinMs;
+            return this;
+        }
+
+        /**
+         * @param commitWithinMaxMs
+         *            max commitWithin under heavy traffic. default 60000
+         * @return this builder
+         */
+        public Builder withCommitWithinMaxMs(final String commitWithinMaxMs) {
+            this.commitWithinMaxMs = commitWithinMaxMs;
+            return this;
+        }
+
+        /**
+         * @param generateIds
+         *            "true" to give every document without idField a compact,
+         *            time-ordered id when it is logged. requires a nodeId.
+         *            default false
+         * @return this builder
+         */
+        public Builder withGenerateIds(final String generateIds) {
+            this.generateIds = generateIds;
+            return this;
+        }
+
+        /**
+         * @param nodeId
+         *            node part of the generated ids, 0 - 1048575. applications
+         *            logging to the same collection need different node ids.
+         *            required by generateIds
+         * @return this builder
+         */
+        public Builder withNodeId(final String nodeId) {
+            this.nodeId = nodeId;
+            return this;
+        }
+
+        /**
+         * @param flattenNested
+         *            "true" to write the nested objects of a log event (thrown,
+         *            source, marker, contextMap) as fields prefixed with their
+         *            path, e.g. thrown.message or contextMap.userId, instead of
+         *            child documents. default false
+         * @return this builder
+         */
+        public Builder withFlattenNested(final String flattenNested) {
+            this.flattenNested = flattenNested;
+            return this;
+        }
+
+        /**
+         * @param requestLog
+         *            "true" to extract QTime, hits, status, path, webapp and
+         *            params of solr request log lines into the fields qtime,
+         *            hits, status, path, webapp and params. default false
+         * @return this builder
+         */
+        public Builder withRequestLog(final String requestLog) {
+            this.requestLog = requestLog;
+            return this;
+        }
+
+        /**
+         * @param rateLimits
+         *            comma separated rate limits [loggerPrefix][:LEVEL]=rate in
+         *            log events per second, e.g. ":DEBUG=200,org.example=50".
+         *            log events above the rate are dropped, the written ones
+         *            carry their sampleWeight. optional
+         * @return this builder
+         */
+        public Builder withRateLimits(final String rateLimits) {
+            this.rateLimits = rateLimits;
+            return this;
+        }
+
+        /**
+         * @param rateLimitLatencyMs
+         *            the rate limits are lowered down to 1/16 while the round
+         *            trips of solr take longer. optional
+         * @return this builder
+         */
+        public Builder withRateLimitLatencyMs(final String rateLimitLatencyMs) {
+            this.rateLimitLatencyMs = rateLimitLatencyMs;
+            return this;
+        }
+
+        /**
+         * @param lanes
+         *            number of lanes sending the documents concurrently, each
+         *            with its own ring buffer, batch and dispatcher thread.
+         *            implies async mode. default 1
+         * @return this builder
+         */
+        public Builder withLanes(final String lanes) {
+            this.lanes = lanes;
+            return this;
+        }
+
+        /**
+         * @param laneKey
+         *            field choosing the lane of a document. the documents of a
+         *            key are sent in order, e.g. loggerName, threadName or the
+         *            field of a ThreadContext value (contextMap.key with
+         *            flattenNested or a context field of the FieldMapping).
+         *            default loggerName
+         * @return this builder
+         */
+        public Builder withLaneKey(final String laneKey) {
+            this.laneKey = laneKey;
+            return this;
+        }
+
+        /**
+         * @param validateSchema
+         *            "true" to check the documents against the schema of the
+         *            index before they are sent. default false
+         * @return this builder
+         */
+        public Builder withValidateSchema(final String validateSchema) {
+            this.validateSchema = validateSchema;
+            return this;
+        }
+
+        /**
+         * @param schemaRefreshMs
+         *            amount of time between two loads of the schema. the schema
+         *            is loaded once if not specified
+         * @return this builder
+         */
+        public Builder withSchemaRefreshMs(final String schemaRefreshMs) {
+            this.schemaRefreshMs = schemaRefreshMs;
+            return this;
+        }
+
+        /**
+         * @param unknownFields
+         *            dynamic field pattern the fields unknown to the schema are
+         *            renamed to, e.g. *_s. dropped if not specified
+         * @return this builder
+         */
+        public Builder withUnknownFields(final String unknownFields) {
+            this.unknownFields = unknownFields;
+            return this;
+        }
+
+        /**
+         * @param fields
+         *            static fields added to every log event, e.g. host or
+         *            environment. the values are resolved once, lookups like
+         *            ${hostName}, ${pid} or ${sys:key} are allowed. optional
+         * @return this builder
+         */
+        public Builder withFields(final SolrField[] fields) {
+            this.fields = fields;
+            return this;
+        }
+
+        /**
+         * @param fieldMapping
+         *            mapping of the fields of the log events to solr fields.
+         *            the fields are written as they are if not specified
+         * @return this builder
+         */
+        public Builder withFieldMapping(final SolrFieldMapping fieldMapping) {
+            this.fieldMapping = fieldMapping;
+            return this;
+        }
+
+        /**
+         * @param configuration
+         *            configuration the provider belongs to. the provider shuts
+         *            down when the configuration stops its appenders,
+         *            otherwise on jvm exit
+         * @return this builder
+         */
+        public Builder withConfiguration(final Configuration configuration) {
+            this.configuration = configuration;
+            return this;
+        }
+
+        /**
+         * @return new Apache Solr provider. null if the configuration is
+         *         invalid
+         */
+        @Override
+        public SolrProvider build() {
+            // init commitWithin
+            int commitWithin;
+            if (commitWithinMs == null) {
+                // default -1 -> not used by insertObject()
+                commitWithin = -1;
+            } else {
+                commitWithin = Integer.parseInt(commitWithinMs);
+            }
+
+            // init batching, default 0 -> every document is sent with its own
+            // request
+            int batch = parseInt(batchSize, 0);
+            long flushInterval = parseLong(flushIntervalMs,
+                    DEFAULT_FLUSH_INTERVAL_MS);
+
+            // init async mode
+            int laneCount = parseInt(lanes, 1);
+            if (laneCount < 1) {
+                LOGGER.error("Invalid lanes " + lanes + " for SolrProvider!");
+                return null;
+            }
+            boolean isAsync = Boolean.parseBoolean(async);
+            SolrAsyncWriter.OverflowPolicy policy = SolrAsyncWriter.OverflowPolicy.BLOCK;
+            if (overflowPolicy != null) {
+                try {
+                    policy = SolrAsyncWriter.OverflowPolicy
+                            .valueOf(overflowPolicy
+                                    .toUpperCase(Locale.ENGLISH));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.error("Invalid overflowPolicy \"" + overflowPolicy
+                            + "\" for SolrProvider!");
+                    return null;
+                }
+            }
+
+            boolean isSpill = spillDirectory != null
+                    && spillDirectory.length() > 0;
+            if (policy == SolrAsyncWriter.OverflowPolicy.SPILL && !isSpill) {
+                LOGGER.error("overflowPolicy SPILL requires a spillDirectory for SolrProvider!");
+                return null;
+            }
+
+            // init static fields
+            SolrFieldTemplate template = null;
+            if (fields != null && fields.length > 0) {
+                try {
+                    template = new SolrFieldTemplate(fields);
+                } catch (IllegalArgumentException e) {
+                    LOGGER.error(e.getMessage() + " for SolrProvider!");
+                    return null;
+                }
+            }
+
+            // init unique keys
+            boolean isOverwrite = !"false".equalsIgnoreCase(overwrite);
+            String uniqueKey = idField == null ? DEFAULT_ID_FIELD : idField;
+            SolrIdGenerator idGenerator = null;
+            if (Boolean.parseBoolean(generateIds)) {
+                // a node id guessed from the host could collide and replace
+                // the documents of another application
+                if (nodeId == null) {
+                    LOGGER.error("generateIds requires a nodeId for SolrProvider!");
+                    return null;
+                }
+                try {
+                    idGenerator = new SolrIdGenerator(Integer.parseInt(nodeId));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.error(e.getMessage() + " for SolrProvider!");
+                    return null;
+                }
+            }
+
+            // init wire settings of the remote solr servers
+            SolrWireSettings wireSettings;
+            try {
+                wireSettings = new SolrWireSettings(requestWriter,
+                        allowCompression, maxConnections, maxConnectionsPerHost,
+                        connectionTimeoutMs, soTimeoutMs, keepAliveMs);
+            } catch (IllegalArgumentException e) {
+                LOGGER.error(e.getMessage());
+                return null;
+            }
+
+            // create the correct solr server. the remote ones share the http
+            // client, closed by the provider
+            CloseableHttpClient httpClient = null;
+            SolrServer solrServer = null;
+            StringBuilder description = new StringBuilder();
+
+            if (url != null && url.length() > 0
+                    && (queueSize != null || threadCount != null)) {
+                // create ConcurrentUpdateSolrServer
+                httpClient = wireSettings.createHttpClient();
+                solrServer = getConcurrentUpdateSolrServer(url, coreName,
+                        parseInt(queueSize, DEFAULT_QUEUE_SIZE),
+                        parseInt(threadCount, DEFAULT_THREAD_COUNT),
+                        httpClient, description);
+            } else if (url != null && url.length() > 0) {
+                // create HttpSolrServer
+                httpClient = wireSettings.createHttpClient();
+                solrServer = getHttpSolrServer(url, coreName,
+                        httpClient, description);
+            } else if (solrServerUrls != null && solrServerUrls.length() > 0) {
+                // create LBHttpSolrServer
+                httpClient = wireSettings.createHttpClient();
+                solrServer = getLBHttpSolrServer(solrServerUrls, coreName,
+                        httpClient, description);
+            } else if (zkHost != null && zkHost.length() > 0) {
+                // create CloudSolrServer
+                httpClient = wireSettings.createHttpClient();
+                solrServer = getCloudSolrServer(zkHost, coreName,
+                        httpClient, description);
+            } else if ((solrHome != null && solrHome.length() > 0)
+                    && (coreName != null && coreName.length() > 0)) {
+                // create EmbeddedSolrServer
+                solrServer = getEmbeddedSolrServer(solrHome, coreName,
+                        description);
+            } else {
+                // no valid configuration found
+                LOGGER.error("No valid SolrProvider configuration found!");
+            }
+
+            if (solrServer == null) {
+                closeHttpClient(httpClient);
+                return null;
+            }
+            wireSettings.configure(solrServer);
+            SolrServer targetServer = solrServer;
+
+            // skip the request handler and the update processors of a local
+            // core
+            boolean isDirect = Boolean.parseBoolean(directUpdates);
+            if (isDirect && solrServer instanceof EmbeddedSolrServer) {
+                try {
+                    solrServer = new SolrCoreServer(
+                            (EmbeddedSolrServer) solrServer, coreName,
+                            isOverwrite);
+                } catch (SolrException e) {
+                    LOGGER.error("Failed to open core \"" + coreName
+                            + "\" for SolrProvider due to error: "
+                            + e.getMessage(), e);
+                    release(targetServer, httpClient);
+                    return null;
+                }
+                description.append(".directUpdates()");
+            } else if (isDirect) {
+                LOGGER.warn("directUpdates is ignored by "
+                        + solrServer.getClass().getSimpleName());
+            }
+
+            // skip the forwarding hop from a replica to the leader
+            if (solrServer instanceof CloudSolrServer
+                    && Boolean.parseBoolean(leaderRouting)) {
+                solrServer = SolrLeaderRouter.create(
+                        (CloudSolrServer) solrServer, wireSettings, uniqueKey);
+            }
+
+            // route the documents to time partitioned collections
+            if (partitionPattern != null && partitionPattern.length() > 0) {
+                SolrPartitioner partitioner;
+                try {
+                    partitioner = new SolrPartitioner(partitionPattern);
+                } catch (IllegalArgumentException e) {
+                    LOGGER.error("Invalid partitionPattern \""
+                            + partitionPattern + "\" for SolrProvider!");
+                    release(solrServer, httpClient);
+                    return null;
+                }
+                SolrPartitionServer.Targets targets = createTargets(
+                        targetServer, solrServer, url, solrServerUrls,
+                        wireSettings);
+                if (targets == null) {
+                    LOGGER.error("partitionPattern is not supported by "
+                            + targetServer.getClass().getSimpleName());
+                    release(solrServer, httpClient);
+                    return null;
+                }
+                solrServer = new SolrPartitionServer(solrServer, partitioner,
+                        targets, fieldMapping == null ? "millis"
+                                : fieldMapping.map("millis"), partitionField);
+                description.append(".partition(\"" + partitionPattern + "\""
+                        + (partitionField == null ? "" : ", " + partitionField)
+                        + ")");
+            }
+
+            // widen the commitWithin under heavy traffic
+            if (commitWithinMinMs != null || commitWithinMaxMs != null) {
+                int min = parseInt(commitWithinMinMs,
+                        commitWithin > 0 ? commitWithin
+                                : DEFAULT_MIN_COMMIT_WITHIN_MS);
+                int max = parseInt(commitWithinMaxMs, Math.max(min,
+                        DEFAULT_MAX_COMMIT_WITHIN_MS));
+                try {
+                    solrServer = new SolrCommitScheduler(solrServer, min, max);
+                } catch (IllegalArgumentException e) {
+                    LOGGER.error(e.getMessage() + " for SolrProvider!");
+                    release(solrServer, httpClient);
+                    return null;
+                }
+                description.append(".adaptiveCommit(" + min + "ms, " + max
+                        + "ms)");
+            }
+
+            // protect the logging threads from a failing solr
+            if (errorRateThreshold != null || latencyThresholdMs != null
+                    || maxRetries != null) {
+                int errorRate = parseInt(errorRateThreshold,
+                        DEFAULT_ERROR_RATE_THRESHOLD);
+                long latency = parseLong(latencyThresholdMs, 0);
+                solrServer = new SolrCircuitBreaker(solrServer, errorRate,
+                        latency, parseLong(openStateMs, DEFAULT_OPEN_STATE_MS),
+                        parseInt(maxRetries, 0), parseLong(retryBackoffMs,
+                                DEFAULT_RETRY_BACKOFF_MS));
+                description.append(".circuitBreaker(" + errorRate + "%, "
+                        + latency + "ms)");
+            }
+
+            // measure the requests leaving the appender. inside the spill
+            // journal, so a spilled request still counts as failed
+            SolrMetrics metrics = new SolrMetrics();
+            solrServer = new SolrMetricsServer(solrServer, metrics);
+
+            // open the spill journal
+            SolrSpillJournal spillJournal = null;
+            if (isSpill) {
+                try {
+                    spillJournal = new SolrSpillJournal(
+                            new File(spillDirectory), parseInt(
+                                    spillSegmentSize,
+                                    DEFAULT_SPILL_SEGMENT_SIZE), parseLong(
+                                    spillMaxDiskSize,
+                                    DEFAULT_SPILL_MAX_DISK_SIZE));
+                } catch (IOException e) {
+                    LOGGER.error("Failed to open spill journal \""
+                            + spillDirectory
+                            + "\" for SolrProvider due to error: "
+                            + e.getMessage(), e);
+                    release(solrServer, httpClient);
+                    return null;
+                }
+                solrServer = new SolrSpillServer(solrServer, spillJournal,
+                        commitWithin, batch > 0 ? batch
+                                : DEFAULT_SPILL_REPLAY_BATCH_SIZE, parseLong(
+                                spillReplayIntervalMs,
+                                DEFAULT_SPILL_REPLAY_INTERVAL_MS));
+                description.append(".spill(\"" + spillDirectory + "\")");
+            }
+
+            // create the writer
+            SolrWriter solrWriter;
+            SolrAsyncWriter[] asyncWriters = new SolrAsyncWriter[0];
+            if (laneCount > 1) {
+                // one dispatcher per lane keeps the order of a key
+                int ringBuffer = parseInt(ringBufferSize,
+                        DEFAULT_RING_BUFFER_SIZE);
+                SolrAsyncWriter[] laneWriters = new SolrAsyncWriter[laneCount];
+                for (int i = 0; i < laneCount; i++) {
+                    SolrBatchWriter batchWriter = new SolrBatchWriter(
+                            solrServer, commitWithin, batch > 0 ? batch
+                                    : ringBuffer, batch > 0 ? flushInterval
+                                    : 0, isOverwrite);
+                    laneWriters[i] = new SolrAsyncWriter(batchWriter,
+                            ringBuffer, 1, policy, Level.toLevel(
+                                    overflowLevel, Level.INFO), spillJournal);
+                }
+                String keyField = laneKey == null ? mappedField(fieldMapping,
+                        LOGGER_FIELD) : laneKey;
+                SolrLaneWriter laneWriter = new SolrLaneWriter(laneWriters,
+                        keyField);
+                asyncWriters = laneWriters;
+                metrics.setLaneWriter(laneWriter);
+                solrWriter = laneWriter;
+                description.append(".lanes(" + laneCount + ", " + keyField
+                        + ")");
+            } else if (isAsync) {
+                // the dispatchers flush as soon as the ring buffer runs empty.
+                // without a batchSize a batch is only limited by the ring
+                // buffer
+                int ringBuffer = parseInt(ringBufferSize,
+                        DEFAULT_RING_BUFFER_SIZE);
+                SolrBatchWriter batchWriter = new SolrBatchWriter(solrServer,
+                        commitWithin, batch > 0 ? batch : ringBuffer,
+                        batch > 0 ? flushInterval : 0, isOverwrite);
+                SolrAsyncWriter asyncWriter = new SolrAsyncWriter(batchWriter,
+                        ringBuffer, parseInt(dispatcherThreads, 1), policy,
+                        Level.toLevel(overflowLevel, Level.INFO), spillJournal);
+                asyncWriters = new SolrAsyncWriter[] { asyncWriter };
+                metrics.setAsyncWriter(asyncWriter);
+                metrics.setBatchWriter(batchWriter);
+                solrWriter = asyncWriter;
+            } else if (batch > 0) {
+                SolrBatchWriter batchWriter = new SolrBatchWriter(solrServer,
+                        commitWithin, batch, flushInterval, isOverwrite);
+                metrics.setBatchWriter(batchWriter);
+                solrWriter = batchWriter;
+            } else {
+                solrWriter = new SolrDirectWriter(solrServer, commitWithin,
+                        isOverwrite);
+            }
+            boolean isFlatten = Boolean.parseBoolean(flattenNested);
+            if (isFlatten) {
+                description.append(".flattenNested()");
+            }
+            SolrObjectPool objectPool = null;
+            if (targetServer instanceof ConcurrentUpdateSolrServer) {
+                // wait for the streamed requests on flush
+                solrWriter = new SolrStreamingWriter(solrWriter,
+                        (ConcurrentUpdateSolrServer) targetServer);
+                if (poolSize != null) {
+                    LOGGER.warn("poolSize is ignored by ConcurrentUpdateSolrServer");
+                }
+            } else if (poolSize != null) {
+                objectPool = new SolrObjectPool(Integer.parseInt(poolSize),
+                        fieldMapping, isFlatten);
+            }
+            if (!isOverwrite) {
+                description.append(".overwrite(false)");
+            }
+            if (Boolean.parseBoolean(validateSchema)) {
+                // inside the writers adding fields, so their fields are checked
+                SolrSchema.Loader loader;
+                if (targetServer instanceof EmbeddedSolrServer) {
+                    loader = SolrSchema.loader(
+                            ((EmbeddedSolrServer) targetServer)
+                                    .getCoreContainer(), coreName);
+                } else {
+                    loader = SolrSchema.loader(targetServer);
+                }
+                long refresh = parseLong(schemaRefreshMs, 0);
+                SolrSchemaWriter schemaWriter;
+                try {
+                    schemaWriter = new SolrSchemaWriter(solrWriter, loader,
+                            unknownFields, refresh);
+                } catch (IllegalArgumentException e) {
+                    LOGGER.error(e.getMessage() + " for SolrProvider!");
+                    release(solrServer, httpClient);
+                    return null;
+                }
+                metrics.setSchemaWriter(schemaWriter);
+                solrWriter = schemaWriter;
+                description.append(".validateSchema(" + schemaWriter
+                        + (refresh > 0 ? ", " + refresh + "ms" : "") + ")");
+            }
+            if (idGenerator != null) {
+                // before the documents are batched, spilled or retried
+                solrWriter = new SolrIdWriter(solrWriter, idGenerator,
+                        uniqueKey);
+                description.append(".generateIds(" + uniqueKey + ")");
+            }
+            if (Boolean.parseBoolean(requestLog)) {
+                solrWriter = new SolrRequestLogWriter(solrWriter, mappedField(
+                        fieldMapping, MESSAGE_FIELD));
+                description.append(".requestLog()");
+            }
+            if (rateLimits != null) {
+                // in front of ids and batches, dropped documents cost nothing
+                SolrRateLimitWriter rateLimitWriter;
+                try {
+                    rateLimitWriter = new SolrRateLimitWriter(solrWriter,
+                            rateLimits, mappedField(fieldMapping, LOGGER_FIELD),
+                            mappedField(fieldMapping, LEVEL_FIELD),
+                            rateLimitLatencyMs == null ? null : metrics,
+                            parseLong(rateLimitLatencyMs, 0));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.error(e.getMessage() + " for SolrProvider!");
+                    release(solrServer, httpClient);
+                    return null;
+                }
+                metrics.setRateLimitWriter(rateLimitWriter);
+                solrWriter = rateLimitWriter;
+                description.append(".rateLimits(" + rateLimitWriter + ")");
+                if (rateLimitLatencyMs != null) {
+                    description.append(".adaptiveSampling(" + rateLimitLatencyMs
+                            + "ms)");
+                }
+            }
+            if (fieldMapping != null) {
+                description.append("." + fieldMapping);
+            }
+            if (template != null) {
+                description.append("." + template);
+            }
+            SolrThrowableDeduplicator deduplicator = null;
+            if (Boolean.parseBoolean(dedupThrowables)) {
+                deduplicator = new SolrThrowableDeduplicator(parseInt(
+                        fingerprintCacheSize, DEFAULT_FINGERPRINT_CACHE_SIZE),
+                        Boolean.parseBoolean(ignoreLineNumbers), uniqueKey,
+                        SolrThrowableDeduplicator.DEFAULT_RESEND_INTERVAL_MS,
+                        fieldMapping);
+                description.append(".dedupThrowables()");
+            }
+            if (rollupWindowMs != null) {
+                // in front of the writer, so only the rollups are sent
+                long window = Long.parseLong(rollupWindowMs);
+                solrWriter = new SolrRollupWriter(solrWriter, window, parseInt(
+                        rollupMaxKeys, DEFAULT_ROLLUP_MAX_KEYS), fieldMapping);
+                description.append(".rollup(" + window + "ms)");
+            }
+
+            // queries bypass the decorators of the writes, so they neither trip
+            // the circuit breaker nor count as latency of the appender
+            SolrLogReader reader = new SolrLogReader(targetServer,
+                    mappedField(fieldMapping, MILLIS_FIELD), uniqueKey,
+                    DEFAULT_READ_PAGE_SIZE);
+            SolrConnection.Builder connections = SolrConnection
+                    .newBuilder(solrWriter).withObjectPool(objectPool)
+                    .withMapping(fieldMapping).withDeduplicator(deduplicator)
+                    .withFlatten(isFlatten).withTemplate(template);
+            SolrProvider provider = new SolrProvider(solrServer, httpClient,
+                    solrWriter, connections, asyncWriters, fieldMapping,
+                    reader, metrics, description.toString(), configuration);
+            connections.withProvider(provider);
+            metrics.register(provider.toString());
+
+            // an appender which never got a connection does not shut its
+            // provider down when the configuration stops
+            provider.addShutdownHook();
+            return provider;
+        }
     }
 
     // helper
     /**
-     * create SolrProvider with HttpSolrServer.
+     * shut the provider down on jvm exit, so the waiting documents are sent
+     * and an embedded core releases its index lock.
+     */
+    private synchronized void addShutdownHook() {
+        this.shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        }, "SolrProvider-shutdown");
+        Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+    }
+
+    /**
+     * release the solr servers of an invalid configuration, so an embedded
+     * core releases its index lock and the pooled connections are closed.
+     * 
+     * @param solrServer
+     *            solr server created so far, with its decorators
+     * @param httpClient
+     *            http client of the remote solr servers or null
+     */
+    private static void release(final SolrServer solrServer,
+            final CloseableHttpClient httpClient) {
+        try {
+            solrServer.shutdown();
+        } finally {
+            closeHttpClient(httpClient);
+        }
+    }
+
+    /**
+     * close the http client after the solr servers using it.
      */
-    private static SolrProvider getHttpSolrServer(String url, String coreName,
-            int commitWithinMs) {
+    private static void closeHttpClient(final CloseableHttpClient httpClient) {
+        if (httpClient == null) {
+            return;
+        }
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close the http client of SolrProvider due to error: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return solr field of a field of the log event
+     */
+    private static String mappedField(final SolrFieldMapping fieldMapping,
+            final String field) {
+        return fieldMapping == null ? field : fieldMapping.map(field);
+    }
+
+    /**
+     * parse an optional int attribute.
+     */
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * parse an optional long attribute.
+     */
+    private static long parseLong(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        return Long.parseLong(value);
+    }
+
+    /**
+     * create the factory of the solr servers of partitioned collections.
+     * 
+     * @param targetServer
+     *            solr server created by the configuration
+     * @param solrServer
+     *            the target server with its decorators. shared by the
+     *            collections of a {@link CloudSolrServer}
+     * @return factory or null if the solr server does not support partitions
+     */
+    private static SolrPartitionServer.Targets createTargets(
+            final SolrServer targetServer, final SolrServer solrServer,
+            final String url, final String solrServerUrls,
+            final SolrWireSettings wireSettings) {
+        if (targetServer instanceof HttpSolrServer) {
+            final HttpClient httpClient = ((HttpSolrServer) targetServer)
+                    .getHttpClient();
+            return new SolrPartitionServer.Targets() {
+                @Override
+                public SolrServer create(final String collection) {
+                    SolrServer target = new HttpSolrServer(url + "/"
+                            + collection, httpClient);
+                    wireSettings.configure(target);
+                    return target;
+                }
+            };
+        } else if (targetServer instanceof LBHttpSolrServer) {
+            final HttpClient httpClient = ((LBHttpSolrServer) targetServer)
+                    .getHttpClient();
+            return new SolrPartitionServer.Targets() {
+                @Override
+                public SolrServer create(final String collection) {
+                    String[] solrURLs = solrServerUrls.split(",");
+                    for (int i = 0; i < solrURLs.length; i++) {
+                        solrURLs[i] = solrURLs[i] + "/" + collection;
+                    }
+                    SolrServer target = new LBHttpSolrServer(httpClient,
+                            solrURLs);
+                    wireSettings.configure(target);
+                    return target;
+                }
+            };
+        } else if (targetServer instanceof CloudSolrServer) {
+            return new SolrPartitionServer.Targets() {
+                @Override
+                public SolrServer create(final String collection) {
+                    return new SolrPartitionServer.Shared(solrServer,
+                            collection);
+                }
+            };
+        } else if (targetServer instanceof EmbeddedSolrServer) {
+            final CoreContainer coreContainer = ((EmbeddedSolrServer) targetServer)
+                    .getCoreContainer();
+            return new SolrPartitionServer.Targets() {
+                @Override
+                public SolrServer create(final String collection) {
+                    return new SolrPartitionServer.Shared(
+                            new EmbeddedSolrServer(coreContainer, collection),
+                            null);
+                }
+            };
+        }
+        return null;
+    }
+
+    /**
+     * create HttpSolrServer.
+     */
+    private static SolrServer getHttpSolrServer(String url, String coreName,
+            HttpClient httpClient, StringBuilder description) {
         String solrUrl = url;
 
         // handle coreName
@@ -163,31 +1769,56 @@ public final class SolrProvider implements NoSQLProvider<SolrConnection> {
             solrUrl = url + "/" + coreName;
         }
 
-        return new SolrProvider(new HttpSolrServer(solrUrl), commitWithinMs,
-                "HttpSolrServer(\"" + solrUrl + "\")");
+        description.append("HttpSolrServer(\"" + solrUrl + "\")");
+        return new HttpSolrServer(solrUrl, httpClient);
     }
 
     /**
-     * create SolrProvider with LBHttpSolrServer.
+     * create ConcurrentUpdateSolrServer.
      */
-    private static SolrProvider getLBHttpSolrServer(String solrServerUrls,
-            String coreName, int commitWithinMs) {
+    private static SolrServer getConcurrentUpdateSolrServer(String url,
+            String coreName, int queueSize, int threadCount,
+            HttpClient httpClient, StringBuilder description) {
+        String solrUrl = url;
+
+        // handle coreName
+        if (coreName != null && coreName.length() > 0) {
+            solrUrl = url + "/" + coreName;
+        }
+
+        description.append("ConcurrentUpdateSolrServer(\"" + solrUrl + "\", "
+                + queueSize + ", " + threadCount + ")");
+        return SolrStreamingWriter.createServer(solrUrl, httpClient,
+                queueSize, threadCount);
+    }
+
+    /**
+     * create LBHttpSolrServer.
+     */
+    private static SolrServer getLBHttpSolrServer(String solrServerUrls,
+            String coreName, HttpClient httpClient, StringBuilder description) {
         String[] solrURLs = solrServerUrls.split(",");
-        String description = solrServerUrls;
+        String urls = solrServerUrls;
 
         // handle coreName
         if (coreName != null && coreName.length() > 0) {
-            description = "";
+            urls = "";
             for (int i = 0; i < solrURLs.length; i++) {
                 solrURLs[i] = solrURLs[i] + "/" + coreName;
-                description += "," + solrURLs[i];
+                urls += "," + solrURLs[i];
             }
-            description = description.replaceFirst(",", "");
+            urls = urls.replaceFirst(",", "");
         }
 
         try {
-            return new SolrProvider(new LBHttpSolrServer(solrURLs),
-                    commitWithinMs, "LBHttpSolrServer(\"" + description + "\")");
+            SolrServer solrServer;
+            if (httpClient == null) {
+                solrServer = new LBHttpSolrServer(solrURLs);
+            } else {
+                solrServer = new LBHttpSolrServer(httpClient, solrURLs);
+            }
+            description.append("LBHttpSolrServer(\"" + urls + "\")");
+            return solrServer;
         } catch (MalformedURLException murlEx) {
             // LBHttpSolrServer does not throw this exception
             return null;
@@ -195,35 +1826,39 @@ public final class SolrProvider implements NoSQLProvider<SolrConnection> {
     }
 
     /**
-     * create SolrProvider with CloudSolrServer.
+     * create CloudSolrServer.
      */
-    private static SolrProvider getCloudSolrServer(String zkHost,
-            String coreName, int commitWithinMs) {
-        SolrServer solrServer = new CloudSolrServer(zkHost);
-        String description = "CloudSolrServer(\"" + zkHost + "\")";
+    private static SolrServer getCloudSolrServer(String zkHost,
+            String coreName, HttpClient httpClient, StringBuilder description) {
+        SolrServer solrServer;
+        if (httpClient == null) {
+            solrServer = new CloudSolrServer(zkHost);
+        } else {
+            solrServer = new CloudSolrServer(zkHost, new LBHttpSolrServer(
+                    httpClient));
+        }
+        description.append("CloudSolrServer(\"" + zkHost + "\")");
 
         // handle coreName
         if (coreName == null || coreName.length() == 0) {
             coreName = DEFAULT_CORENAME;
         }
         ((CloudSolrServer) solrServer).setDefaultCollection(coreName);
-        description += ".setDefaultCollection(\"" + coreName + "\")";
+        description.append(".setDefaultCollection(\"" + coreName + "\")");
 
-        return new SolrProvider(solrServer, commitWithinMs, description);
+        return solrServer;
     }
 
     /**
-     * create SolrProvider with EmbeddedSolrServer.
+     * create EmbeddedSolrServer.
      */
-    private static SolrProvider getEmbeddedSolrServer(String solrHome,
-            String coreName, int commitWithinMs) {
+    private static SolrServer getEmbeddedSolrServer(String solrHome,
+            String coreName, StringBuilder description) {
         CoreContainer coreContainer = new CoreContainer(solrHome);
         coreContainer.load();
-        String description = "EmbeddedSolrServer(\"" + solrHome + "\", \""
-                + coreName + "\")";
+        description.append("EmbeddedSolrServer(\"" + solrHome + "\", \""
+                + coreName + "\")");
 
-        return new SolrProvider(
-                new EmbeddedSolrServer(coreContainer, coreName),
-                commitWithinMs, description);
+        return new EmbeddedSolrServer(coreContainer, coreName);
     }
 }
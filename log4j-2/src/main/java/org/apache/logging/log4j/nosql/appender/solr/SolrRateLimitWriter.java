@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * {@link SolrWriter} limiting the rate of log events per logger prefix and
+ * level, so a chatty logger cannot push solr past its indexing capacity. The
+ * limits are comma separated rules <code>[loggerPrefix][:LEVEL]=rate</code>
+ * in events per second, e.g.
+ * 
+ * <pre>
+ * :DEBUG=200, org.example.chatty=50, org.example.chatty:INFO=10
+ * </pre>
+ * 
+ * A log event is checked against the most specific matching rule only:
+ * longest logger prefix first, a rule with level before one without. Every
+ * rule has its own {@link SolrTokenBucket}. Log events without a matching
+ * rule are always written.
+ * <p>
+ * Log events of a rule are sampled: the written document carries the number
+ * of events it stands for (itself and those dropped before it) in the
+ * sampleWeight field, so sum(sampleWeight) estimates the logged count.
+ * <p>
+ * With {@link SolrMetrics} and a latency threshold the rates adapt to solr:
+ * while the moving average of the round trips exceeds the threshold the
+ * rates are halved every second down to 1/16, and restored again as soon
+ * as solr answers within half of the threshold.
+ */
+public final class SolrRateLimitWriter implements SolrWriter {
+    // status logger
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // field holding the number of log events a document stands for
+    static final String WEIGHT_FIELD = "sampleWeight";
+
+    // max slowdown, the rates are divided by 2^MAX_SLOWDOWN
+    static final int MAX_SLOWDOWN = 4;
+
+    // time between two adjustments of the slowdown
+    private static final long ADJUST_INTERVAL_NANOS = TimeUnit.SECONDS
+            .toNanos(1);
+
+    // writer the documents are passed to
+    private final SolrWriter solrWriter;
+
+    // rules, most specific first
+    private final Rule[] rules;
+
+    // fields holding logger name and level of the log event
+    private final String loggerField;
+    private final String levelField;
+
+    // moving average of the solr round trips. null if not adaptive
+    private final SolrMetrics metrics;
+    private final long latencyThresholdNanos;
+
+    // the rates are divided by 2^slowdown
+    private volatile int slowdown;
+    private final AtomicLong nextAdjust = new AtomicLong(System.nanoTime());
+
+    // number of log events dropped by the rules
+    private final SolrStripedCounter sampledOut = new SolrStripedCounter();
+    private volatile boolean warned;
+
+    /**
+     * default constructor.
+     * 
+     * @param solrWriter
+     *            writer the documents are passed to
+     * @param rateLimits
+     *            comma separated rules [loggerPrefix][:LEVEL]=rate
+     * @param loggerField
+     *            field holding the logger name of the log event
+     * @param levelField
+     *            field holding the level of the log event
+     * @throws IllegalArgumentException
+     *             if a rule is invalid
+     */
+    public SolrRateLimitWriter(final SolrWriter solrWriter,
+            final String rateLimits, final String loggerField,
+            final String levelField) {
+        this(solrWriter, rateLimits, loggerField, levelField, null, 0);
+    }
+
+    /**
+     * constructor for rates adapting to the latency of solr.
+     * 
+     * @param solrWriter
+     *            writer the documents are passed to
+     * @param rateLimits
+     *            comma separated rules [loggerPrefix][:LEVEL]=rate
+     * @param loggerField
+     *            field holding the logger name of the log event
+     * @param levelField
+     *            field holding the level of the log event
+     * @param metrics
+     *            metrics of the requests sent to solr. null to keep the
+     *            rates fixed
+     * @param latencyThresholdMs
+     *            the rates are lowered while the round trips of solr take
+     *            longer
+     * @throws IllegalArgumentException
+     *             if a rule is invalid
+     */
+    public SolrRateLimitWriter(final SolrWriter solrWriter,
+            final String rateLimits, final String loggerField,
+            final String levelField, final SolrMetrics metrics,
+            long latencyThresholdMs) {
+        this.solrWriter = solrWriter;
+        this.rules = parse(rateLimits);
+        this.loggerField = loggerField;
+        this.levelField = levelField;
+        this.metrics = metrics;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS
+                .toNanos(latencyThresholdMs);
+    }
+
+    @Override
+    public void write(final SolrInputDocument doc) {
+        Rule rule = match(doc);
+        if (rule == null) {
+            this.solrWriter.write(doc);
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (this.metrics != null && now - this.nextAdjust.get() >= 0) {
+            adjustOnce(now);
+        }
+        if (!rule.bucket.tryAcquire(now, this.slowdown)) {
+            rule.skipped.incrementAndGet();
+            this.sampledOut.increment();
+            if (!this.warned) {
+                this.warned = true;
+                LOGGER.warn("Solr rate limit " + rule
+                        + " exceeded, sampling log events");
+            }
+            SolrObject.recycle(doc);
+            return;
+        }
+        doc.setField(WEIGHT_FIELD,
+                Long.valueOf(1 + rule.skipped.getAndSet(0)));
+        this.solrWriter.write(doc);
+    }
+
+    @Override
+    public void flush() {
+        this.solrWriter.flush();
+    }
+
+    /**
+     * @return number of log events dropped by the rate limits
+     */
+    public long getSampledOutCount() {
+        return this.sampledOut.sum();
+    }
+
+    /**
+     * @return the rates are divided by 2^slowdown
+     */
+    public int getSlowdown() {
+        return this.slowdown;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Rule rule : this.rules) {
+            sb.append(sb.length() == 0 ? "" : ",").append(rule);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * adjust the slowdown to the moving average of the solr round trips.
+     * 
+     * @param latencyNanos
+     *            moving average of the round trips, negative if unknown
+     * @return new slowdown
+     */
+    synchronized int adjust(long latencyNanos) {
+        int current = this.slowdown;
+        int next = current;
+        if (latencyNanos > this.latencyThresholdNanos) {
+            next = Math.min(MAX_SLOWDOWN, current + 1);
+        } else if (latencyNanos < this.latencyThresholdNanos / 2) {
+            next = 0;
+        }
+        if (next != current) {
+            this.slowdown = next;
+            LOGGER.info("Solr rate limits changed to 1/" + (1 << next)
+                    + ", solr answers in " + latencyNanos / 1000000 + "ms");
+        }
+        return next;
+    }
+
+    // helper
+    /**
+     * adjust the slowdown once per interval. only one of the concurrent
+     * writers adjusts it.
+     */
+    private void adjustOnce(long now) {
+        long due = this.nextAdjust.get();
+        if (now - due >= 0
+                && this.nextAdjust.compareAndSet(due, now
+                        + ADJUST_INTERVAL_NANOS)) {
+            adjust(this.metrics.getRecentLatencyNs());
+        }
+    }
+
+    /**
+     * @return most specific rule of the log event, null if there is none
+     */
+    private Rule match(final SolrInputDocument doc) {
+        Object logger = doc.getFieldValue(this.loggerField);
+        String loggerName = logger == null ? "" : logger.toString();
+        Level level = toLevel(doc.getFieldValue(this.levelField));
+        for (Rule rule : this.rules) {
+            if (rule.matches(loggerName, level)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return level of a field value, null if it is none
+     */
+    private static Level toLevel(final Object value) {
+        if (value instanceof Level) {
+            return (Level) value;
+        }
+        return value == null ? null : Level.toLevel(value.toString(), null);
+    }
+
+    /**
+     * parse the rules and sort them, most specific first.
+     * 
+     * @throws IllegalArgumentException
+     *             if a rule is invalid
+     */
+    private static Rule[] parse(final String rateLimits) {
+        List<Rule> rules = new ArrayList<Rule>();
+        for (String spec : rateLimits.split(",")) {
+            spec = spec.trim();
+            if (spec.length() == 0) {
+                continue;
+            }
+            int equals = spec.lastIndexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Invalid rate limit "
+                        + spec + ", expected [loggerPrefix][:LEVEL]=rate");
+            }
+            String selector = spec.substring(0, equals).trim();
+            double rate;
+            try {
+                rate = Double.parseDouble(spec.substring(equals + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid rate limit "
+                        + spec + ", expected [loggerPrefix][:LEVEL]=rate");
+            }
+            String prefix = selector;
+            Level level = null;
+            int colon = selector.lastIndexOf(':');
+            if (colon >= 0) {
+                prefix = selector.substring(0, colon).trim();
+                level = Level.toLevel(selector.substring(colon + 1).trim(),
+                        null);
+                if (level == null) {
+                    throw new IllegalArgumentException(
+                            "Invalid level in rate limit " + spec);
+                }
+            }
+            rules.add(new Rule(prefix, level, rate));
+        }
+        if (rules.isEmpty()) {
+            throw new IllegalArgumentException("No rate limits in "
+                    + rateLimits);
+        }
+        Collections.sort(rules, new Comparator<Rule>() {
+            @Override
+            public int compare(final Rule rule1, final Rule rule2) {
+                int byPrefix = rule2.prefix.length() - rule1.prefix.length();
+                if (byPrefix != 0) {
+                    return byPrefix;
+                }
+                return (rule1.level == null ? 1 : 0)
+                        - (rule2.level == null ? 1 : 0);
+            }
+        });
+        return rules.toArray(new Rule[rules.size()]);
+    }
+
+    /**
+     * rate limit of a logger prefix and level.
+     */
+    private static final class Rule {
+        // logger prefix, empty for all loggers
+        private final String prefix;
+
+        // level, null for all levels
+        private final Level level;
+
+        // rate in events per second
+        private final double rate;
+
+        // tokens of the rule
+        private final SolrTokenBucket bucket;
+
+        // log events dropped since the last written one
+        private final AtomicLong skipped = new AtomicLong();
+
+        Rule(final String prefix, final Level level, double rate) {
+            this.prefix = prefix;
+            this.level = level;
+            this.rate = rate;
+            this.bucket = new SolrTokenBucket(rate);
+        }
+
+        /**
+         * @return true if the logger starts with the prefix as a whole name
+         *         part and the level is the one of the rule
+         */
+        boolean matches(final String loggerName, final Level eventLevel) {
+            if (this.level != null && !this.level.equals(eventLevel)) {
+                return false;
+            }
+            int length = this.prefix.length();
+            return loggerName.startsWith(this.prefix)
+                    && (length == 0 || loggerName.length() == length
+                            || loggerName.charAt(length) == '.');
+        }
+
+        @Override
+        public String toString() {
+            String rateString = this.rate == (long) this.rate ? String
+                    .valueOf((long) this.rate) : String.valueOf(this.rate);
+            return this.prefix
+                    + (this.level == null ? "" : ":" + this.level) + "="
+                    + rateString;
+        }
+    }
+}
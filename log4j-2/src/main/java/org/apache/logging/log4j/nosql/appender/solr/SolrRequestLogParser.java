@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+/**
+ * Single pass scanner of the request log lines solr writes for every
+ * request, e.g.
+ * 
+ * <pre>
+ * [collection1] webapp=/solr path=/select params={q=*:*&amp;wt=javabin} hits=42 status=0 QTime=3
+ * [collection1] webapp=/solr path=/update params={wt=javabin} {add=[1, 2]} 0 12
+ * </pre>
+ * 
+ * The update request processor logs status and QTime as the trailing numbers
+ * of the line. The scanner only records the offsets of the values within the
+ * line and parses the numbers in place, so a line is scanned without
+ * allocation. The strings are created by their getters; path, webapp and core
+ * are reused while they do not change.
+ * <p>
+ * A parser keeps the state of the last line and must not be shared between
+ * threads.
+ */
+public final class SolrRequestLogParser {
+    // keys of the logged values
+    private static final String WEBAPP = "webapp";
+    private static final String PATH = "path";
+    private static final String PARAMS = "params";
+    private static final String HITS = "hits";
+    private static final String STATUS = "status";
+    private static final String QTIME = "QTime";
+
+    // last parsed line
+    private String line;
+
+    // offsets of the values within the line, -1 if missing
+    private int coreStart;
+    private int coreEnd;
+    private int webappStart;
+    private int webappEnd;
+    private int pathStart;
+    private int pathEnd;
+    private int paramsStart;
+    private int paramsEnd;
+
+    // numbers of the line, -1 if missing
+    private long hits;
+    private int status;
+    private int qTime;
+
+    // strings returned by the last calls, reused if the line has the same
+    private String core;
+    private String webapp;
+    private String path;
+
+    /**
+     * scan a log line.
+     * 
+     * @param line
+     *            message of the log event
+     * @return true if the line is a solr request log line with path and QTime
+     */
+    public boolean parse(final String line) {
+        this.line = line;
+        this.coreStart = this.coreEnd = -1;
+        this.webappStart = this.webappEnd = -1;
+        this.pathStart = this.pathEnd = -1;
+        this.paramsStart = this.paramsEnd = -1;
+        this.hits = -1;
+        this.status = -1;
+        this.qTime = -1;
+        if (line == null) {
+            return false;
+        }
+
+        int length = line.length();
+        int i = 0;
+        if (length > 0 && line.charAt(0) == '[') {
+            int end = line.indexOf(']', 1);
+            if (end < 0) {
+                return false;
+            }
+            this.coreStart = 1;
+            this.coreEnd = end;
+            i = end + 1;
+        }
+
+        // trailing numbers of update request log lines
+        long previous = -1;
+        long last = -1;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (c == ' ') {
+                i++;
+                continue;
+            }
+            if (c == '{') {
+                // e.g. {add=[...]} of update requests
+                i = skipBraces(line, i);
+                if (i < 0) {
+                    return false;
+                }
+                previous = last = -1;
+                continue;
+            }
+
+            int keyStart = i;
+            while (i < length && (c = line.charAt(i)) != '=' && c != ' ') {
+                i++;
+            }
+            if (i == length || c == ' ') {
+                // bare token
+                previous = last;
+                last = parseNumber(line, keyStart, i);
+                continue;
+            }
+
+            // key=value or key={value}
+            int keyEnd = i++;
+            int valueStart = i;
+            int valueEnd;
+            if (i < length && line.charAt(i) == '{') {
+                i = skipBraces(line, i);
+                if (i < 0) {
+                    return false;
+                }
+                valueStart++;
+                valueEnd = i - 1;
+            } else {
+                while (i < length && line.charAt(i) != ' ') {
+                    i++;
+                }
+                valueEnd = i;
+            }
+            previous = last = -1;
+
+            if (isKey(line, keyStart, keyEnd, PATH)) {
+                this.pathStart = valueStart;
+                this.pathEnd = valueEnd;
+            } else if (isKey(line, keyStart, keyEnd, WEBAPP)) {
+                this.webappStart = valueStart;
+                this.webappEnd = valueEnd;
+            } else if (isKey(line, keyStart, keyEnd, PARAMS)) {
+                this.paramsStart = valueStart;
+                this.paramsEnd = valueEnd;
+            } else if (isKey(line, keyStart, keyEnd, HITS)) {
+                this.hits = parseNumber(line, valueStart, valueEnd);
+            } else if (isKey(line, keyStart, keyEnd, STATUS)) {
+                this.status = (int) parseNumber(line, valueStart, valueEnd);
+            } else if (isKey(line, keyStart, keyEnd, QTIME)) {
+                this.qTime = (int) parseNumber(line, valueStart, valueEnd);
+            }
+        }
+
+        if (this.qTime < 0 && previous >= 0 && last >= 0) {
+            this.status = (int) previous;
+            this.qTime = (int) last;
+        }
+        return this.pathStart >= 0 && this.qTime >= 0;
+    }
+
+    /**
+     * @return QTime in milliseconds, -1 if missing
+     */
+    public int getQTime() {
+        return this.qTime;
+    }
+
+    /**
+     * @return number of hits of a search request, -1 if missing
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return status of the response, -1 if missing
+     */
+    public int getStatus() {
+        return this.status;
+    }
+
+    /**
+     * @return name of the core, null if missing
+     */
+    public String getCore() {
+        return this.core = value(this.coreStart, this.coreEnd, this.core);
+    }
+
+    /**
+     * @return context path of the solr webapp, null if missing
+     */
+    public String getWebapp() {
+        return this.webapp = value(this.webappStart, this.webappEnd,
+                this.webapp);
+    }
+
+    /**
+     * @return path of the request handler, null if missing
+     */
+    public String getPath() {
+        return this.path = value(this.pathStart, this.pathEnd, this.path);
+    }
+
+    /**
+     * @return request parameters without the braces, null if missing
+     */
+    public String getParams() {
+        return value(this.paramsStart, this.paramsEnd, null);
+    }
+
+    // helper
+    /**
+     * @return value of the last line at the given offsets. the previous value
+     *         if it is the same
+     */
+    private String value(int start, int end, final String previous) {
+        if (start < 0) {
+            return null;
+        }
+        int length = end - start;
+        if (previous != null && previous.length() == length
+                && this.line.regionMatches(start, previous, 0, length)) {
+            return previous;
+        }
+        return this.line.substring(start, end);
+    }
+
+    /**
+     * @return true if the key of the line equals the given key
+     */
+    private static boolean isKey(final String line, int start, int end,
+            final String key) {
+        return end - start == key.length()
+                && line.regionMatches(start, key, 0, key.length());
+    }
+
+    /**
+     * @return non negative decimal number of the line, -1 if it is none
+     */
+    private static long parseNumber(final String line, int start, int end) {
+        if (start == end || end - start > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @return offset behind the brace closing the one at start, -1 if it is
+     *         not closed
+     */
+    private static int skipBraces(final String line, int start) {
+        int depth = 0;
+        for (int i = start; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * {@link SolrWriter} extracting the numbers of solr request log lines into
+ * typed fields, so the requests of a solr logging through log4j can be
+ * faceted and graphed. The message of every document is scanned by a
+ * {@link SolrRequestLogParser} of the logging thread. Documents of other
+ * messages are passed unchanged.
+ * <p>
+ * Fields added: qtime (int), hits (long), status (int), path, webapp and
+ * params.
+ */
+public final class SolrRequestLogWriter implements SolrWriter {
+    // fields added to the documents of request log lines
+    static final String QTIME_FIELD = "qtime";
+    static final String HITS_FIELD = "hits";
+    static final String STATUS_FIELD = "status";
+    static final String PATH_FIELD = "path";
+    static final String WEBAPP_FIELD = "webapp";
+    static final String PARAMS_FIELD = "params";
+
+    // writer the documents are passed to
+    private final SolrWriter solrWriter;
+
+    // field holding the message of the log event
+    private final String messageField;
+
+    // parser of the logging thread
+    private final ThreadLocal<SolrRequestLogParser> parser = new ThreadLocal<SolrRequestLogParser>() {
+        @Override
+        protected SolrRequestLogParser initialValue() {
+            return new SolrRequestLogParser();
+        }
+    };
+
+    /**
+     * default constructor.
+     * 
+     * @param solrWriter
+     *            writer the documents are passed to
+     * @param messageField
+     *            field holding the message of the log event
+     */
+    public SolrRequestLogWriter(final SolrWriter solrWriter,
+            final String messageField) {
+        this.solrWriter = solrWriter;
+        this.messageField = messageField;
+    }
+
+    @Override
+    public void write(final SolrInputDocument doc) {
+        Object message = doc.getFieldValue(this.messageField);
+        if (message instanceof String) {
+            SolrRequestLogParser parser = this.parser.get();
+            if (parser.parse((String) message)) {
+                doc.setField(QTIME_FIELD, Integer.valueOf(parser.getQTime()));
+                if (parser.getHits() >= 0) {
+                    doc.setField(HITS_FIELD, Long.valueOf(parser.getHits()));
+                }
+                if (parser.getStatus() >= 0) {
+                    doc.setField(STATUS_FIELD,
+                            Integer.valueOf(parser.getStatus()));
+                }
+                doc.setField(PATH_FIELD, parser.getPath());
+                setField(doc, WEBAPP_FIELD, parser.getWebapp());
+                setField(doc, PARAMS_FIELD, parser.getParams());
+            }
+            // do not keep the message of the thread
+            parser.parse(null);
+        }
+        this.solrWriter.write(doc);
+    }
+
+    @Override
+    public void flush() {
+        this.solrWriter.flush();
+    }
+
+    // helper
+    /**
+     * set a field if the value is not null.
+     */
+    private static void setField(final SolrInputDocument doc,
+            final String field, final String value) {
+        if (value != null) {
+            doc.setField(field, value);
+        }
+    }
+}
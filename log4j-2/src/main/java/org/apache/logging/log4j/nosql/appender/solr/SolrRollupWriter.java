@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * {@link SolrWriter} collapsing repeated log events. Log events with the same
+ * logger, level and message within a window are written as a single document
+ * carrying the fields count, firstMillis and lastMillis. The first log event
+ * of a key is held back until its window expired or it is evicted because
+ * the number of keys exceeds maxKeys.
+ * <p>
+ * The NoSQL appender passes the formatted message only, so the message text
+ * is the message part of the key. Documents without message (e.g. stack
+ * trace documents) or with a dropped message field are written as they are.
+ */
+public final class SolrRollupWriter implements SolrWriter {
+    // status logger
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // solr fields of the key and of the time of the log event
+    private final String loggerField;
+    private final String levelField;
+    private final String messageField;
+    private final String millisField;
+
+    // fields of the rolled up document
+    static final String COUNT_FIELD = "count";
+    static final String FIRST_MILLIS_FIELD = "firstMillis";
+    static final String LAST_MILLIS_FIELD = "lastMillis";
+
+    // timer shared by all rollup writers
+    private static final ScheduledExecutorService TIMER = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "SolrRollupWriter-expire");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // threads writing the expired rollups, so a slow writer does not hold up
+    // the timer of the other rollup writers
+    private static final ExecutorService SENDER = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "SolrRollupWriter-send");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // writer the rolled up documents are written to
+    private final SolrWriter solrWriter;
+
+    // length of the window in ms
+    private final long windowMs;
+
+    // max number of keys held back
+    private final int maxKeys;
+
+    // rollups by hash of their key
+    private final ConcurrentMap<Long, Rollup> rollups = new ConcurrentHashMap<Long, Rollup>();
+
+    // scheduled expiry of the windows
+    private final ScheduledFuture<?> expiry;
+
+    // true while a sender thread writes the expired rollups. the timer skips
+    // the expiry meanwhile
+    private final AtomicBoolean expiring = new AtomicBoolean();
+
+    // expiry executed by a sender thread
+    private final Runnable expireTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                expire(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                // there is no caller to report to. the rollups which are
+                // left expire with the next run
+                LOGGER.error(e.getMessage(), e);
+            } finally {
+                expiring.set(false);
+            }
+        }
+    };
+
+    /**
+     * default constructor.
+     *
+     * @param solrWriter
+     *            writer the rolled up documents are written to
+     * @param windowMs
+     *            length of the window in which repeated log events are
+     *            collapsed
+     * @param maxKeys
+     *            max number of keys held back
+     * @param mapping
+     *            field mapping of the documents. null if the fields are
+     *            written as they are
+     */
+    public SolrRollupWriter(final SolrWriter solrWriter, long windowMs,
+            int maxKeys, final SolrFieldMapping mapping) {
+        this.solrWriter = solrWriter;
+        this.loggerField = map(mapping, "loggerName");
+        this.levelField = map(mapping, "level");
+        this.messageField = map(mapping, "message");
+        this.millisField = map(mapping, "millis");
+        this.windowMs = windowMs;
+        this.maxKeys = maxKeys;
+        long period = Math.max(10, windowMs / 4);
+        this.expiry = TIMER.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                if (expiring.compareAndSet(false, true)) {
+                    SENDER.execute(expireTask);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * count the document if a log event with the same key is held back,
+     * otherwise hold it back.
+     */
+    @Override
+    public void write(final SolrInputDocument doc) {
+        Object message = value(doc, this.messageField);
+        if (message == null) {
+            this.solrWriter.write(doc);
+            return;
+        }
+        Object loggerName = value(doc, this.loggerField);
+        Object level = value(doc, this.levelField);
+        Object millisValue = value(doc, this.millisField);
+        long millis = millisValue instanceof Number ? ((Number) millisValue)
+                .longValue() : System.currentTimeMillis();
+        Long hash = Long.valueOf(hash(loggerName, level, message));
+
+        while (true) {
+            Rollup rollup = this.rollups.get(hash);
+            if (rollup == null) {
+                if (this.rollups.size() >= this.maxKeys) {
+                    evict();
+                }
+                rollup = new Rollup(doc, loggerName, level, message, millis);
+                if (this.rollups.putIfAbsent(hash, rollup) == null) {
+                    return;
+                }
+                // another thread was faster
+                continue;
+            }
+
+            synchronized (rollup) {
+                if (rollup.written) {
+                    // expired meanwhile
+                    continue;
+                }
+                if (!rollup.matches(loggerName, level, message)) {
+                    // hash collision
+                    break;
+                }
+                rollup.count++;
+                rollup.lastMillis = Math.max(rollup.lastMillis, millis);
+            }
+            SolrObject.recycle(doc);
+            return;
+        }
+        this.solrWriter.write(doc);
+    }
+
+    /**
+     * write all log events held back and flush the wrapped writer.
+     */
+    @Override
+    public void flush() {
+        expire(Long.MAX_VALUE);
+        this.solrWriter.flush();
+    }
+
+    /**
+     * stop the expiry of the windows. log events held back are written.
+     */
+    public void stop() {
+        this.expiry.cancel(false);
+        flush();
+    }
+
+    /**
+     * @return number of keys held back
+     */
+    public int size() {
+        return this.rollups.size();
+    }
+
+    // helper
+    /**
+     * write the rollups whose window started before now - windowMs.
+     */
+    private void expire(long now) {
+        for (Iterator<Rollup> it = this.rollups.values().iterator(); it
+                .hasNext();) {
+            Rollup rollup = it.next();
+            if (now - rollup.firstMillis >= this.windowMs
+                    || now == Long.MAX_VALUE) {
+                it.remove();
+                writeRollup(rollup);
+            }
+        }
+    }
+
+    /**
+     * write any rollup to make room for a new key.
+     */
+    private void evict() {
+        Iterator<Rollup> it = this.rollups.values().iterator();
+        if (it.hasNext()) {
+            Rollup rollup = it.next();
+            it.remove();
+            writeRollup(rollup);
+        }
+    }
+
+    private void writeRollup(final Rollup rollup) {
+        SolrInputDocument doc;
+        synchronized (rollup) {
+            if (rollup.written) {
+                return;
+            }
+            rollup.written = true;
+            doc = rollup.doc;
+            doc.setField(COUNT_FIELD, rollup.count);
+            doc.setField(FIRST_MILLIS_FIELD, rollup.firstMillis);
+            doc.setField(LAST_MILLIS_FIELD, rollup.lastMillis);
+        }
+        this.solrWriter.write(doc);
+    }
+
+    private static String map(final SolrFieldMapping mapping,
+            final String field) {
+        return mapping == null ? field : mapping.map(field);
+    }
+
+    private static Object value(final SolrInputDocument doc,
+            final String field) {
+        return field == null ? null : doc.getFieldValue(field);
+    }
+
+    /**
+     * 64 bit hash of the key.
+     */
+    private static long hash(final Object loggerName, final Object level,
+            final Object message) {
+        long hash = 1125899906842597L;
+        hash = 31 * hash + (loggerName == null ? 0 : loggerName.hashCode());
+        hash = 31 * hash + (level == null ? 0 : level.toString().hashCode());
+        hash = 31 * hash + message.hashCode();
+        hash ^= (hash >>> 33);
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= (hash >>> 33);
+        return hash;
+    }
+
+    /**
+     * log event held back together with its counters.
+     */
+    private static final class Rollup {
+        private final SolrInputDocument doc;
+        private final Object loggerName;
+        private final String level;
+        private final Object message;
+        private final long firstMillis;
+        private long lastMillis;
+        private int count = 1;
+        private boolean written;
+
+        private Rollup(final SolrInputDocument doc, final Object loggerName,
+                final Object level, final Object message, long millis) {
+            this.doc = doc;
+            this.loggerName = loggerName;
+            this.level = level == null ? null : level.toString();
+            this.message = message;
+            this.firstMillis = millis;
+            this.lastMillis = millis;
+        }
+
+        private boolean matches(final Object loggerName, final Object level,
+                final Object message) {
+            return equal(this.loggerName, loggerName)
+                    && equal(this.level, level == null ? null : level
+                            .toString()) && this.message.equals(message);
+        }
+
+        private static boolean equal(final Object a, final Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
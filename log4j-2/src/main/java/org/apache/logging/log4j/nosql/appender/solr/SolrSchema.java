@@ -0,0 +1,467 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.LukeRequest;
+import org.apache.solr.client.solrj.response.LukeResponse;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.luke.FieldFlag;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+
+/**
+ * Immutable snapshot of the fields of a solr schema, used to check the
+ * documents before they are sent. A snapshot is loaded by a {@link Loader}
+ * from the luke request handler of a remote solr or from the
+ * {@link IndexSchema} of an embedded core.
+ * <p>
+ * Fields are looked up by name first, then by the dynamic field patterns,
+ * longest pattern first like solr does. The results of the pattern lookups
+ * are cached, so a field name is matched against the patterns only once.
+ */
+public final class SolrSchema {
+    // max number of cached pattern lookups
+    private static final int MAX_CACHED_LOOKUPS = 4096;
+
+    // pattern matching every field
+    private static final String MATCH_ALL = "*";
+
+    /**
+     * loads a snapshot of a solr schema.
+     */
+    public static interface Loader {
+        /**
+         * @return the current schema
+         * @throws SolrServerException
+         *             if solr can not be reached
+         * @throws IOException
+         *             if solr can not be reached
+         */
+        SolrSchema load() throws SolrServerException, IOException;
+    }
+
+    /**
+     * value type of a field. values of other types are converted before
+     * they are sent.
+     */
+    public static enum Type {
+        /** int fields. */
+        INT,
+        /** long fields. */
+        LONG,
+        /** float fields. */
+        FLOAT,
+        /** double fields. */
+        DOUBLE,
+        /** boolean fields. */
+        BOOLEAN,
+        /** date fields. numbers are taken as milliseconds. */
+        DATE,
+        /** string, text and all other fields. values are sent as they are. */
+        OTHER;
+
+        /**
+         * @param className
+         *            class of the field type, e.g. solr.TrieIntField
+         * @return type of the values of the field type
+         */
+        static Type of(final String className) {
+            String name = className.substring(className.lastIndexOf('.') + 1);
+            if (name.endsWith("IntField")) {
+                return INT;
+            } else if (name.endsWith("LongField")) {
+                return LONG;
+            } else if (name.endsWith("FloatField")) {
+                return FLOAT;
+            } else if (name.endsWith("DoubleField")) {
+                return DOUBLE;
+            } else if (name.equals("BoolField")) {
+                return BOOLEAN;
+            } else if (name.endsWith("DateField")) {
+                return DATE;
+            }
+            return OTHER;
+        }
+
+        /**
+         * convert a value to the type.
+         * 
+         * @param value
+         *            value of a log event
+         * @return converted value or null if the value can not be converted
+         *         or does not fit the type, e.g. a fraction for an INT
+         */
+        Object coerce(final Object value) {
+            try {
+                switch (this) {
+                case INT:
+                    if (value instanceof Integer) {
+                        return value;
+                    }
+                    if (value instanceof Number) {
+                        Long integral = integral((Number) value);
+                        return integral == null
+                                || integral.longValue() != integral.intValue() ? null
+                                : Integer.valueOf(integral.intValue());
+                    }
+                    return Integer.valueOf(value.toString().trim());
+                case LONG:
+                    if (value instanceof Long) {
+                        return value;
+                    }
+                    return value instanceof Number ? integral((Number) value)
+                            : Long.valueOf(value.toString().trim());
+                case FLOAT:
+                    if (value instanceof Float) {
+                        return value;
+                    }
+                    if (value instanceof Number) {
+                        double number = ((Number) value).doubleValue();
+                        float converted = (float) number;
+                        // too large for a float
+                        return Float.isInfinite(converted)
+                                && !Double.isInfinite(number) ? null : Float
+                                .valueOf(converted);
+                    }
+                    return Float.valueOf(value.toString().trim());
+                case DOUBLE:
+                    if (value instanceof Double) {
+                        return value;
+                    }
+                    return value instanceof Number ? Double
+                            .valueOf(((Number) value).doubleValue()) : Double
+                            .valueOf(value.toString().trim());
+                case BOOLEAN:
+                    if (value instanceof Boolean) {
+                        return value;
+                    }
+                    String bool = value.toString().trim();
+                    if ("true".equalsIgnoreCase(bool)) {
+                        return Boolean.TRUE;
+                    } else if ("false".equalsIgnoreCase(bool)) {
+                        return Boolean.FALSE;
+                    }
+                    return null;
+                case DATE:
+                    // strings are parsed by solr
+                    return value instanceof Number ? new Date(
+                            ((Number) value).longValue()) : value;
+                default:
+                    return value;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return value as long or null if it has a fraction or is out of the
+         *         range of a long
+         */
+        private static Long integral(final Number value) {
+            if (value instanceof Long || value instanceof Integer
+                    || value instanceof Short || value instanceof Byte) {
+                return Long.valueOf(value.longValue());
+            } else if (value instanceof BigInteger) {
+                return ((BigInteger) value).bitLength() < 64 ? Long
+                        .valueOf(value.longValue()) : null;
+            } else if (value instanceof BigDecimal) {
+                try {
+                    return Long.valueOf(((BigDecimal) value).longValueExact());
+                } catch (ArithmeticException e) {
+                    return null;
+                }
+            }
+            double number = value.doubleValue();
+            // 2^63 is the first double above Long.MAX_VALUE
+            if (number != Math.rint(number) || number < -0x1p63
+                    || number >= 0x1p63) {
+                return null;
+            }
+            return Long.valueOf((long) number);
+        }
+    }
+
+    /**
+     * field of the schema.
+     */
+    public static final class Field {
+        // value type
+        private final Type type;
+
+        // true if the field takes more than one value
+        private final boolean multiValued;
+
+        /**
+         * default constructor.
+         * 
+         * @param type
+         *            value type
+         * @param multiValued
+         *            true if the field takes more than one value
+         */
+        Field(final Type type, boolean multiValued) {
+            this.type = type;
+            this.multiValued = multiValued;
+        }
+
+        /**
+         * @return value type
+         */
+        public Type getType() {
+            return this.type;
+        }
+
+        /**
+         * @return true if the field takes more than one value
+         */
+        public boolean isMultiValued() {
+            return this.multiValued;
+        }
+    }
+
+    // marks a cached lookup of an unknown field
+    private static final Field UNKNOWN = new Field(Type.OTHER, true);
+
+    // fields by name
+    private final Map<String, Field> fields;
+
+    // dynamic field patterns, longest first
+    private final String[] patterns;
+    private final Field[] dynamicFields;
+
+    // results of the pattern lookups
+    private final ConcurrentMap<String, Field> lookups = new ConcurrentHashMap<String, Field>();
+
+    /**
+     * default constructor.
+     * 
+     * @param fields
+     *            fields by name
+     * @param dynamicFields
+     *            fields by dynamic field pattern (*_s, s_* or *)
+     */
+    public SolrSchema(final Map<String, Field> fields,
+            final Map<String, Field> dynamicFields) {
+        this.fields = new HashMap<String, Field>(fields);
+        this.patterns = dynamicFields.keySet().toArray(
+                new String[dynamicFields.size()]);
+        Arrays.sort(this.patterns, new Comparator<String>() {
+            @Override
+            public int compare(final String a, final String b) {
+                return b.length() - a.length();
+            }
+        });
+        this.dynamicFields = new Field[this.patterns.length];
+        for (int i = 0; i < this.patterns.length; i++) {
+            this.dynamicFields[i] = dynamicFields.get(this.patterns[i]);
+        }
+    }
+
+    /**
+     * look up a field.
+     * 
+     * @param name
+     *            name of the field
+     * @return field or null if the schema does not know the field
+     */
+    public Field getField(final String name) {
+        Field field = this.fields.get(name);
+        if (field != null) {
+            return field;
+        }
+        field = this.lookups.get(name);
+        if (field == null) {
+            field = UNKNOWN;
+            for (int i = 0; i < this.patterns.length; i++) {
+                if (matches(this.patterns[i], name)) {
+                    field = this.dynamicFields[i];
+                    break;
+                }
+            }
+            if (this.lookups.size() < MAX_CACHED_LOOKUPS) {
+                this.lookups.put(name, field);
+            }
+        }
+        return field == UNKNOWN ? null : field;
+    }
+
+    /**
+     * @return number of fields and dynamic fields
+     */
+    public int size() {
+        return this.fields.size() + this.patterns.length;
+    }
+
+    @Override
+    public String toString() {
+        return "schema(" + this.fields.size() + " fields, "
+                + this.patterns.length + " dynamic fields)";
+    }
+
+    /**
+     * check if a field name matches a dynamic field pattern.
+     * 
+     * @param pattern
+     *            dynamic field pattern (*_s, s_* or *)
+     * @param name
+     *            name of the field
+     * @return true if the name matches
+     */
+    static boolean matches(final String pattern, final String name) {
+        if (MATCH_ALL.equals(pattern)) {
+            return true;
+        } else if (pattern.startsWith("*")) {
+            return name.endsWith(pattern.substring(1));
+        } else if (pattern.endsWith("*")) {
+            return name.startsWith(pattern.substring(0,
+                    pattern.length() - 1));
+        }
+        return pattern.equals(name);
+    }
+
+    /**
+     * create a loader asking the luke request handler of a solr server.
+     * 
+     * @param solrServer
+     *            solr server of the core or collection
+     * @return loader
+     */
+    public static Loader loader(final SolrServer solrServer) {
+        return new Loader() {
+            @Override
+            public SolrSchema load() throws SolrServerException, IOException {
+                LukeRequest request = new LukeRequest();
+                request.setShowSchema(true);
+                request.setNumTerms(0);
+                return of(request.process(solrServer));
+            }
+        };
+    }
+
+    /**
+     * create a loader reading the schema of an embedded core.
+     * 
+     * @param coreContainer
+     *            container of the core
+     * @param coreName
+     *            name of the core
+     * @return loader
+     */
+    public static Loader loader(final CoreContainer coreContainer,
+            final String coreName) {
+        return new Loader() {
+            @Override
+            public SolrSchema load() {
+                SolrCore core = coreContainer.getCore(coreName);
+                if (core == null) {
+                    throw new SolrException(SolrException.ErrorCode.NOT_FOUND,
+                            "No such core: " + coreName);
+                }
+                try {
+                    return of(core.getLatestSchema());
+                } finally {
+                    core.close();
+                }
+            }
+        };
+    }
+
+    // helper
+    /**
+     * create a snapshot of the schema of an embedded core.
+     */
+    static SolrSchema of(final IndexSchema schema) {
+        Map<String, Field> fields = new HashMap<String, Field>();
+        for (SchemaField field : schema.getFields().values()) {
+            fields.put(field.getName(), field(field));
+        }
+        Map<String, Field> dynamicFields = new HashMap<String, Field>();
+        for (SchemaField field : schema.getDynamicFieldPrototypes()) {
+            dynamicFields.put(field.getName(), field(field));
+        }
+        return new SolrSchema(fields, dynamicFields);
+    }
+
+    /**
+     * create a snapshot of the schema of a luke response.
+     */
+    @SuppressWarnings("unchecked")
+    static SolrSchema of(final LukeResponse response) {
+        NamedList<Object> schema = (NamedList<Object>) response.getResponse()
+                .get("schema");
+        if (schema == null) {
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                    "Luke response without schema");
+        }
+        NamedList<Object> types = (NamedList<Object>) schema.get("types");
+        return new SolrSchema(fields(
+                (NamedList<Object>) schema.get("fields"), types), fields(
+                (NamedList<Object>) schema.get("dynamicFields"), types));
+    }
+
+    /**
+     * convert the fields of a luke response.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Field> fields(final NamedList<Object> fields,
+            final NamedList<Object> types) {
+        Map<String, Field> result = new HashMap<String, Field>();
+        if (fields == null) {
+            return result;
+        }
+        for (Map.Entry<String, Object> entry : fields) {
+            NamedList<Object> field = (NamedList<Object>) entry.getValue();
+            Object typeName = field.get("type");
+            NamedList<Object> type = types == null || typeName == null ? null
+                    : (NamedList<Object>) types.get(typeName.toString());
+            Object className = type == null ? null : type.get("className");
+            Object flags = field.get("flags");
+            result.put(entry.getKey(), new Field(
+                    className == null ? Type.OTHER : Type.of(className
+                            .toString()), flags != null
+                            && LukeResponse.FieldInfo.parseFlags(
+                                    flags.toString()).contains(
+                                    FieldFlag.MULTI_VALUED)));
+        }
+        return result;
+    }
+
+    /**
+     * convert a field of an embedded core.
+     */
+    private static Field field(final SchemaField field) {
+        return new Field(Type.of(field.getType().getClass().getName()),
+                field.multiValued());
+    }
+}
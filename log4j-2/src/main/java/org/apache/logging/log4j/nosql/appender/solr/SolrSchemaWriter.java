@@ -0,0 +1,341 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+
+/**
+ * {@link SolrWriter} checking the documents against the schema of the index
+ * before they are sent. Solr rejects a whole request for a single unknown
+ * field, so with batching one bad field would cost a batch.
+ * <ul>
+ * <li>fields the schema does not know are dropped or renamed to a dynamic
+ * field, e.g. userId -> userId_s for the pattern *_s</li>
+ * <li>values are converted to the type of their field, e.g. "42" for an int
+ * field or millis for a date field. values which can not be converted are
+ * dropped</li>
+ * <li>only the first value is kept for fields which are not multi valued</li>
+ * </ul>
+ * The schema is loaded when the writer is created and reloaded in the
+ * background after the refresh interval. Until it could be loaded the
+ * documents are passed unchanged, a failed load is retried every 10 seconds.
+ */
+public final class SolrSchemaWriter implements SolrWriter {
+    // status logger
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // threads reloading the schema. daemons, so a reload never keeps the
+    // jvm alive
+    private static final ExecutorService LOADER = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SolrSchemaWriter-load");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // amount of time before a failed load is retried
+    static final long RETRY_INTERVAL_MS = 10000;
+
+    // writer the documents are passed to
+    private final SolrWriter solrWriter;
+
+    // loads the schema
+    private final SolrSchema.Loader loader;
+
+    // unknown fields are renamed to prefix + name + suffix. null to drop them
+    private final String renamePrefix;
+    private final String renameSuffix;
+
+    // amount of time between two loads. 0 to load once
+    private final long refreshMs;
+
+    // current schema. null until it could be loaded
+    private volatile SolrSchema schema;
+
+    // time of the next load
+    private volatile long nextLoad;
+    private final AtomicBoolean loading = new AtomicBoolean();
+
+    // counters
+    private final AtomicLong droppedFields = new AtomicLong();
+    private final AtomicLong renamedFields = new AtomicLong();
+    private final AtomicLong coercedFields = new AtomicLong();
+
+    /**
+     * default constructor. loads the schema.
+     * 
+     * @param solrWriter
+     *            writer the documents are passed to
+     * @param loader
+     *            loads the schema
+     * @param renamePattern
+     *            dynamic field pattern unknown fields are renamed to, e.g.
+     *            *_s. null to drop unknown fields
+     * @param refreshMs
+     *            amount of time between two loads of the schema. 0 to load it
+     *            once
+     * @throws IllegalArgumentException
+     *             if the pattern does not contain exactly one *
+     */
+    public SolrSchemaWriter(final SolrWriter solrWriter,
+            final SolrSchema.Loader loader, final String renamePattern,
+            long refreshMs) {
+        if (renamePattern == null) {
+            this.renamePrefix = null;
+            this.renameSuffix = null;
+        } else {
+            int star = renamePattern.indexOf('*');
+            if (star < 0 || star != renamePattern.lastIndexOf('*')
+                    || renamePattern.length() == 1) {
+                throw new IllegalArgumentException("Invalid unknownFields \""
+                        + renamePattern + "\"");
+            }
+            this.renamePrefix = renamePattern.substring(0, star);
+            this.renameSuffix = renamePattern.substring(star + 1);
+        }
+        this.solrWriter = solrWriter;
+        this.loader = loader;
+        this.refreshMs = refreshMs;
+        load();
+    }
+
+    @Override
+    public void write(final SolrInputDocument doc) {
+        if (System.currentTimeMillis() >= this.nextLoad
+                && this.loading.compareAndSet(false, true)) {
+            LOADER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        load();
+                    } finally {
+                        loading.set(false);
+                    }
+                }
+            });
+        }
+        SolrSchema current = this.schema;
+        if (current != null) {
+            check(doc, current);
+        }
+        this.solrWriter.write(doc);
+    }
+
+    @Override
+    public void flush() {
+        this.solrWriter.flush();
+    }
+
+    /**
+     * @return current schema or null if it could not be loaded yet
+     */
+    public SolrSchema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * @return number of fields dropped because they are unknown or their
+     *         values could not be converted
+     */
+    public long getDroppedFieldCount() {
+        return this.droppedFields.get();
+    }
+
+    /**
+     * @return number of unknown fields renamed to a dynamic field
+     */
+    public long getRenamedFieldCount() {
+        return this.renamedFields.get();
+    }
+
+    /**
+     * @return number of fields whose values were converted
+     */
+    public long getCoercedFieldCount() {
+        return this.coercedFields.get();
+    }
+
+    @Override
+    public String toString() {
+        return this.renamePrefix == null ? "drop" : this.renamePrefix + "*"
+                + this.renameSuffix;
+    }
+
+    // helper
+    /**
+     * load the schema and schedule the next load.
+     */
+    private void load() {
+        try {
+            SolrSchema loaded = this.loader.load();
+            this.schema = loaded;
+            this.nextLoad = this.refreshMs > 0 ? System.currentTimeMillis()
+                    + this.refreshMs : Long.MAX_VALUE;
+            return;
+        } catch (SolrServerException e) {
+            failed(e);
+        } catch (IOException e) {
+            failed(e);
+        } catch (SolrException e) {
+            failed(e);
+        }
+        this.nextLoad = System.currentTimeMillis() + RETRY_INTERVAL_MS;
+    }
+
+    /**
+     * report a failed load. the last schema is kept.
+     */
+    private void failed(final Exception e) {
+        LOGGER.warn("Failed to load the solr schema due to error: "
+                + e.getMessage()
+                + (this.schema == null ? ", documents are sent unchecked"
+                        : ", keeping the last schema"));
+    }
+
+    /**
+     * drop or rename the unknown fields of a document and its children and
+     * convert the values.
+     */
+    private void check(final SolrInputDocument doc, final SolrSchema schema) {
+        List<SolrInputField> renamed = null;
+        Iterator<SolrInputField> fields = doc.iterator();
+        while (fields.hasNext()) {
+            SolrInputField field = fields.next();
+            SolrSchema.Field schemaField = schema.getField(field.getName());
+            if (schemaField == null && this.renamePrefix != null) {
+                String name = this.renamePrefix + field.getName()
+                        + this.renameSuffix;
+                schemaField = schema.getField(name);
+                if (schemaField != null) {
+                    // put back after the iteration. the field may belong to
+                    // a pooled object, so it keeps its name
+                    fields.remove();
+                    SolrInputField copy = new SolrInputField(name);
+                    copy.setValue(field.getValue(), field.getBoost());
+                    if (renamed == null) {
+                        renamed = new ArrayList<SolrInputField>(2);
+                    }
+                    renamed.add(copy);
+                    this.renamedFields.incrementAndGet();
+                    continue;
+                }
+            }
+            if (schemaField == null || !coerce(field, schemaField)) {
+                fields.remove();
+                dropped(field.getName());
+            }
+        }
+        if (renamed != null) {
+            for (SolrInputField field : renamed) {
+                if (!coerce(field, schema.getField(field.getName()))) {
+                    dropped(field.getName());
+                } else if (doc.containsKey(field.getName())) {
+                    // the dynamic field is set already
+                    dropped(field.getName());
+                } else {
+                    doc.put(field.getName(), field);
+                }
+            }
+        }
+        if (doc.hasChildDocuments()) {
+            for (SolrInputDocument child : doc.getChildDocuments()) {
+                check(child, schema);
+            }
+        }
+    }
+
+    /**
+     * convert the values of a field to the type of the schema.
+     * 
+     * @return false if no value is left
+     */
+    @SuppressWarnings("unchecked")
+    private boolean coerce(final SolrInputField field,
+            final SolrSchema.Field schemaField) {
+        Object value = field.getValue();
+        if (value == null) {
+            return true;
+        }
+        SolrSchema.Type type = schemaField.getType();
+        if (value instanceof Collection) {
+            Collection<Object> values = (Collection<Object>) value;
+            if (type == SolrSchema.Type.OTHER
+                    && (schemaField.isMultiValued() || values.size() < 2)) {
+                return true;
+            }
+            List<Object> coerced = new ArrayList<Object>(values.size());
+            boolean changed = false;
+            for (Object item : values) {
+                Object converted = item == null ? null : type.coerce(item);
+                changed |= converted != item;
+                if (converted != null) {
+                    coerced.add(converted);
+                    if (!schemaField.isMultiValued()) {
+                        changed |= values.size() > 1;
+                        break;
+                    }
+                }
+            }
+            if (coerced.isEmpty()) {
+                return false;
+            }
+            if (changed) {
+                field.setValue(coerced, field.getBoost());
+                this.coercedFields.incrementAndGet();
+            }
+            return true;
+        }
+        Object converted = type.coerce(value);
+        if (converted == null) {
+            return false;
+        }
+        if (converted != value) {
+            field.setValue(converted, field.getBoost());
+            this.coercedFields.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * count a dropped field.
+     */
+    private void dropped(final String name) {
+        if (this.droppedFields.getAndIncrement() == 0) {
+            LOGGER.warn("Dropping field \"" + name
+                    + "\" which does not fit the solr schema");
+        }
+    }
+}
@@ -0,0 +1,561 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.JavaBinCodec;
+
+/**
+ * Append-only journal of solr documents on the local disk. It holds the log
+ * events which could not be sent to solr until they are replayed.
+ * <p>
+ * The journal consists of memory mapped segment files of a fixed size. A
+ * record is the length of the javabin encoded document followed by its bytes.
+ * The length is written after the bytes, so a record which was not written
+ * completely ends the segment. A new segment is started when a record does not
+ * fit into the current one. Replayed segments are deleted.
+ * <p>
+ * The position up to which the documents were replayed is stored in an offset
+ * file and forced to disk on every {@link #commit()}, so a restarted appender
+ * resumes the replay where it stopped. Documents read but not committed
+ * before a crash are replayed again.
+ * <p>
+ * {@link #close()} releases the mappings, so the memory and the files are
+ * released without waiting for the garbage collector.
+ */
+public final class SolrSpillJournal {
+    // status logger
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // file name suffix of the segments
+    private static final String SEGMENT_SUFFIX = ".spill";
+
+    // name of the file holding the read position
+    private static final String OFFSET_FILE = "offset";
+
+    // marks the end of the records of a segment
+    private static final int END_OF_SEGMENT = -1;
+
+    // size of the record length
+    private static final int LENGTH_SIZE = 4;
+
+    // mixed into the checksum of the read position
+    private static final long OFFSET_MAGIC = 0x536f6c724a726e6cL;
+
+    // directory holding the segment files
+    private final File directory;
+
+    // size of a segment file
+    private final int segmentSize;
+
+    // max number of segment files
+    private final int maxSegments;
+
+    // open segments ordered by id
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<Long, MappedByteBuffer>();
+
+    // mapped offset file
+    private final MappedByteBuffer offset;
+
+    // write position
+    private long writeSegment;
+    private int writePosition;
+
+    // read position committed to the offset file
+    private long readSegment;
+    private int readPosition;
+
+    // position behind the documents returned by read()
+    private long pendingSegment;
+    private int pendingPosition;
+    private int pendingRecords;
+
+    // first segment written since the last sync
+    private long syncSegment;
+
+    // number of documents in the journal
+    private long size;
+
+    // documents rejected because the journal was full
+    private long rejectedCount;
+
+    // true after close()
+    private boolean closed;
+
+    /**
+     * open the journal in the given directory. segments and read position of
+     * a previous run are recovered.
+     * 
+     * @param directory
+     *            directory holding the segment files. created if it does not
+     *            exist
+     * @param segmentSize
+     *            size of a segment file in bytes
+     * @param maxDiskSize
+     *            max number of bytes used by the segment files
+     * @throws IOException
+     *             if the journal can not be opened
+     */
+    public SolrSpillJournal(final File directory, int segmentSize,
+            long maxDiskSize) throws IOException {
+        if (segmentSize <= LENGTH_SIZE) {
+            throw new IllegalArgumentException("Invalid spill segment size "
+                    + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create spill directory "
+                    + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(1, maxDiskSize / segmentSize);
+        this.offset = map(new File(directory, OFFSET_FILE), 24);
+
+        try {
+            recover();
+        } catch (IOException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * append a document to the journal.
+     * 
+     * @param doc
+     *            document to append
+     * @return false if the document was rejected because the journal is full
+     *         or closed
+     */
+    public synchronized boolean append(final SolrInputDocument doc) {
+        if (this.closed) {
+            return false;
+        }
+        byte[] bytes;
+        try {
+            bytes = encode(doc);
+        } catch (IOException e) {
+            LOGGER.error("Failed to encode log event for the spill journal: "
+                    + e.getMessage(), e);
+            return false;
+        }
+        if (bytes.length + 2 * LENGTH_SIZE > this.segmentSize) {
+            LOGGER.error("Log event of " + bytes.length
+                    + " bytes does not fit into a spill segment");
+            return false;
+        }
+
+        MappedByteBuffer segment = this.segments.get(this.writeSegment);
+        if (this.writePosition + LENGTH_SIZE + bytes.length > this.segmentSize
+                - LENGTH_SIZE) {
+            // start a new segment
+            if (this.segments.size() >= this.maxSegments) {
+                rejected();
+                return false;
+            }
+            try {
+                segment = openSegment(this.writeSegment + 1);
+            } catch (IOException e) {
+                LOGGER.error("Failed to create spill segment: "
+                        + e.getMessage(), e);
+                rejected();
+                return false;
+            }
+            this.segments.get(this.writeSegment).putInt(this.writePosition,
+                    END_OF_SEGMENT);
+            this.writeSegment++;
+            this.writePosition = 0;
+        }
+
+        // bytes first, the length completes the record
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position(this.writePosition + LENGTH_SIZE);
+        buffer.put(bytes);
+        segment.putInt(this.writePosition, bytes.length);
+        this.writePosition += LENGTH_SIZE + bytes.length;
+        this.size++;
+        return true;
+    }
+
+    /**
+     * read the next documents behind the committed read position. the
+     * documents stay in the journal until {@link #commit()} is called.
+     * 
+     * @param maxDocs
+     *            max number of documents to read
+     * @return documents, empty if the journal is empty or closed
+     */
+    public synchronized List<SolrInputDocument> read(int maxDocs) {
+        List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
+        if (this.closed) {
+            return docs;
+        }
+        int records = 0;
+        long segmentId = this.readSegment;
+        int position = this.readPosition;
+
+        while (records < maxDocs) {
+            MappedByteBuffer segment = this.segments.get(segmentId);
+            int length = segment == null ? 0 : recordLength(segment, position);
+            if (length <= 0) {
+                if (segmentId >= this.writeSegment) {
+                    break;
+                }
+                // continue with the next segment
+                segmentId++;
+                position = 0;
+                continue;
+            }
+
+            byte[] bytes = new byte[length];
+            ByteBuffer buffer = segment.duplicate();
+            buffer.position(position + LENGTH_SIZE);
+            buffer.get(bytes);
+            position += LENGTH_SIZE + length;
+            records++;
+            try {
+                docs.add(decode(bytes));
+            } catch (IOException e) {
+                // skip a corrupt record
+                LOGGER.error("Failed to decode log event of the spill journal: "
+                        + e.getMessage(), e);
+            }
+        }
+
+        this.pendingSegment = segmentId;
+        this.pendingPosition = position;
+        this.pendingRecords = records;
+        return docs;
+    }
+
+    /**
+     * remove the documents returned by the last {@link #read(int)} and store
+     * the read position on disk. replayed segments are deleted.
+     */
+    public synchronized void commit() {
+        if (this.closed) {
+            return;
+        }
+        while (this.readSegment < this.pendingSegment) {
+            deleteSegment(this.readSegment);
+            this.readSegment++;
+            this.readPosition = 0;
+        }
+        this.readPosition = this.pendingPosition;
+        this.size -= this.pendingRecords;
+        this.pendingRecords = 0;
+
+        this.offset.putLong(0, this.readSegment);
+        this.offset.putLong(8, this.readPosition);
+        this.offset.putLong(16, checksum(this.readSegment, this.readPosition));
+        this.offset.force();
+    }
+
+    /**
+     * force the written records to disk.
+     */
+    public synchronized void sync() {
+        if (this.closed) {
+            return;
+        }
+        // the segments completed since the last sync as well
+        for (MappedByteBuffer segment : this.segments.tailMap(
+                this.syncSegment).values()) {
+            segment.force();
+        }
+        this.syncSegment = this.writeSegment;
+    }
+
+    /**
+     * force the written records and the read position to disk and release
+     * the mappings. the journal rejects all documents afterwards.
+     */
+    public synchronized void close() {
+        if (this.closed) {
+            return;
+        }
+        sync();
+        this.offset.force();
+        this.closed = true;
+        release();
+    }
+
+    /**
+     * @return true if there is no document to replay
+     */
+    public synchronized boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @return number of documents to replay
+     */
+    public synchronized long size() {
+        return this.size;
+    }
+
+    /**
+     * @return number of bytes used by the segment files
+     */
+    public synchronized long getDiskSize() {
+        return (long) this.segments.size() * this.segmentSize;
+    }
+
+    /**
+     * @return number of documents rejected because the journal was full
+     */
+    public synchronized long getRejectedCount() {
+        return this.rejectedCount;
+    }
+
+    // helper
+    /**
+     * open the existing segments and restore the read and write position.
+     */
+    private void recover() throws IOException {
+        File[] files = this.directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        TreeMap<Long, File> existing = new TreeMap<Long, File>();
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                existing.put(Long.valueOf(name.substring(0, name.length()
+                        - SEGMENT_SUFFIX.length())), file);
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Ignoring unknown file " + file
+                        + " in spill directory");
+            }
+        }
+
+        // committed read position. an invalid offset file replays all
+        long segmentId = this.offset.getLong(0);
+        long position = this.offset.getLong(8);
+        boolean valid = this.offset.getLong(16) == checksum(segmentId,
+                position) && position >= 0 && position < this.segmentSize;
+
+        for (Map.Entry<Long, File> entry : existing.entrySet()) {
+            if (valid && entry.getKey() < segmentId) {
+                // already replayed
+                if (!entry.getValue().delete()) {
+                    LOGGER.warn("Failed to delete spill segment "
+                            + entry.getValue());
+                }
+            } else if (entry.getValue().length() != this.segmentSize) {
+                LOGGER.warn("Ignoring spill segment " + entry.getValue()
+                        + " of a different segment size");
+            } else {
+                openSegment(entry.getKey());
+            }
+        }
+
+        if (this.segments.isEmpty()) {
+            long first = valid ? segmentId : 0;
+            openSegment(first);
+            this.readSegment = first;
+            this.readPosition = 0;
+        } else if (valid && this.segments.firstKey() == segmentId) {
+            this.readSegment = segmentId;
+            this.readPosition = (int) position;
+        } else {
+            this.readSegment = this.segments.firstKey();
+            this.readPosition = 0;
+        }
+        this.pendingSegment = this.readSegment;
+        this.pendingPosition = this.readPosition;
+
+        // the write position is behind the last complete record
+        this.writeSegment = this.segments.lastKey();
+        MappedByteBuffer segment = this.segments.get(this.writeSegment);
+        int writePos = 0;
+        int length;
+        while ((length = recordLength(segment, writePos)) > 0) {
+            writePos += LENGTH_SIZE + length;
+        }
+        this.writePosition = writePos;
+        this.syncSegment = this.writeSegment;
+        this.size = count(this.readSegment, this.readPosition);
+
+        if (this.size > 0) {
+            LOGGER.info("Recovered " + this.size
+                    + " log events from spill journal " + this.directory);
+        }
+    }
+
+    /**
+     * count the records behind a position.
+     */
+    private long count(long segmentId, int position) {
+        long records = 0;
+        for (Map.Entry<Long, MappedByteBuffer> entry : this.segments
+                .tailMap(segmentId).entrySet()) {
+            int pos = entry.getKey() == segmentId ? position : 0;
+            int length;
+            while ((length = recordLength(entry.getValue(), pos)) > 0) {
+                pos += LENGTH_SIZE + length;
+                records++;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return length of the record at the position. a value &lt;= 0 marks the
+     *         end of the records of the segment
+     */
+    private int recordLength(final MappedByteBuffer segment, int position) {
+        if (position + LENGTH_SIZE > this.segmentSize) {
+            return 0;
+        }
+        int length = segment.getInt(position);
+        if (length > this.segmentSize - position - LENGTH_SIZE) {
+            // garbage
+            return 0;
+        }
+        return length;
+    }
+
+    private MappedByteBuffer openSegment(long segmentId) throws IOException {
+        MappedByteBuffer segment = map(segmentFile(segmentId),
+                this.segmentSize);
+        this.segments.put(segmentId, segment);
+        return segment;
+    }
+
+    private void deleteSegment(long segmentId) {
+        // some platforms can not delete a mapped file
+        MappedByteBuffer segment = this.segments.remove(segmentId);
+        if (segment != null) {
+            unmap(segment);
+        }
+        File file = segmentFile(segmentId);
+        if (!file.delete()) {
+            LOGGER.warn("Failed to delete spill segment " + file);
+        }
+    }
+
+    private File segmentFile(long segmentId) {
+        return new File(this.directory, String.format("%019d%s", segmentId,
+                SEGMENT_SUFFIX));
+    }
+
+    private void rejected() {
+        if (this.rejectedCount++ == 0) {
+            LOGGER.warn("Spill journal " + this.directory
+                    + " is full, dropping log events");
+        }
+    }
+
+    private static MappedByteBuffer map(final File file, int size)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // the mapping stays valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * release the mappings of the segments and the offset file.
+     */
+    private void release() {
+        for (MappedByteBuffer segment : this.segments.values()) {
+            unmap(segment);
+        }
+        this.segments.clear();
+        unmap(this.offset);
+    }
+
+    /**
+     * release a mapping without waiting for the garbage collector. the buffer
+     * must not be used afterwards. if the jvm does not allow it, the mapping
+     * is released by the garbage collector.
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+                        ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                // java 8 and older
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (Exception e) {
+            LOGGER.debug("Failed to unmap spill journal buffer: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    private static long checksum(long segmentId, long position) {
+        return (segmentId * 31 + position) ^ OFFSET_MAGIC;
+    }
+
+    private static byte[] encode(final SolrInputDocument doc)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        new JavaBinCodec(new JavaBinCodec.ObjectResolver() {
+            @Override
+            public Object resolve(final Object o, final JavaBinCodec codec) {
+                // values without javabin type (e.g. Level) are sent as
+                // string, like the xml request writer does
+                return o.toString();
+            }
+        }).marshal(doc, out);
+        return out.toByteArray();
+    }
+
+    private static SolrInputDocument decode(final byte[] bytes)
+            throws IOException {
+        return (SolrInputDocument) new JavaBinCodec()
+                .unmarshal(new ByteArrayInputStream(bytes));
+    }
+}
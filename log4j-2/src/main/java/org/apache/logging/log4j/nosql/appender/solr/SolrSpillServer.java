@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * {@link SolrServer} which spills the documents of failed update requests
+ * into a {@link SolrSpillJournal} instead of failing. A background replayer
+ * sends the journal to the wrapped server in bulk requests as soon as solr is
+ * reachable again.
+ * <p>
+ * While the journal is not empty new documents are appended to it directly,
+ * so the log events keep their order and the logging threads do not wait for
+ * a server which is known to be down. Requests fail as before if the journal
+ * is full. If it fills up in the middle of a request, the documents which
+ * did not fit are sent to the wrapped server, and the request fails if that
+ * fails too.
+ */
+public final class SolrSpillServer extends SolrServer {
+    private static final long serialVersionUID = 1L;
+
+    // status logger
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // solr server the documents are sent to
+    private final SolrServer solrServer;
+
+    // journal holding the documents to replay
+    private final SolrSpillJournal journal;
+
+    // amount of time before commit is done
+    private final int commitWithinMs;
+
+    // max number of documents per replay request
+    private final int replayBatchSize;
+
+    // replays the journal
+    private final ScheduledExecutorService replayer;
+
+    // true while the last replay failed
+    private boolean replayFailing;
+
+    /**
+     * default constructor. starts the replayer.
+     * 
+     * @param solrServer
+     *            solr server the documents are sent to
+     * @param journal
+     *            journal holding the documents to replay
+     * @param commitWithinMs
+     *            amount of time before commit is done. a negative value
+     *            disables commitWithin
+     * @param replayBatchSize
+     *            max number of documents per replay request
+     * @param replayIntervalMs
+     *            amount of time between two replay attempts
+     */
+    public SolrSpillServer(final SolrServer solrServer,
+            final SolrSpillJournal journal, int commitWithinMs,
+            int replayBatchSize, long replayIntervalMs) {
+        this.solrServer = solrServer;
+        this.journal = journal;
+        this.commitWithinMs = commitWithinMs;
+        this.replayBatchSize = replayBatchSize;
+        this.replayer = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "SolrSpillServer-replay");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.replayer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        }, 0, replayIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * send the request to the wrapped server. the documents of an update
+     * request are spilled if the request fails or the journal is not empty.
+     */
+    @Override
+    public NamedList<Object> request(final SolrRequest request)
+            throws SolrServerException, IOException {
+        List<SolrInputDocument> docs = null;
+        if (request instanceof UpdateRequest) {
+            docs = ((UpdateRequest) request).getDocuments();
+        }
+        if (docs == null || docs.isEmpty()) {
+            return this.solrServer.request(request);
+        }
+
+        SolrRequest unspilled = request;
+        if (!this.journal.isEmpty()) {
+            int spilled = spill(docs);
+            if (spilled == docs.size()) {
+                return new NamedList<Object>();
+            } else if (spilled > 0) {
+                // the journal is full, send the rest
+                docs = docs.subList(spilled, docs.size());
+                unspilled = remainder((UpdateRequest) request, docs);
+            }
+        }
+        try {
+            return this.solrServer.request(unspilled);
+        } catch (SolrServerException e) {
+            return spillOrThrow(docs, e);
+        } catch (IOException e) {
+            return spillOrThrow(docs, e);
+        } catch (SolrException e) {
+            if (isRejected(e)) {
+                // solr is up but refuses the documents
+                throw e;
+            }
+            return spillOrThrow(docs, e);
+        }
+    }
+
+    /**
+     * stop the replayer and shut down the wrapped server. documents left in
+     * the journal are replayed by the next start.
+     */
+    @Override
+    public void shutdown() {
+        this.replayer.shutdown();
+        try {
+            this.replayer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.journal.close();
+        this.solrServer.shutdown();
+    }
+
+    /**
+     * @return journal holding the documents to replay
+     */
+    public SolrSpillJournal getJournal() {
+        return this.journal;
+    }
+
+    // helper
+    /**
+     * append the documents to the journal.
+     * 
+     * @return number of appended documents. less than the number of
+     *         documents if the journal is full
+     */
+    private int spill(final List<SolrInputDocument> docs) {
+        for (int i = 0; i < docs.size(); i++) {
+            if (!this.journal.append(docs.get(i))) {
+                return i;
+            }
+        }
+        return docs.size();
+    }
+
+    /**
+     * @return update request of the documents of a request which did not fit
+     *         into the journal
+     */
+    private static UpdateRequest remainder(final UpdateRequest request,
+            final List<SolrInputDocument> docs) {
+        UpdateRequest remainder = new UpdateRequest();
+        remainder.add(docs);
+        remainder.setCommitWithin(request.getCommitWithin());
+        if (request.getParams() != null) {
+            remainder.setParams(new ModifiableSolrParams(request.getParams()));
+        }
+        return remainder;
+    }
+
+    /**
+     * @return true if solr answered with a client error (4xx)
+     */
+    private static boolean isRejected(final SolrException e) {
+        return e.code() >= 400 && e.code() < 500;
+    }
+
+    private <T extends Exception> NamedList<Object> spillOrThrow(
+            final List<SolrInputDocument> docs, final T e) throws T {
+        int spilled = spill(docs);
+        if (spilled < docs.size()) {
+            if (spilled > 0) {
+                LOGGER.error("Spill journal full, " + (docs.size() - spilled)
+                        + " of " + docs.size() + " log events not spilled");
+            }
+            throw e;
+        }
+        LOGGER.debug("Spilled " + docs.size()
+                + " log events due to Solr error: " + e.getMessage());
+        return new NamedList<Object>();
+    }
+
+    /**
+     * send the journal to solr until it is empty or a request fails.
+     */
+    private void replay() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<SolrInputDocument> docs = this.journal
+                        .read(this.replayBatchSize);
+                if (docs.isEmpty()) {
+                    if (!this.journal.isEmpty()) {
+                        // skip corrupt records
+                        this.journal.commit();
+                    }
+                    break;
+                }
+
+                UpdateRequest request = new UpdateRequest();
+                request.add(docs);
+                request.setCommitWithin(this.commitWithinMs);
+                try {
+                    this.solrServer.request(request);
+                } catch (SolrException e) {
+                    if (!isRejected(e)) {
+                        throw e;
+                    }
+                    // replaying the batch again would fail forever
+                    LOGGER.error("Solr rejected " + docs.size()
+                            + " spilled log events due to error: "
+                            + e.getMessage(), e);
+                }
+                this.journal.commit();
+
+                if (this.replayFailing) {
+                    this.replayFailing = false;
+                    LOGGER.info("Solr is reachable again, replaying "
+                            + this.journal.size()
+                            + " spilled log events");
+                }
+            }
+        } catch (Exception e) {
+            // keep the documents and try again later
+            if (!this.replayFailing) {
+                this.replayFailing = true;
+                LOGGER.warn("Failed to replay spilled log events to Solr due to error: "
+                        + e.getMessage());
+            }
+        } finally {
+            this.journal.sync();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.HttpClient;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.logging.log4j.status.StatusLogger;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * {@link SolrWriter} for a {@link ConcurrentUpdateSolrServer}. The server
+ * queues the update requests and streams them to solr over one chunked http
+ * connection per runner thread, so add() returns before the documents are
+ * indexed. This writer wraps the writer which adds the documents and blocks
+ * on {@link #flush()} until the queue of the server is empty.
+ */
+public final class SolrStreamingWriter implements SolrWriter {
+    // status logger
+    private static final Logger LOGGER = StatusLogger.getLogger();
+
+    // writer adding the documents to the server
+    private final SolrWriter solrWriter;
+
+    // streaming solr server
+    private final StreamingSolrServer solrServer;
+
+    // number of errors already reported by flush()
+    private long reportedErrors;
+
+    /**
+     * default constructor.
+     * 
+     * @param solrWriter
+     *            writer adding the documents to the server
+     * @param solrServer
+     *            streaming solr server created by
+     *            {@link #createServer(String, int, int)}
+     */
+    public SolrStreamingWriter(final SolrWriter solrWriter,
+            final ConcurrentUpdateSolrServer solrServer) {
+        this.solrWriter = solrWriter;
+        this.solrServer = (StreamingSolrServer) solrServer;
+    }
+
+    /**
+     * create a {@link ConcurrentUpdateSolrServer} which reports failed
+     * requests to the status logger.
+     * 
+     * @param solrUrl
+     *            solr URL
+     * @param queueSize
+     *            max number of update requests waiting in the queue
+     * @param threadCount
+     *            max number of runner threads streaming to solr
+     */
+    public static ConcurrentUpdateSolrServer createServer(final String solrUrl,
+            int queueSize, int threadCount) {
+        return createServer(solrUrl, null, queueSize, threadCount);
+    }
+
+    /**
+     * create a {@link ConcurrentUpdateSolrServer} which reports failed
+     * requests to the status logger.
+     * 
+     * @param solrUrl
+     *            solr URL
+     * @param httpClient
+     *            http client to use. null to create a default client
+     * @param queueSize
+     *            max number of update requests waiting in the queue
+     * @param threadCount
+     *            max number of runner threads streaming to solr
+     */
+    public static ConcurrentUpdateSolrServer createServer(final String solrUrl,
+            final HttpClient httpClient, int queueSize, int threadCount) {
+        return new StreamingSolrServer(solrUrl, httpClient, queueSize,
+                threadCount);
+    }
+
+    @Override
+    public void write(final SolrInputDocument doc) {
+        this.solrWriter.write(doc);
+    }
+
+    /**
+     * flush the wrapped writer and block until all queued update requests
+     * are streamed to solr.
+     * 
+     * @throws AppenderLoggingException
+     *             if a streamed request failed since the last flush
+     */
+    @Override
+    public synchronized void flush() {
+        this.solrWriter.flush();
+        this.solrServer.blockUntilFinished();
+
+        long errors = this.solrServer.errorCount.get();
+        if (errors > this.reportedErrors) {
+            long failed = errors - this.reportedErrors;
+            this.reportedErrors = errors;
+            throw new AppenderLoggingException("Failed to stream " + failed
+                    + " update requests to Solr.");
+        }
+    }
+
+    /**
+     * {@link ConcurrentUpdateSolrServer} reporting errors to the status
+     * logger instead of its slf4j logger.
+     */
+    private static final class StreamingSolrServer extends
+            ConcurrentUpdateSolrServer {
+        private static final long serialVersionUID = 1L;
+
+        // number of failed requests
+        private final AtomicLong errorCount = new AtomicLong();
+
+        private StreamingSolrServer(final String solrUrl,
+                final HttpClient httpClient, int queueSize, int threadCount) {
+            super(solrUrl, httpClient, queueSize, threadCount);
+        }
+
+        @Override
+        public void handleError(final Throwable ex) {
+            this.errorCount.incrementAndGet();
+            LOGGER.error("Failed to stream log events to Solr due to error: "
+                    + ex.getMessage(), ex);
+        }
+    }
+}
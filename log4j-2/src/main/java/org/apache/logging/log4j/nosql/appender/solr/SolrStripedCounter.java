@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter striped over several cells, so threads incrementing it concurrently
+ * rarely hit the same cache line. A cell is chosen by the id of the current
+ * thread, {@link #sum()} adds all cells. Java 7 has no LongAdder.
+ */
+public final class SolrStripedCounter {
+    // number of longs per cell. keeps two cells out of the same cache line
+    private static final int PADDING = 8;
+
+    // cells, only every PADDING-th long is used
+    private final AtomicLongArray cells;
+
+    // number of cells - 1
+    private final int mask;
+
+    /**
+     * default constructor. uses a cell per available processor.
+     */
+    public SolrStripedCounter() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime()
+                .availableProcessors()) * 2 - 1);
+        this.mask = stripes - 1;
+        this.cells = new AtomicLongArray(stripes * PADDING);
+    }
+
+    /**
+     * add one.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * add a value.
+     *
+     * @param value
+     *            value to add
+     */
+    public void add(long value) {
+        this.cells.getAndAdd(cell(), value);
+    }
+
+    /**
+     * @return sum of all cells. not an atomic snapshot if the counter is
+     *         updated concurrently
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < this.cells.length(); i += PADDING) {
+            sum += this.cells.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * set all cells to 0.
+     */
+    public void reset() {
+        for (int i = 0; i < this.cells.length(); i += PADDING) {
+            this.cells.set(i, 0);
+        }
+    }
+
+    /**
+     * @return index of the cell of the current thread
+     */
+    private int cell() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id * 0x9E3779B97F4A7C15L >>> 32);
+        return (hash & this.mask) * PADDING;
+    }
+}
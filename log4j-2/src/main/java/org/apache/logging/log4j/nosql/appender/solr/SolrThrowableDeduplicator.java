@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Replaces the thrown object of a log event by the fingerprint of the
+ * throwable. The fingerprint is a 64 bit hash of the exception types and the
+ * stack frames of the throwable and its causes; the messages are not part of
+ * it and line numbers can be ignored, so the fingerprint stays stable across
+ * requests and small code changes.
+ * <p>
+ * The full stack trace is sent once per fingerprint as a separate document,
+ * whose unique key is the fingerprint. The fingerprints already sent are kept
+ * in a bounded LRU cache, so a repeated exception costs a hash lookup. As a
+ * batched or asynchronous document may still fail after it was written, the
+ * stack trace is sent again by the first occurrence after a resend interval
+ * and replaces the document of the last time.
+ */
+public final class SolrThrowableDeduplicator {
+    // field of the log event holding the fingerprint
+    static final String FINGERPRINT_FIELD = "thrownFingerprint";
+
+    // fields of the stack trace document
+    static final String TRACE_FINGERPRINT_FIELD = "fingerprint";
+    static final String TRACE_TYPE_FIELD = "thrownType";
+    static final String TRACE_MESSAGE_FIELD = "thrownMessage";
+    static final String TRACE_STACK_TRACE_FIELD = "stackTrace";
+
+    // fields of the thrown object written by the NoSQL appender
+    private static final String TYPE = "type";
+    private static final String MESSAGE = "message";
+    private static final String CLASS_NAME = "className";
+    private static final String METHOD_NAME = "methodName";
+    private static final String FILE_NAME = "fileName";
+    private static final String LINE_NUMBER = "lineNumber";
+
+    // fields of the log event copied to the stack trace document
+    private static final String[] EVENT_FIELDS = { "millis", "date" };
+
+    // FNV-1a 64 bit
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // default unique key field of the stack trace documents
+    private static final String DEFAULT_ID_FIELD = "id";
+
+    // default amount of time after which a stack trace is sent again
+    static final long DEFAULT_RESEND_INTERVAL_MS = 60000;
+
+    // true if line numbers are not part of the fingerprint
+    private final boolean ignoreLineNumbers;
+
+    // unique key field of the stack trace documents
+    private final String idField;
+
+    // amount of time after which a stack trace is sent again
+    private final long resendIntervalMs;
+
+    // solr fields of the EVENT_FIELDS. dropped fields are left out
+    private final String[] eventFields;
+
+    // time a fingerprint was sent last
+    private final Map<Long, Long> sent;
+
+    /**
+     * default constructor.
+     * 
+     * @param cacheSize
+     *            max number of fingerprints remembered as sent
+     * @param ignoreLineNumbers
+     *            true to leave the line numbers out of the fingerprint
+     */
+    public SolrThrowableDeduplicator(final int cacheSize,
+            boolean ignoreLineNumbers) {
+        this(cacheSize, ignoreLineNumbers, DEFAULT_ID_FIELD,
+                DEFAULT_RESEND_INTERVAL_MS, null);
+    }
+
+    /**
+     * constructor for a custom unique key field.
+     * 
+     * @param cacheSize
+     *            max number of fingerprints remembered as sent
+     * @param ignoreLineNumbers
+     *            true to leave the line numbers out of the fingerprint
+     * @param idField
+     *            unique key field of the stack trace documents
+     * @param resendIntervalMs
+     *            amount of time after which the stack trace of a fingerprint
+     *            is sent again
+     * @param mapping
+     *            field mapping of the log events. may be null
+     */
+    public SolrThrowableDeduplicator(final int cacheSize,
+            boolean ignoreLineNumbers, final String idField,
+            long resendIntervalMs, final SolrFieldMapping mapping) {
+        this.ignoreLineNumbers = ignoreLineNumbers;
+        this.idField = idField;
+        this.resendIntervalMs = resendIntervalMs;
+        List<String> eventFields = new ArrayList<String>();
+        for (String field : EVENT_FIELDS) {
+            String mapped = mapping == null ? field : mapping.map(field);
+            if (mapped != null) {
+                eventFields.add(mapped);
+            }
+        }
+        this.eventFields = eventFields.toArray(new String[eventFields.size()]);
+        this.sent = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<Long, Long> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * replace the thrown object of the document of a log event by its
+     * fingerprint. the stack trace document is written first if the
+     * fingerprint was not sent yet or the resend interval is over.
+     * 
+     * @param solrObject
+     *            object of the log event
+     * @param solrWriter
+     *            writer the stack trace document is written to
+     */
+    public void process(final SolrObject solrObject,
+            final SolrWriter solrWriter) {
+        SolrInputDocument doc = solrObject.unwrap();
+        SolrInputDocument thrown = solrObject.getThrown();
+        if (thrown == null) {
+            return;
+        }
+        long fingerprint = fingerprint(thrown);
+        String id = toHex(fingerprint);
+
+        long now = System.currentTimeMillis();
+        boolean isDue;
+        synchronized (this.sent) {
+            Long last = this.sent.get(fingerprint);
+            isDue = last == null || now - last >= this.resendIntervalMs;
+            if (isDue) {
+                this.sent.put(fingerprint, now);
+            }
+        }
+        if (isDue) {
+            try {
+                solrWriter.write(createTraceDocument(id, thrown, doc));
+            } catch (RuntimeException e) {
+                // the next occurrence sends it again
+                synchronized (this.sent) {
+                    this.sent.remove(fingerprint);
+                }
+                throw e;
+            }
+        }
+
+        // the event keeps the fingerprint only
+        solrObject.removeThrown();
+        doc.addField(FINGERPRINT_FIELD, id);
+    }
+
+    /**
+     * compute the fingerprint of a thrown object.
+     */
+    long fingerprint(final SolrInputDocument thrown) {
+        long hash = FNV_OFFSET;
+        for (SolrInputDocument cause = thrown; cause != null; cause = cause(cause)) {
+            hash = hash(hash, cause.getFieldValue(TYPE));
+            List<SolrInputDocument> children = cause.getChildDocuments();
+            if (children == null) {
+                continue;
+            }
+            for (SolrInputDocument frame : children) {
+                if (frame.containsKey(TYPE)) {
+                    continue;
+                }
+                hash = hash(hash, frame.getFieldValue(CLASS_NAME));
+                hash = hash(hash, frame.getFieldValue(METHOD_NAME));
+                if (!this.ignoreLineNumbers) {
+                    hash = hash(hash, frame.getFieldValue(LINE_NUMBER));
+                }
+            }
+        }
+        return hash;
+    }
+
+    // helper
+    /**
+     * @return nested cause of a thrown object or null
+     */
+    private static SolrInputDocument cause(final SolrInputDocument thrown) {
+        List<SolrInputDocument> children = thrown.getChildDocuments();
+        if (children != null) {
+            for (SolrInputDocument child : children) {
+                if (child.containsKey(TYPE)) {
+                    return child;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long hash(long hash, final Object value) {
+        String s = value == null ? "" : value.toString();
+        long h = hash;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= FNV_PRIME;
+        }
+        // separator, so "ab"+"c" differs from "a"+"bc"
+        h ^= 0xff;
+        h *= FNV_PRIME;
+        return h;
+    }
+
+    private static String toHex(long value) {
+        char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * create the document holding the full stack trace, formatted like
+     * Throwable.printStackTrace().
+     */
+    private SolrInputDocument createTraceDocument(final String id,
+            final SolrInputDocument thrown, final SolrInputDocument event) {
+        SolrInputDocument trace = new SolrInputDocument();
+        trace.addField(this.idField, id);
+        trace.addField(TRACE_FINGERPRINT_FIELD, id);
+        trace.addField(TRACE_TYPE_FIELD, thrown.getFieldValue(TYPE));
+        trace.addField(TRACE_MESSAGE_FIELD, thrown.getFieldValue(MESSAGE));
+        for (String field : this.eventFields) {
+            Object value = event.getFieldValue(field);
+            if (value != null) {
+                trace.addField(field, value);
+            }
+        }
+
+        List<String> lines = new ArrayList<String>();
+        for (SolrInputDocument cause = thrown; cause != null; cause = cause(cause)) {
+            if (cause != thrown) {
+                Object message = cause.getFieldValue(MESSAGE);
+                lines.add("Caused by: " + cause.getFieldValue(TYPE)
+                        + (message == null ? "" : ": " + message));
+            }
+            List<SolrInputDocument> children = cause.getChildDocuments();
+            if (children == null) {
+                continue;
+            }
+            for (SolrInputDocument frame : children) {
+                if (!frame.containsKey(TYPE)) {
+                    lines.add("at " + frame.getFieldValue(CLASS_NAME) + "."
+                            + frame.getFieldValue(METHOD_NAME) + "("
+                            + frame.getFieldValue(FILE_NAME) + ":"
+                            + frame.getFieldValue(LINE_NUMBER) + ")");
+                }
+            }
+        }
+        trace.addField(TRACE_STACK_TRACE_FIELD, lines);
+        return trace;
+    }
+}
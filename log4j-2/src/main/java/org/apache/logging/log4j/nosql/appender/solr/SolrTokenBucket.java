@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free token bucket. Instead of a token count the bucket keeps the time
+ * the next token is due, so taking a token is a single compare-and-set and
+ * refilling needs no timer. The bucket holds at most one second of tokens,
+ * so a quiet logger may burst up to its rate.
+ */
+public final class SolrTokenBucket {
+    // time between two tokens
+    private final long intervalNanos;
+
+    // max amount of tokens as time
+    private final long burstNanos;
+
+    // time the next token is due
+    private final AtomicLong due;
+
+    /**
+     * default constructor. the bucket starts full.
+     * 
+     * @param eventsPerSecond
+     *            rate of the tokens, may be less than 1
+     */
+    public SolrTokenBucket(double eventsPerSecond) {
+        if (!(eventsPerSecond > 0)) {
+            throw new IllegalArgumentException("Invalid rate "
+                    + eventsPerSecond + " events/s");
+        }
+        this.intervalNanos = Math.max(1,
+                (long) (TimeUnit.SECONDS.toNanos(1) / eventsPerSecond));
+        this.burstNanos = Math.max(this.intervalNanos,
+                TimeUnit.SECONDS.toNanos(1));
+        this.due = new AtomicLong(System.nanoTime() - this.burstNanos);
+    }
+
+    /**
+     * take a token.
+     * 
+     * @param now
+     *            {@link System#nanoTime()}
+     * @param slowdown
+     *            the rate is divided by 2^slowdown
+     * @return true if there was a token
+     */
+    public boolean tryAcquire(long now, int slowdown) {
+        long interval = this.intervalNanos << slowdown;
+        long burst = Math.max(interval, this.burstNanos);
+        for (;;) {
+            long current = this.due.get();
+            // an empty period does not fill the bucket beyond its burst
+            long next = Math.max(current - now, -burst) + interval;
+            if (next > 0) {
+                return false;
+            }
+            if (this.due.compareAndSet(current, now + next)) {
+                return true;
+            }
+        }
+    }
+}
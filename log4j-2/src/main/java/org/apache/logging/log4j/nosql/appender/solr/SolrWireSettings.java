@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.impl.BinaryRequestWriter;
+import org.apache.solr.client.solrj.impl.CloudSolrServer;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrServer;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.impl.LBHttpSolrServer;
+import org.apache.solr.client.solrj.request.RequestWriter;
+
+/**
+ * Wire settings of the remote solr server implementations
+ * ({@link HttpSolrServer}, {@link ConcurrentUpdateSolrServer},
+ * {@link LBHttpSolrServer}, {@link CloudSolrServer}): request encoding,
+ * response compression and the connection pool of the http client. Settings
+ * which are not specified keep the SolrJ defaults.
+ */
+public final class SolrWireSettings {
+    // request writer names
+    private static final String XML = "xml";
+    private static final String BINARY = "binary";
+
+    // pool limits of the http clients SolrJ creates itself
+    private static final int DEFAULT_MAX_CONNECTIONS = 128;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 32;
+
+    // encode update requests with javabin instead of xml
+    private final boolean binary;
+
+    // http client settings. null keeps the SolrJ default
+    private final Boolean allowCompression;
+    private final Integer maxConnections;
+    private final Integer maxConnectionsPerHost;
+    private final Integer connectionTimeoutMs;
+    private final Integer soTimeoutMs;
+    private final Long keepAliveMs;
+
+    /**
+     * default constructor.
+     * 
+     * @param requestWriter
+     *            "binary" for javabin or "xml". null keeps xml
+     * @param allowCompression
+     *            "true" to accept gzip/deflate compressed responses
+     * @param maxConnections
+     *            max number of pooled connections
+     * @param maxConnectionsPerHost
+     *            max number of pooled connections per solr host
+     * @param connectionTimeoutMs
+     *            connect timeout in milliseconds
+     * @param soTimeoutMs
+     *            socket read timeout in milliseconds
+     * @param keepAliveMs
+     *            amount of time an idle pooled connection is kept alive if
+     *            the server does not send a keep-alive timeout
+     * @throws IllegalArgumentException
+     *             if the request writer is unknown
+     */
+    public SolrWireSettings(String requestWriter, String allowCompression,
+            String maxConnections, String maxConnectionsPerHost,
+            String connectionTimeoutMs, String soTimeoutMs, String keepAliveMs) {
+        if (requestWriter == null || XML.equalsIgnoreCase(requestWriter)) {
+            this.binary = false;
+        } else if (BINARY.equalsIgnoreCase(requestWriter)) {
+            this.binary = true;
+        } else {
+            throw new IllegalArgumentException("Unknown requestWriter \""
+                    + requestWriter + "\", use \"" + BINARY + "\" or \"" + XML
+                    + "\"");
+        }
+        this.allowCompression = allowCompression == null ? null : Boolean
+                .valueOf(allowCompression);
+        this.maxConnections = maxConnections == null ? null : Integer
+                .valueOf(maxConnections);
+        this.maxConnectionsPerHost = maxConnectionsPerHost == null ? null
+                : Integer.valueOf(maxConnectionsPerHost);
+        this.connectionTimeoutMs = connectionTimeoutMs == null ? null
+                : Integer.valueOf(connectionTimeoutMs);
+        this.soTimeoutMs = soTimeoutMs == null ? null : Integer
+                .valueOf(soTimeoutMs);
+        this.keepAliveMs = keepAliveMs == null ? null : Long
+                .valueOf(keepAliveMs);
+    }
+
+    /**
+     * create a http client with the configured connection settings. SolrJ
+     * does not close a http client it did not create, the caller has to.
+     * 
+     * @return http client or null if no http client setting is specified
+     */
+    public CloseableHttpClient createHttpClient() {
+        if (this.allowCompression == null && this.maxConnections == null
+                && this.maxConnectionsPerHost == null
+                && this.connectionTimeoutMs == null
+                && this.soTimeoutMs == null && this.keepAliveMs == null) {
+            return null;
+        }
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(this.maxConnections == null
+                ? DEFAULT_MAX_CONNECTIONS : this.maxConnections);
+        connectionManager.setDefaultMaxPerRoute(this.maxConnectionsPerHost
+                == null ? DEFAULT_MAX_CONNECTIONS_PER_HOST
+                : this.maxConnectionsPerHost);
+        HttpClientBuilder builder = HttpClients.custom().useSystemProperties()
+                .setConnectionManager(connectionManager);
+        if (!Boolean.TRUE.equals(this.allowCompression)) {
+            builder.disableContentCompression();
+        }
+        if (this.connectionTimeoutMs != null || this.soTimeoutMs != null) {
+            // SolrJ sets request parameters, which replace the default
+            // request config of the client. so the timeouts are set on each
+            // request
+            final Integer connectionTimeout = this.connectionTimeoutMs;
+            final Integer soTimeout = this.soTimeoutMs;
+            builder.addInterceptorLast(new HttpRequestInterceptor() {
+                @Override
+                public void process(final HttpRequest request,
+                        final HttpContext context) {
+                    HttpClientContext clientContext = HttpClientContext
+                            .adapt(context);
+                    RequestConfig.Builder config = RequestConfig
+                            .copy(clientContext.getRequestConfig());
+                    if (connectionTimeout != null) {
+                        config.setConnectTimeout(connectionTimeout);
+                    }
+                    if (soTimeout != null) {
+                        config.setSocketTimeout(soTimeout);
+                    }
+                    clientContext.setRequestConfig(config.build());
+                }
+            });
+        }
+        if (this.keepAliveMs != null) {
+            final long keepAlive = this.keepAliveMs;
+            builder.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+                @Override
+                public long getKeepAliveDuration(final HttpResponse response,
+                        final HttpContext context) {
+                    // prefer the timeout sent by the server
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE
+                            .getKeepAliveDuration(response, context);
+                    return duration < 0 ? keepAlive : duration;
+                }
+            });
+        }
+        return builder.build();
+    }
+
+    /**
+     * set the request writer of a remote solr server.
+     */
+    public void configure(final SolrServer solrServer) {
+        if (!this.binary) {
+            return;
+        }
+
+        RequestWriter requestWriter = new BinaryRequestWriter();
+        if (solrServer instanceof HttpSolrServer) {
+            ((HttpSolrServer) solrServer).setRequestWriter(requestWriter);
+        } else if (solrServer instanceof ConcurrentUpdateSolrServer) {
+            ((ConcurrentUpdateSolrServer) solrServer)
+                    .setRequestWriter(requestWriter);
+        } else if (solrServer instanceof LBHttpSolrServer) {
+            ((LBHttpSolrServer) solrServer).setRequestWriter(requestWriter);
+        } else if (solrServer instanceof CloudSolrServer) {
+            ((CloudSolrServer) solrServer).setRequestWriter(requestWriter);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Takes the solr documents of the log events and sends them to solr. A
+ * {@link SolrConnection} passes every document to the writer of its provider.
+ */
+public interface SolrWriter {
+
+    /**
+     * write a solr document. depending on the implementation the document is
+     * sent immediately or later on.
+     * 
+     * @param doc
+     *            solr document of a log event
+     * @throws org.apache.logging.log4j.core.appender.AppenderLoggingException
+     *             if solr failed to index the document
+     */
+    void write(SolrInputDocument doc);
+
+    /**
+     * send all documents which are not sent yet.
+     * 
+     * @throws org.apache.logging.log4j.core.appender.AppenderLoggingException
+     *             if solr failed to index the documents
+     */
+    void flush();
+}
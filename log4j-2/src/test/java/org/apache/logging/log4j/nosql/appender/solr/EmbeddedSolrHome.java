@@ -0,0 +1,69 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.core.CoreContainer;
+
+/**
+ * Helper for tests writing to an EmbeddedSolrServer. every test class gets
+ * its own copy of the test solr_home, so the index of collection1 is not
+ * locked by a core container of another test.
+ */
+final class EmbeddedSolrHome {
+
+    private EmbeddedSolrHome() {
+    }
+
+    /**
+     * copy the test solr_home (without index data) to
+     * target/solr_home-[testClass].
+     *
+     * @return path of the copied solr home
+     */
+    static String copy(final Class<?> testClass) throws IOException {
+        final Path source = new File(testClass.getResource("./solr_home")
+                .getPath()).toPath();
+        final Path target = new File("target", "solr_home-"
+                + testClass.getSimpleName()).toPath().toAbsolutePath();
+
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir,
+                    final BasicFileAttributes attrs) throws IOException {
+                if ("data".equals(dir.getFileName().toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file,
+                    final BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file)),
+                        StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return target.toString();
+    }
+
+    /**
+     * create an EmbeddedSolrServer for collection1 of a private copy of the
+     * test solr_home.
+     */
+    static SolrServer createServer(final Class<?> testClass) throws IOException {
+        CoreContainer coreContainer = new CoreContainer(copy(testClass));
+        coreContainer.load();
+        return new EmbeddedSolrServer(coreContainer, "collection1");
+    }
+}
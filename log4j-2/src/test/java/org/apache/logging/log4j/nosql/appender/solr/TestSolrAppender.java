@@ -1,6 +1,8 @@
 package org.apache.logging.log4j.nosql.appender.solr;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -15,6 +17,10 @@ import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.ConfigurationFactory;
 import org.apache.logging.log4j.core.config.ConfigurationFactory.ConfigurationSource;
 import org.apache.logging.log4j.core.config.xml.XMLConfigurationFactory;
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.nosql.appender.NoSQLAppender;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -127,6 +133,65 @@ public class TestSolrAppender {
                 .contains("provider=solr{ EmbeddedSolrServer(\"./target/test-classes/solr_home\", \"collection1\") }"));
     }
 
+    @Test
+    public void testDocumentsPerRequest() throws Exception {
+        String solrHome = EmbeddedSolrHome.copy(TestSolrAppender.class);
+        DefaultConfiguration configuration = new DefaultConfiguration();
+        configuration.start();
+        SolrProvider provider = SolrProvider.newBuilder()
+                .withCoreName("collection1").withSolrHome(solrHome)
+                .withBatchSize("10").withFlushIntervalMs("60000")
+                .withConfiguration(configuration).build();
+        NoSQLAppender appender = NoSQLAppender.createAppender("Batched",
+                "false", null, null, provider);
+        appender.start();
+        configuration.addAppender(appender);
+        try {
+            // the appender closes its connection after every log event
+            for (int i = 0; i < 25; i++) {
+                appender.append(new Log4jLogEvent("Batched", null, null,
+                        Level.INFO, new SimpleMessage("message " + i), null));
+            }
+            assertEquals(2, provider.getMetrics().getBatchesSent());
+            assertEquals(20, provider.getMetrics().getDocsSent());
+
+            // the rest of the batch is sent when the configuration stops the
+            // appender
+            configuration.stop();
+            assertEquals(3, provider.getMetrics().getBatchesSent());
+            assertEquals(25, provider.getMetrics().getDocsSent());
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownOnStop() throws Exception {
+        String solrHome = EmbeddedSolrHome.copy(TestSolrAppender.class);
+        DefaultConfiguration configuration = new DefaultConfiguration();
+        configuration.start();
+        SolrProvider provider = SolrProvider.newBuilder()
+                .withCoreName("collection1").withSolrHome(solrHome)
+                .withRollupWindowMs("60000").withConfiguration(configuration)
+                .build();
+        NoSQLAppender appender = NoSQLAppender.createAppender("Rollup",
+                "false", null, null, provider);
+        appender.start();
+        configuration.addAppender(appender);
+
+        for (int i = 0; i < 5; i++) {
+            appender.append(new Log4jLogEvent("Rollup", null, null,
+                    Level.INFO, new SimpleMessage("repeated"), null));
+        }
+        // held back until the window expires
+        assertEquals(0, provider.getMetrics().getDocsSent());
+
+        // the configuration stops the appender, which shuts the provider down
+        configuration.stop();
+        assertEquals(1, provider.getMetrics().getDocsSent());
+        assertNull(provider.getMetrics().getObjectName());
+    }
+
     // @Test
     public void testSendLogEvents() {
         // this is not a real test ... it is just for validating the output in solr
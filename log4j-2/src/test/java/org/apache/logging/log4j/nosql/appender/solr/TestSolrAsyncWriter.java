@@ -0,0 +1,279 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.nosql.appender.solr.SolrAsyncWriter.OverflowPolicy;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrAsyncWriter.
+ */
+public class TestSolrAsyncWriter {
+    // solr server shared by all tests
+    private static SolrServer solrServer;
+
+    // released to let the blocking solr server answer
+    private CountDownLatch release;
+
+    // solr server which blocks until released
+    private SolrServer blockingServer;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        solrServer = EmbeddedSolrHome.createServer(TestSolrAsyncWriter.class);
+    }
+
+    @AfterClass
+    public static void destroy() {
+        solrServer.shutdown();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        solrServer.deleteByQuery("*:*");
+        solrServer.commit();
+
+        this.release = new CountDownLatch(1);
+        this.blockingServer = new SolrServer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public NamedList<Object> request(final SolrRequest request)
+                    throws SolrServerException, IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new SolrServerException(e);
+                }
+                return solrServer.request(request);
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        SolrAsyncWriter asyncWriter = new SolrAsyncWriter(new SolrBatchWriter(
+                solrServer, -1, 10, 0), 16, 2, OverflowPolicy.BLOCK,
+                Level.INFO);
+
+        for (int i = 0; i < 100; i++) {
+            asyncWriter.write(createDoc(Level.INFO, "message " + i));
+        }
+        assertTrue(asyncWriter.awaitDrained(10000));
+        asyncWriter.flush();
+
+        assertEquals(100, count());
+        assertEquals(0, asyncWriter.getDroppedCount());
+    }
+
+    @Test
+    public void testFlushOnShutdown() throws Exception {
+        SolrAsyncWriter asyncWriter = new SolrAsyncWriter(new SolrBatchWriter(
+                solrServer, -1, 1000, 0), 1000, 1, OverflowPolicy.BLOCK,
+                Level.INFO);
+        SolrConnection connection = new SolrConnection(asyncWriter);
+
+        for (int i = 0; i < 10; i++) {
+            SolrObject solrObject = connection.createObject();
+            solrObject.set("message", "message " + i);
+            connection.insertObject(solrObject);
+        }
+
+        // closed after every log event, the provider stops the writer when
+        // it shuts down
+        connection.close();
+        asyncWriter.stop();
+        assertEquals(0, asyncWriter.getQueueSize());
+        assertEquals(10, count());
+    }
+
+    @Test
+    public void testFlushKeepsDispatchers() throws Exception {
+        final SolrAsyncWriter asyncWriter = new SolrAsyncWriter(new SolrBatchWriter(
+                this.blockingServer, -1, 1000, 0), 1000, 1,
+                OverflowPolicy.BLOCK, Level.INFO);
+        asyncWriter.write(createDoc(Level.INFO, "first"));
+
+        // flush waits for the dispatcher which waits for solr
+        Thread flusher = new Thread() {
+            @Override
+            public void run() {
+                asyncWriter.flush();
+            }
+        };
+        flusher.start();
+        flusher.join(200);
+        assertTrue(flusher.isAlive());
+        this.release.countDown();
+        flusher.join(10000);
+        assertEquals(1, count());
+
+        // the dispatcher is still running after the flush
+        asyncWriter.write(createDoc(Level.INFO, "second"));
+        assertTrue(asyncWriter.awaitDrained(10000));
+        assertEquals(2, count());
+        asyncWriter.stop();
+    }
+
+    @Test
+    public void testRemoteError() throws Exception {
+        // solr rejects the document with message "bad"
+        SolrServer rejectingServer = new SolrServer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public NamedList<Object> request(final SolrRequest request)
+                    throws SolrServerException, IOException {
+                if (request instanceof UpdateRequest
+                        && ((UpdateRequest) request).getDocuments() != null) {
+                    for (SolrInputDocument doc : ((UpdateRequest) request)
+                            .getDocuments()) {
+                        if ("bad".equals(doc.getFieldValue("message"))) {
+                            throw new SolrException(ErrorCode.BAD_REQUEST,
+                                    "ERROR: unknown field 'bad'");
+                        }
+                    }
+                }
+                return solrServer.request(request);
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+        SolrAsyncWriter asyncWriter = new SolrAsyncWriter(new SolrBatchWriter(
+                rejectingServer, -1, 1, 0), 16, 1, OverflowPolicy.BLOCK,
+                Level.INFO);
+
+        // the documents after the rejected one are still sent
+        asyncWriter.write(createDoc(Level.INFO, "first"));
+        asyncWriter.write(createDoc(Level.INFO, "bad"));
+        asyncWriter.write(createDoc(Level.INFO, "second"));
+        assertTrue(asyncWriter.awaitDrained(10000));
+        assertEquals(2, count());
+
+        // the dispatcher is still running
+        asyncWriter.write(createDoc(Level.INFO, "third"));
+        assertTrue(asyncWriter.awaitDrained(10000));
+        assertEquals(3, count());
+        asyncWriter.stop();
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        SolrAsyncWriter asyncWriter = fillRingBuffer(OverflowPolicy.DROP_NEWEST);
+
+        asyncWriter.write(createDoc(Level.ERROR, "dropped"));
+        assertEquals(1, asyncWriter.getDroppedCount());
+
+        this.release.countDown();
+        asyncWriter.flush();
+        assertEquals(5, count());
+        assertEquals(0, count("message:dropped"));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        SolrAsyncWriter asyncWriter = fillRingBuffer(OverflowPolicy.DROP_OLDEST);
+
+        asyncWriter.write(createDoc(Level.ERROR, "newest"));
+        assertEquals(1, asyncWriter.getDroppedCount());
+
+        this.release.countDown();
+        asyncWriter.flush();
+        assertEquals(5, count());
+        assertEquals(1, count("message:newest"));
+        assertEquals(0, count("message:oldest"));
+    }
+
+    @Test
+    public void testDropBelowLevel() throws Exception {
+        final SolrAsyncWriter asyncWriter = fillRingBuffer(
+                OverflowPolicy.DROP_BELOW_LEVEL);
+
+        // DEBUG is dropped
+        asyncWriter.write(createDoc(Level.DEBUG, "debug"));
+        assertEquals(1, asyncWriter.getDroppedCount());
+
+        // ERROR waits for free space
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                asyncWriter.write(createDoc(Level.ERROR, "error"));
+            }
+        };
+        writer.start();
+        writer.join(200);
+        assertTrue(writer.isAlive());
+
+        this.release.countDown();
+        writer.join(10000);
+        asyncWriter.flush();
+        assertEquals(1, asyncWriter.getDroppedCount());
+        assertEquals(0, count("message:debug"));
+        assertEquals(1, count("message:error"));
+    }
+
+    // helper
+    /**
+     * create a writer with a ring buffer of 4 documents and fill it. the
+     * dispatcher is blocked by a fifth document until the test releases the
+     * server.
+     */
+    private SolrAsyncWriter fillRingBuffer(OverflowPolicy policy)
+            throws InterruptedException {
+        SolrAsyncWriter asyncWriter = new SolrAsyncWriter(new SolrBatchWriter(
+                this.blockingServer, -1, 10, 0), 4, 1, policy, Level.INFO);
+
+        // taken by the dispatcher, which now waits for the server
+        asyncWriter.write(createDoc(Level.INFO, "first"));
+        while (asyncWriter.getQueueSize() > 0) {
+            Thread.sleep(10);
+        }
+
+        asyncWriter.write(createDoc(Level.INFO, "oldest"));
+        for (int i = 0; i < 3; i++) {
+            asyncWriter.write(createDoc(Level.INFO, "message"));
+        }
+        assertEquals(4, asyncWriter.getQueueSize());
+        return asyncWriter;
+    }
+
+    private static SolrInputDocument createDoc(Level level, String message) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("level", level);
+        doc.addField("message", message);
+        return doc;
+    }
+
+    private static long count() throws Exception {
+        return count("*:*");
+    }
+
+    private static long count(String query) throws Exception {
+        solrServer.commit();
+        return solrServer.query(new SolrQuery(query)).getResults()
+                .getNumFound();
+    }
+}
@@ -0,0 +1,238 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.params.UpdateParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrBatchWriter. documents are sent to an
+ * EmbeddedSolrServer.
+ */
+public class TestSolrBatchWriter {
+    // solr server shared by all tests
+    private static SolrServer solrServer;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        solrServer = EmbeddedSolrHome.createServer(TestSolrBatchWriter.class);
+    }
+
+    @AfterClass
+    public static void destroy() {
+        solrServer.shutdown();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        solrServer.deleteByQuery("*:*");
+        solrServer.commit();
+    }
+
+    @Test
+    public void testFlushOnSize() throws Exception {
+        SolrBatchWriter batchWriter = new SolrBatchWriter(solrServer, -1, 3, 0);
+
+        // batch not full
+        batchWriter.write(createDoc("first"));
+        batchWriter.write(createDoc("second"));
+        assertEquals(2, batchWriter.size());
+        assertEquals(0, count());
+
+        // batch full
+        batchWriter.write(createDoc("third"));
+        assertEquals(0, batchWriter.size());
+        assertEquals(3, count());
+    }
+
+    @Test
+    public void testFlushOnInterval() throws Exception {
+        SolrBatchWriter batchWriter = new SolrBatchWriter(solrServer, -1, 100,
+                100);
+
+        batchWriter.write(createDoc("first"));
+        batchWriter.write(createDoc("second"));
+
+        // wait for the timer, the batch is sent by a pool thread
+        for (int i = 0; i < 50 && count() < 2; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, batchWriter.size());
+        assertEquals(2, count());
+    }
+
+    @Test(timeout = 10000)
+    public void testSendOutsideLock() throws Exception {
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        SolrServer slow = new SolrServer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public NamedList<Object> request(final SolrRequest request)
+                    throws SolrServerException, IOException {
+                sending.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new SolrServerException(e);
+                }
+                return solrServer.request(request);
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+        SolrBatchWriter slowWriter = new SolrBatchWriter(slow, -1, 100, 50);
+        SolrBatchWriter otherWriter = new SolrBatchWriter(solrServer, -1, 100,
+                50);
+
+        // the time based flush of the slow writer hangs in solr
+        slowWriter.write(createDoc("first"));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+        // neither its logging threads nor the timer of other writers wait
+        slowWriter.write(createDoc("second"));
+        assertEquals(1, slowWriter.size());
+        otherWriter.write(createDoc("other"));
+        for (int i = 0; i < 50 && count() < 1; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, count());
+
+        // flush waits for the hanging batch
+        release.countDown();
+        slowWriter.flush();
+        assertEquals(0, slowWriter.size());
+        assertEquals(3, count());
+    }
+
+    @Test
+    public void testFlushOnShutdown() throws Exception {
+        SolrBatchWriter batchWriter = new SolrBatchWriter(solrServer, -1, 100,
+                0);
+        SolrConnection connection = new SolrConnection(batchWriter);
+
+        SolrObject solrObject = connection.createObject();
+        solrObject.set("message", "first");
+        connection.insertObject(solrObject);
+        assertEquals(1, batchWriter.size());
+        assertEquals(0, count());
+
+        // the appender closes the connection after every log event
+        connection.close();
+        assertTrue(connection.isClosed());
+        assertEquals(1, batchWriter.size());
+        assertEquals(0, count());
+
+        // the provider flushes the writer when it shuts down
+        batchWriter.flush();
+        assertEquals(0, batchWriter.size());
+        assertEquals(1, count());
+    }
+
+    @Test(expected = AppenderLoggingException.class)
+    public void testFailedBatch() {
+        SolrServer unreachable = new SolrServer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public NamedList<Object> request(final SolrRequest request)
+                    throws SolrServerException, IOException {
+                throw new SolrServerException("Server refused connection");
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+        SolrBatchWriter batchWriter = new SolrBatchWriter(unreachable, -1, 2,
+                0);
+
+        batchWriter.write(createDoc("first"));
+        batchWriter.write(createDoc("second"));
+    }
+
+    @Test(expected = AppenderLoggingException.class)
+    public void testRemoteError() {
+        // SolrJ reports a http error of solr as SolrException
+        SolrServer rejecting = new SolrServer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public NamedList<Object> request(final SolrRequest request)
+                    throws SolrServerException, IOException {
+                throw new SolrException(ErrorCode.BAD_REQUEST,
+                        "ERROR: unknown field 'bad'");
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+        SolrBatchWriter batchWriter = new SolrBatchWriter(rejecting, -1, 1, 0);
+
+        batchWriter.write(createDoc("bad"));
+    }
+
+    @Test
+    public void testWithoutOverwrite() throws Exception {
+        final List<SolrParams> params = new ArrayList<SolrParams>();
+        SolrServer recording = new SolrServer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public NamedList<Object> request(final SolrRequest request)
+                    throws SolrServerException, IOException {
+                params.add(request.getParams());
+                return solrServer.request(request);
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+        SolrBatchWriter batchWriter = new SolrBatchWriter(recording, 1000, 2,
+                0, false);
+
+        batchWriter.write(createDoc("first"));
+        batchWriter.write(createDoc("second"));
+        assertEquals(1, params.size());
+        assertEquals("false", params.get(0).get(UpdateParams.OVERWRITE));
+        assertEquals(2, count());
+    }
+
+    // helper
+    private static SolrInputDocument createDoc(String message) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("message", message);
+        return doc;
+    }
+
+    private static long count() throws Exception {
+        solrServer.commit();
+        return solrServer.query(new SolrQuery("*:*")).getResults()
+                .getNumFound();
+    }
+}
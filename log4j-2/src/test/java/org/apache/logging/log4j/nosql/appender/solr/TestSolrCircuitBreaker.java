@@ -0,0 +1,197 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.SolrPing;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrCircuitBreaker. requests are sent to a fake solr server
+ * which can be switched off.
+ */
+public class TestSolrCircuitBreaker {
+    // fake solr server
+    private FakeSolrServer target;
+
+    @Before
+    public void setUp() {
+        this.target = new FakeSolrServer();
+    }
+
+    @Test
+    public void testOpenAndClose() throws Exception {
+        SolrCircuitBreaker breaker = new SolrCircuitBreaker(this.target, 50,
+                0, 100, 0, 0);
+
+        // solr down ... the circuit opens after the min number of requests
+        this.target.down = true;
+        for (int i = 0; i < 10; i++) {
+            assertFails(breaker);
+        }
+        assertEquals(SolrCircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(10, this.target.updates);
+
+        // open ... solr is not called
+        assertFails(breaker);
+        assertEquals(10, this.target.updates);
+
+        // probe fails ... still open
+        Thread.sleep(110);
+        assertFails(breaker);
+        assertEquals(1, this.target.pings);
+        assertEquals(SolrCircuitBreaker.State.OPEN, breaker.getState());
+
+        // probe succeeds ... closed
+        this.target.down = false;
+        Thread.sleep(210);
+        breaker.request(createRequest());
+        assertEquals(2, this.target.pings);
+        assertEquals(11, this.target.updates);
+        assertEquals(SolrCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testErrorRate() throws Exception {
+        SolrCircuitBreaker breaker = new SolrCircuitBreaker(this.target, 50,
+                0, 100, 0, 0);
+
+        // every third request fails
+        for (int i = 0; i < 30; i++) {
+            this.target.down = i % 3 == 0;
+            try {
+                breaker.request(createRequest());
+            } catch (SolrServerException e) {
+                // expected
+            }
+        }
+        assertEquals(SolrCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        SolrCircuitBreaker breaker = new SolrCircuitBreaker(this.target, 50,
+                5, 1000, 0, 0);
+
+        this.target.delayMs = 20;
+        for (int i = 0; i < 10; i++) {
+            breaker.request(createRequest());
+        }
+        assertEquals(SolrCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        SolrCircuitBreaker breaker = new SolrCircuitBreaker(this.target, 50,
+                0, 1000, 3, 1);
+
+        // two transient errors are retried
+        this.target.failures = 2;
+        breaker.request(createRequest());
+        assertEquals(3, this.target.updates);
+
+        // bounded number of retries
+        this.target.failures = 10;
+        assertFails(breaker);
+        assertEquals(7, this.target.updates);
+    }
+
+    @Test
+    public void testClientErrorNotRetried() throws Exception {
+        SolrCircuitBreaker breaker = new SolrCircuitBreaker(this.target, 50,
+                0, 1000, 3, 1);
+
+        this.target.badRequest = true;
+        for (int i = 0; i < 10; i++) {
+            try {
+                breaker.request(createRequest());
+                fail();
+            } catch (SolrException e) {
+                // expected
+            }
+        }
+        assertEquals(10, this.target.updates);
+        assertEquals(SolrCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    // helper
+    private static void assertFails(SolrServer solrServer) {
+        try {
+            solrServer.request(createRequest());
+            fail();
+        } catch (SolrServerException e) {
+            // expected
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static UpdateRequest createRequest() {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("message", "message");
+        UpdateRequest request = new UpdateRequest();
+        request.add(doc);
+        return request;
+    }
+
+    /**
+     * solr server counting the requests.
+     */
+    private static final class FakeSolrServer extends SolrServer {
+        private static final long serialVersionUID = 1L;
+
+        private volatile boolean down;
+        private volatile boolean badRequest;
+        private volatile int failures;
+        private volatile long delayMs;
+        private int updates;
+        private int pings;
+
+        @Override
+        public synchronized NamedList<Object> request(
+                final SolrRequest request) throws SolrServerException,
+                IOException {
+            if (request instanceof SolrPing) {
+                this.pings++;
+            } else {
+                this.updates++;
+            }
+            if (this.down) {
+                throw new SolrServerException("Server refused connection");
+            }
+            if (this.failures > 0) {
+                this.failures--;
+                throw new IOException("Connection reset");
+            }
+            if (this.badRequest) {
+                throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+                        "unknown field");
+            }
+            try {
+                Thread.sleep(this.delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            NamedList<Object> header = new NamedList<Object>();
+            header.add("status", 0);
+            NamedList<Object> response = new NamedList<Object>();
+            response.add("responseHeader", header);
+            return response;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrCommitScheduler. the observation windows are passed to
+ * adjust() directly.
+ */
+public class TestSolrCommitScheduler {
+    // commitWithin of the update requests sent to the fake solr server
+    private List<Integer> commitWithins;
+
+    // scheduler to test
+    private SolrCommitScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        this.commitWithins = new ArrayList<Integer>();
+        this.scheduler = new SolrCommitScheduler(new SolrServer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public NamedList<Object> request(final SolrRequest request)
+                    throws SolrServerException, IOException {
+                if (request instanceof UpdateRequest) {
+                    commitWithins.add(((UpdateRequest) request)
+                            .getCommitWithin());
+                }
+                return new NamedList<Object>();
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        }, 1000, 8000);
+    }
+
+    @Test
+    public void testRateGrows() {
+        // 1000 docs/s, 5ms per request
+        assertEquals(2000, this.scheduler.adjust(1000, 10, ms(50), 1000));
+        // same rate
+        assertEquals(2000, this.scheduler.adjust(1200, 12, ms(60), 1000));
+        assertEquals(4000, this.scheduler.adjust(2000, 20, ms(100), 1000));
+        assertEquals(8000, this.scheduler.adjust(4000, 40, ms(200), 1000));
+        // max
+        assertEquals(8000, this.scheduler.adjust(8000, 80, ms(400), 1000));
+        assertEquals(8000, this.scheduler.getCommitWithinMs());
+    }
+
+    @Test
+    public void testRateDrops() {
+        this.scheduler.adjust(1000, 10, ms(50), 1000);
+        this.scheduler.adjust(2000, 20, ms(100), 1000);
+        assertEquals(4000, this.scheduler.getCommitWithinMs());
+
+        assertEquals(2000, this.scheduler.adjust(1000, 10, ms(50), 1000));
+        // quiet
+        assertEquals(1000, this.scheduler.adjust(0, 0, 0, 5000));
+        assertEquals(1000, this.scheduler.adjust(0, 0, 0, 5000));
+    }
+
+    @Test
+    public void testSlowSolr() {
+        assertEquals(2000, this.scheduler.adjust(1000, 10, ms(50), 1000));
+        // same rate, but solr answers slowly
+        assertEquals(4000, this.scheduler.adjust(1000, 10, ms(500), 1000));
+        assertEquals(8000, this.scheduler.adjust(1000, 10, ms(500), 1000));
+    }
+
+    @Test
+    public void testRequests() throws Exception {
+        this.scheduler.add(createDoc());
+        this.scheduler.adjust(4000, 40, ms(200), 1000);
+        this.scheduler.add(createDoc());
+        // only requests adding documents
+        this.scheduler.deleteByQuery("*:*");
+        assertEquals(3, this.commitWithins.size());
+        assertEquals(Integer.valueOf(1000), this.commitWithins.get(0));
+        assertEquals(Integer.valueOf(2000), this.commitWithins.get(1));
+        assertEquals(Integer.valueOf(-1), this.commitWithins.get(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRange() {
+        new SolrCommitScheduler(null, 2000, 1000);
+    }
+
+    // helper
+    private static long ms(long millis) {
+        return millis * 1000000L;
+    }
+
+    private static SolrInputDocument createDoc() {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("message", "message");
+        return doc;
+    }
+}
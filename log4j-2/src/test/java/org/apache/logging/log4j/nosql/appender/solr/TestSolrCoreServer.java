@@ -0,0 +1,105 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrCoreServer. documents are added to the update handler of
+ * an embedded core.
+ */
+public class TestSolrCoreServer {
+    // server to test
+    private SolrCoreServer coreServer;
+
+    @Before
+    public void setUp() throws Exception {
+        this.coreServer = open(true);
+        this.coreServer.deleteByQuery("*:*");
+        this.coreServer.commit();
+    }
+
+    @After
+    public void tearDown() {
+        this.coreServer.shutdown();
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        SolrBatchWriter batchWriter = new SolrBatchWriter(this.coreServer, -1,
+                3, 0);
+        for (String message : new String[] { "first", "second", "third" }) {
+            batchWriter.write(createDoc(message));
+        }
+        assertEquals(0, batchWriter.size());
+
+        // committed by a request of the embedded server
+        this.coreServer.commit();
+        assertEquals(3, count("*:*"));
+        assertEquals(1, count("message:second"));
+    }
+
+    @Test
+    public void testWithoutOverwrite() throws Exception {
+        this.coreServer.shutdown();
+        this.coreServer = open(false);
+
+        SolrInputDocument doc = createDoc("twice");
+        this.coreServer.add(doc);
+        this.coreServer.add(doc);
+        this.coreServer.commit();
+        assertEquals(2, count("message:twice"));
+    }
+
+    @Test
+    public void testShutdownCommits() throws Exception {
+        this.coreServer.add(createDoc("pending"));
+        assertFalse(this.coreServer.isClosed());
+
+        // appender stop
+        this.coreServer.shutdown();
+        assertTrue(this.coreServer.isClosed());
+
+        this.coreServer = open(true);
+        assertEquals(1, count("message:pending"));
+    }
+
+    @Test(expected = SolrServerException.class)
+    public void testClosed() throws Exception {
+        this.coreServer.shutdown();
+        this.coreServer.add(createDoc("rejected"));
+    }
+
+    // helper
+    private static SolrCoreServer open(boolean overwrite) throws IOException {
+        return new SolrCoreServer(
+                (EmbeddedSolrServer) EmbeddedSolrHome
+                        .createServer(TestSolrCoreServer.class),
+                "collection1", overwrite);
+    }
+
+    private static SolrInputDocument createDoc(final String message) {
+        SolrInputDocument doc = new SolrInputDocument();
+        // the update chain filling the unique key is skipped
+        doc.addField("id", UUID.randomUUID().toString());
+        doc.addField("message", message);
+        doc.addField("level", "INFO");
+        return doc;
+    }
+
+    private long count(final String query) throws Exception {
+        return this.coreServer.query(new SolrQuery(query)).getResults()
+                .getNumFound();
+    }
+}
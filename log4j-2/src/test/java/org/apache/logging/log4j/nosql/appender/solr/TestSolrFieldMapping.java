@@ -0,0 +1,181 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrFieldMapping. log events are written like the NoSQL
+ * appender does.
+ */
+public class TestSolrFieldMapping {
+    // documents written by the connection
+    private List<SolrInputDocument> written;
+
+    // writer collecting the documents
+    private SolrWriter solrWriter;
+
+    @Before
+    public void setUp() {
+        this.written = new ArrayList<SolrInputDocument>();
+        this.solrWriter = new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+                written.add(doc);
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+    }
+
+    @Test
+    public void testMapping() {
+        SolrFieldMapping mapping = SolrFieldMapping.createFieldMapping(null,
+                new SolrField[] {
+                        SolrField.createField("source", null, null, null,
+                                "true"),
+                        SolrField.createField("loggerName", "logger", null,
+                                null, null),
+                        SolrField.createField(null, "application", "shop",
+                                null, null),
+                        SolrField.createField(null, "user", null, "user",
+                                null) });
+        writeEvent(SolrConnection.newBuilder(this.solrWriter)
+                .withMapping(mapping).build());
+
+        SolrInputDocument doc = this.written.get(0);
+        assertEquals("INFO", doc.getFieldValue("level"));
+        assertEquals("shop", doc.getFieldValue("application"));
+        assertEquals("jdoe", doc.getFieldValue("user"));
+        assertEquals("org.example.Test", doc.getFieldValue("logger"));
+        assertNull(doc.getFieldValue("loggerName"));
+        assertEquals(2, doc.getFieldValues("contextStack").size());
+
+        // source dropped, contextMap kept
+        assertEquals(1, doc.getChildDocuments().size());
+        assertEquals("jdoe", doc.getChildDocuments().get(0)
+                .getFieldValue("user"));
+        assertFalse(mapping.requiresLocation());
+    }
+
+    @Test
+    public void testFlattenMapped() {
+        SolrFieldMapping mapping = SolrFieldMapping.createFieldMapping(null,
+                new SolrField[] {
+                        SolrField.createField("source", null, null, null,
+                                "true"),
+                        SolrField.createField("contextMap", "ctx", null,
+                                null, null) });
+        writeEvent(SolrConnection.newBuilder(this.solrWriter)
+                .withMapping(mapping).withFlatten(true).build());
+
+        // prefixed with the mapped name
+        SolrInputDocument doc = this.written.get(0);
+        assertFalse(doc.hasChildDocuments());
+        assertEquals("jdoe", doc.getFieldValue("ctx.user"));
+        assertNull(doc.getFieldValue("source.className"));
+    }
+
+    @Test
+    public void testDropUnmapped() {
+        SolrFieldMapping mapping = SolrFieldMapping.createFieldMapping("true",
+                new SolrField[] {
+                        SolrField.createField("message", null, null, null,
+                                null),
+                        SolrField.createField(null, "user", null, "user",
+                                null) });
+        writeEvent(SolrConnection.newBuilder(this.solrWriter)
+                .withMapping(mapping).build());
+
+        SolrInputDocument doc = this.written.get(0);
+        assertEquals(2, doc.size());
+        assertEquals("message", doc.getFieldValue("message"));
+        assertEquals("jdoe", doc.getFieldValue("user"));
+        assertFalse(doc.hasChildDocuments());
+        assertFalse(mapping.requiresLocation());
+    }
+
+    @Test
+    public void testPooled() {
+        SolrFieldMapping mapping = SolrFieldMapping.createFieldMapping(null,
+                new SolrField[] { SolrField.createField("source", null, null,
+                        null, "true") });
+        SolrObjectPool pool = new SolrObjectPool(8, mapping);
+        SolrConnection connection = SolrConnection.newBuilder(
+                this.solrWriter).withObjectPool(pool).withMapping(mapping)
+                .build();
+
+        writeEvent(connection);
+        SolrInputDocument doc = this.written.get(0);
+        // the dropped source object is back in the pool
+        assertEquals(1, pool.size());
+        assertEquals(1, doc.getChildDocuments().size());
+
+        SolrObject.recycle(doc);
+        writeEvent(connection);
+        assertEquals("INFO", this.written.get(1).getFieldValue("level"));
+        assertEquals(1, this.written.get(1).getChildDocuments().size());
+    }
+
+    @Test
+    public void testNoMapping() {
+        writeEvent(new SolrConnection(this.solrWriter));
+
+        SolrInputDocument doc = this.written.get(0);
+        assertEquals("org.example.Test", doc.getFieldValue("loggerName"));
+        assertEquals(2, doc.getChildDocuments().size());
+    }
+
+    @Test
+    public void testRequiresLocation() {
+        assertTrue(SolrFieldMapping.createFieldMapping(null, null)
+                .requiresLocation());
+        assertTrue(SolrFieldMapping.createFieldMapping(
+                "true",
+                new SolrField[] { SolrField.createField("source", null, null,
+                        null, null) }).requiresLocation());
+    }
+
+    @Test
+    public void testInvalidField() {
+        assertNull(SolrField.createField(null, null, null, null, null));
+        assertNull(SolrField.createField(null, "a", "b", "c", null));
+        assertNull(SolrField.createField("a", "b", null, null, "true"));
+        assertNull(SolrField.createField("a", null, "b", null, null));
+    }
+
+    // helper
+    /**
+     * write a log event like the NoSQL appender.
+     */
+    private static void writeEvent(SolrConnection connection) {
+        SolrObject entity = connection.createObject();
+        entity.set("level", "INFO");
+        entity.set("loggerName", "org.example.Test");
+        entity.set("message", "message");
+
+        SolrObject source = connection.createObject();
+        source.set("className", "org.example.Test");
+        source.set("methodName", "test");
+        source.set("fileName", "Test.java");
+        source.set("lineNumber", 42);
+        entity.set("source", source);
+
+        SolrObject contextMap = connection.createObject();
+        contextMap.set("user", "jdoe");
+        entity.set("contextMap", contextMap);
+        entity.set("contextStack", new Object[] { "a", "b" });
+
+        connection.insertObject(entity);
+    }
+}
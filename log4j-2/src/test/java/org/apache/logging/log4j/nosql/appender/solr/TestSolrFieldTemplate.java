@@ -0,0 +1,98 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrFieldTemplate.
+ */
+public class TestSolrFieldTemplate {
+
+    @Test
+    public void testResolved() {
+        SolrFieldTemplate template = new SolrFieldTemplate(new SolrField[] {
+                SolrField.createField(null, "app", "shop", null, null),
+                SolrField.createField(null, "host", "${hostName}", null, null),
+                SolrField.createField(null, "pid", "${pid}", null, null),
+                SolrField.createField(null, "user", "user=${sys:user.name}",
+                        null, null) });
+
+        assertEquals("shop", template.getValue("app"));
+        assertNotNull(template.getValue("host"));
+        assertFalse(template.getValue("host").contains("${"));
+        assertTrue(ManagementFactory.getRuntimeMXBean().getName()
+                .startsWith(template.getValue("pid") + "@"));
+        assertEquals("user=" + System.getProperty("user.name"),
+                template.getValue("user"));
+        assertNull(template.getValue("env"));
+    }
+
+    @Test
+    public void testMerge() {
+        SolrFieldTemplate template = new SolrFieldTemplate(new SolrField[] {
+                SolrField.createField(null, "app", "shop", null, null),
+                SolrField.createField(null, "env", "prod", null, null) });
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.setField("message", "message");
+        doc.setField("env", "test");
+
+        template.merge(doc);
+        assertEquals(3, doc.size());
+        assertEquals("shop", doc.getFieldValue("app"));
+        // the static field wins
+        assertEquals("prod", doc.getFieldValue("env"));
+        assertEquals("staticFields(app=\"shop\", env=\"prod\")",
+                template.toString());
+    }
+
+    @Test
+    public void testConnection() {
+        final List<SolrInputDocument> written;
+        written = new ArrayList<SolrInputDocument>();
+        SolrWriter solrWriter = new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+                written.add(doc);
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+        SolrFieldTemplate template = new SolrFieldTemplate(
+                new SolrField[] { SolrField.createField(null, "app", "shop",
+                        null, null) });
+        SolrConnection connection = SolrConnection.newBuilder(solrWriter)
+                .withObjectPool(new SolrObjectPool(16)).withTemplate(template)
+                .build();
+
+        // every log event, also recycled ones, gets the static fields
+        for (int i = 0; i < 2; i++) {
+            SolrObject entity = connection.createObject();
+            entity.set("message", "message " + i);
+            connection.insertObject(entity);
+            assertEquals("shop", written.get(i).getFieldValue("app"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testContextField() {
+        new SolrFieldTemplate(new SolrField[] { SolrField.createField(null,
+                "user", null, "userId", null) });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidField() {
+        new SolrFieldTemplate(new SolrField[] { null });
+    }
+}
@@ -0,0 +1,110 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrIdGenerator and SolrIdWriter.
+ */
+public class TestSolrIdGenerator {
+
+    @Test
+    public void testTimeOrdered() {
+        SolrIdGenerator generator = new SolrIdGenerator(1);
+        String first = generator.next(1000);
+        String second = generator.next(1000);
+        String third = generator.next(2000);
+
+        assertEquals(SolrIdGenerator.ID_LENGTH, first.length());
+        assertTrue(first.compareTo(second) < 0);
+        assertTrue(second.compareTo(third) < 0);
+        // later millisecond of another generator
+        assertTrue(third.compareTo(new SolrIdGenerator(0).next(3000)) < 0);
+    }
+
+    @Test
+    public void testClockGoesBack() {
+        SolrIdGenerator generator = new SolrIdGenerator(1);
+        String first = generator.next(2000);
+        assertTrue(first.compareTo(generator.next(1000)) < 0);
+    }
+
+    @Test
+    public void testSequenceExhausted() {
+        SolrIdGenerator generator = new SolrIdGenerator(1);
+        String last = generator.next(1000);
+        for (int i = 0; i < 40000; i++) {
+            String id = generator.next(1000);
+            assertTrue(last.compareTo(id) < 0);
+            last = id;
+        }
+        // continued with borrowed milliseconds
+        assertTrue(last.compareTo(generator.next(1001)) < 0);
+    }
+
+    @Test
+    public void testUniqueAcrossThreads() throws Exception {
+        final SolrIdGenerator generator = new SolrIdGenerator(1);
+        final List<String> ids = Collections
+                .synchronizedList(new ArrayList<String>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        ids.add(generator.next());
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Set<String> unique = new HashSet<String>(ids);
+        assertEquals(40000, unique.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidNodeId() {
+        new SolrIdGenerator(SolrIdGenerator.MAX_NODE_ID + 1);
+    }
+
+    @Test
+    public void testWriter() {
+        final List<SolrInputDocument> written = new ArrayList<SolrInputDocument>();
+        SolrIdWriter idWriter = new SolrIdWriter(new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+                written.add(doc);
+            }
+
+            @Override
+            public void flush() {
+            }
+        }, new SolrIdGenerator(1), "id");
+
+        SolrInputDocument withoutId = new SolrInputDocument();
+        withoutId.addField("message", "first");
+        SolrInputDocument withId = new SolrInputDocument();
+        withId.addField("id", "given");
+        idWriter.write(withoutId);
+        idWriter.write(withId);
+
+        assertEquals(2, written.size());
+        assertEquals(SolrIdGenerator.ID_LENGTH,
+                ((String) withoutId.getFieldValue("id")).length());
+        assertEquals("given", withId.getFieldValue("id"));
+    }
+}
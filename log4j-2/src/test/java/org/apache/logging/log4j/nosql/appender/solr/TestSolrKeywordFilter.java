@@ -0,0 +1,80 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Filter.Result;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrKeywordFilter.
+ */
+public class TestSolrKeywordFilter {
+    // request log lines as solr 4.7 logs them
+    private static final String SELECT = "[collection1] webapp=/solr "
+            + "path=/select params={q=*:*&wt=javabin&version=2} hits=42 "
+            + "status=0 QTime=3";
+    private static final String UPDATE = "[collection1] webapp=/solr "
+            + "path=/update params={wt=javabin&version=2} {add=[1]} 0 5";
+    private static final String PING = "[collection1] webapp=/solr "
+            + "path=/admin/ping params={} status=0 QTime=1";
+
+    @Test
+    public void testDefaultKeywords() {
+        SolrKeywordFilter filter = SolrKeywordFilter.createFilter(null, null,
+                "ACCEPT", null);
+
+        assertNotNull(filter);
+        assertEquals(Result.ACCEPT, filter.filter(event(SELECT)));
+        assertEquals(Result.ACCEPT, filter.filter(event(UPDATE)));
+        assertEquals(Result.DENY, filter.filter(event(PING)));
+        assertEquals(Result.DENY, filter.filter(event("order 42 processed")));
+    }
+
+    @Test
+    public void testLoggerCalls() {
+        SolrKeywordFilter filter = SolrKeywordFilter.createFilter(
+                "ERROR, timeout", "true", null, "NEUTRAL");
+
+        // defaults NEUTRAL, DENY. mismatch configured
+        assertEquals(Result.NEUTRAL, filter.getOnMatch());
+        assertEquals(Result.NEUTRAL,
+                filter.filter(null, Level.INFO, null, "read timeout"));
+        // keywords of the parameters are found
+        assertEquals(Result.NEUTRAL, filter.filter(null, Level.INFO, null,
+                "request {} failed: {}", "42", "Timeout"));
+        assertEquals(Result.NEUTRAL, filter.filter(null, Level.INFO, null,
+                new ParameterizedMessage("{} error", "fatal"), null));
+        assertEquals(Result.NEUTRAL, filter.filter(null, Level.INFO, null,
+                (Object) new StringBuilder("an error"), null));
+
+        filter = SolrKeywordFilter.createFilter("error", null, "ACCEPT",
+                "DENY");
+        assertEquals(Result.DENY,
+                filter.filter(null, Level.INFO, null, "request {} ok", "42"));
+        assertEquals(Result.DENY,
+                filter.filter(null, Level.INFO, null, (Object) null, null));
+        assertEquals(Result.DENY, filter.filter(null, Level.INFO, null,
+                "An ERROR"));
+    }
+
+    @Test
+    public void testInvalidKeywords() {
+        assertNull(SolrKeywordFilter.createFilter(" , ", null, null, null));
+    }
+
+    // helper
+    /**
+     * create a log event.
+     */
+    private static LogEvent event(final String message) {
+        return new Log4jLogEvent("org.apache.solr.core.SolrCore", null, null,
+                Level.INFO, new SimpleMessage(message), null);
+    }
+}
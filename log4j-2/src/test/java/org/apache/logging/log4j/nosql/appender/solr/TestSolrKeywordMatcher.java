@@ -0,0 +1,72 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrKeywordMatcher.
+ */
+public class TestSolrKeywordMatcher {
+
+    @Test
+    public void testOverlappingKeywords() {
+        SolrKeywordMatcher matcher = new SolrKeywordMatcher(new String[] {
+                "he", "she", "his", "hers" }, false);
+
+        assertTrue(matcher.matches("ushers"));
+        assertTrue(matcher.matches("this"));
+        assertTrue(matcher.matches("ashe"));
+        assertFalse(matcher.matches("hi s"));
+        assertFalse(matcher.matches("HERS"));
+        assertFalse(matcher.matches(""));
+        assertFalse(matcher.matches(null));
+        // root, h, he, his, hi, s, sh, she, her, hers
+        assertEquals(10, matcher.getStateCount());
+    }
+
+    @Test
+    public void testFailureLinks() {
+        // the keyword is found after a partial match of another one
+        SolrKeywordMatcher matcher = new SolrKeywordMatcher(new String[] {
+                "path=/update", "date=" }, false);
+
+        assertTrue(matcher.matches("webapp=/solr path=/update params={}"));
+        assertTrue(matcher.matches("path=/upd update=1"));
+        assertFalse(matcher.matches("path=/select params={}"));
+        assertFalse(matcher.matches("path=/upda"));
+    }
+
+    @Test
+    public void testIgnoreCase() {
+        SolrKeywordMatcher matcher = new SolrKeywordMatcher(new String[] {
+                "QTime=", "gr\u00fc\u00dfe" }, true);
+
+        assertTrue(matcher.matches("status=0 qtime=12"));
+        assertTrue(matcher.matches("GR\u00dcSSE GR\u00dc\u00dfE"));
+        assertFalse(matcher.matches("time=12"));
+        assertFalse(new SolrKeywordMatcher(new String[] { "QTime=" }, false)
+                .matches("qtime=12"));
+    }
+
+    @Test
+    public void testNonAsciiCharacters() {
+        SolrKeywordMatcher matcher = new SolrKeywordMatcher(new String[] {
+                "\u00e9t\u00e9", "\u65e5\u672c" }, false);
+
+        assertTrue(matcher.matches("l'\u00e9t\u00e9 dernier"));
+        assertTrue(matcher.matches("\u4eca\u65e5\u672c"));
+        assertFalse(matcher.matches("ete \u65e5 \u672c"));
+    }
+
+    @Test
+    public void testEmptyKeywords() {
+        SolrKeywordMatcher matcher = new SolrKeywordMatcher(new String[] {
+                "", null }, false);
+
+        assertEquals(0, matcher.getKeywords().length);
+        assertFalse(matcher.matches("anything"));
+    }
+}
@@ -0,0 +1,156 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrLaneWriter. documents are sent to a fake solr server
+ * which can hold back the requests of a key.
+ */
+public class TestSolrLaneWriter {
+    // fake solr server
+    private FakeSolrServer solrServer;
+
+    // writer to test
+    private SolrLaneWriter laneWriter;
+
+    @Before
+    public void setUp() {
+        this.solrServer = new FakeSolrServer();
+        SolrAsyncWriter[] lanes = new SolrAsyncWriter[4];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new SolrAsyncWriter(new SolrBatchWriter(
+                    this.solrServer, -1, 10, 0), 64, 1,
+                    SolrAsyncWriter.OverflowPolicy.BLOCK, Level.INFO);
+        }
+        this.laneWriter = new SolrLaneWriter(lanes, "loggerName");
+    }
+
+    @Test
+    public void testOrderPerKey() {
+        for (int i = 0; i < 200; i++) {
+            this.laneWriter.write(createDoc("logger" + (i % 8), i));
+        }
+        this.laneWriter.flush();
+
+        // the documents of a key arrive in the order they were written
+        Map<Object, Integer> last = new HashMap<Object, Integer>();
+        for (SolrInputDocument doc : this.solrServer.docs) {
+            Object key = doc.getFieldValue("loggerName");
+            int sequence = (Integer) doc.getFieldValue("sequence");
+            Integer previous = last.put(key, sequence);
+            assertTrue(previous == null || previous < sequence);
+        }
+        assertEquals(200, this.solrServer.docs.size());
+
+        long sum = 0;
+        for (long written : this.laneWriter.getWrittenCounts()) {
+            sum += written;
+        }
+        assertEquals(200, sum);
+        assertEquals(4, this.laneWriter.getQueueSizes().length);
+        assertEquals(0, this.laneWriter.getDroppedCounts()[0]);
+    }
+
+    @Test
+    public void testSlowLane() throws InterruptedException {
+        String fast = "fast";
+        assertNotEquals(this.laneWriter.lane("slow"),
+                this.laneWriter.lane(fast));
+
+        // the request of the slow key is held back by solr
+        this.laneWriter.write(createDoc("slow", 0));
+        assertTrue(this.solrServer.blocked.await(5, TimeUnit.SECONDS));
+        this.laneWriter.write(createDoc("slow", 1));
+        this.laneWriter.write(createDoc(fast, 2));
+
+        // the other lanes keep sending
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.solrServer.size() < 1
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, this.solrServer.size());
+        assertEquals(fast, this.solrServer.docs.get(0).getFieldValue(
+                "loggerName"));
+
+        this.solrServer.release.countDown();
+        this.laneWriter.flush();
+        assertEquals(3, this.solrServer.size());
+    }
+
+    @Test
+    public void testWithoutKey() {
+        assertEquals(0, this.laneWriter.lane(null));
+        assertEquals(this.laneWriter.lane("logger"),
+                this.laneWriter.lane("logger"));
+    }
+
+    // helper
+    private static SolrInputDocument createDoc(final String loggerName,
+            int sequence) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.setField("loggerName", loggerName);
+        doc.setField("sequence", sequence);
+        return doc;
+    }
+
+    /**
+     * fake solr server holding back the requests of the slow key.
+     */
+    private static final class FakeSolrServer extends SolrServer {
+        private static final long serialVersionUID = 1L;
+
+        private final List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public NamedList<Object> request(final SolrRequest request)
+                throws SolrServerException, IOException {
+            List<SolrInputDocument> added = ((UpdateRequest) request)
+                    .getDocuments();
+            if (added != null && !added.isEmpty()) {
+                if ("slow".equals(added.get(0).getFieldValue("loggerName"))) {
+                    this.blocked.countDown();
+                    try {
+                        this.release.await();
+                    } catch (InterruptedException e) {
+                        throw new SolrServerException(e);
+                    }
+                }
+                synchronized (this) {
+                    this.docs.addAll(added);
+                }
+            }
+            return new NamedList<Object>();
+        }
+
+        synchronized int size() {
+            return this.docs.size();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrLatencyHistogram and SolrStripedCounter.
+ */
+public class TestSolrLatencyHistogram {
+
+    @Test
+    public void testBuckets() {
+        // every value lies in the range of its bucket
+        long[] values = { 0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789L,
+                Long.MAX_VALUE };
+        for (long value : values) {
+            int bucket = SolrLatencyHistogram.bucket(value);
+            assertTrue(value <= SolrLatencyHistogram.highestValue(bucket));
+            if (bucket > 0) {
+                assertTrue(value > SolrLatencyHistogram
+                        .highestValue(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        SolrLatencyHistogram histogram = new SolrLatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertWithin(500, histogram.getPercentile(50));
+        assertWithin(990, histogram.getPercentile(99));
+        assertWithin(999, histogram.getPercentile(99.9));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void testStripedCounter() throws Exception {
+        final SolrStripedCounter counter = new SolrStripedCounter();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        counter.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, counter.sum());
+
+        counter.reset();
+        assertEquals(0, counter.sum());
+    }
+
+    // helper
+    private static void assertWithin(long expected, long actual) {
+        // a bucket covers 12.5% of its values
+        assertTrue("expected " + expected + " but was " + actual,
+                actual >= expected && actual <= expected * 1.125);
+    }
+}
@@ -0,0 +1,238 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.DocRouter;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrLeaderRouter. the cluster is a stand-in: a cluster state
+ * of a collection with two shards whose leaders are fake solr servers.
+ */
+public class TestSolrLeaderRouter {
+    // core urls of the replicas
+    private static final String NODE1 = "http://node1:8983/solr/logs_shard1_replica1/";
+    private static final String NODE2 = "http://node2:8983/solr/logs_shard2_replica1/";
+    private static final String NODE3 = "http://node3:8983/solr/logs_shard2_replica2/";
+
+    // current cluster state
+    private ClusterState clusterState;
+
+    // documents received by core url
+    private Map<String, List<SolrInputDocument>> received;
+
+    // requests sent to the wrapped server
+    private List<SolrRequest> forwarded;
+
+    // router to test
+    private SolrLeaderRouter router;
+
+    @Before
+    public void setUp() {
+        this.clusterState = createClusterState(NODE2);
+        this.received = Collections
+                .synchronizedMap(new HashMap<String, List<SolrInputDocument>>());
+        this.forwarded = new ArrayList<SolrRequest>();
+
+        SolrServer cloud = new SolrServer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public NamedList<Object> request(final SolrRequest request)
+                    throws SolrServerException, IOException {
+                forwarded.add(request);
+                return new NamedList<Object>();
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+        SolrLeaderRouter.ClusterStateSource clusterStates = new SolrLeaderRouter.ClusterStateSource() {
+            @Override
+            public ClusterState getClusterState() {
+                return clusterState;
+            }
+        };
+        SolrLeaderRouter.Leaders leaders = new SolrLeaderRouter.Leaders() {
+            @Override
+            public SolrServer create(final String coreUrl) {
+                return new SolrServer() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public NamedList<Object> request(
+                            final SolrRequest request)
+                            throws SolrServerException, IOException {
+                        List<SolrInputDocument> docs = ((UpdateRequest) request)
+                                .getDocuments();
+                        synchronized (received) {
+                            if (!received.containsKey(coreUrl)) {
+                                received.put(coreUrl,
+                                        new ArrayList<SolrInputDocument>());
+                            }
+                            received.get(coreUrl).addAll(docs);
+                        }
+                        NamedList<Object> header = new NamedList<Object>();
+                        header.add("status", 0);
+                        header.add("QTime", coreUrl.equals(NODE1) ? 5 : 7);
+                        NamedList<Object> response = new NamedList<Object>();
+                        response.add("responseHeader", header);
+                        return response;
+                    }
+
+                    @Override
+                    public void shutdown() {
+                    }
+                };
+            }
+        };
+        this.router = new SolrLeaderRouter(cloud, clusterStates, leaders,
+                "logs", "id");
+    }
+
+    @Test
+    public void testRouteToLeaders() throws Exception {
+        UpdateResponse response = this.router.add(createDocs(100));
+
+        // every document is sent once, straight to the leader of its shard
+        assertEquals(0, this.forwarded.size());
+        assertEquals(2, this.received.size());
+        assertEquals(100, this.received.get(NODE1).size()
+                + this.received.get(NODE2).size());
+        DocCollection logs = this.clusterState.getCollection("logs");
+        for (Map.Entry<String, List<SolrInputDocument>> entry : this.received
+                .entrySet()) {
+            for (SolrInputDocument doc : entry.getValue()) {
+                Slice slice = logs.getRouter().getTargetSlice(
+                        doc.getFieldValue("id").toString(), doc, null, logs);
+                assertEquals(entry.getKey().equals(NODE1) ? "shard1"
+                        : "shard2", slice.getName());
+            }
+        }
+
+        // merged response
+        assertEquals(7, response.getQTime());
+    }
+
+    @Test
+    public void testGeneratedIds() throws Exception {
+        List<SolrInputDocument> docs = createDocs(10);
+        this.router.add(docs);
+        HashSet<Object> ids = new HashSet<Object>();
+        for (SolrInputDocument doc : docs) {
+            assertNotNull(doc.getFieldValue("id"));
+            // random ids, no node id which may collide
+            UUID.fromString(doc.getFieldValue("id").toString());
+            ids.add(doc.getFieldValue("id"));
+        }
+        assertEquals(10, ids.size());
+    }
+
+    @Test
+    public void testLeaderChange() throws Exception {
+        this.router.add(createDocs(100));
+        assertTrue(this.received.containsKey(NODE2));
+
+        // shard2 elected a new leader
+        this.clusterState = createClusterState(NODE3);
+        this.received.clear();
+        this.router.add(createDocs(100));
+        assertTrue(this.received.containsKey(NODE3));
+        assertTrue(!this.received.containsKey(NODE2));
+    }
+
+    @Test
+    public void testNotRouted() throws Exception {
+        // unknown collection
+        UpdateRequest request = new UpdateRequest();
+        request.add(createDocs(2));
+        request.setParam("collection", "other");
+        this.router.request(request);
+        assertEquals(1, this.forwarded.size());
+
+        // no documents
+        this.router.commit();
+        assertEquals(2, this.forwarded.size());
+
+        // shard without leader
+        this.clusterState = createClusterState(null);
+        this.router.add(createDocs(100));
+        assertEquals(3, this.forwarded.size());
+        assertEquals(0, this.received.size());
+    }
+
+    // helper
+    private static List<SolrInputDocument> createDocs(int count) {
+        List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
+        for (int i = 0; i < count; i++) {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.addField("message", "message " + i);
+            docs.add(doc);
+        }
+        return docs;
+    }
+
+    /**
+     * collection logs with two shards. shard1 is led by node1.
+     *
+     * @param shard2Leader
+     *            core url of the leader of shard2. null if no leader is
+     *            elected
+     */
+    private static ClusterState createClusterState(String shard2Leader) {
+        Map<String, Slice> slices = new HashMap<String, Slice>();
+        slices.put("shard1", createSlice("shard1", "80000000-ffffffff",
+                NODE1, NODE1));
+        slices.put("shard2", createSlice("shard2", "0-7fffffff",
+                shard2Leader, NODE2, NODE3));
+        Map<String, DocCollection> collections = new HashMap<String, DocCollection>();
+        collections.put("logs", new DocCollection("logs", slices,
+                new HashMap<String, Object>(), DocRouter.DEFAULT));
+        return new ClusterState(1, new HashSet<String>(), collections);
+    }
+
+    private static Slice createSlice(String name, String range,
+            String leader, String... coreUrls) {
+        Map<String, Replica> replicas = new HashMap<String, Replica>();
+        for (int i = 0; i < coreUrls.length; i++) {
+            int split = coreUrls[i].lastIndexOf('/', coreUrls[i].length() - 2);
+            Map<String, Object> props = new HashMap<String, Object>();
+            props.put("base_url", coreUrls[i].substring(0, split));
+            props.put("core", coreUrls[i].substring(split + 1,
+                    coreUrls[i].length() - 1));
+            props.put("node_name", coreUrls[i].substring(7, split));
+            props.put("state", "active");
+            if (coreUrls[i].equals(leader)) {
+                props.put("leader", "true");
+            }
+            replicas.put("core_node" + i, new Replica("core_node" + i, props));
+        }
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("range", range);
+        return new Slice(name, replicas, props);
+    }
+}
@@ -0,0 +1,221 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrLogReader. pages are served by a fake solr server whose
+ * cursor mark is the offset of the next document.
+ */
+public class TestSolrLogReader {
+    // fake solr server
+    private FakeSolrServer solrServer;
+
+    @Before
+    public void setUp() {
+        this.solrServer = new FakeSolrServer();
+    }
+
+    @Test
+    public void testPaging() {
+        this.solrServer.add(25);
+        SolrLogReader reader = new SolrLogReader(this.solrServer, "millis",
+                "id", 10);
+
+        List<Object> ids = new ArrayList<Object>();
+        SolrLogReader.LogIterator events = reader.read("level:ERROR", "id",
+                "message");
+        while (events.hasNext()) {
+            ids.add(events.next().getFieldValue("id"));
+        }
+        assertEquals(25, ids.size());
+        assertEquals("0", ids.get(0));
+        assertEquals("24", ids.get(24));
+
+        // the short page is the last one
+        assertEquals(3, this.solrServer.params.size());
+        SolrParams params = this.solrServer.params.get(0);
+        assertEquals("level:ERROR", params.get(CommonParams.Q));
+        assertEquals("millis asc,id asc", params.get(CommonParams.SORT));
+        assertEquals("id,message", params.get(CommonParams.FL));
+        assertEquals("10", params.get(CommonParams.ROWS));
+        assertEquals(CursorMarkParams.CURSOR_MARK_START,
+                params.get(CursorMarkParams.CURSOR_MARK_PARAM));
+        assertEquals("20", this.solrServer.params.get(2).get(
+                CursorMarkParams.CURSOR_MARK_PARAM));
+    }
+
+    @Test
+    public void testUnchangedCursor() {
+        this.solrServer.add(20);
+        SolrLogReader reader = new SolrLogReader(this.solrServer, null, "id",
+                10);
+
+        SolrQuery query = new SolrQuery("*:*");
+        query.setStart(100);
+        query.setSort("level", SolrQuery.ORDER.desc);
+        SolrLogReader.LogIterator events = reader.read(query);
+        int count = 0;
+        while (events.hasNext()) {
+            events.next();
+            count++;
+        }
+        assertEquals(20, count);
+
+        // the empty page returns the cursor mark it was asked for
+        assertEquals(3, this.solrServer.params.size());
+        SolrParams params = this.solrServer.params.get(0);
+        assertEquals("id asc", params.get(CommonParams.SORT));
+        assertNull(params.get(CommonParams.START));
+        assertNull(params.get(CommonParams.FL));
+        assertEquals(Integer.valueOf(100), query.getStart());
+    }
+
+    @Test
+    public void testPrefetch() throws InterruptedException {
+        this.solrServer.add(15);
+        SolrLogReader reader = new SolrLogReader(this.solrServer, "millis",
+                "id", 10);
+
+        SolrLogReader.LogIterator events = reader.read("*:*");
+        assertEquals("0", events.next().getFieldValue("id"));
+
+        // the second page is fetched while the first one is consumed
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.solrServer.requests() < 2
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, this.solrServer.requests());
+
+        events.close();
+        assertFalse(events.hasNext());
+    }
+
+    @Test
+    public void testError() {
+        this.solrServer.down = true;
+        SolrLogReader reader = new SolrLogReader(this.solrServer, "millis",
+                "id", 10);
+
+        SolrLogReader.LogIterator events = reader.read("*:*");
+        try {
+            events.hasNext();
+            fail("down");
+        } catch (SolrException e) {
+            assertTrue(e.getMessage().contains("Server refused connection"));
+        }
+        assertFalse(events.hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPageSize() {
+        new SolrLogReader(this.solrServer, "millis", "id", 0);
+    }
+
+    @Test
+    public void testEmbedded() throws Exception {
+        SolrServer embedded = EmbeddedSolrHome
+                .createServer(TestSolrLogReader.class);
+        try {
+            embedded.deleteByQuery("*:*");
+            // the update chain gives the documents their unique key
+            for (int i = 0; i < 25; i++) {
+                SolrInputDocument doc = new SolrInputDocument();
+                doc.addField("millis", 1000L - i);
+                doc.addField("message", "message " + i);
+                embedded.add(doc);
+            }
+            embedded.commit();
+
+            // real cursor marks over three pages
+            SolrLogReader reader = new SolrLogReader(embedded, "millis", "id",
+                    10);
+            List<Object> messages = new ArrayList<Object>();
+            SolrLogReader.LogIterator events = reader.read("*:*");
+            while (events.hasNext()) {
+                messages.add(events.next().getFieldValue("message"));
+            }
+            assertEquals(25, messages.size());
+            assertEquals("message 24", messages.get(0));
+            assertEquals("message 0", messages.get(24));
+        } finally {
+            embedded.shutdown();
+        }
+    }
+
+    /**
+     * fake solr server paging its documents by offset.
+     */
+    private static final class FakeSolrServer extends SolrServer {
+        private static final long serialVersionUID = 1L;
+
+        private final List<SolrDocument> docs = new ArrayList<SolrDocument>();
+        private final List<SolrParams> params = new ArrayList<SolrParams>();
+        private volatile boolean down;
+
+        public void add(int count) {
+            for (int i = 0; i < count; i++) {
+                SolrDocument doc = new SolrDocument();
+                doc.setField("id", String.valueOf(i));
+                doc.setField("millis", Long.valueOf(i));
+                this.docs.add(doc);
+            }
+        }
+
+        public synchronized int requests() {
+            return this.params.size();
+        }
+
+        @Override
+        public synchronized NamedList<Object> request(
+                final SolrRequest request) throws SolrServerException,
+                IOException {
+            if (this.down) {
+                throw new SolrServerException("Server refused connection");
+            }
+            SolrParams query = request.getParams();
+            this.params.add(query);
+            String cursorMark = query.get(CursorMarkParams.CURSOR_MARK_PARAM);
+            int start = CursorMarkParams.CURSOR_MARK_START
+                    .equals(cursorMark) ? 0 : Integer.parseInt(cursorMark);
+            int end = Math.min(this.docs.size(),
+                    start + query.getInt(CommonParams.ROWS));
+
+            SolrDocumentList page = new SolrDocumentList();
+            page.setNumFound(this.docs.size());
+            page.addAll(this.docs.subList(start, end));
+            NamedList<Object> response = new NamedList<Object>();
+            response.add("response", page);
+            response.add(CursorMarkParams.CURSOR_MARK_NEXT,
+                    String.valueOf(end));
+            return response;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
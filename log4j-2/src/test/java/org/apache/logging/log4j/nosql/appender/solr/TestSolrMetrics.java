@@ -0,0 +1,171 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrMetrics. requests are sent through SolrMetricsServer to
+ * a fake solr server.
+ */
+public class TestSolrMetrics {
+    // outcome of the next request: null, "down", "rejected" or "status"
+    private String failure;
+
+    // metrics to test
+    private SolrMetrics metrics;
+
+    // server recording the requests
+    private SolrServer solrServer;
+
+    @Before
+    public void setUp() {
+        this.failure = null;
+        this.metrics = new SolrMetrics();
+        this.solrServer = new SolrMetricsServer(new SolrServer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public NamedList<Object> request(final SolrRequest request)
+                    throws SolrServerException, IOException {
+                if ("down".equals(failure)) {
+                    throw new SolrServerException("Server refused connection");
+                }
+                if ("rejected".equals(failure)) {
+                    throw new SolrException(
+                            SolrException.ErrorCode.BAD_REQUEST,
+                            "unknown field");
+                }
+                NamedList<Object> header = new NamedList<Object>();
+                header.add("status", "status".equals(failure) ? 500 : 0);
+                header.add("QTime", 12);
+                NamedList<Object> response = new NamedList<Object>();
+                response.add("responseHeader", header);
+                return response;
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        }, this.metrics);
+    }
+
+    @Test
+    public void testSuccess() throws Exception {
+        this.solrServer.add(createDoc("first"));
+        this.solrServer.add(createDoc("second"));
+        this.solrServer.commit();
+
+        assertEquals(2, this.metrics.getDocsSent());
+        assertEquals(2, this.metrics.getBatchesSent());
+        assertEquals(0, this.metrics.getFailures());
+        assertEquals(12, this.metrics.getQTimeP50Ms());
+        assertTrue(this.metrics.getLatencyP999Ms() > 0);
+        assertTrue(this.metrics.getRecentLatencyNs() > 0);
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        this.failure = "down";
+        assertFails();
+        assertFails();
+        this.failure = "rejected";
+        assertFails();
+        this.failure = "status";
+        this.solrServer.add(createDoc("first"));
+
+        assertEquals(0, this.metrics.getDocsSent());
+        assertEquals(4, this.metrics.getFailures());
+        Map<String, Long> byCause = this.metrics.getFailuresByCause();
+        assertEquals(Long.valueOf(2), byCause.get("SolrServerException"));
+        assertEquals(Long.valueOf(1), byCause.get("SolrException(400)"));
+        assertEquals(Long.valueOf(1), byCause.get("status(500)"));
+
+        this.metrics.reset();
+        assertEquals(0, this.metrics.getFailures());
+        assertEquals(-1, this.metrics.getRecentLatencyNs());
+    }
+
+    @Test
+    public void testQueueDepth() {
+        SolrBatchWriter batchWriter = new SolrBatchWriter(this.solrServer, -1,
+                10, 0);
+        this.metrics.setBatchWriter(batchWriter);
+        batchWriter.write(createDoc("first"));
+        batchWriter.write(createDoc("second"));
+        assertEquals(2, this.metrics.getQueueDepth());
+
+        batchWriter.flush();
+        assertEquals(0, this.metrics.getQueueDepth());
+        assertEquals(1, this.metrics.getBatchesSent());
+    }
+
+    @Test
+    public void testProviderMBean() throws Exception {
+        SolrProvider provider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").build();
+        assertNotNull(provider);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(SolrMetrics.DOMAIN
+                + ":type=SolrProvider,name="
+                + ObjectName.quote(provider.toString()));
+        assertEquals(name, provider.getMetrics().getObjectName());
+        assertEquals(Long.valueOf(0), server.getAttribute(name, "DocsSent"));
+
+        provider.getMetrics().unregister();
+        assertTrue(!server.isRegistered(name));
+    }
+
+    @Test
+    public void testReplacedMBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        SolrMetrics previous = new SolrMetrics();
+        previous.register("replaced");
+        SolrMetrics current = new SolrMetrics();
+        current.register("replaced");
+        ObjectName name = current.getObjectName();
+
+        // the previous provider shuts down after its successor was created
+        previous.unregister();
+        assertTrue(server.isRegistered(name));
+
+        current.unregister();
+        assertTrue(!server.isRegistered(name));
+    }
+
+    // helper
+    private void assertFails() throws IOException {
+        try {
+            this.solrServer.add(createDoc("doc"));
+            fail("request did not fail");
+        } catch (SolrServerException e) {
+            // expected
+        } catch (SolrException e) {
+            // expected
+        }
+    }
+
+    private static SolrInputDocument createDoc(String message) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("message", message);
+        return doc;
+    }
+}
@@ -2,10 +2,12 @@ package org.apache.logging.log4j.nosql.appender.solr;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 import org.apache.logging.log4j.nosql.appender.solr.SolrObject;
+import org.apache.solr.common.SolrInputDocument;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -143,4 +145,66 @@ public class TestSolrObject {
         assertNull(this.solrObject.unwrap().getFieldValue("c"));
         assertNull(this.solrObject.unwrap().getFieldValue("d"));
     }
+
+    @Test
+    public void testFlattenNested() {
+        SolrObject event = new SolrObject(null, true);
+        event.set("message", "solr field");
+
+        SolrObject thrown = new SolrObject(null, true);
+        thrown.set("type", "java.lang.IllegalStateException");
+        SolrObject[] frames = { new SolrObject(null, true),
+                new SolrObject(null, true) };
+        frames[0].set("className", "A");
+        frames[1].set("className", "B");
+        thrown.set("stackTrace", frames);
+        SolrObject cause = new SolrObject(null, true);
+        cause.set("type", "java.io.IOException");
+        thrown.set("cause", cause);
+        event.set("thrown", thrown);
+
+        SolrObject contextMap = new SolrObject(null, true);
+        contextMap.set("userId", "42");
+        event.set("contextMap", contextMap);
+
+        // child documents until the log event is complete
+        assertEquals(2, event.unwrap().getChildDocuments().size());
+        event.flatten();
+
+        SolrInputDocument doc = event.unwrap();
+        assertFalse(doc.hasChildDocuments());
+        assertEquals("solr field", doc.getFieldValue("message"));
+        assertEquals("java.lang.IllegalStateException",
+                doc.getFieldValue("thrown.type"));
+        assertArrayEquals(new Object[] { "A", "B" },
+                doc.getFieldValues("thrown.stackTrace.className").toArray());
+        assertEquals("java.io.IOException",
+                doc.getFieldValue("thrown.cause.type"));
+        assertEquals("42", doc.getFieldValue("contextMap.userId"));
+        assertNull(event.getThrown());
+    }
+
+    @Test
+    public void testFlattenPooled() {
+        SolrObjectPool pool = new SolrObjectPool(16, null, true);
+        SolrObject event = pool.borrow();
+        SolrObject[] markers = { pool.borrow(), pool.borrow() };
+        markers[0].set("name", "first");
+        markers[1].set("name", "second");
+        event.set("marker", markers);
+        event.flatten();
+
+        // the nested objects are back in the pool, their values are copied
+        assertEquals(2, pool.size());
+        assertArrayEquals(new Object[] { "first", "second" }, event.unwrap()
+                .getFieldValues("marker.name").toArray());
+    }
+
+    @Test
+    public void testChildDocumentsByDefault() {
+        SolrObject event = new SolrObject(null, false);
+        event.set("contextMap", new SolrObject(null, false));
+        event.flatten();
+        assertEquals(1, event.unwrap().getChildDocuments().size());
+    }
 }
@@ -0,0 +1,130 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrObjectPool and recycling of SolrObjects.
+ */
+public class TestSolrObjectPool {
+    private SolrObjectPool pool;
+
+    @Before
+    public void setUp() {
+        this.pool = new SolrObjectPool(2);
+    }
+
+    @Test
+    public void testRecycle() {
+        SolrObject solrObject = this.pool.borrow();
+        solrObject.set("message", "first");
+        solrObject.set("tags", new String[] { "a", "b" });
+        SolrInputDocument doc = solrObject.unwrap();
+        SolrInputField field = doc.getField("message");
+        assertEquals(0, this.pool.size());
+
+        // sent
+        SolrObject.recycle(doc);
+        assertEquals(1, this.pool.size());
+        assertTrue(doc.isEmpty());
+
+        // the next log event reuses object and field holders
+        SolrObject next = this.pool.borrow();
+        assertSame(solrObject, next);
+        next.set("message", "second");
+        assertSame(field, next.unwrap().getField("message"));
+        assertEquals("second", next.unwrap().getFieldValue("message"));
+        assertNull(next.unwrap().getFieldValue("tags"));
+
+        next.set("tags", new String[] { "c" });
+        assertArrayEquals(new Object[] { "c" }, next.unwrap()
+                .getFieldValues("tags").toArray());
+    }
+
+    @Test
+    public void testSameFieldTwice() {
+        SolrObject solrObject = this.pool.borrow();
+        solrObject.set("a", "first");
+        solrObject.set("a", "second");
+        assertEquals(2, solrObject.unwrap().getFieldValues("a").size());
+    }
+
+    @Test
+    public void testNestedDocs() {
+        SolrObject parent = this.pool.borrow();
+        SolrObject child = this.pool.borrow();
+        child.set("key", "value");
+        parent.set("contextMap", child);
+        assertTrue(parent.unwrap().hasChildDocuments());
+
+        // children are recycled with their parent
+        SolrObject.recycle(parent.unwrap());
+        assertEquals(2, this.pool.size());
+        assertFalse(parent.unwrap().hasChildDocuments());
+        assertTrue(child.unwrap().isEmpty());
+    }
+
+    @Test
+    public void testRecycleTwice() {
+        SolrObject solrObject = this.pool.borrow();
+        SolrObject.recycle(solrObject.unwrap());
+        SolrObject.recycle(solrObject.unwrap());
+        assertEquals(1, this.pool.size());
+    }
+
+    @Test
+    public void testBounded() {
+        SolrObject first = this.pool.borrow();
+        SolrObject second = this.pool.borrow();
+        SolrObject third = this.pool.borrow();
+        assertNotSame(first, third);
+
+        SolrObject.recycle(first.unwrap());
+        SolrObject.recycle(second.unwrap());
+        SolrObject.recycle(third.unwrap());
+        assertEquals(2, this.pool.size());
+    }
+
+    @Test
+    public void testNotPooled() {
+        SolrObject solrObject = new SolrObject();
+        solrObject.set("message", "message");
+
+        // documents which are not pooled are left alone
+        SolrObject.recycle(solrObject.unwrap());
+        assertEquals("message", solrObject.unwrap().getFieldValue("message"));
+        assertEquals(0, this.pool.size());
+    }
+
+    @Test
+    public void testConnection() {
+        final SolrInputDocument[] written = new SolrInputDocument[1];
+        SolrConnection connection = SolrConnection.newBuilder(new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+                written[0] = doc;
+                SolrObject.recycle(doc);
+            }
+
+            @Override
+            public void flush() {
+            }
+        }).withObjectPool(this.pool).build();
+
+        SolrObject solrObject = connection.createObject();
+        solrObject.set("message", "message");
+        connection.insertObject(solrObject);
+        assertSame(solrObject.unwrap(), written[0]);
+        assertSame(solrObject, connection.createObject());
+    }
+}
@@ -0,0 +1,167 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrPartitioner and SolrPartitionServer.
+ */
+public class TestSolrPartitioner {
+    // 2014-06-01T10:00:00Z
+    private static final long JUNE_1 = utc(2014, Calendar.JUNE, 1, 10);
+
+    // 2014-06-02T00:00:00Z
+    private static final long JUNE_2 = utc(2014, Calendar.JUNE, 2, 0);
+
+    @Test
+    public void testDaily() {
+        SolrPartitioner partitioner = new SolrPartitioner("'logs_'yyyyMMdd");
+        assertEquals("logs_20140601", partitioner.collection(JUNE_1, null));
+        assertEquals("logs_20140601", partitioner.collection(JUNE_2 - 1, null));
+        assertEquals("logs_20140602", partitioner.collection(JUNE_2, null));
+
+        // the name of a period is computed once
+        assertSame(partitioner.collection(JUNE_2, null),
+                partitioner.collection(JUNE_2 + 1000, null));
+    }
+
+    @Test
+    public void testUnit() {
+        assertEquals(Calendar.HOUR_OF_DAY,
+                SolrPartitioner.unit("'logs_'yyyyMMddHH"));
+        assertEquals(Calendar.DAY_OF_MONTH,
+                SolrPartitioner.unit("'logs_'yyyyMMdd"));
+        assertEquals(Calendar.MONTH, SolrPartitioner.unit("'logs_'yyyyMM"));
+        // quoted letters are no units
+        assertEquals(Calendar.YEAR, SolrPartitioner.unit("'daily_'yyyy"));
+
+        SolrPartitioner hourly = new SolrPartitioner("'logs_'yyyyMMddHH");
+        assertEquals("logs_2014060110", hourly.collection(JUNE_1, null));
+    }
+
+    @Test
+    public void testField() {
+        SolrPartitioner partitioner = new SolrPartitioner("'logs_'yyyyMMdd");
+        assertEquals("logs_20140601_error",
+                partitioner.collection(JUNE_1, "ERROR"));
+        assertEquals("logs_20140601_org_example",
+                partitioner.collection(JUNE_1, "org.example"));
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        final List<String> sent = Collections
+                .synchronizedList(new ArrayList<String>());
+        SolrPartitionServer.Targets targets = new SolrPartitionServer.Targets() {
+            @Override
+            public SolrServer create(final String collection) {
+                return new SolrServer() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public NamedList<Object> request(
+                            final SolrRequest request)
+                            throws SolrServerException, IOException {
+                        sent.add(collection + ":"
+                                + ((UpdateRequest) request).getDocuments()
+                                        .size());
+                        return new NamedList<Object>();
+                    }
+
+                    @Override
+                    public void shutdown() {
+                    }
+                };
+            }
+        };
+        SolrPartitionServer server = new SolrPartitionServer(null,
+                new SolrPartitioner("'logs_'yyyyMMdd"), targets, "millis",
+                null);
+
+        // single collection
+        List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
+        docs.add(createDoc(JUNE_1));
+        docs.add(createDoc(JUNE_1));
+        server.add(docs);
+        assertEquals("[logs_20140601:2]", sent.toString());
+
+        // split over two collections
+        sent.clear();
+        docs.add(createDoc(JUNE_2));
+        server.add(docs, 1000);
+        assertEquals("[logs_20140601:2, logs_20140602:1]", sent.toString());
+        assertEquals(2, server.getCollections().size());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        final List<String> shutdown = Collections
+                .synchronizedList(new ArrayList<String>());
+        SolrPartitionServer.Targets targets = new SolrPartitionServer.Targets() {
+            @Override
+            public SolrServer create(final String collection) {
+                return new SolrServer() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public NamedList<Object> request(
+                            final SolrRequest request)
+                            throws SolrServerException, IOException {
+                        return new NamedList<Object>();
+                    }
+
+                    @Override
+                    public void shutdown() {
+                        shutdown.add(collection);
+                    }
+                };
+            }
+        };
+        SolrPartitionServer server = new SolrPartitionServer(null,
+                new SolrPartitioner("'logs_'yyyyMMddHH"), targets, "millis",
+                null);
+
+        // one collection per hour, the oldest ones are shut down
+        for (int i = 0; i < 130; i++) {
+            server.add(createDoc(JUNE_1 + i * 3600000L));
+        }
+        assertEquals(128, server.getCollections().size());
+        assertEquals("[logs_2014060110, logs_2014060111]", shutdown.toString());
+        assertEquals("logs_2014060112", server.getCollections().get(0));
+
+        // a cached collection is used again without creating a server
+        server.add(createDoc(JUNE_1 + 2 * 3600000L));
+        assertEquals(2, shutdown.size());
+        assertEquals("logs_2014060112", server.getCollections().get(127));
+    }
+
+    // helper
+    private static SolrInputDocument createDoc(long millis) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("message", "message");
+        doc.addField("millis", millis);
+        return doc;
+    }
+
+    private static long utc(int year, int month, int day, int hour) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month, day, hour, 0);
+        return calendar.getTimeInMillis();
+    }
+}
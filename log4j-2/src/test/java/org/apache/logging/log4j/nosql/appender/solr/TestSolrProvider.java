@@ -1,9 +1,14 @@
 package org.apache.logging.log4j.nosql.appender.solr;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.core.config.DefaultConfiguration;
 import org.apache.logging.log4j.nosql.appender.solr.SolrProvider;
 import org.junit.After;
 import org.junit.Before;
@@ -41,6 +46,21 @@ public class TestSolrProvider {
                 this.solrProvider.toString());
     }
 
+    @Test
+    public void testHttpSolrServerBuilder() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ HttpSolrServer(\"http://localhost:8983/solr\") }",
+                this.solrProvider.toString());
+    }
+
     @Test
     public void testHttpSolrServerWithCore() {
         // pre test
@@ -57,6 +77,131 @@ public class TestSolrProvider {
                 this.solrProvider.toString());
     }
 
+    @Test
+    public void testHttpSolrServerWithCoreBuilder() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder().withCoreName("myCore")
+                .withUrl("http://localhost:8983/solr").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals(
+                "solr{ HttpSolrServer(\"http://localhost:8983/solr/myCore\") }",
+                this.solrProvider.toString());
+    }
+
+    @Test
+    public void testConcurrentUpdateSolrServer() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withQueueSize("1000")
+                .withThreadCount("4").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals(
+                "solr{ ConcurrentUpdateSolrServer(\"http://localhost:8983/solr\", 1000, 4) }",
+                this.solrProvider.toString());
+    }
+
+    @Test
+    public void testConcurrentUpdateSolrServerWithCore() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider with default queueSize
+        this.solrProvider = SolrProvider.newBuilder().withCoreName("myCore")
+                .withUrl("http://localhost:8983/solr").withThreadCount("4")
+                .build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals(
+                "solr{ ConcurrentUpdateSolrServer(\"http://localhost:8983/solr/myCore\", 100, 4) }",
+                this.solrProvider.toString());
+    }
+
+    @Test
+    public void testSpill() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withAsync("true")
+                .withOverflowPolicy("SPILL")
+                .withSpillDirectory("target/spill-TestSolrProvider")
+                .withSpillSegmentSize("65536").withSpillMaxDiskSize("1048576")
+                .build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ HttpSolrServer(\"http://localhost:8983/solr\")"
+                + ".spill(\"target/spill-TestSolrProvider\") }",
+                this.solrProvider.toString());
+    }
+
+    @Test
+    public void testFieldMapping() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        SolrFieldMapping fieldMapping = SolrFieldMapping.createFieldMapping(
+                null, new SolrField[] { SolrField.createField("source", null,
+                        null, null, "true") });
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr")
+                .withFieldMapping(fieldMapping).build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ HttpSolrServer(\"http://localhost:8983/solr\")"
+                + ".fieldMapping(source->drop, dropUnmapped=false) }",
+                this.solrProvider.toString());
+        assertFalse(this.solrProvider.requiresLocation());
+    }
+
+    @Test
+    public void testRollup() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr")
+                .withRollupWindowMs("5000").withRollupMaxKeys("100").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ HttpSolrServer(\"http://localhost:8983/solr\")"
+                + ".rollup(5000ms) }", this.solrProvider.toString());
+    }
+
+    @Test
+    public void testPartition() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr")
+                .withPartitionPattern("'logs_'yyyyMMdd")
+                .withPartitionField("level").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ HttpSolrServer(\"http://localhost:8983/solr\")"
+                + ".partition(\"'logs_'yyyyMMdd\", level) }",
+                this.solrProvider.toString());
+    }
+
     @Test
     public void testLBHttpSolrServer() {
         // pre test
@@ -74,6 +219,23 @@ public class TestSolrProvider {
                 this.solrProvider.toString());
     }
 
+    @Test
+    public void testLBHttpSolrServerBuilder() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder()
+                .withSolrServerUrls("http://localhost:8983/solr,http://localhost:8984/solr")
+                .build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals(
+                "solr{ LBHttpSolrServer(\"http://localhost:8983/solr,http://localhost:8984/solr\") }",
+                this.solrProvider.toString());
+    }
+
     @Test
     public void testLBHttpSolrServerWithCore() {
         // pre test
@@ -91,6 +253,23 @@ public class TestSolrProvider {
                 this.solrProvider.toString());
     }
 
+    @Test
+    public void testLBHttpSolrServerWithCoreBuilder() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder().withCoreName("myCore")
+                .withSolrServerUrls("http://localhost:8983/solr,http://localhost:8984/solr")
+                .build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals(
+                "solr{ LBHttpSolrServer(\"http://localhost:8983/solr/myCore,http://localhost:8984/solr/myCore\") }",
+                this.solrProvider.toString());
+    }
+
     @Test
     public void testCloudSolrServer() {
         // pre test
@@ -107,6 +286,22 @@ public class TestSolrProvider {
                 this.solrProvider.toString());
     }
 
+    @Test
+    public void testCloudSolrServerBuilder() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder()
+                .withZkHost("localhost:2181").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals(
+                "solr{ CloudSolrServer(\"localhost:2181\").setDefaultCollection(\"collection1\") }",
+                this.solrProvider.toString());
+    }
+
     @Test
     public void testCloudSolrServerWithCore() {
         // pre test
@@ -123,6 +318,22 @@ public class TestSolrProvider {
                 this.solrProvider.toString());
     }
 
+    @Test
+    public void testCloudSolrServerWithCoreBuilder() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder().withCoreName("myCore")
+                .withZkHost("localhost:2181").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals(
+                "solr{ CloudSolrServer(\"localhost:2181\").setDefaultCollection(\"myCore\") }",
+                this.solrProvider.toString());
+    }
+
     @Test
     public void testEmbeddedSolrServer() {
         // pre test
@@ -142,6 +353,292 @@ public class TestSolrProvider {
                 + "\", \"myCore\") }", this.solrProvider.toString());
     }
 
+    @Test
+    public void testEmbeddedSolrServerBuilder() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        String solrHome = TestSolrProvider.class
+                .getResource(
+                        "./solr_home")
+                .getPath();
+        this.solrProvider = SolrProvider.newBuilder().withCoreName("myCore")
+                .withSolrHome(solrHome).build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ EmbeddedSolrServer(\"" + solrHome
+                + "\", \"myCore\") }", this.solrProvider.toString());
+    }
+
+    @Test
+    public void testAdaptiveCommit() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder().withCommitWithinMs("2000")
+                .withUrl("http://localhost:8983/solr")
+                .withCommitWithinMaxMs("30000").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ HttpSolrServer(\"http://localhost:8983/solr\")"
+                + ".adaptiveCommit(2000ms, 30000ms) }",
+                this.solrProvider.toString());
+
+        // min above max
+        assertNull(SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr")
+                .withCommitWithinMinMs("5000").withCommitWithinMaxMs("1000")
+                .build());
+    }
+
+    @Test
+    public void testGenerateIds() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withBatchSize("500")
+                .withIdField("logId").withOverwrite("false")
+                .withGenerateIds("true").withNodeId("42").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ HttpSolrServer(\"http://localhost:8983/solr\")"
+                + ".overwrite(false).generateIds(logId) }",
+                this.solrProvider.toString());
+        assertNotNull(this.solrProvider.getReader());
+
+        // invalid node id
+        assertNull(SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withGenerateIds("true")
+                .withNodeId("-1").build());
+
+        // missing node id
+        assertNull(SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withGenerateIds("true")
+                .build());
+    }
+
+    @Test
+    public void testFlattenNested() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withFlattenNested("true")
+                .build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ HttpSolrServer(\"http://localhost:8983/solr\")"
+                + ".flattenNested() }", this.solrProvider.toString());
+    }
+
+    @Test
+    public void testRequestLog() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withRequestLog("true")
+                .build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ HttpSolrServer(\"http://localhost:8983/solr\")"
+                + ".requestLog() }", this.solrProvider.toString());
+    }
+
+    @Test
+    public void testRateLimits() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr")
+                .withRateLimits(":DEBUG=200,org.example=50")
+                .withRateLimitLatencyMs("500").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ HttpSolrServer(\"http://localhost:8983/solr\")"
+                + ".rateLimits(org.example=50,:DEBUG=200)"
+                + ".adaptiveSampling(500ms) }", this.solrProvider.toString());
+
+        // invalid rate limit
+        assertNull(SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr")
+                .withRateLimits("org.example").build());
+    }
+
+    @Test
+    public void testLanes() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withBatchSize("100")
+                .withLanes("4").withLaneKey("threadName").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ HttpSolrServer(\"http://localhost:8983/solr\")"
+                + ".lanes(4, threadName) }", this.solrProvider.toString());
+        assertEquals(4,
+                this.solrProvider.getMetrics().getLaneQueueDepths().length);
+
+        // invalid lane count
+        assertNull(SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withLanes("0").build());
+    }
+
+    @Test
+    public void testStaticFields() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        SolrField[] fields = new SolrField[] {
+                SolrField.createField(null, "app", "shop", null, null),
+                SolrField.createField(null, "user", "${sys:user.name}", null,
+                        null) };
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withFields(fields)
+                .build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ HttpSolrServer(\"http://localhost:8983/solr\")"
+                + ".staticFields(app=\"shop\", user=\""
+                + System.getProperty("user.name") + "\") }",
+                this.solrProvider.toString());
+
+        // context fields are not static
+        fields = new SolrField[] { SolrField.createField(null, "user", null,
+                "userId", null) };
+        assertNull(SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withFields(fields)
+                .build());
+    }
+
+    @Test
+    public void testDirectUpdates() throws Exception {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        String solrHome = EmbeddedSolrHome.copy(TestSolrProvider.class);
+        this.solrProvider = SolrProvider.newBuilder()
+                .withCoreName("collection1").withSolrHome(solrHome)
+                .withDirectUpdates("true").withOverwrite("false").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ EmbeddedSolrServer(\"" + solrHome
+                + "\", \"collection1\").directUpdates().overwrite(false) }",
+                this.solrProvider.toString());
+        this.solrProvider.shutdown();
+        assertNull(this.solrProvider.getMetrics().getObjectName());
+
+        // unknown core
+        assertNull(SolrProvider.newBuilder().withCoreName("myCore")
+                .withSolrHome(solrHome).withDirectUpdates("true").build());
+
+        // an invalid configuration releases the index lock
+        assertNull(SolrProvider.newBuilder().withCoreName("collection1")
+                .withSolrHome(solrHome).withDirectUpdates("true")
+                .withRateLimits("invalid").build());
+        this.solrProvider = SolrProvider.newBuilder()
+                .withCoreName("collection1").withSolrHome(solrHome)
+                .withDirectUpdates("true").build();
+        assertNotNull(this.solrProvider);
+        SolrConnection connection = this.solrProvider.getConnection();
+        SolrObject object = connection.createObject();
+        object.set("id", "1");
+        connection.insertObject(object);
+        assertEquals(0, this.solrProvider.getMetrics().getFailures());
+        assertEquals(1, this.solrProvider.getMetrics().getDocsSent());
+        this.solrProvider.shutdown();
+    }
+
+    @Test
+    public void testValidateSchema() throws Exception {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        String solrHome = EmbeddedSolrHome.copy(TestSolrProvider.class);
+        this.solrProvider = SolrProvider.newBuilder()
+                .withCoreName("collection1").withSolrHome(solrHome)
+                .withValidateSchema("true").withUnknownFields("*_s").build();
+
+        // test provider
+        assertNotNull(this.solrProvider);
+        assertEquals("solr{ EmbeddedSolrServer(\"" + solrHome
+                + "\", \"collection1\").validateSchema(*_s) }",
+                this.solrProvider.toString());
+        assertEquals(0, this.solrProvider.getMetrics().getDroppedFieldCount());
+        this.solrProvider.shutdown();
+
+        // invalid pattern
+        assertNull(SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr")
+                .withValidateSchema("true").withUnknownFields("string").build());
+    }
+
+    @Test
+    public void testReader() throws Exception {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        String solrHome = EmbeddedSolrHome.copy(TestSolrProvider.class);
+        this.solrProvider = SolrProvider.newBuilder()
+                .withCoreName("collection1").withCommitWithinMs("10")
+                .withSolrHome(solrHome).build();
+        assertNotNull(this.solrProvider);
+        try {
+            // the index of the copied solr home is kept between test runs
+            String run = "run" + System.currentTimeMillis();
+            SolrConnection connection = this.solrProvider.getConnection();
+            for (int i = 0; i < 3; i++) {
+                SolrObject entity = connection.createObject();
+                entity.set("message", run + " " + i);
+                entity.set("millis", 1000L + i);
+                connection.insertObject(entity);
+            }
+            long sent = this.solrProvider.getMetrics().getBatchesSent();
+
+            // read back once the commitWithin made them visible
+            List<Object> messages = new ArrayList<Object>();
+            for (int i = 0; i < 100 && messages.size() < 3; i++) {
+                Thread.sleep(50);
+                messages.clear();
+                SolrLogReader.LogIterator events = this.solrProvider
+                        .getReader().read("message:" + run);
+                while (events.hasNext()) {
+                    messages.add(events.next().getFieldValue("message"));
+                }
+            }
+            assertEquals("[" + run + " 0, " + run + " 1, " + run + " 2]",
+                    messages.toString());
+
+            // the queries are not measured as requests of the appender
+            assertEquals(sent, this.solrProvider.getMetrics().getBatchesSent());
+        } finally {
+            this.solrProvider.shutdown();
+        }
+    }
+
     @Test
     public void testNoValidConfiguration() {
         // pre test
@@ -177,4 +674,88 @@ public class TestSolrProvider {
                 null, null, "");
         assertNull(this.solrProvider);
     }
+
+    @Test
+    public void testNoValidConfigurationBuilder() {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        this.solrProvider = SolrProvider.newBuilder().build();
+        assertNull(this.solrProvider);
+
+        // empty coreName
+        this.solrProvider = SolrProvider.newBuilder().withUrl("").build();
+        assertNull(this.solrProvider);
+
+        // empty url
+        this.solrProvider = SolrProvider.newBuilder().withCoreName("").build();
+        assertNull(this.solrProvider);
+
+        // empty list of Solr server
+        this.solrProvider = SolrProvider.newBuilder().withSolrServerUrls("")
+                .build();
+        assertNull(this.solrProvider);
+
+        // empty zkHost
+        this.solrProvider = SolrProvider.newBuilder().withZkHost("").build();
+        assertNull(this.solrProvider);
+
+        // empty solrHome
+        this.solrProvider = SolrProvider.newBuilder().withSolrHome("").build();
+        assertNull(this.solrProvider);
+
+        // overflowPolicy SPILL without spillDirectory
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withAsync("true")
+                .withOverflowPolicy("SPILL").build();
+        assertNull(this.solrProvider);
+
+        // partitionPattern with ConcurrentUpdateSolrServer
+        this.solrProvider = SolrProvider.newBuilder()
+                .withUrl("http://localhost:8983/solr").withQueueSize("1000")
+                .withThreadCount("4").withPartitionPattern("'logs_'yyyyMMdd")
+                .build();
+        assertNull(this.solrProvider);
+    }
+
+    @Test
+    public void testShutdownWithConfiguration() throws Exception {
+        // pre test
+        assertNull(this.solrProvider);
+
+        // create provider
+        String solrHome = EmbeddedSolrHome.copy(TestSolrProvider.class);
+        DefaultConfiguration configuration = new DefaultConfiguration();
+        configuration.start();
+        this.solrProvider = SolrProvider.newBuilder()
+                .withCoreName("collection1").withSolrHome(solrHome)
+                .withBatchSize("10").withFlushIntervalMs("60000")
+                .withConfiguration(configuration).build();
+        assertNotNull(this.solrProvider);
+
+        // the appender closes its connection after every log event
+        SolrConnection connection = this.solrProvider.getConnection();
+        SolrObject solrObject = connection.createObject();
+        solrObject.set("message", "first");
+        connection.insertObject(solrObject);
+        connection.close();
+        assertEquals(0, this.solrProvider.getMetrics().getDocsSent());
+
+        // a manager may keep its connection open until it stops
+        connection = this.solrProvider.getConnection();
+        solrObject = connection.createObject();
+        solrObject.set("message", "second");
+        connection.insertObject(solrObject);
+        connection.close();
+        assertEquals(0, this.solrProvider.getMetrics().getDocsSent());
+
+        // the stopping configuration stops the appender, whose manager closes
+        // its connection
+        configuration.stop();
+        connection = this.solrProvider.getConnection();
+        connection.close();
+        assertEquals(2, this.solrProvider.getMetrics().getDocsSent());
+        assertNull(this.solrProvider.getMetrics().getObjectName());
+    }
 }
@@ -0,0 +1,152 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrRateLimitWriter and SolrTokenBucket. the rates are low
+ * enough that no token is refilled while a test runs.
+ */
+public class TestSolrRateLimitWriter {
+    // documents passed to the next writer
+    private List<SolrInputDocument> written;
+
+    // writer collecting the documents
+    private SolrWriter solrWriter;
+
+    @Before
+    public void setUp() {
+        this.written = new ArrayList<SolrInputDocument>();
+        this.solrWriter = new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+                written.add(doc);
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+    }
+
+    @Test
+    public void testTokenBucket() {
+        SolrTokenBucket bucket = new SolrTokenBucket(2);
+        long now = System.nanoTime();
+
+        // full bucket bursts its rate, then a token every 500ms
+        assertTrue(bucket.tryAcquire(now, 0));
+        assertTrue(bucket.tryAcquire(now, 0));
+        assertFalse(bucket.tryAcquire(now, 0));
+        long later = now + TimeUnit.MILLISECONDS.toNanos(500);
+        assertTrue(bucket.tryAcquire(later, 0));
+        assertFalse(bucket.tryAcquire(later, 0));
+
+        // a quiet period fills the bucket up to its burst only
+        long quiet = later + TimeUnit.SECONDS.toNanos(60);
+        assertTrue(bucket.tryAcquire(quiet, 0));
+        assertTrue(bucket.tryAcquire(quiet, 0));
+        assertFalse(bucket.tryAcquire(quiet, 0));
+
+        // slowed down to a token every 2s
+        assertFalse(bucket.tryAcquire(quiet + TimeUnit.SECONDS.toNanos(1), 2));
+        assertTrue(bucket.tryAcquire(quiet + TimeUnit.SECONDS.toNanos(2), 2));
+    }
+
+    @Test
+    public void testSampleWeight() {
+        SolrRateLimitWriter rateLimitWriter = new SolrRateLimitWriter(
+                this.solrWriter, "org.example=0.01", "loggerName", "level");
+
+        for (int i = 0; i < 5; i++) {
+            rateLimitWriter.write(createDoc("org.example.Chatty", "DEBUG"));
+        }
+        rateLimitWriter.write(createDoc("org.other", "DEBUG"));
+
+        // one token, other loggers are not limited
+        assertEquals(2, this.written.size());
+        assertEquals(Long.valueOf(1),
+                this.written.get(0).getFieldValue("sampleWeight"));
+        assertNull(this.written.get(1).getFieldValue("sampleWeight"));
+        assertEquals(4, rateLimitWriter.getSampledOutCount());
+    }
+
+    @Test
+    public void testMostSpecificRule() {
+        SolrRateLimitWriter rateLimitWriter = new SolrRateLimitWriter(
+                this.solrWriter,
+                ":DEBUG=1, org.example=3 ,org.example.chatty:DEBUG=0.01",
+                "loggerName", "level");
+        assertEquals("org.example.chatty:DEBUG=0.01,org.example=3,:DEBUG=1",
+                rateLimitWriter.toString());
+
+        for (int i = 0; i < 3; i++) {
+            rateLimitWriter.write(createDoc("org.example.chatty", "DEBUG"));
+            rateLimitWriter.write(createDoc("org.example.chatty", "INFO"));
+            rateLimitWriter.write(createDoc("org.examples", "DEBUG"));
+            rateLimitWriter.write(createDoc("org.examples", "ERROR"));
+        }
+        // 1 chatty DEBUG, 3 chatty INFO, 1 DEBUG, 3 ERROR without rule
+        assertEquals(8, this.written.size());
+        assertEquals(4, rateLimitWriter.getSampledOutCount());
+    }
+
+    @Test
+    public void testAdaptive() {
+        SolrMetrics metrics = new SolrMetrics();
+        SolrRateLimitWriter rateLimitWriter = new SolrRateLimitWriter(
+                this.solrWriter, ":DEBUG=100", "loggerName", "level",
+                metrics, 100);
+        long slow = TimeUnit.MILLISECONDS.toNanos(250);
+
+        assertEquals(0, rateLimitWriter.adjust(-1));
+        assertEquals(1, rateLimitWriter.adjust(slow));
+        assertEquals(2, rateLimitWriter.adjust(slow));
+        for (int i = 0; i < 10; i++) {
+            rateLimitWriter.adjust(slow);
+        }
+        assertEquals(SolrRateLimitWriter.MAX_SLOWDOWN,
+                rateLimitWriter.getSlowdown());
+        // between half and the threshold nothing changes
+        assertEquals(SolrRateLimitWriter.MAX_SLOWDOWN,
+                rateLimitWriter.adjust(TimeUnit.MILLISECONDS.toNanos(80)));
+        assertEquals(0,
+                rateLimitWriter.adjust(TimeUnit.MILLISECONDS.toNanos(20)));
+
+        // the writer reads the moving average of the metrics
+        metrics.recordSuccess(1, slow, 1);
+        rateLimitWriter.write(createDoc("org.example", "DEBUG"));
+        assertEquals(1, rateLimitWriter.getSlowdown());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new SolrRateLimitWriter(this.solrWriter, "org.example=fast",
+                "loggerName", "level");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLevel() {
+        new SolrRateLimitWriter(this.solrWriter, "org.example:NOISY=1",
+                "loggerName", "level");
+    }
+
+    // helper
+    private static SolrInputDocument createDoc(final String loggerName,
+            final String level) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.setField("loggerName", loggerName);
+        doc.setField("level", level);
+        return doc;
+    }
+}
@@ -0,0 +1,136 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrRequestLogParser and SolrRequestLogWriter. the lines
+ * are logged like solr 4.7 does.
+ */
+public class TestSolrRequestLogParser {
+    // request log lines
+    private static final String SELECT = "[collection1] webapp=/solr "
+            + "path=/select "
+            + "params={q={!lucene}level:ERROR&wt=javabin&version=2} "
+            + "hits=1234567890123 status=0 QTime=17";
+    private static final String UPDATE = "[collection1] webapp=/solr "
+            + "path=/update params={wt=javabin&version=2} "
+            + "{add=[1, 2 (1468)]} 0 42";
+
+    @Test
+    public void testSelect() {
+        SolrRequestLogParser parser = new SolrRequestLogParser();
+
+        assertTrue(parser.parse(SELECT));
+        assertEquals(17, parser.getQTime());
+        assertEquals(1234567890123L, parser.getHits());
+        assertEquals(0, parser.getStatus());
+        assertEquals("collection1", parser.getCore());
+        assertEquals("/solr", parser.getWebapp());
+        assertEquals("/select", parser.getPath());
+        assertEquals("q={!lucene}level:ERROR&wt=javabin&version=2",
+                parser.getParams());
+    }
+
+    @Test
+    public void testUpdate() {
+        SolrRequestLogParser parser = new SolrRequestLogParser();
+
+        assertTrue(parser.parse(UPDATE));
+        assertEquals(42, parser.getQTime());
+        assertEquals(-1, parser.getHits());
+        assertEquals(0, parser.getStatus());
+        assertEquals("/update", parser.getPath());
+        assertEquals("wt=javabin&version=2", parser.getParams());
+    }
+
+    @Test
+    public void testWithoutCore() {
+        SolrRequestLogParser parser = new SolrRequestLogParser();
+
+        assertTrue(parser.parse("webapp=/solr path=/admin/ping params={} "
+                + "status=0 QTime=1"));
+        assertNull(parser.getCore());
+        assertEquals("", parser.getParams());
+        assertEquals(1, parser.getQTime());
+    }
+
+    @Test
+    public void testOtherMessages() {
+        SolrRequestLogParser parser = new SolrRequestLogParser();
+
+        assertFalse(parser.parse(null));
+        assertFalse(parser.parse(""));
+        assertFalse(parser.parse("Processed order 42"));
+        assertNull(parser.getPath());
+        assertFalse(parser.parse("[collection1] Registered new searcher"));
+        assertFalse(parser.parse("[collection1 webapp=/solr path=/select"));
+        assertFalse(parser.parse("[collection1] webapp=/solr path=/select "
+                + "params={q=*:* QTime=3"));
+        assertFalse(parser.parse("[collection1] webapp=/solr path=/select "
+                + "QTime=abc"));
+    }
+
+    @Test
+    public void testReusedValues() {
+        SolrRequestLogParser parser = new SolrRequestLogParser();
+
+        assertTrue(parser.parse(SELECT));
+        String path = parser.getPath();
+        String webapp = parser.getWebapp();
+        assertTrue(parser.parse(SELECT.replace("QTime=17", "QTime=3")));
+        assertSame(path, parser.getPath());
+        assertSame(webapp, parser.getWebapp());
+        assertEquals(3, parser.getQTime());
+
+        assertTrue(parser.parse(UPDATE));
+        assertEquals("/update", parser.getPath());
+        assertSame(webapp, parser.getWebapp());
+    }
+
+    @Test
+    public void testWriter() {
+        final List<SolrInputDocument> written =
+                new ArrayList<SolrInputDocument>();
+        SolrWriter solrWriter = new SolrRequestLogWriter(new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+                written.add(doc);
+            }
+
+            @Override
+            public void flush() {
+            }
+        }, "msg");
+
+        for (String message : new String[] { SELECT, UPDATE, "started" }) {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.setField("msg", message);
+            solrWriter.write(doc);
+        }
+
+        assertEquals(3, written.size());
+        SolrInputDocument select = written.get(0);
+        assertEquals(Integer.valueOf(17), select.getFieldValue("qtime"));
+        assertEquals(Long.valueOf(1234567890123L),
+                select.getFieldValue("hits"));
+        assertEquals(Integer.valueOf(0), select.getFieldValue("status"));
+        assertEquals("/select", select.getFieldValue("path"));
+        assertEquals("/solr", select.getFieldValue("webapp"));
+        assertEquals("q={!lucene}level:ERROR&wt=javabin&version=2",
+                select.getFieldValue("params"));
+        assertNull(written.get(1).getFieldValue("hits"));
+        assertEquals(Integer.valueOf(42),
+                written.get(1).getFieldValue("qtime"));
+        assertEquals(1, written.get(2).getFieldNames().size());
+    }
+}
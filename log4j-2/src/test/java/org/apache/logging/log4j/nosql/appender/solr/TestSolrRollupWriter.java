@@ -0,0 +1,204 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrRollupWriter. the rolled up documents are collected by a
+ * writer.
+ */
+public class TestSolrRollupWriter {
+    // documents written by the rollup
+    private List<SolrInputDocument> written;
+
+    // writer collecting the documents
+    private SolrWriter solrWriter;
+
+    // rollup to test
+    private SolrRollupWriter rollupWriter;
+
+    @Before
+    public void setUp() {
+        this.written = Collections
+                .synchronizedList(new ArrayList<SolrInputDocument>());
+        this.solrWriter = new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+                written.add(doc);
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        if (this.rollupWriter != null) {
+            this.rollupWriter.stop();
+        }
+    }
+
+    @Test
+    public void testCollapse() {
+        this.rollupWriter = new SolrRollupWriter(this.solrWriter, 60000, 16,
+                null);
+
+        this.rollupWriter.write(createDoc("a", "ERROR", "failed", 100));
+        this.rollupWriter.write(createDoc("a", "ERROR", "failed", 300));
+        this.rollupWriter.write(createDoc("a", "ERROR", "failed", 200));
+        // different level, logger, message
+        this.rollupWriter.write(createDoc("a", "WARN", "failed", 100));
+        this.rollupWriter.write(createDoc("b", "ERROR", "failed", 100));
+        this.rollupWriter.write(createDoc("a", "ERROR", "other", 100));
+        assertEquals(0, this.written.size());
+        assertEquals(4, this.rollupWriter.size());
+
+        this.rollupWriter.flush();
+        assertEquals(0, this.rollupWriter.size());
+        assertEquals(4, this.written.size());
+        int total = 0;
+        for (SolrInputDocument doc : this.written) {
+            total += (Integer) doc.getFieldValue(SolrRollupWriter.COUNT_FIELD);
+            if ("a".equals(doc.getFieldValue("loggerName"))
+                    && "ERROR".equals(doc.getFieldValue("level"))
+                    && "failed".equals(doc.getFieldValue("message"))) {
+                assertEquals(3,
+                        doc.getFieldValue(SolrRollupWriter.COUNT_FIELD));
+                assertEquals(100L, doc
+                        .getFieldValue(SolrRollupWriter.FIRST_MILLIS_FIELD));
+                assertEquals(300L, doc
+                        .getFieldValue(SolrRollupWriter.LAST_MILLIS_FIELD));
+            }
+        }
+        assertEquals(6, total);
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        this.rollupWriter = new SolrRollupWriter(this.solrWriter, 100, 16,
+                null);
+
+        long now = System.currentTimeMillis();
+        this.rollupWriter.write(createDoc("a", "ERROR", "failed", now));
+        this.rollupWriter.write(createDoc("a", "ERROR", "failed", now));
+
+        // wait for the timer
+        for (int i = 0; i < 50 && this.written.isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, this.written.size());
+        assertEquals(2, this.written.get(0).getFieldValue(
+                SolrRollupWriter.COUNT_FIELD));
+        assertEquals(0, this.rollupWriter.size());
+    }
+
+    @Test
+    public void testExpireAfterError() throws Exception {
+        final AtomicBoolean failed = new AtomicBoolean();
+        SolrWriter failingWriter = new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+                // the first write is rejected by solr
+                if (failed.compareAndSet(false, true)) {
+                    throw new SolrException(ErrorCode.BAD_REQUEST,
+                            "ERROR: unknown field 'bad'");
+                }
+                written.add(doc);
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+        this.rollupWriter = new SolrRollupWriter(failingWriter, 100, 16, null);
+
+        long now = System.currentTimeMillis();
+        this.rollupWriter.write(createDoc("a", "ERROR", "failed", now));
+        for (int i = 0; i < 50 && !failed.get(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(failed.get());
+
+        // the windows still expire
+        this.rollupWriter.write(createDoc("b", "ERROR", "failed",
+                System.currentTimeMillis()));
+        for (int i = 0; i < 50 && this.written.isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, this.written.size());
+        assertEquals("b", this.written.get(0).getFieldValue("loggerName"));
+    }
+
+    @Test
+    public void testEvict() {
+        this.rollupWriter = new SolrRollupWriter(this.solrWriter, 60000, 2,
+                null);
+
+        this.rollupWriter.write(createDoc("a", "ERROR", "first", 100));
+        this.rollupWriter.write(createDoc("a", "ERROR", "second", 100));
+        assertEquals(0, this.written.size());
+
+        // a third key evicts one of the others
+        this.rollupWriter.write(createDoc("a", "ERROR", "third", 100));
+        assertEquals(1, this.written.size());
+        assertEquals(2, this.rollupWriter.size());
+    }
+
+    @Test
+    public void testWithoutMessage() {
+        this.rollupWriter = new SolrRollupWriter(this.solrWriter, 60000, 16,
+                null);
+
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("fingerprint", "0123456789abcdef");
+        this.rollupWriter.write(doc);
+        assertEquals(1, this.written.size());
+        assertEquals(0, this.rollupWriter.size());
+    }
+
+    @Test
+    public void testFieldMapping() {
+        SolrFieldMapping mapping = SolrFieldMapping.createFieldMapping(null,
+                new SolrField[] { SolrField.createField("message", "msg",
+                        null, null, null) });
+        this.rollupWriter = new SolrRollupWriter(this.solrWriter, 60000, 16,
+                mapping);
+
+        for (int i = 0; i < 2; i++) {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.addField("loggerName", "a");
+            doc.addField("level", "ERROR");
+            doc.addField("msg", "failed");
+            this.rollupWriter.write(doc);
+        }
+        this.rollupWriter.flush();
+        assertEquals(1, this.written.size());
+        assertEquals(2, this.written.get(0).getFieldValue(
+                SolrRollupWriter.COUNT_FIELD));
+    }
+
+    // helper
+    private static SolrInputDocument createDoc(String loggerName,
+            String level, String message, long millis) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("loggerName", loggerName);
+        doc.addField("level", level);
+        doc.addField("message", message);
+        doc.addField("millis", millis);
+        return doc;
+    }
+}
@@ -0,0 +1,134 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrException;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrSchema. the schema of an embedded core is loaded by luke
+ * and from the core itself.
+ */
+public class TestSolrSchema {
+    // solr server shared by all tests
+    private static EmbeddedSolrServer solrServer;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        solrServer = (EmbeddedSolrServer) EmbeddedSolrHome
+                .createServer(TestSolrSchema.class);
+    }
+
+    @AfterClass
+    public static void destroy() {
+        solrServer.shutdown();
+    }
+
+    @Test
+    public void testLookup() {
+        Map<String, SolrSchema.Field> fields;
+        fields = new HashMap<String, SolrSchema.Field>();
+        fields.put("millis",
+                new SolrSchema.Field(SolrSchema.Type.LONG, false));
+        Map<String, SolrSchema.Field> dynamicFields;
+        dynamicFields = new HashMap<String, SolrSchema.Field>();
+        dynamicFields.put("*_i", new SolrSchema.Field(SolrSchema.Type.INT,
+                false));
+        dynamicFields.put("*_ti", new SolrSchema.Field(SolrSchema.Type.DATE,
+                false));
+        dynamicFields.put("attr_*", new SolrSchema.Field(
+                SolrSchema.Type.OTHER, true));
+        SolrSchema schema = new SolrSchema(fields, dynamicFields);
+
+        assertEquals(SolrSchema.Type.LONG, schema.getField("millis")
+                .getType());
+        assertEquals(SolrSchema.Type.INT, schema.getField("count_i")
+                .getType());
+        // longest pattern first
+        assertEquals(SolrSchema.Type.DATE, schema.getField("count_ti")
+                .getType());
+        assertTrue(schema.getField("attr_color").isMultiValued());
+        assertNull(schema.getField("color"));
+        // cached lookups
+        assertSame(schema.getField("count_i"), schema.getField("count_i"));
+        assertNull(schema.getField("color"));
+        assertEquals("schema(1 fields, 3 dynamic fields)", schema.toString());
+    }
+
+    @Test
+    public void testCoerce() {
+        assertEquals(Integer.valueOf(42), SolrSchema.Type.INT.coerce(" 42"));
+        assertEquals(Integer.valueOf(42), SolrSchema.Type.INT.coerce(42L));
+        assertNull(SolrSchema.Type.INT.coerce("many"));
+        assertEquals(Long.valueOf(7), SolrSchema.Type.LONG.coerce("7"));
+        assertEquals(Float.valueOf(1.5f),
+                SolrSchema.Type.FLOAT.coerce("1.5"));
+        assertEquals(Double.valueOf(2), SolrSchema.Type.DOUBLE.coerce(2));
+        // values which do not fit the type
+        assertNull(SolrSchema.Type.INT.coerce(1L << 32));
+        assertNull(SolrSchema.Type.INT.coerce(1.5));
+        assertEquals(Integer.valueOf(3), SolrSchema.Type.INT.coerce(3.0f));
+        assertNull(SolrSchema.Type.LONG.coerce(1e19));
+        assertNull(SolrSchema.Type.LONG.coerce(Double.NaN));
+        assertNull(SolrSchema.Type.LONG.coerce(2.5f));
+        assertNull(SolrSchema.Type.LONG.coerce(BigInteger.ONE.shiftLeft(63)));
+        assertNull(SolrSchema.Type.LONG.coerce(new BigDecimal("1.1")));
+        assertEquals(Long.valueOf(-5),
+                SolrSchema.Type.LONG.coerce(new BigDecimal("-5.00")));
+        assertNull(SolrSchema.Type.FLOAT.coerce(Double.MAX_VALUE));
+        assertEquals(Boolean.TRUE, SolrSchema.Type.BOOLEAN.coerce("TRUE"));
+        assertNull(SolrSchema.Type.BOOLEAN.coerce("yes"));
+        assertEquals(new Date(1000L), SolrSchema.Type.DATE.coerce(1000L));
+        assertEquals("1970-01-01T00:00:01Z",
+                SolrSchema.Type.DATE.coerce("1970-01-01T00:00:01Z"));
+        assertEquals("text", SolrSchema.Type.OTHER.coerce("text"));
+
+        assertEquals(SolrSchema.Type.INT,
+                SolrSchema.Type.of("org.apache.solr.schema.TrieIntField"));
+        assertEquals(SolrSchema.Type.DATE,
+                SolrSchema.Type.of("solr.DateField"));
+        assertEquals(SolrSchema.Type.OTHER,
+                SolrSchema.Type.of("org.apache.solr.schema.TextField"));
+    }
+
+    @Test
+    public void testLoaders() throws Exception {
+        SolrSchema luke = SolrSchema.loader(solrServer).load();
+        SolrSchema core = SolrSchema.loader(solrServer.getCoreContainer(),
+                "collection1").load();
+
+        for (SolrSchema schema : new SolrSchema[] { luke, core }) {
+            assertEquals(SolrSchema.Type.LONG, schema.getField("millis")
+                    .getType());
+            assertEquals(SolrSchema.Type.INT, schema.getField("lineNumber")
+                    .getType());
+            assertEquals(SolrSchema.Type.DATE, schema.getField("date")
+                    .getType());
+            assertEquals(SolrSchema.Type.OTHER, schema.getField("message")
+                    .getType());
+            assertFalse(schema.getField("millis").isMultiValued());
+            // catch all dynamic field
+            assertTrue(schema.getField("contextMap.userId").isMultiValued());
+        }
+        assertEquals(core.size(), luke.size());
+    }
+
+    @Test(expected = SolrException.class)
+    public void testUnknownCore() throws Exception {
+        SolrSchema.loader(solrServer.getCoreContainer(), "myCore").load();
+    }
+}
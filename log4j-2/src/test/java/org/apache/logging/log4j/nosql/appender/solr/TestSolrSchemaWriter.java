@@ -0,0 +1,231 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrSchemaWriter. the schema is built by the test.
+ */
+public class TestSolrSchemaWriter {
+    // documents passed on by the writer
+    private List<SolrInputDocument> written;
+
+    // writer collecting the documents
+    private SolrWriter solrWriter;
+
+    // schema of the tests
+    private SolrSchema schema;
+
+    @Before
+    public void setUp() {
+        this.written = new ArrayList<SolrInputDocument>();
+        this.solrWriter = new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+                written.add(doc);
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+
+        Map<String, SolrSchema.Field> fields;
+        fields = new HashMap<String, SolrSchema.Field>();
+        fields.put("message", new SolrSchema.Field(SolrSchema.Type.OTHER,
+                false));
+        fields.put("millis", new SolrSchema.Field(SolrSchema.Type.LONG,
+                false));
+        fields.put("date",
+                new SolrSchema.Field(SolrSchema.Type.DATE, false));
+        fields.put("lineNumber", new SolrSchema.Field(SolrSchema.Type.INT,
+                false));
+        fields.put("tags", new SolrSchema.Field(SolrSchema.Type.OTHER, true));
+        Map<String, SolrSchema.Field> dynamicFields;
+        dynamicFields = new HashMap<String, SolrSchema.Field>();
+        dynamicFields.put("*_s", new SolrSchema.Field(SolrSchema.Type.OTHER,
+                false));
+        this.schema = new SolrSchema(fields, dynamicFields);
+    }
+
+    @Test
+    public void testDropUnknown() {
+        SolrSchemaWriter writer = new SolrSchemaWriter(this.solrWriter,
+                loader(this.schema, null), null, 0);
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.setField("message", "message");
+        doc.setField("userId", "42");
+        doc.setField("color_s", "red");
+        writer.write(doc);
+
+        assertEquals(1, this.written.size());
+        assertEquals(2, doc.size());
+        assertNull(doc.getFieldValue("userId"));
+        assertEquals("red", doc.getFieldValue("color_s"));
+        assertEquals(1, writer.getDroppedFieldCount());
+        assertEquals("drop", writer.toString());
+    }
+
+    @Test
+    public void testRenameUnknown() {
+        SolrSchemaWriter writer = new SolrSchemaWriter(this.solrWriter,
+                loader(this.schema, null), "*_s", 0);
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.setField("message", "message");
+        doc.setField("userId", 42);
+        doc.setField("color", "blue");
+        doc.setField("color_s", "red");
+        writer.write(doc);
+
+        assertEquals(42, doc.getFieldValue("userId_s"));
+        assertNull(doc.getFieldValue("userId"));
+        // the dynamic field is kept
+        assertEquals("red", doc.getFieldValue("color_s"));
+        assertNull(doc.getFieldValue("color"));
+        assertEquals(2, writer.getRenamedFieldCount());
+        assertEquals(1, writer.getDroppedFieldCount());
+        assertEquals("*_s", writer.toString());
+    }
+
+    @Test
+    public void testRenamePooled() {
+        SolrSchemaWriter writer = new SolrSchemaWriter(this.solrWriter,
+                loader(this.schema, null), "*_s", 0);
+        SolrConnection connection = SolrConnection.newBuilder(writer)
+                .withObjectPool(new SolrObjectPool(4)).build();
+
+        for (int i = 0; i < 2; i++) {
+            SolrObject entity = connection.createObject();
+            entity.set("message", "message");
+            entity.set("userId", "4" + i);
+            // the recycled object still writes its own field name
+            assertEquals("userId", entity.unwrap().getField("userId")
+                    .getName());
+            connection.insertObject(entity);
+
+            SolrInputDocument doc = this.written.get(i);
+            assertEquals("4" + i, doc.getFieldValue("userId_s"));
+            assertEquals("userId_s", doc.getField("userId_s").getName());
+            assertNull(doc.getFieldValue("userId"));
+            SolrObject.recycle(doc);
+        }
+    }
+
+    @Test
+    public void testCoerce() {
+        SolrSchemaWriter writer = new SolrSchemaWriter(this.solrWriter,
+                loader(this.schema, null), null, 0);
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.setField("millis", 1000);
+        doc.setField("date", 1000L);
+        doc.setField("lineNumber", "not a number");
+        doc.setField("message", Arrays.asList("first", "second"));
+        doc.setField("tags", Arrays.asList("a", "b"));
+        writer.write(doc);
+
+        assertEquals(Long.valueOf(1000), doc.getFieldValue("millis"));
+        assertEquals(new Date(1000L), doc.getFieldValue("date"));
+        assertNull(doc.getFieldValue("lineNumber"));
+        // single valued field
+        assertEquals(1, doc.getFieldValues("message").size());
+        assertEquals("first", doc.getFieldValue("message"));
+        assertEquals(2, doc.getFieldValues("tags").size());
+        assertEquals(3, writer.getCoercedFieldCount());
+        assertEquals(1, writer.getDroppedFieldCount());
+    }
+
+    @Test
+    public void testChildDocuments() {
+        SolrSchemaWriter writer = new SolrSchemaWriter(this.solrWriter,
+                loader(this.schema, null), null, 0);
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.setField("message", "message");
+        SolrInputDocument child = new SolrInputDocument();
+        child.setField("lineNumber", "12");
+        child.setField("className", "Foo");
+        doc.addChildDocument(child);
+        writer.write(doc);
+
+        assertEquals(Integer.valueOf(12), child.getFieldValue("lineNumber"));
+        assertFalse(child.containsKey("className"));
+    }
+
+    @Test
+    public void testLoadFailure() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        SolrSchemaWriter writer = new SolrSchemaWriter(this.solrWriter,
+                loader(null, loads), null, 0);
+        assertNull(writer.getSchema());
+        assertEquals(1, loads.get());
+
+        // unchecked until the schema is loaded, the retry is not due yet
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.setField("userId", "42");
+        writer.write(doc);
+        assertTrue(doc.containsKey("userId"));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        SolrSchemaWriter writer = new SolrSchemaWriter(this.solrWriter,
+                loader(this.schema, loads), null, 1);
+        assertSame(this.schema, writer.getSchema());
+
+        // reloaded in the background
+        for (int i = 0; i < 100 && loads.get() < 2; i++) {
+            Thread.sleep(10);
+            writer.write(new SolrInputDocument());
+        }
+        assertTrue(loads.get() >= 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPattern() {
+        new SolrSchemaWriter(this.solrWriter, loader(this.schema, null),
+                "string", 0);
+    }
+
+    // helper
+    /**
+     * create a loader returning a schema.
+     * 
+     * @param schema
+     *            schema to return. null to fail
+     * @param loads
+     *            counts the loads. may be null
+     */
+    private static SolrSchema.Loader loader(final SolrSchema schema,
+            final AtomicInteger loads) {
+        return new SolrSchema.Loader() {
+            @Override
+            public SolrSchema load() throws SolrServerException, IOException {
+                if (loads != null) {
+                    loads.incrementAndGet();
+                }
+                if (schema == null) {
+                    throw new IOException("solr is down");
+                }
+                return schema;
+            }
+        };
+    }
+}
@@ -0,0 +1,193 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test for SolrSpillJournal.
+ */
+public class TestSolrSpillJournal {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendReadCommit() throws Exception {
+        SolrSpillJournal journal = new SolrSpillJournal(folder.getRoot(),
+                4096, 65536);
+        assertTrue(journal.isEmpty());
+
+        assertTrue(journal.append(createDoc("first")));
+        assertTrue(journal.append(createDoc("second")));
+        assertTrue(journal.append(createDoc("third")));
+        assertEquals(3, journal.size());
+
+        // read without commit keeps the documents
+        assertEquals(2, journal.read(2).size());
+        assertEquals(3, journal.size());
+
+        List<SolrInputDocument> docs = journal.read(2);
+        assertEquals("first", docs.get(0).getFieldValue("message"));
+        assertEquals("second", docs.get(1).getFieldValue("message"));
+        journal.commit();
+        assertEquals(1, journal.size());
+
+        docs = journal.read(10);
+        assertEquals(1, docs.size());
+        assertEquals("third", docs.get(0).getFieldValue("message"));
+        journal.commit();
+        assertTrue(journal.isEmpty());
+        assertTrue(journal.read(10).isEmpty());
+    }
+
+    @Test
+    public void testFieldValues() throws Exception {
+        SolrSpillJournal journal = new SolrSpillJournal(folder.getRoot(),
+                4096, 65536);
+        SolrInputDocument doc = createDoc("message");
+        doc.addField("level", Level.WARN);
+        doc.addField("millis", 1234567890123L);
+        doc.addField("lineNumber", 42);
+
+        journal.append(doc);
+        SolrInputDocument replayed = journal.read(1).get(0);
+        assertEquals("WARN", replayed.getFieldValue("level"));
+        assertEquals(1234567890123L, replayed.getFieldValue("millis"));
+        assertEquals(42, replayed.getFieldValue("lineNumber"));
+    }
+
+    @Test
+    public void testSegmentRotation() throws Exception {
+        SolrSpillJournal journal = new SolrSpillJournal(folder.getRoot(),
+                1024, 65536);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(journal.append(createDoc("message " + i)));
+        }
+        assertTrue(segmentCount() > 1);
+
+        // replayed segments are deleted
+        List<SolrInputDocument> docs = journal.read(100);
+        assertEquals(100, docs.size());
+        assertEquals("message 99", docs.get(99).getFieldValue("message"));
+        journal.commit();
+        assertEquals(1, segmentCount());
+    }
+
+    @Test
+    public void testMaxDiskSize() throws Exception {
+        SolrSpillJournal journal = new SolrSpillJournal(folder.getRoot(),
+                1024, 2048);
+        int appended = 0;
+        while (journal.append(createDoc("message " + appended))) {
+            appended++;
+        }
+        assertTrue(appended > 0);
+        assertEquals(2048, journal.getDiskSize());
+        assertEquals(1, journal.getRejectedCount());
+
+        // replaying frees space
+        journal.read(appended);
+        journal.commit();
+        assertTrue(journal.append(createDoc("next")));
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        SolrSpillJournal journal = new SolrSpillJournal(folder.getRoot(),
+                1024, 65536);
+        for (int i = 0; i < 50; i++) {
+            journal.append(createDoc("message " + i));
+        }
+        journal.read(20);
+        journal.commit();
+        // read but not committed before the restart
+        journal.read(5);
+        journal.sync();
+
+        // restart
+        journal = new SolrSpillJournal(folder.getRoot(), 1024, 65536);
+        assertEquals(30, journal.size());
+        assertEquals("message 20",
+                journal.read(1).get(0).getFieldValue("message"));
+
+        // the journal continues behind the recovered documents
+        journal.append(createDoc("message 50"));
+        List<SolrInputDocument> docs = journal.read(100);
+        assertEquals(31, docs.size());
+        assertEquals("message 50", docs.get(30).getFieldValue("message"));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        SolrSpillJournal journal = new SolrSpillJournal(folder.getRoot(),
+                1024, 65536);
+        for (int i = 0; i < 30; i++) {
+            journal.append(createDoc("message " + i));
+        }
+        journal.read(10);
+        journal.commit();
+        journal.close();
+        journal.close();
+
+        // a closed journal neither takes nor returns documents
+        assertFalse(journal.append(createDoc("closed")));
+        assertTrue(journal.read(10).isEmpty());
+        assertEquals(0, journal.getDiskSize());
+
+        // restart
+        journal = new SolrSpillJournal(folder.getRoot(), 1024, 65536);
+        assertEquals(20, journal.size());
+        assertEquals("message 10",
+                journal.read(1).get(0).getFieldValue("message"));
+        journal.close();
+    }
+
+    @Test
+    public void testInvalidOffset() throws Exception {
+        SolrSpillJournal journal = new SolrSpillJournal(folder.getRoot(),
+                1024, 65536);
+        journal.append(createDoc("first"));
+        journal.append(createDoc("second"));
+        journal.read(1);
+        journal.commit();
+
+        // a damaged offset file replays everything
+        File offset = new File(folder.getRoot(), "offset");
+        assertTrue(offset.delete());
+        journal = new SolrSpillJournal(folder.getRoot(), 1024, 65536);
+        assertEquals(2, journal.size());
+    }
+
+    @Test
+    public void testTooLarge() throws Exception {
+        SolrSpillJournal journal = new SolrSpillJournal(folder.getRoot(),
+                64, 65536);
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            message.append("x");
+        }
+        assertFalse(journal.append(createDoc(message.toString())));
+        assertTrue(journal.isEmpty());
+    }
+
+    // helper
+    private static SolrInputDocument createDoc(String message) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("message", message);
+        return doc;
+    }
+
+    private int segmentCount() {
+        return folder.getRoot().list().length - 1;
+    }
+}
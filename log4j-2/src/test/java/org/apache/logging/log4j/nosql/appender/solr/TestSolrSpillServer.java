@@ -0,0 +1,182 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test for SolrSpillServer. documents are sent to a fake solr server
+ * which can be switched off.
+ */
+public class TestSolrSpillServer {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // fake solr server
+    private FakeSolrServer target;
+
+    // server to test
+    private SolrSpillServer spillServer;
+
+    @Before
+    public void setUp() throws Exception {
+        this.target = new FakeSolrServer();
+        this.spillServer = new SolrSpillServer(this.target,
+                new SolrSpillJournal(folder.getRoot(), 4096, 65536), -1, 10,
+                50);
+    }
+
+    @After
+    public void tearDown() {
+        this.spillServer.shutdown();
+    }
+
+    @Test
+    public void testSpillAndReplay() throws Exception {
+        SolrBatchWriter batchWriter = new SolrBatchWriter(this.spillServer,
+                -1, 2, 0);
+
+        // solr down ... the batch is spilled instead of failing
+        this.target.down = true;
+        batchWriter.write(createDoc("first"));
+        batchWriter.write(createDoc("second"));
+        assertEquals(2, this.spillServer.getJournal().size());
+
+        // the journal keeps the order while it is not empty
+        this.target.down = false;
+        batchWriter.write(createDoc("third"));
+        batchWriter.flush();
+
+        waitForEmptyJournal();
+        assertEquals(3, this.target.docs.size());
+        assertEquals("first", this.target.docs.get(0).getFieldValue("message"));
+        assertEquals("third", this.target.docs.get(2).getFieldValue("message"));
+
+        // healthy solr is written directly
+        batchWriter.write(createDoc("fourth"));
+        batchWriter.write(createDoc("fifth"));
+        assertEquals(5, this.target.docs.size());
+    }
+
+    @Test(expected = AppenderLoggingException.class)
+    public void testJournalFull() throws Exception {
+        this.spillServer.shutdown();
+        this.spillServer = new SolrSpillServer(this.target,
+                new SolrSpillJournal(folder.newFolder(), 64, 64), -1, 10, 50);
+        SolrDirectWriter directWriter = new SolrDirectWriter(
+                this.spillServer, -1);
+
+        this.target.down = true;
+        for (int i = 0; i < 100; i++) {
+            directWriter.write(createDoc("message " + i));
+        }
+    }
+
+    @Test
+    public void testJournalFullInBatch() throws Exception {
+        this.spillServer.shutdown();
+        this.spillServer = new SolrSpillServer(this.target,
+                new SolrSpillJournal(folder.newFolder(), 256, 256), -1, 10,
+                50);
+        SolrBatchWriter batchWriter = new SolrBatchWriter(this.spillServer,
+                -1, 20, 0);
+
+        // the batch fills the journal, the rest fails instead of being lost
+        this.target.down = true;
+        try {
+            for (int i = 0; i < 20; i++) {
+                batchWriter.write(createDoc("message " + i));
+            }
+            fail("journal full");
+        } catch (AppenderLoggingException e) {
+            // expected
+        }
+        long spilled = this.spillServer.getJournal().size();
+        assertTrue(spilled > 0 && spilled < 20);
+    }
+
+    @Test
+    public void testJournalFullWhileReplaying() throws Exception {
+        this.spillServer.shutdown();
+        // no replay during the test
+        this.spillServer = new SolrSpillServer(this.target,
+                new SolrSpillJournal(folder.newFolder(), 256, 256), -1, 10,
+                60000);
+        SolrDirectWriter directWriter = new SolrDirectWriter(
+                this.spillServer, -1);
+        SolrBatchWriter batchWriter = new SolrBatchWriter(this.spillServer,
+                -1, 20, 0);
+
+        this.target.down = true;
+        directWriter.write(createDoc("first"));
+        assertEquals(1, this.spillServer.getJournal().size());
+
+        // the documents which do not fit are sent to solr
+        this.target.down = false;
+        for (int i = 0; i < 20; i++) {
+            batchWriter.write(createDoc("message " + i));
+        }
+        long spilled = this.spillServer.getJournal().size() - 1;
+        assertTrue(spilled > 0 && spilled < 20);
+        assertEquals(20 - spilled, this.target.docs.size());
+        assertEquals("message " + spilled,
+                this.target.docs.get(0).getFieldValue("message"));
+    }
+
+    // helper
+    private void waitForEmptyJournal() throws InterruptedException {
+        for (int i = 0; i < 100 && !this.spillServer.getJournal().isEmpty(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(this.spillServer.getJournal().isEmpty());
+    }
+
+    private static SolrInputDocument createDoc(String message) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("message", message);
+        return doc;
+    }
+
+    /**
+     * solr server collecting the added documents.
+     */
+    private static final class FakeSolrServer extends SolrServer {
+        private static final long serialVersionUID = 1L;
+
+        private final List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>();
+        private volatile boolean down;
+
+        @Override
+        public synchronized NamedList<Object> request(
+                final SolrRequest request) throws SolrServerException,
+                IOException {
+            if (this.down) {
+                throw new SolrServerException("Server refused connection");
+            }
+            this.docs.addAll(((UpdateRequest) request).getDocuments());
+            return new NamedList<Object>();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
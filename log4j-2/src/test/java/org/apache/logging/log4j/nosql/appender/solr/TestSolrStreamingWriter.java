@@ -0,0 +1,53 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrStreamingWriter.
+ */
+public class TestSolrStreamingWriter {
+    // streaming server without a solr to talk to
+    private ConcurrentUpdateSolrServer solrServer;
+
+    @Before
+    public void setUp() {
+        this.solrServer = SolrStreamingWriter.createServer(
+                "http://localhost:1/solr", 10, 2);
+    }
+
+    @After
+    public void tearDown() {
+        this.solrServer.shutdownNow();
+    }
+
+    @Test
+    public void testFlushReportsFailedRequests() {
+        SolrStreamingWriter streamingWriter = new SolrStreamingWriter(
+                new SolrDirectWriter(this.solrServer, -1), this.solrServer);
+
+        // add returns before the document is sent
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("message", "first");
+        streamingWriter.write(doc);
+
+        // flush waits for the runners and reports the failure
+        try {
+            streamingWriter.flush();
+            fail("failed request not reported");
+        } catch (AppenderLoggingException e) {
+            assertEquals("Failed to stream 1 update requests to Solr.",
+                    e.getMessage());
+        }
+
+        // failure is reported only once
+        streamingWriter.flush();
+    }
+}
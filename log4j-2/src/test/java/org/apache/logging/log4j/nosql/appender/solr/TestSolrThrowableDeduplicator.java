@@ -0,0 +1,278 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrThrowableDeduplicator. log events are written like the
+ * NoSQL appender does.
+ */
+public class TestSolrThrowableDeduplicator {
+    // documents written by the connection
+    private List<SolrInputDocument> written;
+
+    // writer collecting the documents
+    private SolrWriter solrWriter;
+
+    @Before
+    public void setUp() {
+        this.written = new ArrayList<SolrInputDocument>();
+        this.solrWriter = new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+                written.add(doc);
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+    }
+
+    @Test
+    public void testTraceSentOnce() {
+        SolrConnection connection = SolrConnection.newBuilder(
+                this.solrWriter)
+                .withDeduplicator(new SolrThrowableDeduplicator(16, false))
+                .build();
+
+        // same stack trace, different messages
+        for (String message : new String[] { "first", "second" }) {
+            writeEvent(connection, new IllegalStateException(message));
+        }
+        assertEquals(3, this.written.size());
+
+        // stack trace document
+        SolrInputDocument trace = this.written.get(0);
+        String fingerprint = (String) trace.getFieldValue("fingerprint");
+        assertEquals(16, fingerprint.length());
+        assertEquals(fingerprint, trace.getFieldValue("id"));
+        assertEquals(IllegalStateException.class.getName(),
+                trace.getFieldValue("thrownType"));
+        assertEquals("first", trace.getFieldValue("thrownMessage"));
+        assertTrue(trace.getFieldValues("stackTrace").size() > 1);
+        assertTrue(trace.getFieldValues("stackTrace").contains(
+                "Caused by: java.io.IOException: cause"));
+
+        // log events keep the fingerprint only
+        for (SolrInputDocument doc : this.written.subList(1, 3)) {
+            assertEquals(fingerprint, doc.getFieldValue("thrownFingerprint"));
+            assertFalse(doc.hasChildDocuments());
+            assertEquals("message", doc.getFieldValue("message"));
+        }
+    }
+
+    @Test
+    public void testFlattened() {
+        SolrConnection connection = SolrConnection.newBuilder(
+                this.solrWriter)
+                .withDeduplicator(new SolrThrowableDeduplicator(16, false))
+                .withFlatten(true).build();
+
+        SolrObject entity = connection.createObject();
+        entity.set("message", "message");
+        SolrObject contextMap = connection.createObject();
+        contextMap.set("userId", "42");
+        entity.set("contextMap", contextMap);
+        IllegalStateException t = new IllegalStateException("first");
+        t.initCause(new java.io.IOException("cause"));
+        entity.set("thrown", convert(connection, t, 0));
+        connection.insertObject(entity);
+
+        // stack trace document and flat log event
+        assertEquals(2, this.written.size());
+        SolrInputDocument doc = this.written.get(1);
+        assertFalse(doc.hasChildDocuments());
+        assertEquals("42", doc.getFieldValue("contextMap.userId"));
+        assertNull(doc.getFieldValue("thrown.type"));
+        assertEquals(this.written.get(0).getFieldValue("fingerprint"),
+                doc.getFieldValue("thrownFingerprint"));
+    }
+
+    @Test
+    public void testEventWithoutThrowable() {
+        SolrConnection connection = SolrConnection.newBuilder(
+                this.solrWriter)
+                .withDeduplicator(new SolrThrowableDeduplicator(16, false))
+                .build();
+
+        writeEvent(connection, null);
+        assertEquals(1, this.written.size());
+        assertNull(this.written.get(0).getFieldValue("thrownFingerprint"));
+    }
+
+    @Test
+    public void testLineNumbers() {
+        SolrThrowableDeduplicator exact = new SolrThrowableDeduplicator(16,
+                false);
+        SolrThrowableDeduplicator ignoring = new SolrThrowableDeduplicator(
+                16, true);
+        SolrInputDocument first = thrown(new IllegalStateException("a"), 1);
+        SolrInputDocument second = thrown(new IllegalStateException("b"), 2);
+
+        assertNotEquals(exact.fingerprint(first), exact.fingerprint(second));
+        assertEquals(ignoring.fingerprint(first),
+                ignoring.fingerprint(second));
+        assertNotEquals(
+                ignoring.fingerprint(first),
+                ignoring.fingerprint(thrown(new IllegalArgumentException("a"),
+                        1)));
+    }
+
+    @Test
+    public void testCacheEviction() {
+        SolrConnection connection = SolrConnection.newBuilder(
+                this.solrWriter)
+                .withDeduplicator(new SolrThrowableDeduplicator(1, false))
+                .build();
+
+        // the second evicts the first, the third is sent again
+        for (int i = 0; i < 3; i++) {
+            writeEvent(connection, i == 1 ? new IllegalArgumentException()
+                    : new IllegalStateException());
+        }
+        assertEquals(6, this.written.size());
+    }
+
+    @Test
+    public void testResend() {
+        SolrConnection connection = SolrConnection.newBuilder(
+                this.solrWriter)
+                .withDeduplicator(
+                        new SolrThrowableDeduplicator(16, false, "key", 0,
+                                null))
+                .build();
+
+        // the trace is sent again and replaces the one sent before
+        for (int i = 0; i < 2; i++) {
+            writeEvent(connection, new IllegalStateException());
+        }
+        assertEquals(4, this.written.size());
+        assertEquals(this.written.get(0).getFieldValue("key"),
+                this.written.get(2).getFieldValue("key"));
+        assertEquals(this.written.get(0).getFieldValue("fingerprint"),
+                this.written.get(0).getFieldValue("key"));
+    }
+
+    @Test
+    public void testFailedTrace() {
+        final boolean[] failing = { true };
+        SolrWriter failingWriter = new SolrWriter() {
+            @Override
+            public void write(final SolrInputDocument doc) {
+                if (failing[0]) {
+                    throw new AppenderLoggingException("solr down");
+                }
+                written.add(doc);
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+        SolrConnection connection = SolrConnection.newBuilder(
+                failingWriter)
+                .withDeduplicator(new SolrThrowableDeduplicator(16, false))
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                writeEvent(connection, new IllegalStateException());
+                assertEquals(1, i);
+            } catch (AppenderLoggingException e) {
+                // the fingerprint is not remembered as sent
+                assertEquals(0, i);
+                failing[0] = false;
+            }
+        }
+        assertEquals(2, this.written.size());
+        assertEquals(this.written.get(0).getFieldValue("fingerprint"),
+                this.written.get(1).getFieldValue("thrownFingerprint"));
+    }
+
+    @Test
+    public void testPooled() {
+        SolrObjectPool pool = new SolrObjectPool(16);
+        SolrConnection connection = SolrConnection.newBuilder(
+                this.solrWriter).withObjectPool(pool)
+                .withDeduplicator(new SolrThrowableDeduplicator(16, false))
+                .build();
+
+        writeEvent(connection, new IllegalStateException());
+        // thrown, cause and their frames are back in the pool
+        assertTrue(pool.size() > 2);
+        assertEquals(2, this.written.size());
+    }
+
+    @Test
+    public void testFieldMapping() {
+        SolrFieldMapping mapping = SolrFieldMapping.createFieldMapping(null,
+                new SolrField[] { SolrField.createField("millis", "time",
+                        null, null, null) });
+        SolrConnection connection = SolrConnection.newBuilder(
+                this.solrWriter).withMapping(mapping)
+                .withDeduplicator(new SolrThrowableDeduplicator(16, false,
+                        "id", 0, mapping)).build();
+
+        // the trace keeps the time of the log event in the mapped field
+        writeEvent(connection, new IllegalStateException());
+        assertEquals(2, this.written.size());
+        assertEquals(1L, this.written.get(0).getFieldValue("time"));
+        assertNull(this.written.get(0).getFieldValue("millis"));
+    }
+
+    // helper
+    /**
+     * write a log event like the NoSQL appender.
+     */
+    private static void writeEvent(SolrConnection connection, Throwable t) {
+        SolrObject entity = connection.createObject();
+        entity.set("level", "ERROR");
+        entity.set("message", "message");
+        entity.set("millis", 1L);
+        if (t == null) {
+            entity.set("thrown", (Object) null);
+        } else {
+            t.initCause(new java.io.IOException("cause"));
+            entity.set("thrown", convert(connection, t, 0));
+        }
+        connection.insertObject(entity);
+    }
+
+    private static SolrInputDocument thrown(Throwable t, int lineOffset) {
+        return convert(new SolrConnection(null), t, lineOffset).unwrap();
+    }
+
+    private static SolrObject convert(SolrConnection connection, Throwable t,
+            int lineOffset) {
+        SolrObject thrown = connection.createObject();
+        thrown.set("type", t.getClass().getName());
+        thrown.set("message", t.getMessage());
+        StackTraceElement[] stackTrace = t.getStackTrace();
+        SolrObject[] frames = new SolrObject[Math.min(5, stackTrace.length)];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = connection.createObject();
+            frames[i].set("className", stackTrace[i].getClassName());
+            frames[i].set("methodName", stackTrace[i].getMethodName());
+            frames[i].set("fileName", stackTrace[i].getFileName());
+            frames[i].set("lineNumber", stackTrace[i].getLineNumber()
+                    + lineOffset);
+        }
+        thrown.set("stackTrace", frames);
+        if (t.getCause() != null) {
+            thrown.set("cause", convert(connection, t.getCause(), lineOffset));
+        }
+        return thrown;
+    }
+}
@@ -0,0 +1,85 @@
+package org.apache.logging.log4j.nosql.appender.solr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.BinaryRequestWriter;
+import org.apache.solr.client.solrj.impl.CloudSolrServer;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.junit.Test;
+
+/**
+ * JUnit test for SolrWireSettings.
+ */
+public class TestSolrWireSettings {
+
+    @Test
+    public void testDefaults() {
+        SolrWireSettings wireSettings = new SolrWireSettings(null, null, null,
+                null, null, null, null);
+
+        // SolrJ defaults are kept
+        assertNull(wireSettings.createHttpClient());
+    }
+
+    @Test
+    public void testBinaryRequestWriter() {
+        SolrWireSettings wireSettings = new SolrWireSettings("binary", null,
+                null, null, null, null, null);
+        CloudSolrServer solrServer = new CloudSolrServer("localhost:2181");
+
+        wireSettings.configure(solrServer);
+        assertTrue(solrServer.getRequestWriter() instanceof BinaryRequestWriter);
+    }
+
+    @Test
+    public void testHttpClient() throws IOException {
+        SolrWireSettings wireSettings = new SolrWireSettings("xml", "true",
+                "64", "16", "500", "200", "30000");
+        CloseableHttpClient httpClient = wireSettings.createHttpClient();
+        assertNotNull(httpClient);
+
+        // the connection is accepted by the backlog, but never answered
+        ServerSocket serverSocket = new ServerSocket(0);
+        try {
+            HttpSolrServer solrServer = new HttpSolrServer("http://localhost:"
+                    + serverSocket.getLocalPort() + "/solr", httpClient);
+            long start = System.currentTimeMillis();
+            try {
+                solrServer.ping();
+                fail("ping without a response");
+            } catch (SolrServerException e) {
+                assertTrue(e.getRootCause() instanceof SocketTimeoutException);
+            }
+            assertTrue(System.currentTimeMillis() - start < 5000);
+        } finally {
+            serverSocket.close();
+            httpClient.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedHttpClient() throws Exception {
+        SolrWireSettings wireSettings = new SolrWireSettings(null, null, "64",
+                null, null, null, null);
+        CloseableHttpClient httpClient = wireSettings.createHttpClient();
+        httpClient.close();
+
+        // the connection pool is shut down
+        new HttpSolrServer("http://localhost:8983/solr", httpClient).ping();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownRequestWriter() {
+        new SolrWireSettings("json", null, null, null, null, null, null);
+    }
+}